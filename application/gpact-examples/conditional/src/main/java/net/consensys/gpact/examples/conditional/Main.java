@@ -42,9 +42,11 @@ public class Main {
     GpactExampleSystemManager exampleManager = new GpactExampleSystemManager(args[0]);
     exampleManager.gpactStandardExampleConfig(2);
 
-    if (exampleManager.getExecutionEngineType() == ExecutionEngineType.PARALLEL) {
+    if (exampleManager.getExecutionEngineType() == ExecutionEngineType.PARALLEL
+        || exampleManager.getExecutionEngineType() == ExecutionEngineType.PIPELINED) {
       throw new Exception(
-          "This example will not work with a paralell execution engine as it has two segments that interact with the same contract on the same blockchain");
+          "This example will not work with a paralell execution engine as it has two segments that"
+              + " interact with the same contract on the same blockchain");
     }
 
     BlockchainInfo root = exampleManager.getRootBcInfo();
@@ -3,7 +3,6 @@ package net.consensys.gpact.examples.erc20tokenbridge;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
 import net.consensys.gpact.appcontracts.atomic.erc20.soliditywrappers.GpactERC20Bridge;
 import net.consensys.gpact.appcontracts.atomic.erc20.soliditywrappers.LockableERC20PresetFixedSupply;
 import net.consensys.gpact.cbc.CrossControlManagerGroup;
@@ -18,7 +17,6 @@ import org.web3j.crypto.Credentials;
 import org.web3j.protocol.Web3j;
 import org.web3j.protocol.core.methods.response.TransactionReceipt;
 import org.web3j.protocol.exceptions.TransactionException;
-import org.web3j.protocol.http.HttpService;
 import org.web3j.tx.response.PollingTransactionReceiptProcessor;
 import org.web3j.tx.response.TransactionReceiptProcessor;
 
@@ -112,64 +110,71 @@ public class Erc20User {
     BlockchainInfo bcInfo = fromAToB ? this.bcInfoA : this.bcInfoB;
 
     final int RETRY = 20;
-    Web3j web3j =
-        Web3j.build(new HttpService(bcInfo.uri), bcInfo.period, new ScheduledThreadPoolExecutor(5));
-    TransactionReceiptProcessor txrProcessor =
-        new PollingTransactionReceiptProcessor(web3j, bcInfo.period, RETRY);
-    FastTxManager tm =
-        TxManagerCache.getOrCreate(web3j, this.creds, sourceBlockchainId.asLong(), txrProcessor);
-    DynamicGasProvider gasProvider =
-        new DynamicGasProvider(web3j, bcInfo.uri, bcInfo.gasPriceStrategy);
-
-    // Step 1: Approve of the bridge contract using some of the user's tokens.
-    LOG.info("Approve");
-    LockableERC20PresetFixedSupply erc20 =
-        LockableERC20PresetFixedSupply.load(sourceERC20ContractAddress, web3j, tm, gasProvider);
-    TransactionReceipt txR;
+    // Share the Web3j client for the blockchain rather than creating one per transfer.
+    Web3jRegistry.Client web3jClient = Web3jRegistry.acquire(bcInfo.uri, bcInfo.period);
     try {
-      txR = erc20.approve(sourceBridgeContractAddress, amount).send();
-    } catch (TransactionException ex) {
-      // Crosschain Control Contract reverted
-      String revertReason =
-          RevertReason.decodeRevertReason(ex.getTransactionReceipt().get().getRevertReason());
-      LOG.error(" Revert Reason: {}", revertReason);
-      throw ex;
-    }
-    StatsHolder.logGas("Approve", txR.getGasUsed());
-
-    // Step 2: Do the crosschain transaction.
-    // Build the call execution tree.
-    GpactERC20Bridge dummy = GpactERC20Bridge.load(null, null, this.creds, null);
-    String rlpRoot =
-        dummy.getABI_transferToOtherBlockchain(
-            destinationBlockchainId.asBigInt(),
-            sourceERC20ContractAddress,
-            this.creds.getAddress(),
-            amount);
-    String rlpSegment =
-        dummy.getABI_receiveFromOtherBlockchain(
-            destinationERC20ContractAddress, this.creds.getAddress(), amount);
-
-    CallExecutionTree seg =
-        new CallExecutionTree(
-            destinationBlockchainId, destinationBridgeContractAddress, rlpSegment);
-    ArrayList<CallExecutionTree> rootCalls1 = new ArrayList<>();
-    rootCalls1.add(seg);
-    CallExecutionTree root =
-        new CallExecutionTree(sourceBlockchainId, sourceBridgeContractAddress, rlpRoot, rootCalls1);
-    byte[] encoded = root.encode();
-    LOG.info(CallExecutionTree.dump(encoded));
-
-    CrosschainExecutor executor = new CrosschainExecutor(this.crossControlManagerGroup);
-    // Note: There is no point using a parallel execution engine: there is nothing to execute in
-    // parallel!
-    ExecutionEngine executionEngine = new SerialExecutionEngine(executor);
-    boolean success = executionEngine.execute(root, 300);
-
-    LOG.info("Success: {}", success);
-
-    if (!success) {
-      throw new Exception("Crosschain Execution failed. See log for details");
+      Web3j web3j = web3jClient.getWeb3j();
+      TransactionReceiptProcessor txrProcessor =
+          new PollingTransactionReceiptProcessor(web3j, bcInfo.period, RETRY);
+      FastTxManager tm =
+          TxManagerCache.getOrCreate(
+              web3jClient, this.creds, sourceBlockchainId.asLong(), txrProcessor);
+      DynamicGasProvider gasProvider =
+          new DynamicGasProvider(web3j, bcInfo.uri, bcInfo.gasPriceStrategy);
+
+      // Step 1: Approve of the bridge contract using some of the user's tokens.
+      LOG.info("Approve");
+      LockableERC20PresetFixedSupply erc20 =
+          LockableERC20PresetFixedSupply.load(sourceERC20ContractAddress, web3j, tm, gasProvider);
+      TransactionReceipt txR;
+      try {
+        txR = erc20.approve(sourceBridgeContractAddress, amount).send();
+      } catch (TransactionException ex) {
+        // Crosschain Control Contract reverted
+        String revertReason =
+            RevertReason.decodeRevertReason(ex.getTransactionReceipt().get().getRevertReason());
+        LOG.error(" Revert Reason: {}", revertReason);
+        throw ex;
+      }
+      StatsHolder.logGas("Approve", txR.getGasUsed());
+
+      // Step 2: Do the crosschain transaction.
+      // Build the call execution tree.
+      GpactERC20Bridge dummy = GpactERC20Bridge.load(null, null, this.creds, null);
+      String rlpRoot =
+          dummy.getABI_transferToOtherBlockchain(
+              destinationBlockchainId.asBigInt(),
+              sourceERC20ContractAddress,
+              this.creds.getAddress(),
+              amount);
+      String rlpSegment =
+          dummy.getABI_receiveFromOtherBlockchain(
+              destinationERC20ContractAddress, this.creds.getAddress(), amount);
+
+      CallExecutionTree seg =
+          new CallExecutionTree(
+              destinationBlockchainId, destinationBridgeContractAddress, rlpSegment);
+      ArrayList<CallExecutionTree> rootCalls1 = new ArrayList<>();
+      rootCalls1.add(seg);
+      CallExecutionTree root =
+          new CallExecutionTree(
+              sourceBlockchainId, sourceBridgeContractAddress, rlpRoot, rootCalls1);
+      byte[] encoded = root.encode();
+      LOG.info(CallExecutionTree.dump(encoded));
+
+      CrosschainExecutor executor = new CrosschainExecutor(this.crossControlManagerGroup);
+      // Note: There is no point using a parallel execution engine: there is nothing to execute in
+      // parallel!
+      ExecutionEngine executionEngine = new SerialExecutionEngine(executor);
+      boolean success = executionEngine.execute(root, 300);
+
+      LOG.info("Success: {}", success);
+
+      if (!success) {
+        throw new Exception("Crosschain Execution failed. See log for details");
+      }
+    } finally {
+      Web3jRegistry.release(web3jClient);
     }
   }
 }
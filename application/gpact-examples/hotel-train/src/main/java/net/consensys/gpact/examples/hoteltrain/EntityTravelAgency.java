@@ -151,20 +151,27 @@ public class EntityTravelAgency extends AbstractBlockchain {
   }
 
   public void grantAllowance(EntityBase entity, int amount) throws Exception {
-    TransactionReceiptProcessor txrProcessor =
-        new PollingTransactionReceiptProcessor(entity.web3j, this.pollingInterval, RETRY);
-    FastTxManager atm =
-        TxManagerCache.getOrCreate(
-            entity.web3j, this.credentials, entity.getBlockchainId().asLong(), txrProcessor);
-    LockableERC20PresetFixedSupply erc20 =
-        LockableERC20PresetFixedSupply.load(
-            entity.getErc20ContractAddress(), entity.web3j, atm, entity.gasProvider);
-    erc20.increaseAllowance(entity.getHotelContractAddress(), BigInteger.valueOf(amount)).send();
-    LOG.info(
-        " Increased allowance of {} contract for account {} by {}",
-        entity.entity,
-        this.credentials.getAddress(),
-        amount);
+    // Share the entity's Web3j client, so that the transaction manager is tied to its lifetime.
+    Web3jRegistry.Client web3jClient = Web3jRegistry.acquire(entity.getUri(), this.pollingInterval);
+    try {
+      TransactionReceiptProcessor txrProcessor =
+          new PollingTransactionReceiptProcessor(
+              web3jClient.getWeb3j(), this.pollingInterval, RETRY);
+      FastTxManager atm =
+          TxManagerCache.getOrCreate(
+              web3jClient, this.credentials, entity.getBlockchainId().asLong(), txrProcessor);
+      LockableERC20PresetFixedSupply erc20 =
+          LockableERC20PresetFixedSupply.load(
+              entity.getErc20ContractAddress(), entity.web3j, atm, entity.gasProvider);
+      erc20.increaseAllowance(entity.getHotelContractAddress(), BigInteger.valueOf(amount)).send();
+      LOG.info(
+          " Increased allowance of {} contract for account {} by {}",
+          entity.entity,
+          this.credentials.getAddress(),
+          amount);
+    } finally {
+      Web3jRegistry.release(web3jClient);
+    }
   }
 
   public String getTravelAgencyAccount() {
@@ -16,7 +16,6 @@ package net.consensys.gpact.sfc.examples.erc721tokenbridge;
 
 import java.math.BigInteger;
 import java.util.List;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
 import net.consensys.gpact.appcontracts.nonatomic.erc721bridge.soliditywrappers.SfcErc721Bridge;
 import net.consensys.gpact.common.*;
 import net.consensys.gpact.messaging.MessagingVerificationInterface;
@@ -31,7 +30,6 @@ import org.web3j.protocol.Web3j;
 import org.web3j.protocol.core.RemoteFunctionCall;
 import org.web3j.protocol.core.methods.response.TransactionReceipt;
 import org.web3j.protocol.exceptions.TransactionException;
-import org.web3j.protocol.http.HttpService;
 import org.web3j.tx.response.PollingTransactionReceiptProcessor;
 import org.web3j.tx.response.TransactionReceiptProcessor;
 
@@ -125,61 +123,67 @@ public class Erc721User {
     BlockchainInfo bcInfo = fromAToB ? this.bcInfoA : this.bcInfoB;
 
     final int RETRY = 20;
-    Web3j web3j =
-        Web3j.build(new HttpService(bcInfo.uri), bcInfo.period, new ScheduledThreadPoolExecutor(5));
-    TransactionReceiptProcessor txrProcessor =
-        new PollingTransactionReceiptProcessor(web3j, bcInfo.period, RETRY);
-    FastTxManager tm =
-        TxManagerCache.getOrCreate(web3j, this.creds, sourceBlockchainId.asLong(), txrProcessor);
-    DynamicGasProvider gasProvider =
-        new DynamicGasProvider(web3j, bcInfo.uri, bcInfo.gasPriceStrategy);
-
-    // Step 1: Approve of the bridge contract using some of the user's tokens.
-    LOG.info("Approve");
-    // NOTE: Both ERC 721 implementations have the required functions.
-    // Hence, either can be used.
-    ERC721PresetMinterPauserAutoId erc721 =
-        ERC721PresetMinterPauserAutoId.load(sourceERC20ContractAddress, web3j, tm, gasProvider);
-    TransactionReceipt txR;
+    // Share the Web3j client for the blockchain rather than creating one per transfer.
+    Web3jRegistry.Client web3jClient = Web3jRegistry.acquire(bcInfo.uri, bcInfo.period);
     try {
-      txR = erc721.approve(sourceBridgeContractAddress, tokenId).send();
-    } catch (TransactionException ex) {
-      // Crosschain Control Contract reverted
-      String revertReason =
-          RevertReason.decodeRevertReason(ex.getTransactionReceipt().get().getRevertReason());
-      LOG.error(" Revert Reason: {}", revertReason);
-      throw ex;
-    }
-    StatsHolder.logGas("Approve", txR.getGasUsed());
-
-    // Step 2: Do the crosschain transaction.
-    SfcErc721Bridge sfcErc721Bridge =
-        SfcErc721Bridge.load(sourceBridgeContractAddress, web3j, tm, gasProvider);
-    LOG.info(
-        " Call: BcId: {}, ERC 721 Bridge: {}", sourceBlockchainId, sourceBridgeContractAddress);
-    RemoteFunctionCall<TransactionReceipt> functionCall =
-        sfcErc721Bridge.transferToOtherBlockchain(
-            destinationBlockchainId.asBigInt(),
-            sourceERC20ContractAddress,
-            recipient,
-            tokenId,
-            Strings.EMPTY.getBytes());
-
-    SimpleCrosschainExecutor executor = new SimpleCrosschainExecutor(crossControlManagerGroup);
-    Tuple<TransactionReceipt[], String, Boolean> results =
-        executor.execute(sourceBlockchainId, functionCall);
-    boolean success = results.getThird();
-    LOG.info("Success: {}", success);
-    if (!success) {
-      LOG.error("Crosschain Execution failed. See log for details");
-      String errorMsg = results.getSecond();
-      if (errorMsg != null) {
-        LOG.error("Error information: {}", errorMsg);
+      Web3j web3j = web3jClient.getWeb3j();
+      TransactionReceiptProcessor txrProcessor =
+          new PollingTransactionReceiptProcessor(web3j, bcInfo.period, RETRY);
+      FastTxManager tm =
+          TxManagerCache.getOrCreate(
+              web3jClient, this.creds, sourceBlockchainId.asLong(), txrProcessor);
+      DynamicGasProvider gasProvider =
+          new DynamicGasProvider(web3j, bcInfo.uri, bcInfo.gasPriceStrategy);
+
+      // Step 1: Approve of the bridge contract using some of the user's tokens.
+      LOG.info("Approve");
+      // NOTE: Both ERC 721 implementations have the required functions.
+      // Hence, either can be used.
+      ERC721PresetMinterPauserAutoId erc721 =
+          ERC721PresetMinterPauserAutoId.load(sourceERC20ContractAddress, web3j, tm, gasProvider);
+      TransactionReceipt txR;
+      try {
+        txR = erc721.approve(sourceBridgeContractAddress, tokenId).send();
+      } catch (TransactionException ex) {
+        // Crosschain Control Contract reverted
+        String revertReason =
+            RevertReason.decodeRevertReason(ex.getTransactionReceipt().get().getRevertReason());
+        LOG.error(" Revert Reason: {}", revertReason);
+        throw ex;
       }
-      for (TransactionReceipt txr : results.getFirst()) {
-        LOG.error("Transaction Receipt: {}", txr.toString());
+      StatsHolder.logGas("Approve", txR.getGasUsed());
+
+      // Step 2: Do the crosschain transaction.
+      SfcErc721Bridge sfcErc721Bridge =
+          SfcErc721Bridge.load(sourceBridgeContractAddress, web3j, tm, gasProvider);
+      LOG.info(
+          " Call: BcId: {}, ERC 721 Bridge: {}", sourceBlockchainId, sourceBridgeContractAddress);
+      RemoteFunctionCall<TransactionReceipt> functionCall =
+          sfcErc721Bridge.transferToOtherBlockchain(
+              destinationBlockchainId.asBigInt(),
+              sourceERC20ContractAddress,
+              recipient,
+              tokenId,
+              Strings.EMPTY.getBytes());
+
+      SimpleCrosschainExecutor executor = new SimpleCrosschainExecutor(crossControlManagerGroup);
+      Tuple<TransactionReceipt[], String, Boolean> results =
+          executor.execute(sourceBlockchainId, functionCall);
+      boolean success = results.getThird();
+      LOG.info("Success: {}", success);
+      if (!success) {
+        LOG.error("Crosschain Execution failed. See log for details");
+        String errorMsg = results.getSecond();
+        if (errorMsg != null) {
+          LOG.error("Error information: {}", errorMsg);
+        }
+        for (TransactionReceipt txr : results.getFirst()) {
+          LOG.error("Transaction Receipt: {}", txr.toString());
+        }
+        throw new Exception("Crosschain Execution failed. See log for details");
       }
-      throw new Exception("Crosschain Execution failed. See log for details");
+    } finally {
+      Web3jRegistry.release(web3jClient);
     }
   }
 }
@@ -15,14 +15,17 @@
 package net.consensys.gpact.common;
 
 import java.io.IOException;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.web3j.crypto.Credentials;
 import org.web3j.protocol.Web3j;
-import org.web3j.protocol.http.HttpService;
-import org.web3j.tx.response.PollingTransactionReceiptProcessor;
-import org.web3j.tx.response.TransactionReceiptProcessor;
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.RemoteFunctionCall;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
 
 public abstract class AbstractBlockchain {
   private static final Logger LOG = LogManager.getLogger(AbstractBlockchain.class);
@@ -39,7 +42,14 @@ public abstract class AbstractBlockchain {
   public DynamicGasProvider gasProvider;
 
   public Web3j web3j;
+  protected Web3jService web3jService;
+  private Web3jRegistry.Client web3jClient;
   protected FastTxManager tm;
+  protected TransactionBatcher batcher;
+  // If set, transactions submitted using sendAsync are spread across the accounts in the pool.
+  // Set by createAccountPool, and read by the threads that submit transactions.
+  protected volatile PooledTxManager pool;
+  protected BlockTransactionReceiptProcessor txrProcessor;
 
   protected AbstractBlockchain(
       Credentials credentials,
@@ -52,20 +62,141 @@ public abstract class AbstractBlockchain {
     this.uri = uri;
     this.pollingInterval = blockPeriod;
     this.credentials = credentials;
-    this.web3j =
-        Web3j.build(
-            new HttpService(this.uri), this.pollingInterval, new ScheduledThreadPoolExecutor(5));
+    // Share one Web3j client, connection pool and scheduler with other users of the URI.
+    this.web3jClient = Web3jRegistry.acquire(this.uri, this.pollingInterval);
+    this.web3jService = this.web3jClient.getService();
+    this.web3j = this.web3jClient.getWeb3j();
 
-    TransactionReceiptProcessor txrProcessor =
-        new PollingTransactionReceiptProcessor(this.web3j, this.pollingInterval, RETRY);
+    // One receipt processor is shared by all contracts and accounts for a blockchain, so the
+    // number of requests to the Ethereum Client does not grow with the number of transactions.
+    // The receipt processor, transaction manager and batcher are tied to the lifetime of the
+    // Web3j client, so they are replaced if the client is shut down and created again.
+    this.txrProcessor =
+        BlockTransactionReceiptProcessor.getOrCreate(
+            this.web3jClient, this.blockchainId, this.pollingInterval, RETRY);
     this.tm =
         TxManagerCache.getOrCreate(
-            this.web3j, this.credentials, this.blockchainId.asLong(), txrProcessor);
+            this.web3jClient, this.credentials, this.blockchainId.asLong(), this.txrProcessor);
+    this.batcher =
+        TransactionBatcher.getOrCreate(
+            this.web3jClient, this.tm, this.txrProcessor, this.pollingInterval);
     this.gasProvider = new DynamicGasProvider(this.web3j, uri, gasPriceStrategy);
+    // Keep the gas price up to date until the blockchain is shut down.
+    if (gasPriceStrategy != DynamicGasProvider.Strategy.FREE) {
+      startGasPriceRefresh(DynamicGasProvider.DEFAULT_WINDOW_BLOCKS);
+    }
   }
 
-  public void shutdown() {
-    this.web3j.shutdown();
+  /**
+   * Submit a transaction for a contract function call, and wait for the transaction receipt without
+   * blocking a thread. The transaction is submitted in a batch with other transactions from the
+   * same account to this blockchain. Unlike RemoteFunctionCall.send, the future completes normally
+   * if the transaction reverts: callers need to check the status of the transaction receipt.
+   *
+   * @param contractAddress Address of the contract to call.
+   * @param functionCall Function call created using a contract wrapper.
+   * @return Future that completes with the transaction receipt.
+   */
+  protected CompletableFuture<TransactionReceipt> sendAsync(
+      String contractAddress, RemoteFunctionCall<TransactionReceipt> functionCall) {
+    return sendAsync(null, contractAddress, functionCall);
+  }
+
+  /**
+   * Submit a transaction that is part of a crosschain transaction. If an account pool is in use,
+   * the transaction is submitted by the account pinned to the crosschain transaction.
+   *
+   * @param crosschainTransactionId Crosschain transaction id, or null if the transaction can be
+   *     submitted by any account.
+   * @param contractAddress Address of the contract to call.
+   * @param functionCall Function call created using a contract wrapper.
+   * @return Future that completes with the transaction receipt.
+   */
+  protected CompletableFuture<TransactionReceipt> sendAsync(
+      BigInteger crosschainTransactionId,
+      String contractAddress,
+      RemoteFunctionCall<TransactionReceipt> functionCall) {
+    if (this.pool != null) {
+      return this.pool.submit(
+          crosschainTransactionId,
+          this.gasProvider.getGasPrice(),
+          this.gasProvider.getGasLimit(),
+          contractAddress,
+          functionCall.encodeFunctionCall());
+    }
+    return this.batcher.submit(
+        this.gasProvider.getGasPrice(),
+        this.gasProvider.getGasLimit(),
+        contractAddress,
+        functionCall.encodeFunctionCall());
+  }
+
+  /**
+   * Use a specific account for the transactions of a crosschain transaction.
+   *
+   * @param crosschainTransactionId Crosschain transaction id.
+   * @param address Address of the account that submitted the start transaction.
+   * @throws IllegalArgumentException If the account can not be used by this blockchain.
+   */
+  protected void pinAccount(BigInteger crosschainTransactionId, String address) {
+    if (this.pool != null) {
+      this.pool.pin(crosschainTransactionId, address);
+    } else if (!this.credentials.getAddress().equalsIgnoreCase(address)) {
+      throw new IllegalArgumentException("Account " + address + " is not available");
+    }
+  }
+
+  /**
+   * Stop pinning an account to a crosschain transaction.
+   *
+   * @param crosschainTransactionId Crosschain transaction id.
+   */
+  protected void unpinAccount(BigInteger crosschainTransactionId) {
+    if (this.pool != null) {
+      this.pool.unpin(crosschainTransactionId);
+    }
+  }
+
+  /**
+   * Create a transaction manager that spreads transactions across this blockchain's account and
+   * some additional accounts. Transactions submitted using sendAsync are spread across the pool
+   * from then on. The transaction manager can also be passed to contract wrappers' load methods in
+   * place of the single account transaction manager.
+   *
+   * @param additionalAccounts Funded accounts to use in addition to this blockchain's account.
+   * @param strategy How to choose the account for each transaction.
+   * @return Pooled transaction manager.
+   */
+  public synchronized PooledTxManager createAccountPool(
+      List<Credentials> additionalAccounts, PooledTxManager.Strategy strategy) {
+    List<Credentials> accounts = new ArrayList<>();
+    accounts.add(this.credentials);
+    accounts.addAll(additionalAccounts);
+    this.pool =
+        TxManagerCache.createPool(
+            this.web3jClient, accounts, this.blockchainId.asLong(), this.txrProcessor, strategy);
+    return this.pool;
+  }
+
+  /**
+   * Keep the gas price up to date for long running processes, by recalculating it once per block
+   * period based on the transactions in recent blocks. This is started when the blockchain is
+   * created, using DynamicGasProvider.DEFAULT_WINDOW_BLOCKS, and stopped by shutdown. Call this to
+   * change the window.
+   *
+   * @param windowBlocks Number of recent blocks to base the gas price on.
+   */
+  public synchronized void startGasPriceRefresh(int windowBlocks) {
+    this.gasProvider.startRefreshing(
+        this.web3jClient.getScheduler(), this.pollingInterval, windowBlocks);
+  }
+
+  public synchronized void shutdown() {
+    this.gasProvider.stopRefreshing();
+    if (this.web3jClient != null) {
+      Web3jRegistry.release(this.web3jClient);
+      this.web3jClient = null;
+    }
   }
 
   public BlockchainId getBlockchainId() {
@@ -15,6 +15,8 @@
 package net.consensys.gpact.common;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
 import net.consensys.gpact.utils.crypto.KeyPairGen;
 import org.web3j.crypto.ECKeyPair;
 import org.web3j.crypto.Keys;
@@ -26,12 +28,28 @@ public class AnIdentity {
   private String address;
 
   public AnIdentity() {
-    KeyPairGen keyGen = new KeyPairGen();
-    String privateKey = keyGen.generateKeyPairGetPrivateKey();
+    this(new KeyPairGen().generateKeyPairGetPrivateKey());
+  }
+
+  private AnIdentity(String privateKey) {
     this.keyPair = ECKeyPair.create(Numeric.toBigInt(privateKey));
     this.address = Keys.getAddress(keyPair.getPublicKey().toString(16));
   }
 
+  /**
+   * Create a number of identities, generating their keys as a batch.
+   *
+   * @param count Number of identities to create.
+   * @return New identities.
+   */
+  public static List<AnIdentity> create(int count) {
+    List<AnIdentity> identities = new ArrayList<>(count);
+    for (String privateKey : new KeyPairGen().generateKeyPairsGetPrivateKeys(count)) {
+      identities.add(new AnIdentity(privateKey));
+    }
+    return identities;
+  }
+
   public Sign.SignatureData sign(byte[] plainText) {
     return Sign.signMessage(plainText, this.keyPair);
   }
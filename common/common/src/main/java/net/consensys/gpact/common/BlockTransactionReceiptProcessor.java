@@ -0,0 +1,366 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.gpact.common;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.BatchRequest;
+import org.web3j.protocol.core.BatchResponse;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.response.EthBlock;
+import org.web3j.protocol.core.methods.response.EthGetTransactionReceipt;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+import org.web3j.protocol.exceptions.TransactionException;
+import org.web3j.tx.response.TransactionReceiptProcessor;
+
+/**
+ * Waits for transaction receipts by watching new blocks, rather than polling for the receipt of
+ * each transaction. One processor is shared by all transaction managers and contracts for a
+ * blockchain. Each polling interval the latest block number is fetched, the new blocks are fetched
+ * in one batch request, and the receipts for the transactions that are being waited for and that
+ * are in those blocks are fetched in a second batch request. The number of JSON RPC requests per
+ * block is constant, no matter how many transactions are being waited for.
+ *
+ * <p>Polling stops when no transactions are being waited for, and restarts when a transaction is
+ * next waited for. Polling resumes from the last block checked, so transactions mined while polling
+ * was stopped are found. A transaction that is waited for may be in a block that has already been
+ * checked, so its receipt is also requested directly once.
+ */
+public class BlockTransactionReceiptProcessor extends TransactionReceiptProcessor {
+  private static final Logger LOG = LogManager.getLogger(BlockTransactionReceiptProcessor.class);
+
+  // When polling first starts, check blocks that may have been created between a transaction
+  // being submitted and the first poll.
+  private static final int INITIAL_BLOCKS_BACK = 2;
+  // When polling restarts after being idle, the blocks created while idle are checked, unless
+  // there are more than this many. Then the receipts are requested directly instead.
+  private static final BigInteger CATCH_UP_LIMIT = BigInteger.valueOf(128);
+
+  private final BlockchainId blockchainId;
+  private final Web3j web3j;
+  private final ScheduledExecutorService scheduler;
+  private final long pollingInterval;
+  private final int attempts;
+
+  // Key is the lower case transaction hash.
+  private final Map<String, Waiter> waiting = new ConcurrentHashMap<>();
+  private final AtomicBoolean polling = new AtomicBoolean(false);
+  // Only accessed by the poll that is in progress.
+  private BigInteger lastBlockChecked;
+
+  /**
+   * Create a watcher.
+   *
+   * @param web3j Connection to the blockchain.
+   * @param scheduler Scheduler used to schedule polls.
+   * @param pollingInterval Time between polls in milliseconds. This should be the block period.
+   * @param attempts Number of polling intervals to wait for a receipt before failing.
+   */
+  public BlockTransactionReceiptProcessor(
+      Web3j web3j, ScheduledExecutorService scheduler, long pollingInterval, int attempts) {
+    this(null, web3j, scheduler, pollingInterval, attempts);
+  }
+
+  /**
+   * Create a watcher.
+   *
+   * @param blockchainId Blockchain the watcher is for. Used for instrumentation.
+   * @param web3j Connection to the blockchain.
+   * @param scheduler Scheduler used to schedule polls.
+   * @param pollingInterval Time between polls in milliseconds. This should be the block period.
+   * @param attempts Number of polling intervals to wait for a receipt before failing.
+   */
+  public BlockTransactionReceiptProcessor(
+      BlockchainId blockchainId,
+      Web3j web3j,
+      ScheduledExecutorService scheduler,
+      long pollingInterval,
+      int attempts) {
+    super(web3j);
+    this.blockchainId = blockchainId;
+    this.web3j = web3j;
+    this.scheduler = scheduler;
+    this.pollingInterval = pollingInterval;
+    this.attempts = attempts;
+  }
+
+  /**
+   * Return the processor for a blockchain, creating it if needed. The processor is shared by the
+   * users of the Web3j client, and is discarded when the client is shut down.
+   *
+   * @param client Web3j client for the blockchain.
+   * @param blockchainId Blockchain to return the processor for.
+   * @param pollingInterval Time between polls in milliseconds. This should be the block period.
+   * @param attempts Number of polling intervals to wait for a receipt before failing.
+   * @return The processor for the blockchain.
+   */
+  public static BlockTransactionReceiptProcessor getOrCreate(
+      Web3jRegistry.Client client, BlockchainId blockchainId, long pollingInterval, int attempts) {
+    return client.getShared(
+        Arrays.asList(BlockTransactionReceiptProcessor.class, blockchainId),
+        BlockTransactionReceiptProcessor.class,
+        () ->
+            new BlockTransactionReceiptProcessor(
+                blockchainId, client.getWeb3j(), client.getScheduler(), pollingInterval, attempts));
+  }
+
+  /**
+   * Wait for a transaction receipt, blocking the calling thread.
+   *
+   * @param transactionHash Hash of the transaction to wait for.
+   * @return The transaction receipt.
+   * @throws IOException If there is an error communicating with the blockchain.
+   * @throws TransactionException If the receipt is not available after all attempts.
+   */
+  @Override
+  public TransactionReceipt waitForTransactionReceipt(String transactionHash)
+      throws IOException, TransactionException {
+    try {
+      return waitForTransactionReceiptAsync(transactionHash).get();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new TransactionException(ex);
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof CompletionException && cause.getCause() != null) {
+        cause = cause.getCause();
+      }
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof TransactionException) {
+        throw (TransactionException) cause;
+      }
+      throw new TransactionException(cause);
+    }
+  }
+
+  /**
+   * Wait for a transaction receipt without blocking the calling thread.
+   *
+   * @param transactionHash Hash of the transaction to wait for.
+   * @return Future that completes with the transaction receipt, or exceptionally with a
+   *     TransactionException if the receipt is not available after all attempts.
+   */
+  public CompletableFuture<TransactionReceipt> waitForTransactionReceiptAsync(
+      String transactionHash) {
+    Waiter waiter =
+        new Waiter(
+            transactionHash, System.currentTimeMillis() + this.pollingInterval * this.attempts);
+    // Several callers can wait for the same transaction, for instance a contract wrapper and a
+    // pooled transaction manager tracking the transactions in flight.
+    Waiter existing = this.waiting.putIfAbsent(transactionHash.toLowerCase(), waiter);
+    if (existing != null) {
+      return existing.receipt;
+    }
+    Instrumentations.start(Instrumentation.Stage.RECEIPT_WAIT, this.blockchainId)
+        .endWhenComplete(waiter.receipt);
+    startPolling(0);
+    // The transaction may be in a block that polling has already checked, either while it is in
+    // progress or before it last stopped.
+    checkRegistered(waiter);
+    return waiter.receipt;
+  }
+
+  /** @return The number of transactions being waited for. */
+  public int getNumWaiting() {
+    return this.waiting.size();
+  }
+
+  private boolean startPolling(long delay) {
+    if (this.polling.compareAndSet(false, true)) {
+      this.scheduler.schedule(this::poll, delay, TimeUnit.MILLISECONDS);
+      return true;
+    }
+    return false;
+  }
+
+  // Check for the receipt of a transaction that may be in a block that polling will not check. If
+  // there is no receipt yet, the transaction will be seen in a block that has not been checked.
+  private void checkRegistered(Waiter waiter) {
+    this.web3j
+        .ethGetTransactionReceipt(waiter.transactionHash)
+        .sendAsync()
+        .whenComplete(
+            (response, ex) -> {
+              if (ex != null) {
+                LOG.debug(
+                    "Error checking receipt for {}: {}", waiter.transactionHash, ex.getMessage());
+                return;
+              }
+              Optional<TransactionReceipt> receipt = response.getTransactionReceipt();
+              if (receipt.isPresent()) {
+                this.waiting.remove(waiter.transactionHash.toLowerCase(), waiter);
+                waiter.receipt.complete(receipt.get());
+              }
+            });
+  }
+
+  private void poll() {
+    this.web3j
+        .ethBlockNumber()
+        .sendAsync()
+        .thenCompose(response -> checkBlocks(response.getBlockNumber()))
+        .whenComplete(
+            (v, ex) -> {
+              if (ex != null) {
+                LOG.warn("Error while checking for transaction receipts: {}", ex.getMessage());
+              }
+              checkTimeouts();
+              if (!this.waiting.isEmpty()) {
+                this.scheduler.schedule(this::poll, this.pollingInterval, TimeUnit.MILLISECONDS);
+                return;
+              }
+              // Keep lastBlockChecked, so that the blocks created while idle are checked when
+              // polling next starts.
+              this.polling.set(false);
+              // A transaction may have been added after the check above.
+              if (!this.waiting.isEmpty()) {
+                startPolling(this.pollingInterval);
+              }
+            });
+  }
+
+  private CompletableFuture<Void> checkBlocks(BigInteger latestBlock) {
+    if (this.lastBlockChecked == null) {
+      this.lastBlockChecked =
+          latestBlock.subtract(BigInteger.valueOf(INITIAL_BLOCKS_BACK)).max(BigInteger.ZERO);
+    } else if (latestBlock.subtract(this.lastBlockChecked).compareTo(CATCH_UP_LIMIT) > 0) {
+      // Too many blocks were created while polling was stopped. Transactions may be in the blocks
+      // that are skipped.
+      for (Waiter waiter : this.waiting.values()) {
+        checkRegistered(waiter);
+      }
+      this.lastBlockChecked = latestBlock.subtract(BigInteger.valueOf(INITIAL_BLOCKS_BACK));
+    }
+    if (latestBlock.compareTo(this.lastBlockChecked) <= 0) {
+      return CompletableFuture.completedFuture(null);
+    }
+
+    BatchRequest blocksRequest = this.web3j.newBatch();
+    BigInteger blockNumber = this.lastBlockChecked.add(BigInteger.ONE);
+    while (blockNumber.compareTo(latestBlock) <= 0) {
+      blocksRequest.add(
+          this.web3j.ethGetBlockByNumber(DefaultBlockParameter.valueOf(blockNumber), false));
+      blockNumber = blockNumber.add(BigInteger.ONE);
+    }
+
+    return blocksRequest
+        .sendAsync()
+        .thenCompose(
+            blocksResponse -> {
+              List<Waiter> found = new ArrayList<>();
+              for (Response<?> response : blocksResponse.getResponses()) {
+                EthBlock.Block block = ((EthBlock) response).getBlock();
+                if (block == null) {
+                  // The block is not available yet from this node. Check it next poll.
+                  break;
+                }
+                for (EthBlock.TransactionResult<?> tx : block.getTransactions()) {
+                  Waiter waiter = this.waiting.get(((String) tx.get()).toLowerCase());
+                  if (waiter != null) {
+                    found.add(waiter);
+                  }
+                }
+                this.lastBlockChecked = block.getNumber();
+              }
+              return fetchReceipts(found);
+            });
+  }
+
+  private CompletableFuture<Void> fetchReceipts(List<Waiter> found) {
+    if (found.isEmpty()) {
+      return CompletableFuture.completedFuture(null);
+    }
+    BatchRequest receiptsRequest = this.web3j.newBatch();
+    for (Waiter waiter : found) {
+      receiptsRequest.add(this.web3j.ethGetTransactionReceipt(waiter.transactionHash));
+    }
+    return receiptsRequest.sendAsync().thenAccept(response -> processReceipts(found, response));
+  }
+
+  private void processReceipts(List<Waiter> found, BatchResponse response) {
+    List<? extends Response<?>> responses = response.getResponses();
+    for (int i = 0; i < found.size(); i++) {
+      Waiter waiter = found.get(i);
+      Optional<TransactionReceipt> receipt =
+          ((EthGetTransactionReceipt) responses.get(i)).getTransactionReceipt();
+      if (receipt.isPresent()) {
+        this.waiting.remove(waiter.transactionHash.toLowerCase());
+        waiter.receipt.complete(receipt.get());
+      }
+    }
+  }
+
+  private void checkTimeouts() {
+    long now = System.currentTimeMillis();
+    for (Waiter waiter : this.waiting.values()) {
+      if (waiter.deadline < now) {
+        this.waiting.remove(waiter.transactionHash.toLowerCase());
+        checkDirectly(waiter);
+      }
+    }
+  }
+
+  // Check for a receipt for a transaction that was not seen in any of the blocks that were
+  // checked, before reporting that there is no receipt.
+  private void checkDirectly(Waiter waiter) {
+    this.web3j
+        .ethGetTransactionReceipt(waiter.transactionHash)
+        .sendAsync()
+        .whenComplete(
+            (response, ex) -> {
+              if (ex == null && response.getTransactionReceipt().isPresent()) {
+                waiter.receipt.complete(response.getTransactionReceipt().get());
+                return;
+              }
+              LOG.error("No transaction receipt for transaction: {}", waiter.transactionHash);
+              waiter.receipt.completeExceptionally(
+                  new TransactionException(
+                      "Transaction receipt was not generated after "
+                          + ((this.pollingInterval * this.attempts) / 1000)
+                          + " seconds for transaction: "
+                          + waiter.transactionHash,
+                      waiter.transactionHash));
+            });
+  }
+
+  private static class Waiter {
+    final String transactionHash;
+    final long deadline;
+    final CompletableFuture<TransactionReceipt> receipt = new CompletableFuture<>();
+
+    Waiter(String transactionHash, long deadline) {
+      this.transactionHash = transactionHash;
+      this.deadline = deadline;
+    }
+  }
+}
@@ -15,17 +15,75 @@
 package net.consensys.gpact.common;
 
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import org.apache.tuweni.units.bigints.UInt256;
 
-public class BlockchainId {
-  private BigInteger bcId;
+/**
+ * Identifies a blockchain. Instances are immutable. The 32 byte encoding and the hash code are
+ * calculated once, when the instance is created, as blockchain ids are used as map keys and are
+ * encoded for every signed event and call execution tree. Use the of methods rather than the
+ * constructors to share one instance per blockchain.
+ */
+public final class BlockchainId {
+  public static final int ENCODED_SIZE = 32;
+
+  // Blockchain ids come from configuration and from events, so the number of distinct ids is
+  // normally small. Stop interning if that is not the case, rather than growing without limit.
+  private static final int MAX_INTERNED = 4096;
+  private static final Map<BigInteger, BlockchainId> INTERNED = new ConcurrentHashMap<>();
+
+  private final BigInteger bcId;
+  // Valid when fitsInLong is true, which it is for all blockchain ids in common use.
+  private final long bcIdLong;
+  private final boolean fitsInLong;
+  private final byte[] encoded;
+  private final int hashCode;
 
   public BlockchainId(String blockchainId) {
-    this.bcId = new BigInteger(blockchainId, 16);
+    this(new BigInteger(blockchainId, 16));
   }
 
   public BlockchainId(BigInteger blockchainId) {
     this.bcId = blockchainId;
+    this.bcIdLong = blockchainId.longValue();
+    this.fitsInLong = blockchainId.bitLength() < Long.SIZE;
+    this.encoded = UInt256.valueOf(blockchainId).toBytes().toArrayUnsafe();
+    this.hashCode = blockchainId.hashCode();
+  }
+
+  /**
+   * Get the shared instance for a blockchain id.
+   *
+   * @param blockchainId Blockchain id.
+   * @return Blockchain id instance.
+   */
+  public static BlockchainId of(BigInteger blockchainId) {
+    BlockchainId id = INTERNED.get(blockchainId);
+    if (id != null) {
+      return id;
+    }
+    id = new BlockchainId(blockchainId);
+    if (INTERNED.size() >= MAX_INTERNED) {
+      return id;
+    }
+    BlockchainId existing = INTERNED.putIfAbsent(blockchainId, id);
+    return existing == null ? id : existing;
+  }
+
+  public static BlockchainId of(long blockchainId) {
+    return of(BigInteger.valueOf(blockchainId));
+  }
+
+  /**
+   * Get the shared instance for a blockchain id.
+   *
+   * @param blockchainId Blockchain id as a hex string, without a leading 0x.
+   * @return Blockchain id instance.
+   */
+  public static BlockchainId of(String blockchainId) {
+    return of(new BigInteger(blockchainId, 16));
   }
 
   public BigInteger asBigInt() {
@@ -33,12 +91,36 @@ public class BlockchainId {
   }
 
   public long asLong() {
-    return this.bcId.longValue();
+    return this.bcIdLong;
+  }
+
+  /** @return true if asLong returns the complete blockchain id. */
+  public boolean fitsInLong() {
+    return this.fitsInLong;
   }
 
+  /** @return The blockchain id as a 32 byte big endian value. The array is a copy. */
   public byte[] asBytes() {
-    UInt256 blockchainIdUint256 = UInt256.valueOf(this.bcId);
-    return blockchainIdUint256.toBytes().toArray();
+    return this.encoded.clone();
+  }
+
+  /**
+   * Write the blockchain id as a 32 byte big endian value, without allocating.
+   *
+   * @param dest Array to write to.
+   * @param offset Offset in dest to write at.
+   */
+  public void writeTo(byte[] dest, int offset) {
+    System.arraycopy(this.encoded, 0, dest, offset, ENCODED_SIZE);
+  }
+
+  /**
+   * Write the blockchain id as a 32 byte big endian value at the buffer's position.
+   *
+   * @param buf Buffer to write to.
+   */
+  public void writeTo(ByteBuffer buf) {
+    buf.put(this.encoded);
   }
 
   public String toPlainString() {
@@ -52,19 +134,27 @@ public class BlockchainId {
 
   @Override
   public boolean equals(Object other) {
+    if (this == other) {
+      return true;
+    }
     if (!(other instanceof BlockchainId)) {
       return false;
     }
-    return ((BlockchainId) other).bcId.compareTo(this.bcId) == 0;
+    BlockchainId otherId = (BlockchainId) other;
+    if (this.fitsInLong && otherId.fitsInLong) {
+      return this.bcIdLong == otherId.bcIdLong;
+    }
+    return this.hashCode == otherId.hashCode && otherId.bcId.compareTo(this.bcId) == 0;
   }
 
   @Override
   public int hashCode() {
-    return this.bcId.hashCode();
+    return this.hashCode;
   }
 
   @Override
   public Object clone() {
-    return new BlockchainId(this.bcId);
+    // Instances are immutable, so there is no need to copy.
+    return this;
   }
 }
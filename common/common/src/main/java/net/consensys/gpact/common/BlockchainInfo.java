@@ -21,7 +21,7 @@ public class BlockchainInfo {
   public int period;
 
   public BlockchainInfo(String bcId, String uri, String gasPriceStrategy, String period) {
-    this.bcId = new BlockchainId(bcId);
+    this.bcId = BlockchainId.of(bcId);
     this.uri = uri;
     this.gasPriceStrategy = DynamicGasProvider.Strategy.valueOf(gasPriceStrategy);
     this.period = Integer.parseInt(period);
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.gpact.common;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Histogram of non-negative long values that can be recorded to by many threads at once without
+ * locking, and that uses a fixed amount of memory however many values are recorded.
+ *
+ * <p>Values are counted in buckets whose width grows with the size of the value, in the style of
+ * HdrHistogram: each power of two range is split into 32 equal width buckets, so percentiles are
+ * accurate to within about three percent. Counts are striped by thread, so that threads recording
+ * at the same time do not contend on the same counters. Stripes are only allocated when a thread
+ * that maps to them records a value.
+ */
+public class ConcurrentHistogram {
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int NUM_BUCKETS = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+  private static final int NUM_STRIPES =
+      Integer.highestOneBit(Math.min(16, Runtime.getRuntime().availableProcessors()) * 2 - 1);
+
+  private final AtomicReferenceArray<Stripe> stripes = new AtomicReferenceArray<>(NUM_STRIPES);
+
+  /**
+   * Record a value.
+   *
+   * @param value Value to record. Negative values are recorded as zero.
+   */
+  public void record(long value) {
+    if (value < 0) {
+      value = 0;
+    }
+    stripe().record(value);
+  }
+
+  /** @return Counts merged across all threads, at the time of the call. */
+  public Snapshot getSnapshot() {
+    long[] counts = new long[NUM_BUCKETS];
+    long count = 0;
+    long sum = 0;
+    long max = 0;
+    for (int i = 0; i < NUM_STRIPES; i++) {
+      Stripe stripe = this.stripes.get(i);
+      if (stripe == null) {
+        continue;
+      }
+      for (int b = 0; b < NUM_BUCKETS; b++) {
+        counts[b] += stripe.counts.get(b);
+      }
+      count += stripe.count.get();
+      sum += stripe.sum.get();
+      max = Math.max(max, stripe.max.get());
+    }
+    return new Snapshot(counts, count, sum, max);
+  }
+
+  /** Discard all values that have been recorded. */
+  public void reset() {
+    for (int i = 0; i < NUM_STRIPES; i++) {
+      this.stripes.set(i, null);
+    }
+  }
+
+  private Stripe stripe() {
+    int index = (int) (Thread.currentThread().getId() & (NUM_STRIPES - 1));
+    Stripe stripe = this.stripes.get(index);
+    if (stripe == null) {
+      this.stripes.compareAndSet(index, null, new Stripe());
+      stripe = this.stripes.get(index);
+    }
+    return stripe;
+  }
+
+  static int bucketIndex(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+    int shift = exponent - SUB_BUCKET_BITS;
+    int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+    return (shift + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  // Highest value that maps to a bucket.
+  static long bucketHighestValue(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int shift = index / SUB_BUCKETS - 1;
+    long lowest = ((long) (SUB_BUCKETS + index % SUB_BUCKETS)) << shift;
+    return lowest + ((1L << shift) - 1);
+  }
+
+  private static class Stripe {
+    final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+    final AtomicLong count = new AtomicLong();
+    final AtomicLong sum = new AtomicLong();
+    final AtomicLong max = new AtomicLong();
+
+    void record(long value) {
+      this.counts.incrementAndGet(bucketIndex(value));
+      this.count.incrementAndGet();
+      this.sum.addAndGet(value);
+      long current = this.max.get();
+      while (value > current && !this.max.compareAndSet(current, value)) {
+        current = this.max.get();
+      }
+    }
+  }
+
+  /** Immutable copy of a histogram's counts. */
+  public static class Snapshot {
+    private final long[] counts;
+    private final long count;
+    private final long sum;
+    private final long max;
+
+    private Snapshot(long[] counts, long count, long sum, long max) {
+      this.counts = counts;
+      this.count = count;
+      this.sum = sum;
+      this.max = max;
+    }
+
+    public long getCount() {
+      return this.count;
+    }
+
+    public long getMax() {
+      return this.max;
+    }
+
+    /** @return Sum of all recorded values. */
+    public long getSum() {
+      return this.sum;
+    }
+
+    public long getMean() {
+      return this.count == 0 ? 0 : this.sum / this.count;
+    }
+
+    /**
+     * Value at a percentile.
+     *
+     * @param percentile Percentile, between 0 and 100.
+     * @return The highest value that is equivalent to the value at the percentile, or zero if no
+     *     values have been recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+      long total = 0;
+      for (long c : this.counts) {
+        total += c;
+      }
+      if (total == 0) {
+        return 0;
+      }
+      long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+      long seen = 0;
+      for (int i = 0; i < this.counts.length; i++) {
+        seen += this.counts[i];
+        if (seen >= target) {
+          return Math.min(bucketHighestValue(i), this.max);
+        }
+      }
+      return this.max;
+    }
+
+    @Override
+    public String toString() {
+      return "count: "
+          + this.count
+          + ", p50: "
+          + getValueAtPercentile(50)
+          + ", p99: "
+          + getValueAtPercentile(99)
+          + ", max: "
+          + this.max;
+    }
+  }
+}
@@ -14,6 +14,8 @@
  */
 package net.consensys.gpact.common;
 
+import java.util.ArrayList;
+import java.util.List;
 import net.consensys.gpact.utils.crypto.KeyPairGen;
 import org.web3j.crypto.Credentials;
 
@@ -24,4 +26,12 @@ public class CredentialsCreator {
     //    System.out.println("Priv2: " + privateKey);
     return Credentials.create(privateKey);
   }
+
+  public static List<Credentials> createCredentials(int count) {
+    List<Credentials> credentials = new ArrayList<>(count);
+    for (String privateKey : new KeyPairGen().generateKeyPairsGetPrivateKeys(count)) {
+      credentials.add(Credentials.create(privateKey));
+    }
+    return credentials;
+  }
 }
@@ -16,20 +16,35 @@ package net.consensys.gpact.common;
 
 import java.io.IOException;
 import java.math.BigInteger;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.web3j.protocol.Web3j;
-import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.Request;
 import org.web3j.protocol.core.methods.response.EthBlock;
+import org.web3j.protocol.core.methods.response.EthBlockNumber;
 import org.web3j.protocol.core.methods.response.EthGasPrice;
-import org.web3j.protocol.core.methods.response.EthGetBlockTransactionCountByHash;
-import org.web3j.protocol.core.methods.response.EthTransaction;
 import org.web3j.protocol.core.methods.response.Transaction;
 import org.web3j.tx.gas.ContractGasProvider;
 
+/**
+ * Gas provider that works out the gas price based on the gas prices of recent transactions.
+ *
+ * <p>By default, the gas price is worked out once, when the provider is created or the strategy is
+ * changed, based on the transactions in the latest block. Calling startRefreshing causes the gas
+ * price to be recalculated in the background over a sliding window of recent blocks. Only blocks
+ * that have not been seen before are fetched each time. Reading the gas price is always a read of
+ * the most recently calculated values, and does not involve any requests to the Ethereum Client.
+ */
 public class DynamicGasProvider implements ContractGasProvider {
   public enum Strategy {
     ETH_GAS_PRICE,
@@ -42,15 +57,22 @@ public class DynamicGasProvider implements ContractGasProvider {
 
   private static final Logger LOG = LogManager.getLogger(DynamicGasProvider.class);
 
+  // Number of recent blocks the gas price is based on when AbstractBlockchain refreshes it.
+  public static final int DEFAULT_WINDOW_BLOCKS = 20;
+  // Gas prices of at most this many transactions are kept for each block, so the memory used and
+  // the time taken to recalculate the percentiles is bounded however full the blocks are.
+  private static final int MAX_SAMPLES_PER_BLOCK = 128;
+
   Web3j web3j;
   String uri;
-  Strategy pricingStrategy;
+  volatile Strategy pricingStrategy;
 
-  BigInteger lowest;
-  BigInteger highest;
-  BigInteger average;
-  BigInteger median;
-  BigInteger ethGasPrice;
+  // Gas prices for the blocks in the sliding window, oldest block first.
+  private final ArrayDeque<BlockGasPrices> window = new ArrayDeque<>();
+  private int windowBlocks = 1;
+  private ScheduledFuture<?> refreshTask;
+
+  private volatile GasPrices prices;
 
   public DynamicGasProvider(Web3j web3j, String uri, String pricingStrategy) throws IOException {
     this(web3j, uri, Strategy.valueOf(pricingStrategy));
@@ -68,64 +90,127 @@ public class DynamicGasProvider implements ContractGasProvider {
     detertermineNewGasPrice();
   }
 
-  private void detertermineNewGasPrice() throws IOException {
-    if (this.pricingStrategy == Strategy.FREE) {
-      return;
-    }
+  /**
+   * Recalculate the gas price in the background, based on the transactions in the last few blocks.
+   *
+   * @param scheduler Scheduler to run the recalculation on.
+   * @param periodMillis How often to recalculate. This would typically be the block period.
+   * @param windowBlocks Number of recent blocks to base the gas price on.
+   */
+  public synchronized void startRefreshing(
+      ScheduledExecutorService scheduler, long periodMillis, int windowBlocks) {
+    stopRefreshing();
+    setWindowBlocks(windowBlocks);
+    this.refreshTask =
+        scheduler.scheduleWithFixedDelay(
+            this::refreshInBackground, 0, periodMillis, TimeUnit.MILLISECONDS);
+  }
 
-    EthGasPrice ethGasPriceObj = this.web3j.ethGasPrice().send();
-    this.ethGasPrice = ethGasPriceObj.getGasPrice();
+  /**
+   * Set the number of recent blocks to base the gas price on. The change takes effect the next time
+   * the gas price is refreshed.
+   *
+   * @param windowBlocks Number of blocks.
+   */
+  public synchronized void setWindowBlocks(int windowBlocks) {
+    if (windowBlocks <= 0) {
+      throw new IllegalArgumentException("Window must be at least one block: " + windowBlocks);
+    }
+    this.windowBlocks = windowBlocks;
+  }
 
-    EthBlock ethBlock =
-        this.web3j.ethGetBlockByNumber(DefaultBlockParameterName.LATEST, false).send();
-    String blockHash = ethBlock.getBlock().getHash();
-    EthGetBlockTransactionCountByHash transactionCountByHash =
-        web3j.ethGetBlockTransactionCountByHash(blockHash).send();
-    BigInteger txCount = transactionCountByHash.getTransactionCount();
+  public synchronized void stopRefreshing() {
+    if (this.refreshTask != null) {
+      this.refreshTask.cancel(false);
+      this.refreshTask = null;
+    }
+  }
 
-    if (txCount.compareTo(BigInteger.ZERO) == 0) {
-      throw new RuntimeException("No transactions in the last block. Can't work out gas price");
+  private void refreshInBackground() {
+    try {
+      refresh();
+      LOG.debug("Gas Price for Ethereum network: {}: {}", this.uri, this.prices);
+    } catch (Exception ex) {
+      // Keep using the previous gas prices, and try again next time.
+      LOG.warn("Error refreshing gas price for {}: {}", this.uri, ex.getMessage());
     }
+  }
 
-    List<BigInteger> sortedList = new ArrayList<>();
-    BigInteger total = BigInteger.ZERO;
-    this.highest = BigInteger.ZERO;
-    this.lowest = BigInteger.TWO.pow(256);
-    BigInteger transactionIndex = BigInteger.ZERO;
-    do {
-      EthTransaction ethTransaction =
-          this.web3j.ethGetTransactionByBlockHashAndIndex(blockHash, transactionIndex).send();
-      Optional<Transaction> transaction = ethTransaction.getTransaction();
-      assert (transaction.isPresent());
-      BigInteger gasPrice = transaction.get().getGasPrice();
+  private void detertermineNewGasPrice() throws IOException {
+    if (this.pricingStrategy == Strategy.FREE) {
+      return;
+    }
+    refresh();
 
-      sortedList.add(gasPrice);
+    GasPrices p = this.prices;
+    LOG.info("Gas Price for Ethereum network: {}", this.uri);
+    LOG.info(" EthGasPrice: {}", p.ethGasPrice);
+    LOG.info(" Lowest:      {}", p.lowest);
+    LOG.info(" Average:     {}", p.average);
+    LOG.info(" Median:      {}", p.median);
+    LOG.info(" Highest:     {}", p.highest);
+    if (p.baseFee != null) {
+      LOG.info(" Base Fee:    {}", p.baseFee);
+      LOG.info(" Priority:    {}", p.priorityFee);
+    }
+    LOG.info(" Strategy selected: {}", this.pricingStrategy);
+  }
 
-      total = total.add(gasPrice);
+  /**
+   * Fetch blocks that have been added since the last refresh, and recalculate the gas prices.
+   *
+   * @throws IOException If the blocks can not be fetched.
+   */
+  public synchronized void refresh() throws IOException {
+    // Fetch the gas price and the latest block number in one round trip, and then all of
+    // the new blocks in the window, including their transactions, in a second round trip.
+    JsonRpcBatch batch = new JsonRpcBatch(this.web3j);
+    CompletableFuture<EthGasPrice> ethGasPriceObj = batch.add(this.web3j.ethGasPrice());
+    CompletableFuture<EthBlockNumber> ethBlockNumber = batch.add(this.web3j.ethBlockNumber());
+    batch.send();
+    BigInteger ethGasPrice = ethGasPriceObj.join().getGasPrice();
+    long latest = ethBlockNumber.join().getBlockNumber().longValue();
 
-      if (gasPrice.compareTo(this.highest) > 0) {
-        this.highest = gasPrice;
-      }
-      if (gasPrice.compareTo(this.lowest) < 0) {
-        this.lowest = gasPrice;
-      }
+    // The window holds a contiguous range of blocks. Fetch the blocks that are missing at
+    // the start of the range, if the window has grown, and the blocks added since the last
+    // refresh.
+    long start = Math.max(0, latest - this.windowBlocks + 1);
+    while (!this.window.isEmpty() && this.window.getFirst().blockNumber < start) {
+      this.window.removeFirst();
+    }
+    long haveFrom = this.window.isEmpty() ? latest + 1 : this.window.getFirst().blockNumber;
+    long haveTo = this.window.isEmpty() ? latest : this.window.getLast().blockNumber;
+    List<CompletableFuture<EthBlock>> older = new ArrayList<>();
+    for (long blockNumber = start; blockNumber < haveFrom; blockNumber++) {
+      older.add(batch.add(getBlockByNumber(blockNumber)));
+    }
+    List<CompletableFuture<EthBlock>> newer = new ArrayList<>();
+    for (long blockNumber = haveTo + 1; blockNumber <= latest; blockNumber++) {
+      newer.add(batch.add(getBlockByNumber(blockNumber)));
+    }
+    batch.send();
 
-      // Increment for the next time through the loop.
-      transactionIndex = transactionIndex.add(BigInteger.ONE);
-    } while (transactionIndex.compareTo(txCount) != 0);
+    for (int i = older.size() - 1; i >= 0; i--) {
+      this.window.addFirst(new BlockGasPrices(getBlock(older.get(i))));
+    }
+    for (CompletableFuture<EthBlock> ethBlock : newer) {
+      this.window.addLast(new BlockGasPrices(getBlock(ethBlock)));
+    }
 
-    this.average = total.divide(txCount);
+    this.prices = new GasPrices(ethGasPrice, this.window);
+  }
 
-    sortedList.sort(BigInteger::compareTo);
-    this.median = sortedList.get(sortedList.size() / 2);
+  private Request<?, EthBlock> getBlockByNumber(long blockNumber) {
+    return this.web3j.ethGetBlockByNumber(
+        DefaultBlockParameter.valueOf(BigInteger.valueOf(blockNumber)), true);
+  }
 
-    LOG.info("Gas Price for Ethereum network: {}", this.uri);
-    LOG.info(" EthGasPrice: {}", this.ethGasPrice);
-    LOG.info(" Lowest:      {}", this.lowest);
-    LOG.info(" Average:     {}", this.average);
-    LOG.info(" Median:      {}", this.median);
-    LOG.info(" Highest:     {}", this.highest);
-    LOG.info(" Strategy selected: {}", this.pricingStrategy);
+  private EthBlock.Block getBlock(CompletableFuture<EthBlock> ethBlock) throws IOException {
+    EthBlock.Block block = ethBlock.join().getBlock();
+    if (block == null) {
+      throw new IOException("Block not available from " + this.uri);
+    }
+    return block;
   }
 
   @Override
@@ -137,15 +222,15 @@ public class DynamicGasProvider implements ContractGasProvider {
   public BigInteger getGasPrice() {
     switch (this.pricingStrategy) {
       case ETH_GAS_PRICE:
-        return this.ethGasPrice;
+        return this.prices.ethGasPrice;
       case LOWEST:
-        return this.lowest;
+        return this.prices.lowest;
       case HIGHEST:
-        return this.highest;
+        return this.prices.highest;
       case AVERAGE:
-        return this.average;
+        return this.prices.average;
       case MEDIAN:
-        return this.median.add(BigInteger.ONE);
+        return this.prices.median.add(BigInteger.ONE);
       case FREE:
         return BigInteger.ZERO;
       default:
@@ -153,6 +238,33 @@ public class DynamicGasProvider implements ContractGasProvider {
     }
   }
 
+  /** @return Base fee of the latest block, or null if the blockchain does not support EIP-1559. */
+  public BigInteger getBaseFee() {
+    GasPrices p = this.prices;
+    return p == null ? null : p.baseFee;
+  }
+
+  /**
+   * @return Median priority fee (tip) paid by transactions in the window, or null if the blockchain
+   *     does not support EIP-1559.
+   */
+  public BigInteger getPriorityFee() {
+    GasPrices p = this.prices;
+    return p == null ? null : p.priorityFee;
+  }
+
+  /**
+   * @return Maximum fee per gas to use for EIP-1559 transactions: allows for the base fee doubling
+   *     before the transaction is included, or null if the blockchain does not support EIP-1559.
+   */
+  public BigInteger getMaxFeePerGas() {
+    GasPrices p = this.prices;
+    if (p == null || p.baseFee == null) {
+      return null;
+    }
+    return p.baseFee.multiply(BigInteger.TWO).add(p.priorityFee);
+  }
+
   @Override
   public BigInteger getGasLimit(String functionName) {
     return getGasLimit();
@@ -166,4 +278,170 @@ public class DynamicGasProvider implements ContractGasProvider {
   public BigInteger getGasLimit() {
     return GAS_LIMIT;
   }
+
+  // Summary of the gas prices paid by the transactions in one block.
+  private static class BlockGasPrices {
+    final long blockNumber;
+    final BigInteger baseFee;
+    final int numTransactions;
+    final BigInteger total;
+    // Sorted, evenly spaced sample of the gas prices, including the lowest and highest.
+    final BigInteger[] gasPrices;
+    final BigInteger[] priorityFees;
+
+    BlockGasPrices(EthBlock.Block block) {
+      this.blockNumber = block.getNumber().longValue();
+      this.baseFee = block.getBaseFeePerGasRaw() == null ? null : block.getBaseFeePerGas();
+
+      this.numTransactions = block.getTransactions().size();
+      BigInteger[] all = new BigInteger[this.numTransactions];
+      BigInteger[] tips = new BigInteger[this.numTransactions];
+      BigInteger sum = BigInteger.ZERO;
+      int i = 0;
+      for (EthBlock.TransactionResult<?> result : block.getTransactions()) {
+        Transaction tx = (Transaction) result.get();
+        all[i] = tx.getGasPrice();
+        sum = sum.add(all[i]);
+        tips[i] = priorityFee(tx, this.baseFee);
+        i++;
+      }
+      this.total = sum;
+      this.gasPrices = sample(all);
+      this.priorityFees = this.baseFee == null ? new BigInteger[0] : sample(tips);
+    }
+
+    // For EIP-1559 transactions the gas price in the block is the effective gas price.
+    private static BigInteger priorityFee(Transaction tx, BigInteger baseFee) {
+      if (baseFee == null) {
+        return null;
+      }
+      BigInteger tip = tx.getGasPrice().subtract(baseFee);
+      if (tx.getMaxPriorityFeePerGasRaw() != null) {
+        tip = tip.min(tx.getMaxPriorityFeePerGas());
+      }
+      return tip.max(BigInteger.ZERO);
+    }
+
+    private static BigInteger[] sample(BigInteger[] values) {
+      Arrays.sort(values);
+      if (values.length <= MAX_SAMPLES_PER_BLOCK) {
+        return values;
+      }
+      BigInteger[] sample = new BigInteger[MAX_SAMPLES_PER_BLOCK];
+      for (int i = 0; i < MAX_SAMPLES_PER_BLOCK; i++) {
+        sample[i] = values[(int) ((long) i * (values.length - 1) / (MAX_SAMPLES_PER_BLOCK - 1))];
+      }
+      return sample;
+    }
+  }
+
+  // A sampled gas price, and the number of transactions it stands for.
+  private static class WeightedPrice {
+    static final Comparator<WeightedPrice> BY_PRICE = Comparator.comparing(p -> p.price);
+
+    final BigInteger price;
+    final double weight;
+
+    WeightedPrice(BigInteger price, double weight) {
+      this.price = price;
+      this.weight = weight;
+    }
+  }
+
+  // Gas prices calculated over the window. Immutable, so that it can be read without locking.
+  private static class GasPrices {
+    final BigInteger ethGasPrice;
+    final BigInteger lowest;
+    final BigInteger highest;
+    final BigInteger average;
+    final BigInteger median;
+    final BigInteger baseFee;
+    final BigInteger priorityFee;
+
+    GasPrices(BigInteger ethGasPrice, ArrayDeque<BlockGasPrices> window) {
+      this.ethGasPrice = ethGasPrice;
+      // Blocks with more than MAX_SAMPLES_PER_BLOCK transactions are sampled, so each sample is
+      // weighted by the number of transactions it stands for. Otherwise blocks with few
+      // transactions would count for as much as full blocks.
+      List<WeightedPrice> gasPrices = new ArrayList<>();
+      List<WeightedPrice> priorityFees = new ArrayList<>();
+      BigInteger total = BigInteger.ZERO;
+      long count = 0;
+      for (BlockGasPrices block : window) {
+        addWeighted(gasPrices, block.gasPrices, block.numTransactions);
+        addWeighted(priorityFees, block.priorityFees, block.numTransactions);
+        total = total.add(block.total);
+        count += block.numTransactions;
+      }
+      BlockGasPrices latest = window.peekLast();
+      this.baseFee = latest == null ? null : latest.baseFee;
+
+      if (count == 0) {
+        // No transactions in the window: the Ethereum Client's gas price is the best guess.
+        this.lowest = ethGasPrice;
+        this.highest = ethGasPrice;
+        this.average = ethGasPrice;
+        this.median = ethGasPrice;
+      } else {
+        gasPrices.sort(WeightedPrice.BY_PRICE);
+        this.lowest = gasPrices.get(0).price;
+        this.highest = gasPrices.get(gasPrices.size() - 1).price;
+        this.average = total.divide(BigInteger.valueOf(count));
+        this.median = weightedMedian(gasPrices);
+      }
+
+      if (this.baseFee == null) {
+        this.priorityFee = null;
+      } else if (priorityFees.isEmpty()) {
+        this.priorityFee = ethGasPrice.subtract(this.baseFee).max(BigInteger.ZERO);
+      } else {
+        priorityFees.sort(WeightedPrice.BY_PRICE);
+        this.priorityFee = weightedMedian(priorityFees);
+      }
+    }
+
+    private static void addWeighted(
+        List<WeightedPrice> prices, BigInteger[] samples, int numTransactions) {
+      double weight = (double) numTransactions / samples.length;
+      for (BigInteger sample : samples) {
+        prices.add(new WeightedPrice(sample, weight));
+      }
+    }
+
+    // The price at which half of the total weight is at or below. Prices must be sorted. With
+    // equal weights this is the element at index size / 2.
+    private static BigInteger weightedMedian(List<WeightedPrice> prices) {
+      double half = 0;
+      for (WeightedPrice price : prices) {
+        half += price.weight;
+      }
+      half /= 2;
+      double cumulative = 0;
+      for (WeightedPrice price : prices) {
+        cumulative += price.weight;
+        if (cumulative > half) {
+          return price.price;
+        }
+      }
+      return prices.get(prices.size() - 1).price;
+    }
+
+    @Override
+    public String toString() {
+      return "EthGasPrice: "
+          + this.ethGasPrice
+          + ", Lowest: "
+          + this.lowest
+          + ", Average: "
+          + this.average
+          + ", Median: "
+          + this.median
+          + ", Highest: "
+          + this.highest
+          + ", Base Fee: "
+          + this.baseFee
+          + ", Priority Fee: "
+          + this.priorityFee;
+    }
+  }
 }
@@ -2,23 +2,52 @@ package net.consensys.gpact.common;
 
 import java.io.IOException;
 import java.math.BigInteger;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.web3j.crypto.Credentials;
+import org.web3j.crypto.Hash;
+import org.web3j.crypto.RawTransaction;
 import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.response.EthSendTransaction;
 import org.web3j.tx.RawTransactionManager;
 import org.web3j.tx.response.TransactionReceiptProcessor;
 
+/**
+ * Transaction manager that allocates nonces locally, rather than asking the Ethereum Client for the
+ * nonce for each transaction. Nonces are allocated without locking. If a transaction is rejected,
+ * its nonce is released and reused for the next transaction, so that later transactions are not
+ * stuck behind a gap in the nonces. If the Ethereum Client reports that a nonce has already been
+ * used, the next nonce is resynchronised with the Ethereum Client. If the Ethereum Client reports
+ * that it already has the transaction, the transaction is treated as submitted.
+ */
 public class FastTxManager extends RawTransactionManager {
   private static final Logger LOG = LogManager.getLogger(FastTxManager.class);
+  private static final long UNINITIALISED = -1L;
+  // Gas limit for the value transfers used to fill nonce gaps.
+  private static final BigInteger NO_OP_GAS_LIMIT = BigInteger.valueOf(21000);
+
+  private final Web3j web3j;
   private final String address;
   private final long chainId;
+  private final BlockchainId blockchainId;
 
-  private static Set<String> exists = new HashSet<>();
+  // Accounts that have a transaction manager, as address + chain id. Updated from the threads
+  // that create transaction managers and from client shut down threads.
+  private static final Set<String> exists = ConcurrentHashMap.newKeySet();
 
-  private volatile BigInteger nonce = BigInteger.valueOf(-1L);
+  // The next nonce to allocate, if there are no released nonces.
+  private final AtomicLong nextNonce = new AtomicLong(UNINITIALISED);
+  // Nonces that were allocated, but whose transactions were not accepted, mapped to the time in
+  // milliseconds at which they were released.
+  private final ConcurrentSkipListMap<Long, Long> releasedNonces = new ConcurrentSkipListMap<>();
 
   FastTxManager(
       Web3j web3j,
@@ -26,43 +55,235 @@ public class FastTxManager extends RawTransactionManager {
       long chainId,
       TransactionReceiptProcessor transactionReceiptProcessor) {
     super(web3j, credentials, chainId, transactionReceiptProcessor);
+    this.web3j = web3j;
     this.address = credentials.getAddress();
     this.chainId = chainId;
+    this.blockchainId = BlockchainId.of(chainId);
     LOG.info("Create transaction manager for Bc: {}, Address: {}", this.chainId, this.address);
 
     String key = this.address + this.chainId;
-    if (exists.contains(key)) {
+    if (!exists.add(key)) {
       LOG.error(
           "Transaction manager previously created for Bc: {}, Address: {}",
           this.chainId,
           this.address);
       throw new RuntimeException("Transaction manager previously created");
     }
-    exists.add(key);
   }
 
-  protected synchronized BigInteger getNonce() throws IOException {
-    if (this.nonce.signum() == -1) {
-      this.nonce = super.getNonce();
+  /**
+   * Allow another transaction manager to be created for this account, once this one is no longer
+   * used. Called when the Web3j client this transaction manager uses has been shut down.
+   */
+  void retire() {
+    exists.remove(this.address + this.chainId);
+  }
+
+  protected BigInteger getNonce() throws IOException {
+    return BigInteger.valueOf(allocateNonce());
+  }
+
+  /**
+   * Allocate a nonce. Released nonces are reused before new nonces are allocated.
+   *
+   * @return The nonce.
+   * @throws IOException If the nonce needs to be fetched from the Ethereum Client, and fetching it
+   *     fails.
+   */
+  public long allocateNonce() throws IOException {
+    Map.Entry<Long, Long> released = this.releasedNonces.pollFirstEntry();
+    long nonce;
+    if (released != null) {
+      nonce = released.getKey();
+    } else {
+      if (this.nextNonce.get() == UNINITIALISED) {
+        // If another thread initialises the nonce first, use its value.
+        this.nextNonce.compareAndSet(UNINITIALISED, super.getNonce().longValueExact());
+      }
+      nonce = this.nextNonce.getAndIncrement();
+    }
+    LOG.debug("BcId: {}, Acc: {}, Nonce: {}", this.chainId, this.address, nonce);
+    return nonce;
+  }
+
+  /**
+   * Release a nonce whose transaction was not accepted by the Ethereum Client, so that it is used
+   * for the next transaction.
+   *
+   * @param nonce The nonce to release.
+   */
+  public void releaseNonce(long nonce) {
+    // If this was the most recently allocated nonce, just rewind.
+    if (!this.nextNonce.compareAndSet(nonce + 1, nonce)) {
+      this.releasedNonces.put(nonce, System.currentTimeMillis());
+    }
+    LOG.debug("BcId: {}, Acc: {}, Released nonce: {}", this.chainId, this.address, nonce);
+  }
+
+  /**
+   * Handle a transaction that was not accepted by the Ethereum Client.
+   *
+   * @param nonce Nonce of the transaction.
+   * @param error Error returned by the Ethereum Client.
+   * @throws IOException If the nonce needs to be resynchronised, and fetching it fails.
+   */
+  public void transactionRejected(long nonce, Response.Error error) throws IOException {
+    if (isAlreadyKnown(error)) {
+      // The transaction is pending, so its nonce is in use.
+      return;
+    }
+    String message = error.getMessage() == null ? "" : error.getMessage().toLowerCase();
+    if (message.contains("nonce too low")) {
+      // Some other transaction has used the nonce, so the nonce must not be reused.
+      resyncNonce();
+    } else {
+      releaseNonce(nonce);
+    }
+  }
+
+  /**
+   * Determine whether an error returned when submitting a transaction means that the Ethereum
+   * Client already has the transaction. The transaction is pending, so callers should wait for its
+   * receipt rather than failing.
+   *
+   * @param error Error returned by the Ethereum Client.
+   * @return true if the transaction has already been submitted.
+   */
+  public static boolean isAlreadyKnown(Response.Error error) {
+    String message = error.getMessage() == null ? "" : error.getMessage().toLowerCase();
+    return message.contains("already known")
+        || message.contains("known transaction")
+        || message.contains("already in mempool");
+  }
+
+  /**
+   * Move the next nonce forward to the Ethereum Client's pending nonce for the account, if the
+   * Ethereum Client is ahead. Released nonces below the pending nonce are discarded.
+   *
+   * @throws IOException If fetching the nonce fails.
+   */
+  public void resyncNonce() throws IOException {
+    long pending = super.getNonce().longValueExact();
+    this.nextNonce.accumulateAndGet(pending, Math::max);
+    this.releasedNonces.headMap(pending).clear();
+    LOG.debug("Resync Nonce: BcId: {}, Acc: {}, Pending: {}", this.chainId, this.address, pending);
+  }
+
+  /**
+   * Remove released nonces that have not been reused for at least a certain time, so that the
+   * caller can fill the gaps they leave using createNoOpTransaction. If the transactions filling
+   * the gaps are not accepted, call transactionRejected.
+   *
+   * @param minAgeMillis Minimum time in milliseconds since the nonces were released.
+   * @return The nonces, in increasing order.
+   */
+  public List<Long> takeReleasedNonces(long minAgeMillis) {
+    long releasedBefore = System.currentTimeMillis() - minAgeMillis;
+    List<Long> nonces = new ArrayList<>();
+    for (Map.Entry<Long, Long> released : this.releasedNonces.entrySet()) {
+      if (released.getValue() <= releasedBefore
+          && this.releasedNonces.remove(released.getKey(), released.getValue())) {
+        nonces.add(released.getKey());
+      }
+    }
+    return nonces;
+  }
+
+  /**
+   * Create a zero value transfer to this account, used to fill a gap in the nonces.
+   *
+   * @param nonce Nonce to use.
+   * @param gasPrice Gas price to use.
+   * @return Unsigned transaction.
+   */
+  public RawTransaction createNoOpTransaction(long nonce, BigInteger gasPrice) {
+    return RawTransaction.createEtherTransaction(
+        BigInteger.valueOf(nonce), gasPrice, NO_OP_GAS_LIMIT, this.address, BigInteger.ZERO);
+  }
+
+  @Override
+  public EthSendTransaction signAndSend(RawTransaction rawTransaction) throws IOException {
+    long nonce = rawTransaction.getNonce().longValueExact();
+    Instrumentation.Span span =
+        Instrumentations.start(Instrumentation.Stage.TX_SUBMIT, this.blockchainId);
+    String signed = sign(rawTransaction);
+    EthSendTransaction response;
+    try {
+      response = this.web3j.ethSendRawTransaction(signed).send();
+    } catch (IOException ex) {
+      span.fail(ex);
+      releaseNonce(nonce);
+      throw ex;
+    }
+    if (response.hasError() && isAlreadyKnown(response.getError())) {
+      // The transaction is pending: return its hash so that the caller waits for its receipt.
+      EthSendTransaction known = new EthSendTransaction();
+      known.setId(response.getId());
+      known.setJsonrpc(response.getJsonrpc());
+      known.setResult(Hash.sha3(signed));
+      response = known;
+    }
+    if (response.hasError()) {
+      span.fail(new IOException(response.getError().getMessage()));
+      transactionRejected(nonce, response.getError());
     } else {
-      this.nonce = this.nonce.add(BigInteger.ONE);
+      span.end();
     }
-    LOG.debug("BcId: {}, Acc: {}, Nonce: {}", this.chainId, this.address, this.nonce);
-    return this.nonce;
+    return response;
+  }
+
+  BlockchainId getBlockchainId() {
+    return this.blockchainId;
   }
 
+  /**
+   * Create a transaction using the next nonce. The transaction is not signed or submitted. If the
+   * transaction is submitted and not accepted, call transactionRejected.
+   *
+   * @param gasPrice Gas price to use.
+   * @param gasLimit Gas limit to use.
+   * @param to Contract address.
+   * @param data Encoded function call.
+   * @param value Amount of Wei to send.
+   * @return Unsigned transaction.
+   * @throws IOException If the nonce can not be determined.
+   */
+  public RawTransaction createTransaction(
+      BigInteger gasPrice, BigInteger gasLimit, String to, String data, BigInteger value)
+      throws IOException {
+    return RawTransaction.createTransaction(getNonce(), gasPrice, gasLimit, to, value, data);
+  }
+
+  /**
+   * Get the nonce before the next new nonce. This is the highest nonce allocated so far, unless a
+   * nonce has been released by rewinding or the nonce has been resynchronised with the Ethereum
+   * Client. Reusing a released nonce does not change the value.
+   *
+   * @return The nonce before the next new nonce, or -1 if no nonce has been allocated.
+   */
   public BigInteger getCurrentNonce() {
-    return this.nonce;
+    long next = this.nextNonce.get();
+    return BigInteger.valueOf(next == UNINITIALISED ? UNINITIALISED : next - 1);
+  }
+
+  /** @return The number of nonces that have been released and not yet reused. */
+  public int getNumReleasedNonces() {
+    return this.releasedNonces.size();
   }
 
-  public synchronized void resetNonce() throws IOException {
-    // The nonce stored in this contract is the nonce before the
-    // next nonce, and not the expected nonce.
-    this.nonce = super.getNonce().subtract(BigInteger.ONE);
-    LOG.debug("Reset Nonce: BcId* {}, Acc: {}, Nonce: {}", this.chainId, this.address, this.nonce);
+  public void resetNonce() throws IOException {
+    this.releasedNonces.clear();
+    this.nextNonce.set(super.getNonce().longValueExact());
+    LOG.debug(
+        "Reset Nonce: BcId* {}, Acc: {}, Nonce: {}",
+        this.chainId,
+        this.address,
+        this.nextNonce.get());
   }
 
-  public synchronized void setNonce(BigInteger value) {
-    this.nonce = value;
+  public void setNonce(BigInteger value) {
+    // The value is the nonce before the next nonce, and not the expected nonce.
+    this.releasedNonces.clear();
+    this.nextNonce.set(value.longValueExact() + 1);
   }
 }
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.gpact.common;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Instrumentation that keeps a histogram of the duration of each stage on each blockchain in
+ * memory. This can be used in tests, or logged periodically by long running processes, to find the
+ * slowest stage on each blockchain.
+ */
+public class InMemoryInstrumentation implements Instrumentation {
+  private final Map<Key, Timer> timers = new ConcurrentHashMap<>();
+
+  @Override
+  public Span start(Stage stage, BlockchainId blockchainId) {
+    Timer timer = this.timers.computeIfAbsent(new Key(stage, blockchainId), k -> new Timer());
+    long startTime = System.nanoTime();
+    return new Span() {
+      @Override
+      public void end() {
+        timer.durations.record(System.nanoTime() - startTime);
+      }
+
+      @Override
+      public void fail(Throwable error) {
+        timer.failures.increment();
+        end();
+      }
+    };
+  }
+
+  /**
+   * @param stage Stage.
+   * @param blockchainId Blockchain.
+   * @return Durations in nanoseconds of the stage on the blockchain, or null if no spans have been
+   *     started for the stage on the blockchain.
+   */
+  public ConcurrentHistogram.Snapshot getDurations(Stage stage, BlockchainId blockchainId) {
+    Timer timer = this.timers.get(new Key(stage, blockchainId));
+    return timer == null ? null : timer.durations.getSnapshot();
+  }
+
+  /**
+   * @param stage Stage.
+   * @param blockchainId Blockchain.
+   * @return Number of spans for the stage on the blockchain that failed.
+   */
+  public long getFailures(Stage stage, BlockchainId blockchainId) {
+    Timer timer = this.timers.get(new Key(stage, blockchainId));
+    return timer == null ? 0 : timer.failures.sum();
+  }
+
+  /**
+   * Find the stage in which the most time has been spent on a blockchain. Crosschain steps are not
+   * considered, as they include the other stages.
+   *
+   * @param blockchainId Blockchain.
+   * @return The slowest stage, or null if no stages have been recorded for the blockchain.
+   */
+  public Stage getSlowestStage(BlockchainId blockchainId) {
+    Stage slowest = null;
+    long slowestTotal = -1;
+    for (Stage stage : Stage.values()) {
+      if (stage == Stage.CROSSCHAIN_STEP) {
+        continue;
+      }
+      ConcurrentHistogram.Snapshot durations = getDurations(stage, blockchainId);
+      if (durations != null && durations.getSum() > slowestTotal) {
+        slowest = stage;
+        slowestTotal = durations.getSum();
+      }
+    }
+    return slowest;
+  }
+
+  /** Discard all recorded durations. */
+  public void reset() {
+    this.timers.clear();
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    for (Map.Entry<Key, Timer> entry : this.timers.entrySet()) {
+      ConcurrentHistogram.Snapshot durations = entry.getValue().durations.getSnapshot();
+      sb.append(entry.getKey().blockchainId)
+          .append(' ')
+          .append(entry.getKey().stage)
+          .append(": count: ")
+          .append(durations.getCount())
+          .append(", failures: ")
+          .append(entry.getValue().failures.sum())
+          .append(", p50 ms: ")
+          .append(TimeUnit.NANOSECONDS.toMillis(durations.getValueAtPercentile(50)))
+          .append(", p99 ms: ")
+          .append(TimeUnit.NANOSECONDS.toMillis(durations.getValueAtPercentile(99)))
+          .append(", max ms: ")
+          .append(TimeUnit.NANOSECONDS.toMillis(durations.getMax()))
+          .append('\n');
+    }
+    return sb.toString();
+  }
+
+  private static class Timer {
+    final ConcurrentHistogram durations = new ConcurrentHistogram();
+    final LongAdder failures = new LongAdder();
+  }
+
+  private static class Key {
+    final Stage stage;
+    final BlockchainId blockchainId;
+
+    Key(Stage stage, BlockchainId blockchainId) {
+      this.stage = stage;
+      this.blockchainId = blockchainId;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof Key)) {
+        return false;
+      }
+      Key key = (Key) other;
+      return this.stage == key.stage && Objects.equals(this.blockchainId, key.blockchainId);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(this.stage, this.blockchainId);
+    }
+  }
+}
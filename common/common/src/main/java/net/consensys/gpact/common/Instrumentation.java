@@ -0,0 +1,90 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.gpact.common;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Service provider interface for recording how long each stage of processing a crosschain
+ * transaction takes on each blockchain. The implementation in use is returned by
+ * Instrumentations.get(). By default this is NoOpInstrumentation, unless an implementation has been
+ * registered using java.util.ServiceLoader or set using Instrumentations.set().
+ *
+ * <p>Implementations must be thread safe: spans are started and ended on many threads at once, and
+ * a span may be ended on a different thread to the one it was started on.
+ */
+public interface Instrumentation {
+
+  /** Stages of processing whose duration is recorded. */
+  enum Stage {
+    /** One step of a crosschain call on a blockchain, including all of the stages below. */
+    CROSSCHAIN_STEP,
+    /** Signing a transaction and sending it until the Ethereum Client has accepted it. */
+    TX_SUBMIT,
+    /** Waiting for the receipt of a transaction that has been accepted. */
+    RECEIPT_WAIT,
+    /** Decoding events from a transaction receipt. */
+    EVENT_EXTRACTION,
+    /** Signing event data or a transaction receipt root. */
+    SIGNING,
+    /** Building the transaction receipt trie for a block, and a proof of a receipt. */
+    PROOF_BUILD,
+    /** Publishing a transaction receipt root to other blockchains. */
+    ROOT_PUBLISH
+  }
+
+  /**
+   * Start timing a stage.
+   *
+   * @param stage Stage being timed.
+   * @param blockchainId Blockchain the stage relates to. May be null if not known.
+   * @return Span to end when the stage has completed.
+   */
+  Span start(Stage stage, BlockchainId blockchainId);
+
+  /**
+   * A stage that is being timed. A span should be ended once, by calling either end or fail. Spans
+   * that are never ended are not recorded.
+   */
+  interface Span {
+    /** The stage completed successfully. */
+    void end();
+
+    /**
+     * The stage failed.
+     *
+     * @param error Reason for the failure.
+     */
+    void fail(Throwable error);
+
+    /**
+     * End the span when a future completes.
+     *
+     * @param future Future for the stage.
+     * @return The future passed in, so calls can be chained.
+     */
+    default <T> CompletableFuture<T> endWhenComplete(CompletableFuture<T> future) {
+      future.whenComplete(
+          (result, error) -> {
+            if (error == null) {
+              end();
+            } else {
+              fail(error);
+            }
+          });
+      return future;
+    }
+  }
+}
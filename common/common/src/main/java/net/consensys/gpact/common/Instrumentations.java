@@ -0,0 +1,90 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.gpact.common;
+
+import java.util.Iterator;
+import java.util.ServiceLoader;
+import java.util.concurrent.Callable;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/** Holds the instrumentation used by the library. */
+public final class Instrumentations {
+  private static final Logger LOG = LogManager.getLogger(Instrumentations.class);
+
+  private static volatile Instrumentation instrumentation = load();
+
+  private Instrumentations() {}
+
+  /** @return The instrumentation in use. */
+  public static Instrumentation get() {
+    return instrumentation;
+  }
+
+  /**
+   * Set the instrumentation to use. Spans that have already been started are ended using the
+   * instrumentation that started them.
+   *
+   * @param newInstrumentation Instrumentation to use, or null to stop recording.
+   */
+  public static void set(Instrumentation newInstrumentation) {
+    instrumentation =
+        newInstrumentation == null ? NoOpInstrumentation.INSTANCE : newInstrumentation;
+  }
+
+  /**
+   * Convenience method to start a span using the instrumentation in use.
+   *
+   * @param stage Stage being timed.
+   * @param blockchainId Blockchain the stage relates to. May be null if not known.
+   * @return Span to end when the stage has completed.
+   */
+  public static Instrumentation.Span start(Instrumentation.Stage stage, BlockchainId blockchainId) {
+    return instrumentation.start(stage, blockchainId);
+  }
+
+  /**
+   * Time a stage that is executed by the calling thread.
+   *
+   * @param stage Stage being timed.
+   * @param blockchainId Blockchain the stage relates to. May be null if not known.
+   * @param call Code that executes the stage.
+   * @return The result of the call.
+   * @throws Exception The exception thrown by the call.
+   */
+  public static <T> T time(Instrumentation.Stage stage, BlockchainId blockchainId, Callable<T> call)
+      throws Exception {
+    Instrumentation.Span span = start(stage, blockchainId);
+    T result;
+    try {
+      result = call.call();
+    } catch (Exception ex) {
+      span.fail(ex);
+      throw ex;
+    }
+    span.end();
+    return result;
+  }
+
+  private static Instrumentation load() {
+    Iterator<Instrumentation> providers = ServiceLoader.load(Instrumentation.class).iterator();
+    if (!providers.hasNext()) {
+      return NoOpInstrumentation.INSTANCE;
+    }
+    Instrumentation provider = providers.next();
+    LOG.info("Using instrumentation: {}", provider.getClass().getName());
+    return provider;
+  }
+}
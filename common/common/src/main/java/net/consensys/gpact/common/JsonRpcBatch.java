@@ -0,0 +1,166 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.gpact.common;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.BatchRequest;
+import org.web3j.protocol.core.BatchResponse;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+
+/**
+ * Queues JSON-RPC requests and sends them to the Ethereum Client as JSON-RPC batches, rather than
+ * one HTTP round trip per request. Each request that is added returns a future that is completed
+ * with the request's response when the batch is sent. As with Request.send, a response that
+ * contains a JSON-RPC error completes the future normally: callers should check hasError. Futures
+ * are completed exceptionally if the batch could not be sent.
+ *
+ * <p>Large numbers of requests are split into several batches, which are sent concurrently.
+ *
+ * <p>Usage:
+ *
+ * <pre>
+ *   JsonRpcBatch batch = new JsonRpcBatch(web3j);
+ *   CompletableFuture&lt;EthGasPrice&gt; gasPrice = batch.add(web3j.ethGasPrice());
+ *   CompletableFuture&lt;EthBlockNumber&gt; blockNumber = batch.add(web3j.ethBlockNumber());
+ *   batch.send();
+ *   BigInteger price = gasPrice.join().getGasPrice();
+ * </pre>
+ *
+ * <p>This class is not thread safe: requests should be added and the batch sent from one thread.
+ */
+public class JsonRpcBatch {
+  public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+
+  private final Web3j web3j;
+  private final int maxBatchSize;
+  private List<Queued<?>> queued = new ArrayList<>();
+
+  public JsonRpcBatch(Web3j web3j) {
+    this(web3j, DEFAULT_MAX_BATCH_SIZE);
+  }
+
+  /**
+   * @param web3j Client to send the batches using.
+   * @param maxBatchSize Maximum number of requests in a JSON-RPC batch. Some Ethereum Clients limit
+   *     the size of batches.
+   */
+  public JsonRpcBatch(Web3j web3j, int maxBatchSize) {
+    if (maxBatchSize <= 0) {
+      throw new IllegalArgumentException("Maximum batch size must be positive: " + maxBatchSize);
+    }
+    this.web3j = web3j;
+    this.maxBatchSize = maxBatchSize;
+  }
+
+  /**
+   * Queue a request to be sent in the next batch.
+   *
+   * @param request Request created using any Web3j or Web3jService.
+   * @return Future that is completed with the response when the batch is sent.
+   */
+  public <T extends Response<?>> CompletableFuture<T> add(Request<?, T> request) {
+    Queued<T> q = new Queued<>(request);
+    this.queued.add(q);
+    return q.future;
+  }
+
+  /** @return The number of requests waiting to be sent. */
+  public int size() {
+    return this.queued.size();
+  }
+
+  /**
+   * Send all queued requests.
+   *
+   * @return Future that is completed when the futures for all of the requests have been completed.
+   */
+  public CompletableFuture<Void> sendAsync() {
+    List<Queued<?>> toSend = this.queued;
+    this.queued = new ArrayList<>();
+
+    CompletableFuture<?>[] batches =
+        new CompletableFuture<?>[(toSend.size() + this.maxBatchSize - 1) / this.maxBatchSize];
+    for (int start = 0, i = 0; start < toSend.size(); start += this.maxBatchSize, i++) {
+      List<Queued<?>> requests =
+          toSend.subList(start, Math.min(start + this.maxBatchSize, toSend.size()));
+      BatchRequest batch = this.web3j.newBatch();
+      for (Queued<?> q : requests) {
+        batch.add(q.request);
+      }
+      batches[i] =
+          batch.sendAsync().handle((response, error) -> complete(requests, response, error));
+    }
+    return CompletableFuture.allOf(batches);
+  }
+
+  /**
+   * Send all queued requests, and wait for the responses.
+   *
+   * @throws IOException If a batch could not be sent.
+   */
+  public void send() throws IOException {
+    try {
+      sendAsync().get();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while sending JSON-RPC batch", ex);
+    } catch (ExecutionException ex) {
+      throw new IOException("JSON-RPC batch failed: " + ex.getCause().getMessage(), ex.getCause());
+    }
+  }
+
+  private static Void complete(List<Queued<?>> requests, BatchResponse response, Throwable error) {
+    if (error == null && response.getResponses().size() != requests.size()) {
+      error =
+          new IOException(
+              "Expected "
+                  + requests.size()
+                  + " responses in JSON-RPC batch, received "
+                  + response.getResponses().size());
+    }
+    for (int i = 0; i < requests.size(); i++) {
+      Queued<?> q = requests.get(i);
+      if (error != null) {
+        q.future.completeExceptionally(error);
+      } else {
+        q.complete(response.getResponses().get(i));
+      }
+    }
+    if (error != null) {
+      throw new CompletionException(error);
+    }
+    return null;
+  }
+
+  private static class Queued<T extends Response<?>> {
+    final Request<?, T> request;
+    final CompletableFuture<T> future = new CompletableFuture<>();
+
+    Queued(Request<?, T> request) {
+      this.request = request;
+    }
+
+    void complete(Response<?> response) {
+      this.future.complete(this.request.getResponseType().cast(response));
+    }
+  }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.gpact.common;
+
+/** Instrumentation that records nothing. This is used unless other instrumentation is set. */
+public class NoOpInstrumentation implements Instrumentation {
+  public static final NoOpInstrumentation INSTANCE = new NoOpInstrumentation();
+
+  private static final Span NO_OP_SPAN =
+      new Span() {
+        @Override
+        public void end() {}
+
+        @Override
+        public void fail(Throwable error) {}
+      };
+
+  @Override
+  public Span start(Stage stage, BlockchainId blockchainId) {
+    return NO_OP_SPAN;
+  }
+}
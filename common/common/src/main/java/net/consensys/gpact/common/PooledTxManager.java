@@ -0,0 +1,289 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.gpact.common;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.methods.response.EthGetCode;
+import org.web3j.protocol.core.methods.response.EthSendTransaction;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+import org.web3j.tx.TransactionManager;
+
+/**
+ * Transaction manager that spreads transactions across several accounts on the one blockchain. Each
+ * account has its own FastTxManager, and hence its own nonces, so transactions from different
+ * accounts do not wait for each other. The pool can be used anywhere a TransactionManager is used,
+ * for instance when loading a contract wrapper, or transactions can be submitted in batches using
+ * submit.
+ *
+ * <p>All transactions for a crosschain transaction must be submitted by the same account, as the
+ * crosschain control contract checks that segment and root transactions come from the account that
+ * submitted the start transaction. Transactions submitted with a crosschain transaction id are
+ * pinned to one account until unpin is called.
+ *
+ * <p>Calls (eth_call) and the from address reported to contract wrappers use the first account.
+ */
+public class PooledTxManager extends TransactionManager {
+  private static final Logger LOG = LogManager.getLogger(PooledTxManager.class);
+
+  /** How an account is chosen for each transaction. */
+  public enum Strategy {
+    // Use each account in turn.
+    ROUND_ROBIN,
+    // Use the account with the fewest transactions waiting for receipts.
+    LEAST_LOADED
+  }
+
+  private final List<FastTxManager> accounts;
+  private final List<TransactionBatcher> batchers;
+  private final BlockTransactionReceiptProcessor receiptProcessor;
+  private final AtomicInteger[] inFlight;
+  private final Strategy strategy;
+  private final AtomicInteger next = new AtomicInteger();
+
+  // Index of the account used for each crosschain transaction.
+  private final Map<BigInteger, Integer> pinned = new ConcurrentHashMap<>();
+
+  /**
+   * Create a pool.
+   *
+   * @param accounts Transaction managers for each account. All must be for the same blockchain.
+   * @param batchers Transaction batcher for each account, in the same order as the accounts, or
+   *     null if transactions will not be submitted using submit.
+   * @param receiptProcessor Used to wait for transaction receipts.
+   * @param strategy How to choose the account for each transaction.
+   */
+  public PooledTxManager(
+      List<FastTxManager> accounts,
+      List<TransactionBatcher> batchers,
+      BlockTransactionReceiptProcessor receiptProcessor,
+      Strategy strategy) {
+    super(receiptProcessor, firstAddress(accounts));
+    if (batchers != null && batchers.size() != accounts.size()) {
+      throw new IllegalArgumentException("One batcher is needed for each account");
+    }
+    this.accounts = Collections.unmodifiableList(new ArrayList<>(accounts));
+    this.batchers =
+        batchers == null ? null : Collections.unmodifiableList(new ArrayList<>(batchers));
+    this.receiptProcessor = receiptProcessor;
+    this.strategy = strategy;
+    this.inFlight = new AtomicInteger[accounts.size()];
+    for (int i = 0; i < this.inFlight.length; i++) {
+      this.inFlight[i] = new AtomicInteger();
+    }
+    LOG.info("Created pool of {} accounts, strategy: {}", accounts.size(), strategy);
+  }
+
+  @Override
+  public EthSendTransaction sendTransaction(
+      BigInteger gasPrice,
+      BigInteger gasLimit,
+      String to,
+      String data,
+      BigInteger value,
+      boolean constructor)
+      throws IOException {
+    int index = chooseAccount();
+    EthSendTransaction response =
+        this.accounts.get(index).sendTransaction(gasPrice, gasLimit, to, data, value, constructor);
+    track(index, response);
+    return response;
+  }
+
+  @Override
+  public EthSendTransaction sendEIP1559Transaction(
+      long chainId,
+      BigInteger maxPriorityFeePerGas,
+      BigInteger maxFeePerGas,
+      BigInteger gasLimit,
+      String to,
+      String data,
+      BigInteger value,
+      boolean constructor)
+      throws IOException {
+    int index = chooseAccount();
+    EthSendTransaction response =
+        this.accounts
+            .get(index)
+            .sendEIP1559Transaction(
+                chainId,
+                maxPriorityFeePerGas,
+                maxFeePerGas,
+                gasLimit,
+                to,
+                data,
+                value,
+                constructor);
+    track(index, response);
+    return response;
+  }
+
+  @Override
+  public String sendCall(String to, String data, DefaultBlockParameter defaultBlockParameter)
+      throws IOException {
+    return this.accounts.get(0).sendCall(to, data, defaultBlockParameter);
+  }
+
+  @Override
+  public EthGetCode getCode(String contractAddress, DefaultBlockParameter defaultBlockParameter)
+      throws IOException {
+    return this.accounts.get(0).getCode(contractAddress, defaultBlockParameter);
+  }
+
+  /**
+   * Submit a transaction in a batch with other transactions from the same account.
+   *
+   * @param crosschainTransactionId Crosschain transaction the transaction is part of. The
+   *     transaction is submitted by the account pinned to the crosschain transaction, choosing and
+   *     pinning an account if none is pinned yet. If null, any account can be used.
+   * @param gasPrice Gas price to use.
+   * @param gasLimit Gas limit to use.
+   * @param to Address of the contract to call.
+   * @param data Encoded function call.
+   * @return Future that completes with the transaction receipt.
+   */
+  public CompletableFuture<TransactionReceipt> submit(
+      BigInteger crosschainTransactionId,
+      BigInteger gasPrice,
+      BigInteger gasLimit,
+      String to,
+      String data) {
+    if (this.batchers == null) {
+      throw new IllegalStateException("Pool was created without transaction batchers");
+    }
+    int index =
+        crosschainTransactionId == null ? chooseAccount() : pinIndex(crosschainTransactionId);
+    this.inFlight[index].incrementAndGet();
+    return this.batchers
+        .get(index)
+        .submit(gasPrice, gasLimit, to, data)
+        .whenComplete((txR, ex) -> this.inFlight[index].decrementAndGet());
+  }
+
+  /**
+   * Get the account pinned to a crosschain transaction, choosing and pinning an account if none is
+   * pinned yet.
+   *
+   * @param crosschainTransactionId Crosschain transaction id.
+   * @return Transaction manager for the account.
+   */
+  public FastTxManager pin(BigInteger crosschainTransactionId) {
+    return this.accounts.get(pinIndex(crosschainTransactionId));
+  }
+
+  /**
+   * Pin a crosschain transaction to a specific account. This is used on blockchains other than the
+   * one the crosschain transaction was started on, to use the account that submitted the start
+   * transaction.
+   *
+   * @param crosschainTransactionId Crosschain transaction id.
+   * @param address Address of the account to use.
+   * @return Transaction manager for the account.
+   * @throws IllegalArgumentException If the account is not in the pool.
+   */
+  public FastTxManager pin(BigInteger crosschainTransactionId, String address) {
+    for (int i = 0; i < this.accounts.size(); i++) {
+      if (this.accounts.get(i).getFromAddress().equalsIgnoreCase(address)) {
+        this.pinned.put(crosschainTransactionId, i);
+        return this.accounts.get(i);
+      }
+    }
+    throw new IllegalArgumentException("Account " + address + " is not in the pool");
+  }
+
+  /**
+   * Stop using the same account for a crosschain transaction.
+   *
+   * @param crosschainTransactionId Crosschain transaction id.
+   */
+  public void unpin(BigInteger crosschainTransactionId) {
+    this.pinned.remove(crosschainTransactionId);
+  }
+
+  /** @return The number of crosschain transactions pinned to an account. */
+  public int getNumPinned() {
+    return this.pinned.size();
+  }
+
+  /**
+   * Choose the account to use for the next transaction.
+   *
+   * @return Transaction manager for the chosen account.
+   */
+  public FastTxManager nextAccount() {
+    return this.accounts.get(chooseAccount());
+  }
+
+  public List<FastTxManager> getAccounts() {
+    return this.accounts;
+  }
+
+  /** @return The number of transactions from each account that are waiting for receipts. */
+  public int[] getInFlight() {
+    int[] counts = new int[this.inFlight.length];
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] = this.inFlight[i].get();
+    }
+    return counts;
+  }
+
+  private static String firstAddress(List<FastTxManager> accounts) {
+    if (accounts.isEmpty()) {
+      throw new IllegalArgumentException("Pool must have at least one account");
+    }
+    return accounts.get(0).getFromAddress();
+  }
+
+  private int pinIndex(BigInteger crosschainTransactionId) {
+    return this.pinned.computeIfAbsent(crosschainTransactionId, id -> chooseAccount());
+  }
+
+  private int chooseAccount() {
+    int size = this.accounts.size();
+    if (this.strategy == Strategy.ROUND_ROBIN || size == 1) {
+      return Math.floorMod(this.next.getAndIncrement(), size);
+    }
+    // Start the search at a rotating position so ties are spread across accounts.
+    int start = Math.floorMod(this.next.getAndIncrement(), size);
+    int best = start;
+    for (int i = 1; i < size; i++) {
+      int index = (start + i) % size;
+      if (this.inFlight[index].get() < this.inFlight[best].get()) {
+        best = index;
+      }
+    }
+    return best;
+  }
+
+  // The transaction is in flight until its receipt arrives, whoever is waiting for the receipt.
+  private void track(int index, EthSendTransaction response) {
+    if (!response.hasError() && response.getTransactionHash() != null) {
+      this.inFlight[index].incrementAndGet();
+      this.receiptProcessor
+          .waitForTransactionReceiptAsync(response.getTransactionHash())
+          .whenComplete((txR, ex) -> this.inFlight[index].decrementAndGet());
+    }
+  }
+}
@@ -15,59 +15,139 @@
 package net.consensys.gpact.common;
 
 import java.math.BigInteger;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+/**
+ * Statistics about the transactions submitted by a process. Gas used and latency are recorded in
+ * histograms for each type of event, so that percentiles can be reported however long the process
+ * runs. The most recent events are also kept, so the sequence of events can be printed. All methods
+ * can be called from multiple threads at once.
+ */
 public class StatsHolder {
   private static final Logger LOG = LogManager.getLogger(StatsHolder.class);
 
-  private static StatsHolder instance;
+  // Number of recent events that are kept to be printed.
+  static final int MAX_RECENT_EVENTS = 1024;
 
-  List<Stats> stats = new ArrayList<>();
+  private static final StatsHolder instance = new StatsHolder();
 
-  private static StatsHolder getInstance() {
-    if (instance == null) {
-      instance = new StatsHolder();
-    }
-    return instance;
-  }
+  private final Map<String, ConcurrentHistogram> gas = new ConcurrentHashMap<>();
+  private final Map<String, ConcurrentHistogram> latency = new ConcurrentHashMap<>();
+  private final AtomicReferenceArray<Stats> recent = new AtomicReferenceArray<>(MAX_RECENT_EVENTS);
+  private final AtomicLong numEvents = new AtomicLong();
 
   public static void log(String event) {
-    getInstance().stats.add(new Stats(event));
+    instance.add(new Stats(event));
   }
 
   public static void logGas(String event, BigInteger gas) {
-    getInstance().stats.add(new Stats(event, gas));
+    instance.add(new Stats(event, gas));
+    instance.gas.computeIfAbsent(event, k -> new ConcurrentHistogram()).record(gas.longValue());
+  }
+
+  /**
+   * Record how long an event took, for example how long it took to get the transaction receipt for
+   * a transaction.
+   *
+   * @param event Type of event.
+   * @param startNanoTime Value of System.nanoTime() when the event started.
+   */
+  public static void logLatency(String event, long startNanoTime) {
+    instance
+        .latency
+        .computeIfAbsent(event, k -> new ConcurrentHistogram())
+        .record(System.nanoTime() - startNanoTime);
+  }
+
+  /**
+   * @param event Type of event.
+   * @return Gas used by the event, or null if no gas has been recorded for the event.
+   */
+  public static ConcurrentHistogram.Snapshot getGas(String event) {
+    ConcurrentHistogram histogram = instance.gas.get(event);
+    return histogram == null ? null : histogram.getSnapshot();
+  }
+
+  /**
+   * @param event Type of event.
+   * @return Latency in nanoseconds of the event, or null if no latency has been recorded.
+   */
+  public static ConcurrentHistogram.Snapshot getLatency(String event) {
+    ConcurrentHistogram histogram = instance.latency.get(event);
+    return histogram == null ? null : histogram.getSnapshot();
+  }
+
+  /** Discard all statistics. */
+  public static void reset() {
+    instance.gas.clear();
+    instance.latency.clear();
+    for (int i = 0; i < MAX_RECENT_EVENTS; i++) {
+      instance.recent.set(i, null);
+    }
+    instance.numEvents.set(0);
   }
 
   public static void print() {
-    getInstance().printAll();
+    instance.printAll();
+  }
+
+  private void add(Stats stats) {
+    long index = this.numEvents.getAndIncrement();
+    this.recent.set((int) (index % MAX_RECENT_EVENTS), stats);
   }
 
   public void printAll() {
     LOG.info("Stats");
-    if (this.stats.isEmpty()) {
+    long total = this.numEvents.get();
+    if (total == 0) {
       LOG.info(" NONE");
     }
-    for (Stats s : this.stats) {
+    long first = Math.max(0, total - MAX_RECENT_EVENTS);
+    if (first > 0) {
+      LOG.info(" Showing the most recent {} of {} events", MAX_RECENT_EVENTS, total);
+    }
+    for (long i = first; i < total; i++) {
+      Stats s = this.recent.get((int) (i % MAX_RECENT_EVENTS));
+      if (s == null) {
+        continue;
+      }
       if (s.gas == null) {
         LOG.info("{} {} {}", s.timestamp, s.nanoTime, s.event);
       } else {
         LOG.info("{} {} {}: gas: {}", s.timestamp, s.nanoTime, s.event, s.gas);
       }
     }
+
+    for (Map.Entry<String, ConcurrentHistogram> entry : new TreeMap<>(this.gas).entrySet()) {
+      LOG.info(" {}: gas: {}", entry.getKey(), entry.getValue().getSnapshot());
+    }
+    for (Map.Entry<String, ConcurrentHistogram> entry : new TreeMap<>(this.latency).entrySet()) {
+      ConcurrentHistogram.Snapshot snapshot = entry.getValue().getSnapshot();
+      LOG.info(
+          " {}: latency ms: count: {}, p50: {}, p99: {}, max: {}",
+          entry.getKey(),
+          snapshot.getCount(),
+          TimeUnit.NANOSECONDS.toMillis(snapshot.getValueAtPercentile(50)),
+          TimeUnit.NANOSECONDS.toMillis(snapshot.getValueAtPercentile(99)),
+          TimeUnit.NANOSECONDS.toMillis(snapshot.getMax()));
+    }
   }
 
   static class Stats {
-    String event;
-    BigInteger gas;
-    long timestamp = System.currentTimeMillis();
-    long nanoTime = System.nanoTime();
+    final String event;
+    final BigInteger gas;
+    final long timestamp = System.currentTimeMillis();
+    final long nanoTime = System.nanoTime();
 
     Stats(String event) {
-      this.event = event;
+      this(event, null);
     }
 
     Stats(String event, BigInteger gas) {
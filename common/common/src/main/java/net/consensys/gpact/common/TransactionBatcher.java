@@ -0,0 +1,347 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.gpact.common;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.web3j.crypto.Hash;
+import org.web3j.crypto.RawTransaction;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.BatchRequest;
+import org.web3j.protocol.core.BatchResponse;
+import org.web3j.protocol.core.methods.response.EthSendTransaction;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+
+/**
+ * Collects transactions submitted from one account to one blockchain over a short window, signs
+ * them with nonces from the transaction manager, and submits them in one JSON RPC batch request.
+ * Receipts are resolved by the blockchain's BlockTransactionReceiptProcessor, rather than by
+ * polling for each transaction.
+ *
+ * <p>One batcher exists per transaction manager, so that all transactions from an account to a
+ * blockchain, for instance segment, root and signalling transactions for many concurrent crosschain
+ * transactions, are batched together.
+ *
+ * <p>If a transaction is not accepted, the transaction manager reuses its nonce for a later
+ * transaction. If no later transaction reuses the nonce within the nonce gap timeout, a zero value
+ * transfer is submitted with the nonce, so that transactions with higher nonces are not stuck
+ * behind the gap.
+ */
+public class TransactionBatcher {
+  private static final Logger LOG = LogManager.getLogger(TransactionBatcher.class);
+
+  // Submit a batch once it has this many transactions, without waiting for the window to end.
+  public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+  // Fraction of the block period to wait for other transactions to batch with.
+  private static final int BLOCK_PERIOD_FRACTION = 10;
+
+  private final FastTxManager tm;
+  private final Web3j web3j;
+  private final BlockTransactionReceiptProcessor receiptProcessor;
+  private final ScheduledExecutorService scheduler;
+  private final long batchWindow;
+  private final int maxBatchSize;
+  private final long nonceGapTimeout;
+
+  // Gas price of the most recently submitted transaction. Used for transactions that fill gaps.
+  private volatile BigInteger lastGasPrice;
+  // Guarded by this.
+  private List<PendingTransaction> pending = new ArrayList<>();
+  private boolean flushScheduled = false;
+  private boolean gapFillScheduled = false;
+
+  /**
+   * Create a batcher.
+   *
+   * @param tm Transaction manager used to allocate nonces and sign transactions.
+   * @param web3j Connection to the blockchain.
+   * @param receiptProcessor Used to wait for transaction receipts.
+   * @param scheduler Scheduler used to submit batches.
+   * @param batchWindow Time in milliseconds to wait for other transactions before submitting.
+   * @param maxBatchSize Maximum number of transactions to submit in one batch.
+   */
+  public TransactionBatcher(
+      FastTxManager tm,
+      Web3j web3j,
+      BlockTransactionReceiptProcessor receiptProcessor,
+      ScheduledExecutorService scheduler,
+      long batchWindow,
+      int maxBatchSize) {
+    this(
+        tm,
+        web3j,
+        receiptProcessor,
+        scheduler,
+        batchWindow,
+        maxBatchSize,
+        batchWindow * BLOCK_PERIOD_FRACTION);
+  }
+
+  /**
+   * Create a batcher.
+   *
+   * @param tm Transaction manager used to allocate nonces and sign transactions.
+   * @param web3j Connection to the blockchain.
+   * @param receiptProcessor Used to wait for transaction receipts.
+   * @param scheduler Scheduler used to submit batches.
+   * @param batchWindow Time in milliseconds to wait for other transactions before submitting.
+   * @param maxBatchSize Maximum number of transactions to submit in one batch.
+   * @param nonceGapTimeout Time in milliseconds to wait for a released nonce to be reused before
+   *     filling the gap with a zero value transfer.
+   */
+  public TransactionBatcher(
+      FastTxManager tm,
+      Web3j web3j,
+      BlockTransactionReceiptProcessor receiptProcessor,
+      ScheduledExecutorService scheduler,
+      long batchWindow,
+      int maxBatchSize,
+      long nonceGapTimeout) {
+    this.tm = tm;
+    this.web3j = web3j;
+    this.receiptProcessor = receiptProcessor;
+    this.scheduler = scheduler;
+    this.batchWindow = batchWindow;
+    this.maxBatchSize = maxBatchSize;
+    this.nonceGapTimeout = nonceGapTimeout;
+  }
+
+  /**
+   * Return the batcher for a transaction manager, creating it if needed. The batcher is shared by
+   * the users of the Web3j client, and is discarded when the client is shut down.
+   *
+   * @param client Web3j client for the blockchain.
+   * @param tm Transaction manager used to allocate nonces and sign transactions.
+   * @param receiptProcessor Used to wait for transaction receipts.
+   * @param blockPeriod Block period of the blockchain in milliseconds.
+   * @return The batcher for the transaction manager.
+   */
+  public static TransactionBatcher getOrCreate(
+      Web3jRegistry.Client client,
+      FastTxManager tm,
+      BlockTransactionReceiptProcessor receiptProcessor,
+      long blockPeriod) {
+    return client.getShared(
+        Arrays.asList(TransactionBatcher.class, tm),
+        TransactionBatcher.class,
+        () ->
+            new TransactionBatcher(
+                tm,
+                client.getWeb3j(),
+                receiptProcessor,
+                client.getScheduler(),
+                blockPeriod / BLOCK_PERIOD_FRACTION,
+                DEFAULT_MAX_BATCH_SIZE));
+  }
+
+  /**
+   * Queue a transaction to be submitted with the next batch.
+   *
+   * @param gasPrice Gas price to use.
+   * @param gasLimit Gas limit to use.
+   * @param to Contract address.
+   * @param data Encoded function call.
+   * @return Future that completes with the transaction receipt. The future completes normally if
+   *     the transaction reverts: callers need to check the status of the transaction receipt.
+   */
+  public CompletableFuture<TransactionReceipt> submit(
+      BigInteger gasPrice, BigInteger gasLimit, String to, String data) {
+    PendingTransaction tx = new PendingTransaction(gasPrice, gasLimit, to, data);
+    this.lastGasPrice = gasPrice;
+    tx.submitSpan =
+        Instrumentations.start(Instrumentation.Stage.TX_SUBMIT, this.tm.getBlockchainId());
+    synchronized (this) {
+      this.pending.add(tx);
+      if (this.pending.size() >= this.maxBatchSize) {
+        this.scheduler.execute(this::flush);
+      } else if (!this.flushScheduled) {
+        this.flushScheduled = true;
+        this.scheduler.schedule(this::flush, this.batchWindow, TimeUnit.MILLISECONDS);
+      }
+    }
+    return tx.receipt;
+  }
+
+  private void flush() {
+    List<PendingTransaction> batch;
+    synchronized (this) {
+      this.flushScheduled = false;
+      if (this.pending.isEmpty()) {
+        return;
+      }
+      batch = this.pending;
+      this.pending = new ArrayList<>();
+    }
+
+    BatchRequest request = this.web3j.newBatch();
+    List<PendingTransaction> signed = new ArrayList<>(batch.size());
+    for (PendingTransaction tx : batch) {
+      try {
+        RawTransaction rawTransaction =
+            this.tm.createTransaction(tx.gasPrice, tx.gasLimit, tx.to, tx.data, BigInteger.ZERO);
+        tx.nonce = rawTransaction.getNonce().longValueExact();
+        tx.signed = this.tm.sign(rawTransaction);
+        request.add(this.web3j.ethSendRawTransaction(tx.signed));
+        signed.add(tx);
+      } catch (IOException ex) {
+        tx.submitSpan.fail(ex);
+        tx.receipt.completeExceptionally(ex);
+      }
+    }
+    if (signed.isEmpty()) {
+      return;
+    }
+    LOG.debug("Submitting batch of {} transactions", signed.size());
+    request.sendAsync().whenComplete((response, ex) -> processResponses(signed, response, ex));
+  }
+
+  private void processResponses(
+      List<PendingTransaction> signed, BatchResponse response, Throwable error) {
+    if (error != null) {
+      // None of the transactions were submitted. Release the nonces highest first, so the
+      // transaction manager can rewind rather than having to track gaps.
+      for (int i = signed.size() - 1; i >= 0; i--) {
+        this.tm.releaseNonce(signed.get(i).nonce);
+        signed.get(i).submitSpan.fail(error);
+        signed.get(i).receipt.completeExceptionally(error);
+      }
+      return;
+    }
+
+    for (int i = 0; i < signed.size(); i++) {
+      PendingTransaction tx = signed.get(i);
+      EthSendTransaction sendResponse = (EthSendTransaction) response.getResponses().get(i);
+      String txHash = sendResponse.getTransactionHash();
+      if (sendResponse.hasError() && FastTxManager.isAlreadyKnown(sendResponse.getError())) {
+        // The transaction is pending, so wait for its receipt.
+        LOG.debug("Transaction already known: nonce {}", tx.nonce);
+        txHash = Hash.sha3(tx.signed);
+      } else if (sendResponse.hasError()) {
+        LOG.error("Error submitting transaction: {}", sendResponse.getError().getMessage());
+        RuntimeException rejected =
+            new RuntimeException(
+                "Error processing transaction request: " + sendResponse.getError().getMessage());
+        tx.submitSpan.fail(rejected);
+        // Transactions that were not accepted leave a gap in the nonces that would stop later
+        // transactions from being included in blocks. The transaction manager reuses the nonce.
+        try {
+          this.tm.transactionRejected(tx.nonce, sendResponse.getError());
+        } catch (IOException ex) {
+          LOG.error("Error resynchronising nonce: {}", ex.getMessage());
+        }
+        tx.receipt.completeExceptionally(rejected);
+        continue;
+      }
+      tx.submitSpan.end();
+      this.receiptProcessor
+          .waitForTransactionReceiptAsync(txHash)
+          .whenComplete(
+              (receipt, receiptError) -> {
+                if (receiptError != null) {
+                  tx.receipt.completeExceptionally(receiptError);
+                } else {
+                  tx.receipt.complete(receipt);
+                }
+              });
+    }
+    if (this.tm.getNumReleasedNonces() > 0) {
+      scheduleGapFill();
+    }
+  }
+
+  private synchronized void scheduleGapFill() {
+    if (!this.gapFillScheduled) {
+      this.gapFillScheduled = true;
+      this.scheduler.schedule(this::fillNonceGaps, this.nonceGapTimeout, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  // Submit zero value transfers for nonces that were released and have not been reused by later
+  // transactions within the nonce gap timeout.
+  private void fillNonceGaps() {
+    synchronized (this) {
+      this.gapFillScheduled = false;
+    }
+    List<Long> nonces = this.tm.takeReleasedNonces(this.nonceGapTimeout);
+    if (nonces.isEmpty()) {
+      if (this.tm.getNumReleasedNonces() > 0) {
+        // Nonces were released recently: check them once they have timed out.
+        scheduleGapFill();
+      }
+      return;
+    }
+
+    LOG.info("Filling {} nonce gaps, starting at nonce {}", nonces.size(), nonces.get(0));
+    BatchRequest request = this.web3j.newBatch();
+    for (long nonce : nonces) {
+      RawTransaction noOp = this.tm.createNoOpTransaction(nonce, this.lastGasPrice);
+      request.add(this.web3j.ethSendRawTransaction(this.tm.sign(noOp)));
+    }
+    request
+        .sendAsync()
+        .whenComplete(
+            (response, ex) -> {
+              for (int i = nonces.size() - 1; i >= 0; i--) {
+                long nonce = nonces.get(i);
+                if (ex != null) {
+                  this.tm.releaseNonce(nonce);
+                  continue;
+                }
+                EthSendTransaction sendResponse =
+                    (EthSendTransaction) response.getResponses().get(i);
+                if (sendResponse.hasError()) {
+                  LOG.error(
+                      "Error filling nonce gap {}: {}",
+                      nonce,
+                      sendResponse.getError().getMessage());
+                  try {
+                    this.tm.transactionRejected(nonce, sendResponse.getError());
+                  } catch (IOException ioEx) {
+                    LOG.error("Error resynchronising nonce: {}", ioEx.getMessage());
+                  }
+                }
+              }
+              if (this.tm.getNumReleasedNonces() > 0) {
+                scheduleGapFill();
+              }
+            });
+  }
+
+  private static class PendingTransaction {
+    final BigInteger gasPrice;
+    final BigInteger gasLimit;
+    final String to;
+    final String data;
+    final CompletableFuture<TransactionReceipt> receipt = new CompletableFuture<>();
+    long nonce;
+    String signed;
+    Instrumentation.Span submitSpan;
+
+    PendingTransaction(BigInteger gasPrice, BigInteger gasLimit, String to, String data) {
+      this.gasPrice = gasPrice;
+      this.gasLimit = gasLimit;
+      this.to = to;
+      this.data = data;
+    }
+  }
+}
@@ -1,28 +1,89 @@
 package net.consensys.gpact.common;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import org.web3j.crypto.Credentials;
-import org.web3j.protocol.Web3j;
 import org.web3j.tx.response.TransactionReceiptProcessor;
 
 public class TxManagerCache {
 
-  private static Map<String, FastTxManager> txManagers = new HashMap();
+  private static Map<String, Entry> txManagers = new HashMap();
 
+  /**
+   * Return the transaction manager for an account, creating it if needed. If the transaction
+   * manager was created using a Web3j client that has since been shut down, it is replaced by a
+   * transaction manager that uses the client passed in.
+   *
+   * @param client Web3j client for the blockchain.
+   * @param credentials Account to return the transaction manager for.
+   * @param chainId Blockchain id.
+   * @param transactionReceiptProcessor Used to wait for transaction receipts.
+   * @return The transaction manager for the account.
+   */
   public static FastTxManager getOrCreate(
-      Web3j web3j,
+      Web3jRegistry.Client client,
       Credentials credentials,
       long chainId,
       TransactionReceiptProcessor transactionReceiptProcessor) {
     synchronized (TxManagerCache.class) {
       String key = credentials.getAddress() + chainId;
-      FastTxManager txManager = txManagers.get(key);
-      if (txManager == null) {
-        txManager = new FastTxManager(web3j, credentials, chainId, transactionReceiptProcessor);
-        txManagers.put(key, txManager);
+      Entry entry = txManagers.get(key);
+      if (entry != null && entry.client.isShutdown()) {
+        entry.txManager.retire();
+        entry = null;
       }
-      return txManager;
+      if (entry == null) {
+        entry =
+            new Entry(
+                new FastTxManager(
+                    client.getWeb3j(), credentials, chainId, transactionReceiptProcessor),
+                client);
+        txManagers.put(key, entry);
+      }
+      return entry.txManager;
+    }
+  }
+
+  /**
+   * Create a transaction manager that spreads transactions across several accounts. The transaction
+   * manager and transaction batcher for each account are shared with other users of the account.
+   *
+   * @param client Web3j client for the blockchain.
+   * @param accounts Accounts to use.
+   * @param chainId Blockchain id.
+   * @param transactionReceiptProcessor Used to wait for transaction receipts.
+   * @param strategy How to choose the account for each transaction.
+   * @return Pooled transaction manager.
+   */
+  public static PooledTxManager createPool(
+      Web3jRegistry.Client client,
+      List<Credentials> accounts,
+      long chainId,
+      BlockTransactionReceiptProcessor transactionReceiptProcessor,
+      PooledTxManager.Strategy strategy) {
+    List<FastTxManager> txManagers = new ArrayList<>();
+    List<TransactionBatcher> batchers = new ArrayList<>();
+    for (Credentials credentials : accounts) {
+      FastTxManager txManager =
+          getOrCreate(client, credentials, chainId, transactionReceiptProcessor);
+      txManagers.add(txManager);
+      batchers.add(
+          TransactionBatcher.getOrCreate(
+              client, txManager, transactionReceiptProcessor, client.getPollingInterval()));
+    }
+    return new PooledTxManager(txManagers, batchers, transactionReceiptProcessor, strategy);
+  }
+
+  private static class Entry {
+    final FastTxManager txManager;
+    // Client the transaction manager's Web3j belongs to.
+    final Web3jRegistry.Client client;
+
+    Entry(FastTxManager txManager, Web3jRegistry.Client client) {
+      this.txManager = txManager;
+      this.client = client;
     }
   }
 }
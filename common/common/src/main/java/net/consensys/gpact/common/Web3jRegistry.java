@@ -0,0 +1,201 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.gpact.common;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.http.HttpService;
+
+/**
+ * Shares one Web3j client per Ethereum Client URI. Each client has its own OkHttp connection pool
+ * and dispatcher, and a small scheduler, rather than each contract wrapper or user of a blockchain
+ * having its own. Clients are reference counted: each call to acquire must be matched by a call to
+ * release, and the client is shut down when the last user releases it.
+ *
+ * <p>Objects that use a client, such as transaction managers and receipt processors, can be shared
+ * through the client using getShared. They are discarded when the client is shut down, so that they
+ * are never used with a Web3j client or scheduler that has been shut down.
+ */
+public class Web3jRegistry {
+  private static final Logger LOG = LogManager.getLogger(Web3jRegistry.class);
+
+  private static final int SCHEDULER_THREADS = 2;
+  private static final int MAX_IDLE_CONNECTIONS = 32;
+  private static final long KEEP_ALIVE_MINUTES = 5;
+  // Many transactions and receipt requests can be in flight to the one Ethereum Client.
+  private static final int MAX_REQUESTS_PER_HOST = 64;
+
+  private static final Map<String, Client> clients = new HashMap<>();
+
+  /**
+   * Return the client for a URI, creating it if needed.
+   *
+   * @param uri URI of the Ethereum Client.
+   * @param pollingInterval Polling interval in milliseconds, used if the client is created. All
+   *     users of a URI share the one client, and so the one nonce tracking transaction manager per
+   *     account, so later users with a different polling interval use the client's interval.
+   * @return The client.
+   */
+  public static synchronized Client acquire(String uri, long pollingInterval) {
+    Client client = clients.get(uri);
+    if (client == null) {
+      client = new Client(uri, pollingInterval);
+      clients.put(uri, client);
+      LOG.debug("Created Web3j client for {}, polling interval {} ms", uri, pollingInterval);
+    } else if (client.pollingInterval != pollingInterval) {
+      LOG.debug(
+          "Web3j client for {} uses polling interval {} ms rather than {} ms",
+          uri,
+          client.pollingInterval,
+          pollingInterval);
+    }
+    client.references.incrementAndGet();
+    return client;
+  }
+
+  /**
+   * Release a client that was returned by acquire. The client is shut down if there are no other
+   * users of it.
+   *
+   * @param client The client to release.
+   */
+  public static synchronized void release(Client client) {
+    int remaining = client.references.decrementAndGet();
+    if (remaining > 0) {
+      return;
+    }
+    if (remaining < 0) {
+      throw new IllegalStateException("Web3j client released too many times: " + client.uri);
+    }
+    clients.remove(client.uri, client);
+    client.shutdown();
+    LOG.debug("Shut down Web3j client for {}", client.uri);
+  }
+
+  /** @return The number of clients that have not been shut down. */
+  public static synchronized int getNumClients() {
+    return clients.size();
+  }
+
+  /** A Web3j client shared by all users of an Ethereum Client URI. */
+  public static class Client {
+    private final String uri;
+    private final long pollingInterval;
+    private final OkHttpClient httpClient;
+    private final HttpService service;
+    private final ScheduledExecutorService scheduler;
+    private final Web3j web3j;
+    private final AtomicInteger references = new AtomicInteger();
+    // Guarded by itself.
+    private final Map<Object, Object> shared = new HashMap<>();
+
+    private Client(String uri, long pollingInterval) {
+      this.uri = uri;
+      this.pollingInterval = pollingInterval;
+      Dispatcher dispatcher = new Dispatcher();
+      dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+      dispatcher.setMaxRequests(MAX_REQUESTS_PER_HOST);
+      this.httpClient =
+          new OkHttpClient.Builder()
+              .connectionPool(
+                  new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+              .dispatcher(dispatcher)
+              .build();
+      this.service = new HttpService(uri, this.httpClient);
+      ScheduledThreadPoolExecutor executor =
+          new ScheduledThreadPoolExecutor(
+              SCHEDULER_THREADS,
+              r -> {
+                Thread thread = new Thread(r, "web3j-scheduler-" + uri);
+                thread.setDaemon(true);
+                return thread;
+              });
+      executor.setRemoveOnCancelPolicy(true);
+      this.scheduler = executor;
+      this.web3j = Web3j.build(this.service, pollingInterval, this.scheduler);
+    }
+
+    public String getUri() {
+      return this.uri;
+    }
+
+    public long getPollingInterval() {
+      return this.pollingInterval;
+    }
+
+    /** @return true if the last user has released the client. */
+    public boolean isShutdown() {
+      return this.references.get() <= 0;
+    }
+
+    public Web3j getWeb3j() {
+      return this.web3j;
+    }
+
+    public Web3jService getService() {
+      return this.service;
+    }
+
+    public ScheduledExecutorService getScheduler() {
+      return this.scheduler;
+    }
+
+    /**
+     * Return an object that is shared by all users of this client, creating it if needed.
+     *
+     * @param key Identifies the object. Keys must include the type of the object.
+     * @param type Type of the object.
+     * @param create Creates the object if it does not exist yet.
+     * @param <T> Type of the object.
+     * @return The shared object.
+     * @throws IllegalStateException If the client has been shut down.
+     */
+    public <T> T getShared(Object key, Class<T> type, Supplier<T> create) {
+      synchronized (this.shared) {
+        if (isShutdown()) {
+          throw new IllegalStateException("Web3j client has been shut down: " + this.uri);
+        }
+        Object object = this.shared.get(key);
+        if (object == null) {
+          object = create.get();
+          this.shared.put(key, object);
+        }
+        return type.cast(object);
+      }
+    }
+
+    private void shutdown() {
+      synchronized (this.shared) {
+        this.shared.clear();
+      }
+      // Shuts down the scheduler.
+      this.web3j.shutdown();
+      this.httpClient.dispatcher().executorService().shutdown();
+      this.httpClient.connectionPool().evictAll();
+    }
+  }
+}
@@ -12,87 +12,85 @@
  */
 package net.consensys.gpact.utils.crypto;
 
-import static java.security.DrbgParameters.Capability.RESEED_ONLY;
-
-import com.google.common.primitives.Bytes;
-import com.google.common.primitives.Ints;
-import com.google.common.primitives.Longs;
 import java.math.BigInteger;
-import java.net.NetworkInterface;
-import java.net.SocketException;
-import java.nio.BufferOverflowException;
-import java.nio.ByteBuffer;
-import java.security.DrbgParameters;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
-import java.security.SecureRandom;
 import java.security.Security;
 import java.security.interfaces.ECPrivateKey;
 import java.security.spec.ECGenParameterSpec;
-import java.util.Arrays;
-import java.util.Enumeration;
+import java.util.ArrayList;
+import java.util.List;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 
-/** Generate one or more key pairs for use in the sample code. */
+/**
+ * Generate one or more key pairs for use in the sample code. Key pair generators are created once
+ * per thread and use the thread's DRBG from {@link RandomSource}, so creating instances of this
+ * class is cheap.
+ */
 public class KeyPairGen {
-  private final KeyPairGenerator keyPairGenerator;
-
   static {
     if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null) {
       Security.addProvider(new BouncyCastleProvider());
     }
   }
 
-  public KeyPairGen() {
-    // TODO don't create a PRNG each call
-    try {
-      final SecureRandom rand =
-          SecureRandom.getInstance(
-              "DRBG", DrbgParameters.instantiation(256, RESEED_ONLY, getPersonalizationString()));
-      this.keyPairGenerator = KeyPairGenerator.getInstance("ECDSA", "BC");
-      final ECGenParameterSpec ecGenParameterSpec = new ECGenParameterSpec("secp256k1");
-      this.keyPairGenerator.initialize(ecGenParameterSpec, rand);
-    } catch (final Exception e) {
-      throw new RuntimeException(e);
-    }
-  }
+  private static final ThreadLocal<KeyPairGenerator> GENERATOR =
+      ThreadLocal.withInitial(KeyPairGen::createGenerator);
 
   public KeyPair generateKeyPair() {
-    return this.keyPairGenerator.generateKeyPair();
+    // Count the use against the thread's DRBG, so that it is reseeded periodically.
+    RandomSource.get();
+    return GENERATOR.get().generateKeyPair();
   }
 
   public String generateKeyPairGetPrivateKey() {
-    KeyPair rawKeyPair = this.keyPairGenerator.generateKeyPair();
-    final ECPrivateKey privateKey = (ECPrivateKey) rawKeyPair.getPrivate();
-    final BigInteger privateKeyValue = privateKey.getS();
-    return privateKeyValue.toString(16);
+    return toPrivateKey(generateKeyPair());
   }
 
-  // Use a personalisation string to help ensure the entropy going into the PRNG is unique.
-  private static byte[] getPersonalizationString() throws SocketException, BufferOverflowException {
-    final byte[] networkMacs = networkHardwareAddresses();
-    final Runtime runtime = Runtime.getRuntime();
-    final byte[] threadId = Longs.toByteArray(Thread.currentThread().getId());
-    final byte[] availProcessors = Ints.toByteArray(runtime.availableProcessors());
-    final byte[] freeMem = Longs.toByteArray(runtime.freeMemory());
-    final byte[] runtimeMem = Longs.toByteArray(runtime.maxMemory());
-    return Bytes.concat(threadId, availProcessors, freeMem, runtimeMem, networkMacs);
+  /**
+   * Generate a batch of key pairs.
+   *
+   * @param count Number of key pairs to generate.
+   * @return Key pairs.
+   */
+  public List<KeyPair> generateKeyPairs(int count) {
+    RandomSource.forUses(count);
+    KeyPairGenerator generator = GENERATOR.get();
+    List<KeyPair> keyPairs = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      keyPairs.add(generator.generateKeyPair());
+    }
+    return keyPairs;
+  }
+
+  /**
+   * Generate a batch of key pairs, returning the private keys.
+   *
+   * @param count Number of key pairs to generate.
+   * @return Private keys as hex strings.
+   */
+  public List<String> generateKeyPairsGetPrivateKeys(int count) {
+    List<String> privateKeys = new ArrayList<>(count);
+    for (KeyPair keyPair : generateKeyPairs(count)) {
+      privateKeys.add(toPrivateKey(keyPair));
+    }
+    return privateKeys;
   }
 
-  private static byte[] networkHardwareAddresses() throws SocketException, BufferOverflowException {
-    final byte[] networkAddresses = new byte[256];
-    final ByteBuffer buffer = ByteBuffer.wrap(networkAddresses);
+  private static String toPrivateKey(KeyPair rawKeyPair) {
+    final ECPrivateKey privateKey = (ECPrivateKey) rawKeyPair.getPrivate();
+    final BigInteger privateKeyValue = privateKey.getS();
+    return privateKeyValue.toString(16);
+  }
 
-    final Enumeration<NetworkInterface> networkInterfaces = NetworkInterface.getNetworkInterfaces();
-    if (networkInterfaces != null) {
-      while (networkInterfaces.hasMoreElements()) {
-        final NetworkInterface networkInterface = networkInterfaces.nextElement();
-        final byte[] hardwareAddress = networkInterface.getHardwareAddress();
-        if (hardwareAddress != null) {
-          buffer.put(hardwareAddress);
-        }
-      }
+  private static KeyPairGenerator createGenerator() {
+    try {
+      KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("ECDSA", "BC");
+      final ECGenParameterSpec ecGenParameterSpec = new ECGenParameterSpec("secp256k1");
+      keyPairGenerator.initialize(ecGenParameterSpec, RandomSource.get());
+      return keyPairGenerator;
+    } catch (final Exception e) {
+      throw new RuntimeException(e);
     }
-    return Arrays.copyOf(networkAddresses, buffer.position());
   }
 }
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.gpact.utils.crypto;
+
+import static java.security.DrbgParameters.Capability.RESEED_ONLY;
+
+import com.google.common.primitives.Bytes;
+import com.google.common.primitives.Ints;
+import com.google.common.primitives.Longs;
+import java.math.BigInteger;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.security.DrbgParameters;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shared source of cryptographically secure random numbers. Each thread has its own DRBG, so
+ * callers never contend on a lock, and the expensive parts of creating a DRBG (building the
+ * personalisation string from the network interfaces, and instantiating the DRBG) happen once per
+ * thread rather than once per key pair or transaction id. Each DRBG is reseeded from the system
+ * entropy source after it has been used a number of times, or after a period of time.
+ */
+public final class RandomSource {
+  public static final int RESEED_AFTER_USES = 1 << 16;
+  public static final long RESEED_AFTER_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+  private static final int SECURITY_STRENGTH = 256;
+
+  // The parts of the personalisation string that are the same for all threads.
+  private static final byte[] PROCESS_PERSONALIZATION = getProcessPersonalizationString();
+
+  private static final ThreadLocal<ThreadDrbg> DRBG = ThreadLocal.withInitial(ThreadDrbg::new);
+
+  private RandomSource() {}
+
+  /**
+   * Get the calling thread's DRBG. The returned object must not be shared with other threads.
+   *
+   * @return Secure random number generator for this thread.
+   */
+  public static SecureRandom get() {
+    return forUses(1);
+  }
+
+  /**
+   * Get the calling thread's DRBG, counting the request as a number of uses when deciding whether
+   * to reseed. Use this when the generator is about to be used for a batch of values.
+   *
+   * @param uses Number of values that will be generated.
+   * @return Secure random number generator for this thread.
+   */
+  public static SecureRandom forUses(int uses) {
+    return DRBG.get().use(uses);
+  }
+
+  public static void nextBytes(byte[] bytes) {
+    get().nextBytes(bytes);
+  }
+
+  /**
+   * Generate a random non-negative number.
+   *
+   * @param numBits Maximum bit length of the number.
+   * @return Random number in the range 0 to 2^numBits - 1.
+   */
+  public static BigInteger nextBigInteger(int numBits) {
+    return new BigInteger(numBits, get());
+  }
+
+  /**
+   * Generate a batch of random non-negative numbers.
+   *
+   * @param count Number of values to generate.
+   * @param numBits Maximum bit length of each number.
+   * @return Random numbers in the range 0 to 2^numBits - 1.
+   */
+  public static List<BigInteger> nextBigIntegers(int count, int numBits) {
+    SecureRandom rand = forUses(count);
+    List<BigInteger> values = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      values.add(new BigInteger(numBits, rand));
+    }
+    return values;
+  }
+
+  private static final class ThreadDrbg {
+    private final SecureRandom rand;
+    private long uses;
+    private long lastSeeded;
+
+    ThreadDrbg() {
+      // Include the thread id so that each thread's DRBG is personalised differently.
+      byte[] personalization =
+          Bytes.concat(Longs.toByteArray(Thread.currentThread().getId()), PROCESS_PERSONALIZATION);
+      try {
+        this.rand =
+            SecureRandom.getInstance(
+                "DRBG",
+                DrbgParameters.instantiation(SECURITY_STRENGTH, RESEED_ONLY, personalization));
+      } catch (NoSuchAlgorithmException ex) {
+        throw new RuntimeException(ex);
+      }
+      this.lastSeeded = System.currentTimeMillis();
+    }
+
+    SecureRandom use(int numUses) {
+      this.uses += numUses;
+      long now = System.currentTimeMillis();
+      if (this.uses >= RESEED_AFTER_USES || now - this.lastSeeded >= RESEED_AFTER_MILLIS) {
+        this.rand.reseed();
+        this.uses = numUses;
+        this.lastSeeded = now;
+      }
+      return this.rand;
+    }
+  }
+
+  // Use a personalisation string to help ensure the entropy going into the PRNG is unique.
+  private static byte[] getProcessPersonalizationString() {
+    final byte[] networkMacs;
+    try {
+      networkMacs = networkHardwareAddresses();
+    } catch (SocketException | BufferOverflowException ex) {
+      throw new RuntimeException(ex);
+    }
+    final Runtime runtime = Runtime.getRuntime();
+    final byte[] availProcessors = Ints.toByteArray(runtime.availableProcessors());
+    final byte[] freeMem = Longs.toByteArray(runtime.freeMemory());
+    final byte[] runtimeMem = Longs.toByteArray(runtime.maxMemory());
+    final byte[] startTime = Longs.toByteArray(System.nanoTime());
+    return Bytes.concat(availProcessors, freeMem, runtimeMem, startTime, networkMacs);
+  }
+
+  private static byte[] networkHardwareAddresses() throws SocketException, BufferOverflowException {
+    final byte[] networkAddresses = new byte[256];
+    final ByteBuffer buffer = ByteBuffer.wrap(networkAddresses);
+
+    final Enumeration<NetworkInterface> networkInterfaces = NetworkInterface.getNetworkInterfaces();
+    if (networkInterfaces != null) {
+      while (networkInterfaces.hasMoreElements()) {
+        final NetworkInterface networkInterface = networkInterfaces.nextElement();
+        final byte[] hardwareAddress = networkInterface.getHardwareAddress();
+        if (hardwareAddress != null) {
+          buffer.put(hardwareAddress);
+        }
+      }
+    }
+    return Arrays.copyOf(networkAddresses, buffer.position());
+  }
+}
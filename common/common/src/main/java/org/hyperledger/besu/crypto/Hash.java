@@ -14,6 +14,7 @@
  */
 package org.hyperledger.besu.crypto;
 
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import org.apache.tuweni.bytes.Bytes;
@@ -24,26 +25,50 @@ public abstract class Hash {
   private Hash() {}
 
   public static final String KECCAK256_ALG = "KECCAK-256";
+  public static final int KECCAK256_SIZE = 32;
 
   private static final String SHA256_ALG = "SHA-256";
   private static final String RIPEMD160 = "RIPEMD160";
   private static final String BLAKE2BF_ALG = "BLAKE2BF";
 
+  // Looking up a digest through the security providers is far more expensive than hashing a
+  // trie node, so each thread keeps one digest per algorithm and reuses it.
+  private static final ThreadLocal<MessageDigest> KECCAK256_DIGEST = digestPerThread(KECCAK256_ALG);
+  private static final ThreadLocal<MessageDigest> SHA256_DIGEST = digestPerThread(SHA256_ALG);
+  private static final ThreadLocal<MessageDigest> RIPEMD160_DIGEST = digestPerThread(RIPEMD160);
+  private static final ThreadLocal<MessageDigest> BLAKE2BF_DIGEST = digestPerThread(BLAKE2BF_ALG);
+
+  private static ThreadLocal<MessageDigest> digestPerThread(final String alg) {
+    return ThreadLocal.withInitial(
+        () -> {
+          try {
+            return MessageDigestFactory.create(alg);
+          } catch (final NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+          }
+        });
+  }
+
+  // Get the calling thread's digest, in its initial state.
+  private static MessageDigest digest(final ThreadLocal<MessageDigest> digests) {
+    final MessageDigest digest = digests.get();
+    // A previous caller may have failed part way through an update.
+    digest.reset();
+    return digest;
+  }
+
   /**
    * Helper method to generate a digest using the provided algorithm.
    *
    * @param input The input bytes to produce the digest for.
-   * @param alg The name of the digest algorithm to use.
+   * @param digests The thread's digests for the algorithm to use.
    * @return A digest.
    */
-  private static byte[] digestUsingAlgorithm(final Bytes input, final String alg) {
-    try {
-      final MessageDigest digest = MessageDigestFactory.create(alg);
-      input.update(digest);
-      return digest.digest();
-    } catch (final NoSuchAlgorithmException e) {
-      throw new RuntimeException(e);
-    }
+  private static byte[] digestUsingAlgorithm(
+      final Bytes input, final ThreadLocal<MessageDigest> digests) {
+    final MessageDigest digest = digest(digests);
+    input.update(digest);
+    return digest.digest();
   }
 
   /**
@@ -53,7 +78,7 @@ public abstract class Hash {
    * @return A digest.
    */
   public static Bytes32 sha256(final Bytes input) {
-    return Bytes32.wrap(digestUsingAlgorithm(input, SHA256_ALG));
+    return Bytes32.wrap(digestUsingAlgorithm(input, SHA256_DIGEST));
   }
 
   /**
@@ -63,7 +88,32 @@ public abstract class Hash {
    * @return A digest.
    */
   public static Bytes32 keccak256(final Bytes input) {
-    return Bytes32.wrap(digestUsingAlgorithm(input, KECCAK256_ALG));
+    return Bytes32.wrap(digestUsingAlgorithm(input, KECCAK256_DIGEST));
+  }
+
+  /**
+   * Digest part of an array using keccak-256, writing the digest into an existing array. This does
+   * not allocate any memory.
+   *
+   * @param input Array holding the input bytes.
+   * @param offset Offset of the first input byte.
+   * @param length Number of input bytes.
+   * @param output Array to write the digest to.
+   * @param outputOffset Offset in output to write the 32 byte digest at.
+   */
+  public static void keccak256(
+      final byte[] input,
+      final int offset,
+      final int length,
+      final byte[] output,
+      final int outputOffset) {
+    final MessageDigest digest = digest(KECCAK256_DIGEST);
+    digest.update(input, offset, length);
+    try {
+      digest.digest(output, outputOffset, KECCAK256_SIZE);
+    } catch (final DigestException e) {
+      throw new IllegalArgumentException(e);
+    }
   }
 
   /**
@@ -73,7 +123,7 @@ public abstract class Hash {
    * @return A digest.
    */
   public static Bytes ripemd160(final Bytes input) {
-    return Bytes.wrap(digestUsingAlgorithm(input, RIPEMD160));
+    return Bytes.wrap(digestUsingAlgorithm(input, RIPEMD160_DIGEST));
   }
 
   /**
@@ -83,6 +133,6 @@ public abstract class Hash {
    * @return A digest.
    */
   public static Bytes blake2bf(final Bytes input) {
-    return Bytes.wrap(digestUsingAlgorithm(input, BLAKE2BF_ALG));
+    return Bytes.wrap(digestUsingAlgorithm(input, BLAKE2BF_DIGEST));
   }
 }
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.gpact.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigInteger;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+
+public class BlockTransactionReceiptProcessorTest {
+  private static final long POLLING_INTERVAL = 10;
+  // Long enough that receipts are never found by the check at the deadline.
+  private static final int ATTEMPTS = 100_000;
+
+  private final FakeEthereumClient client = new FakeEthereumClient();
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+  private final BlockTransactionReceiptProcessor processor =
+      new BlockTransactionReceiptProcessor(
+          Web3j.build(this.client), this.scheduler, POLLING_INTERVAL, ATTEMPTS);
+
+  @AfterEach
+  public void shutdown() {
+    this.scheduler.shutdownNow();
+  }
+
+  private static String hash(int i) {
+    return String.format("0x%064x", i);
+  }
+
+  @Test
+  public void receiptsFoundInBlocks() throws Exception {
+    CompletableFuture<TransactionReceipt> first =
+        this.processor.waitForTransactionReceiptAsync(hash(1));
+    CompletableFuture<TransactionReceipt> second =
+        this.processor.waitForTransactionReceiptAsync(hash(2));
+    this.client.addPending(hash(1));
+    this.client.addPending(hash(2));
+    this.client.mine();
+
+    assertEquals(hash(1), first.get(5, TimeUnit.SECONDS).getTransactionHash());
+    assertEquals(hash(2), second.get(5, TimeUnit.SECONDS).getTransactionHash());
+    assertEquals(0, this.processor.getNumWaiting());
+  }
+
+  @Test
+  public void lateRegistration() throws Exception {
+    // Keep polling running while the second transaction's block is checked.
+    CompletableFuture<TransactionReceipt> other =
+        this.processor.waitForTransactionReceiptAsync(hash(1));
+    this.client.addPending(hash(2));
+    BigInteger block = this.client.mine();
+    long giveUp = System.currentTimeMillis() + 5000;
+    while (!this.client.wasBlockFetched(block) && System.currentTimeMillis() < giveUp) {
+      Thread.sleep(POLLING_INTERVAL);
+    }
+    assertTrue(this.client.wasBlockFetched(block));
+
+    // The transaction's block has already been checked, so only a direct check finds it.
+    TransactionReceipt receipt =
+        this.processor.waitForTransactionReceiptAsync(hash(2)).get(5, TimeUnit.SECONDS);
+    assertEquals(hash(2), receipt.getTransactionHash());
+    assertEquals(1, this.processor.getNumWaiting());
+
+    this.client.addPending(hash(1));
+    this.client.mine();
+    assertEquals(hash(1), other.get(5, TimeUnit.SECONDS).getTransactionHash());
+  }
+
+  @Test
+  public void receiptMinedWhileIdleFound() {
+    ManualScheduler manual = new ManualScheduler();
+    FakeEthereumClient sync = new FakeEthereumClient();
+    sync.setSynchronous(true);
+    BlockTransactionReceiptProcessor idleProcessor =
+        new BlockTransactionReceiptProcessor(Web3j.build(sync), manual, POLLING_INTERVAL, ATTEMPTS);
+    CompletableFuture<TransactionReceipt> first =
+        idleProcessor.waitForTransactionReceiptAsync(hash(1));
+    sync.addPending(hash(1));
+    sync.mine();
+    manual.runUntilIdle();
+    assertTrue(first.isDone());
+
+    // Mined while no transactions are being waited for, so polling has stopped.
+    sync.addPending(hash(2));
+    BigInteger block = sync.mine();
+    for (int i = 0; i < 5; i++) {
+      sync.mine();
+    }
+    CompletableFuture<TransactionReceipt> second =
+        idleProcessor.waitForTransactionReceiptAsync(hash(2));
+    manual.runUntilIdle();
+    assertEquals(hash(2), second.join().getTransactionHash());
+    assertTrue(sync.wasBlockFetched(block));
+  }
+
+  @Test
+  public void receiptMinedLongBeforeWaitFound() {
+    ManualScheduler manual = new ManualScheduler();
+    FakeEthereumClient sync = new FakeEthereumClient();
+    sync.setSynchronous(true);
+    BlockTransactionReceiptProcessor idleProcessor =
+        new BlockTransactionReceiptProcessor(Web3j.build(sync), manual, POLLING_INTERVAL, ATTEMPTS);
+    sync.addPending(hash(1));
+    BigInteger block = sync.mine();
+    for (int i = 0; i < 200; i++) {
+      sync.mine();
+    }
+
+    // Too many blocks to check, so the receipt is requested directly.
+    CompletableFuture<TransactionReceipt> receipt =
+        idleProcessor.waitForTransactionReceiptAsync(hash(1));
+    manual.runUntilIdle();
+    assertEquals(hash(1), receipt.join().getTransactionHash());
+    assertFalse(sync.wasBlockFetched(block));
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.gpact.common;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import org.apache.tuweni.units.bigints.UInt256;
+import org.junit.jupiter.api.Test;
+
+public class BlockchainIdTest {
+
+  @Test
+  public void sharedInstances() {
+    assertSame(BlockchainId.of(31), BlockchainId.of(BigInteger.valueOf(31)));
+    assertSame(BlockchainId.of(31), BlockchainId.of("1f"));
+    assertEquals(BlockchainId.of(31), new BlockchainId("1f"));
+    assertEquals(BlockchainId.of(31).hashCode(), new BlockchainId("1f").hashCode());
+    assertNotEquals(BlockchainId.of(31), BlockchainId.of(32));
+  }
+
+  @Test
+  public void encoding() {
+    BigInteger big = BigInteger.ONE.shiftLeft(200).add(BigInteger.TEN);
+    for (BigInteger value : new BigInteger[] {BigInteger.valueOf(31), big}) {
+      BlockchainId id = BlockchainId.of(value);
+      byte[] expected = UInt256.valueOf(value).toBytes().toArray();
+      assertArrayEquals(expected, id.asBytes());
+
+      byte[] dest = new byte[BlockchainId.ENCODED_SIZE + 1];
+      id.writeTo(dest, 1);
+      assertEquals(expected[BlockchainId.ENCODED_SIZE - 1], dest[BlockchainId.ENCODED_SIZE]);
+
+      ByteBuffer buf = ByteBuffer.allocate(BlockchainId.ENCODED_SIZE);
+      id.writeTo(buf);
+      assertArrayEquals(expected, buf.array());
+    }
+
+    // Changing a returned array must not change the blockchain id.
+    BlockchainId id = BlockchainId.of(31);
+    id.asBytes()[0] = 1;
+    assertEquals(0, id.asBytes()[0]);
+  }
+
+  @Test
+  public void largeIds() {
+    BigInteger big = BigInteger.ONE.shiftLeft(64).add(BigInteger.ONE);
+    BlockchainId bigId = new BlockchainId(big);
+    assertFalse(bigId.fitsInLong());
+    // The low 64 bits are the same as those of 1.
+    assertNotEquals(BlockchainId.of(1), bigId);
+    assertEquals(new BlockchainId(big), bigId);
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.gpact.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+public class ConcurrentHistogramTest {
+
+  @Test
+  public void bucketBoundaries() {
+    for (long value : new long[] {0, 1, 31, 32, 33, 1000, 123456789L, Long.MAX_VALUE}) {
+      int index = ConcurrentHistogram.bucketIndex(value);
+      long highest = ConcurrentHistogram.bucketHighestValue(index);
+      assertTrue(highest >= value, "value " + value);
+      assertEquals(index, ConcurrentHistogram.bucketIndex(highest), "value " + value);
+    }
+  }
+
+  @Test
+  public void percentiles() {
+    ConcurrentHistogram histogram = new ConcurrentHistogram();
+    for (long i = 1; i <= 10000; i++) {
+      histogram.record(i * 1000);
+    }
+    ConcurrentHistogram.Snapshot snapshot = histogram.getSnapshot();
+    assertEquals(10000, snapshot.getCount());
+    assertEquals(10_000_000, snapshot.getMax());
+    assertEquals(5_000_500, snapshot.getMean());
+    assertWithin(5_000_000, snapshot.getValueAtPercentile(50));
+    assertWithin(9_900_000, snapshot.getValueAtPercentile(99));
+    assertEquals(10_000_000, snapshot.getValueAtPercentile(100));
+  }
+
+  @Test
+  public void concurrentRecording() throws Exception {
+    ConcurrentHistogram histogram = new ConcurrentHistogram();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    for (int t = 0; t < 8; t++) {
+      executor.execute(
+          () -> {
+            for (int i = 0; i < 10000; i++) {
+              histogram.record(i);
+            }
+          });
+    }
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+    assertEquals(80000, histogram.getSnapshot().getCount());
+    assertEquals(9999, histogram.getSnapshot().getMax());
+
+    histogram.reset();
+    assertEquals(0, histogram.getSnapshot().getCount());
+  }
+
+  // Buckets are accurate to within one part in 32.
+  private static void assertWithin(long expected, long actual) {
+    assertTrue(
+        Math.abs(actual - expected) <= expected / 32, "expected " + expected + " was " + actual);
+  }
+}
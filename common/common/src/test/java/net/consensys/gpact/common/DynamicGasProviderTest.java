@@ -0,0 +1,199 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.gpact.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import io.reactivex.Flowable;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.Test;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.BatchRequest;
+import org.web3j.protocol.core.BatchResponse;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.response.EthBlock;
+import org.web3j.protocol.core.methods.response.EthBlockNumber;
+import org.web3j.protocol.core.methods.response.EthGasPrice;
+import org.web3j.protocol.websocket.events.Notification;
+import org.web3j.utils.Numeric;
+
+public class DynamicGasProviderTest {
+
+  @Test
+  public void emptyLatestBlock() throws Exception {
+    FakeChain chain = new FakeChain(null);
+    chain.addBlock();
+    DynamicGasProvider gasProvider =
+        new DynamicGasProvider(Web3j.build(chain), "fake", DynamicGasProvider.Strategy.MEDIAN);
+    // With no transactions, the Ethereum Client's gas price is used.
+    assertEquals(FakeChain.ETH_GAS_PRICE.add(BigInteger.ONE), gasProvider.getGasPrice());
+    assertNull(gasProvider.getBaseFee());
+  }
+
+  @Test
+  public void slidingWindow() throws Exception {
+    FakeChain chain = new FakeChain(null);
+    chain.addBlock(10, 20, 30);
+    DynamicGasProvider gasProvider =
+        new DynamicGasProvider(Web3j.build(chain), "fake", DynamicGasProvider.Strategy.HIGHEST);
+    assertEquals(BigInteger.valueOf(30), gasProvider.getGasPrice());
+
+    // Only the latest block is used unless a window is configured.
+    chain.addBlock(5);
+    gasProvider.refresh();
+    assertEquals(BigInteger.valueOf(5), gasProvider.getGasPrice());
+
+    // A window of three blocks: blocks 0 to 2.
+    gasProvider.setWindowBlocks(3);
+    chain.addBlock(7);
+    gasProvider.refresh();
+    assertEquals(BigInteger.valueOf(30), gasProvider.getGasPrice());
+    gasProvider.changeStrategy(DynamicGasProvider.Strategy.LOWEST);
+    assertEquals(BigInteger.valueOf(5), gasProvider.getGasPrice());
+    gasProvider.changeStrategy(DynamicGasProvider.Strategy.AVERAGE);
+    assertEquals(BigInteger.valueOf((10 + 20 + 30 + 5 + 7) / 5), gasProvider.getGasPrice());
+
+    // Block 0 drops out of the window, and only the new block is fetched.
+    int requestsBefore = chain.blockRequests;
+    chain.addBlock();
+    gasProvider.refresh();
+    assertEquals(requestsBefore + 1, chain.blockRequests);
+    gasProvider.changeStrategy(DynamicGasProvider.Strategy.HIGHEST);
+    assertEquals(BigInteger.valueOf(7), gasProvider.getGasPrice());
+  }
+
+  @Test
+  public void sampledBlocksWeightedByTransactions() throws Exception {
+    FakeChain chain = new FakeChain(null);
+    long[] full = new long[1000];
+    Arrays.fill(full, 10);
+    long[] sparse = new long[100];
+    Arrays.fill(sparse, 50);
+    chain.addBlock(full);
+    chain.addBlock(sparse);
+    chain.addBlock(sparse);
+    DynamicGasProvider gasProvider =
+        new DynamicGasProvider(Web3j.build(chain), "fake", DynamicGasProvider.Strategy.MEDIAN);
+    gasProvider.setWindowBlocks(3);
+    gasProvider.refresh();
+    // Most of the transactions in the window are from the full block, even though only some of
+    // them are sampled.
+    assertEquals(BigInteger.valueOf(11), gasProvider.getGasPrice());
+  }
+
+  @Test
+  public void eip1559() throws Exception {
+    FakeChain chain = new FakeChain(BigInteger.valueOf(100));
+    chain.addBlock(101, 103, 110);
+    DynamicGasProvider gasProvider =
+        new DynamicGasProvider(Web3j.build(chain), "fake", DynamicGasProvider.Strategy.MEDIAN);
+    assertEquals(BigInteger.valueOf(100), gasProvider.getBaseFee());
+    assertEquals(BigInteger.valueOf(3), gasProvider.getPriorityFee());
+    assertEquals(BigInteger.valueOf(203), gasProvider.getMaxFeePerGas());
+  }
+
+  // Blockchain where each block's transactions have the given gas prices.
+  private static class FakeChain implements Web3jService {
+    static final BigInteger ETH_GAS_PRICE = BigInteger.valueOf(1000);
+
+    final BigInteger baseFee;
+    final List<EthBlock.Block> blocks = new ArrayList<>();
+    int blockRequests;
+
+    FakeChain(BigInteger baseFee) {
+      this.baseFee = baseFee;
+    }
+
+    void addBlock(long... gasPrices) {
+      EthBlock.Block block = new EthBlock.Block();
+      block.setNumber(Numeric.encodeQuantity(BigInteger.valueOf(this.blocks.size())));
+      if (this.baseFee != null) {
+        block.setBaseFeePerGas(Numeric.encodeQuantity(this.baseFee));
+      }
+      List<EthBlock.TransactionResult> transactions = new ArrayList<>();
+      for (long gasPrice : gasPrices) {
+        EthBlock.TransactionObject tx = new EthBlock.TransactionObject();
+        tx.setGasPrice(Numeric.encodeQuantity(BigInteger.valueOf(gasPrice)));
+        transactions.add(tx);
+      }
+      block.setTransactions(transactions);
+      this.blocks.add(block);
+    }
+
+    private Response<?> respond(Request<?, ?> request) {
+      switch (request.getMethod()) {
+        case "eth_gasPrice":
+          EthGasPrice gasPrice = new EthGasPrice();
+          gasPrice.setResult(Numeric.encodeQuantity(ETH_GAS_PRICE));
+          return gasPrice;
+        case "eth_blockNumber":
+          EthBlockNumber blockNumber = new EthBlockNumber();
+          blockNumber.setResult(Numeric.encodeQuantity(BigInteger.valueOf(this.blocks.size() - 1)));
+          return blockNumber;
+        case "eth_getBlockByNumber":
+          this.blockRequests++;
+          String number = (String) request.getParams().get(0);
+          EthBlock block = new EthBlock();
+          block.setResult(this.blocks.get(Numeric.decodeQuantity(number).intValue()));
+          return block;
+        default:
+          throw new UnsupportedOperationException(request.getMethod());
+      }
+    }
+
+    @Override
+    public CompletableFuture<BatchResponse> sendBatchAsync(BatchRequest batchRequest) {
+      List<Response<?>> responses = new ArrayList<>();
+      for (Request<?, ? extends Response<?>> request : batchRequest.getRequests()) {
+        responses.add(respond(request));
+      }
+      return CompletableFuture.completedFuture(
+          new BatchResponse(batchRequest.getRequests(), responses));
+    }
+
+    @Override
+    public BatchResponse sendBatch(BatchRequest batchRequest) {
+      return sendBatchAsync(batchRequest).join();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T extends Response> T send(Request request, Class<T> responseType) {
+      return (T) respond(request);
+    }
+
+    @Override
+    public <T extends Response> CompletableFuture<T> sendAsync(
+        Request request, Class<T> responseType) {
+      return CompletableFuture.completedFuture(send(request, responseType));
+    }
+
+    @Override
+    public <T extends Notification<?>> Flowable<T> subscribe(
+        Request request, String unsubscribeMethod, Class<T> responseType) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {}
+  }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.gpact.common;
+
+import io.reactivex.Flowable;
+import java.math.BigInteger;
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import org.web3j.crypto.Hash;
+import org.web3j.crypto.RawTransaction;
+import org.web3j.crypto.SignedRawTransaction;
+import org.web3j.crypto.TransactionDecoder;
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.BatchRequest;
+import org.web3j.protocol.core.BatchResponse;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.response.EthBlock;
+import org.web3j.protocol.core.methods.response.EthBlockNumber;
+import org.web3j.protocol.core.methods.response.EthGetTransactionCount;
+import org.web3j.protocol.core.methods.response.EthGetTransactionReceipt;
+import org.web3j.protocol.core.methods.response.EthSendTransaction;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+import org.web3j.protocol.websocket.events.Notification;
+import org.web3j.utils.Numeric;
+
+/**
+ * In-memory Ethereum Client for testing transaction submission and receipt processing. Submitted
+ * transactions are pending until {@link #mine()} is called, which puts all pending transactions in
+ * a new block.
+ */
+class FakeEthereumClient implements Web3jService {
+  // Hashes of the transactions in each block, indexed by block number.
+  private final List<List<String>> blocks = new ArrayList<>();
+  private final List<String> pending = new ArrayList<>();
+  private final Map<String, TransactionReceipt> receipts = new HashMap<>();
+  private final Map<String, Integer> requestCounts = new ConcurrentHashMap<>();
+  private final Set<BigInteger> blocksFetched = ConcurrentHashMap.newKeySet();
+  private final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+  private final List<Long> submittedNonces = Collections.synchronizedList(new ArrayList<>());
+  private final List<String> submittedFrom = Collections.synchronizedList(new ArrayList<>());
+  private volatile boolean mineOnBlockNumber = false;
+  private volatile boolean synchronous = false;
+  private volatile long pendingNonce = 0;
+  // Returns an error to respond with for a submitted transaction, or null to accept it.
+  private volatile Function<RawTransaction, Response.Error> rejecter = tx -> null;
+
+  FakeEthereumClient() {
+    this.blocks.add(new ArrayList<>());
+  }
+
+  /** Put all pending transactions in a new block. */
+  synchronized BigInteger mine() {
+    BigInteger number = BigInteger.valueOf(this.blocks.size());
+    for (String hash : this.pending) {
+      TransactionReceipt receipt = new TransactionReceipt();
+      receipt.setTransactionHash(hash);
+      receipt.setBlockNumber(number.toString());
+      receipt.setStatus("0x1");
+      this.receipts.put(hash, receipt);
+    }
+    this.blocks.add(new ArrayList<>(this.pending));
+    this.pending.clear();
+    return number;
+  }
+
+  /** Add a transaction that was not submitted through this client to the pending transactions. */
+  synchronized void addPending(String transactionHash) {
+    this.pending.add(transactionHash);
+  }
+
+  /** Mine a block each time the latest block number is requested. */
+  void setMineOnBlockNumber(boolean mineOnBlockNumber) {
+    this.mineOnBlockNumber = mineOnBlockNumber;
+  }
+
+  /**
+   * Respond to asynchronous requests on the calling thread. With a ManualScheduler, this makes
+   * tests run on one thread.
+   */
+  void setSynchronous(boolean synchronous) {
+    this.synchronous = synchronous;
+  }
+
+  void setPendingNonce(long pendingNonce) {
+    this.pendingNonce = pendingNonce;
+  }
+
+  void setRejecter(Function<RawTransaction, Response.Error> rejecter) {
+    this.rejecter = rejecter;
+  }
+
+  boolean wasBlockFetched(BigInteger number) {
+    return this.blocksFetched.contains(number);
+  }
+
+  int getRequestCount(String method) {
+    return this.requestCounts.getOrDefault(method, 0);
+  }
+
+  List<Integer> getBatchSizes() {
+    return this.batchSizes;
+  }
+
+  List<Long> getSubmittedNonces() {
+    return this.submittedNonces;
+  }
+
+  List<String> getSubmittedFrom() {
+    return this.submittedFrom;
+  }
+
+  @Override
+  public <T extends Response> T send(Request request, Class<T> responseType) {
+    return responseType.cast(respond(request));
+  }
+
+  @Override
+  public <T extends Response> CompletableFuture<T> sendAsync(
+      Request request, Class<T> responseType) {
+    if (this.synchronous) {
+      return CompletableFuture.completedFuture(responseType.cast(respond(request)));
+    }
+    return CompletableFuture.supplyAsync(() -> responseType.cast(respond(request)));
+  }
+
+  @Override
+  public BatchResponse sendBatch(BatchRequest batchRequest) {
+    return sendBatchAsync(batchRequest).join();
+  }
+
+  @Override
+  public CompletableFuture<BatchResponse> sendBatchAsync(BatchRequest batchRequest) {
+    this.batchSizes.add(batchRequest.getRequests().size());
+    if (this.synchronous) {
+      return CompletableFuture.completedFuture(respond(batchRequest));
+    }
+    return CompletableFuture.supplyAsync(() -> respond(batchRequest));
+  }
+
+  private BatchResponse respond(BatchRequest batchRequest) {
+    List<Response<?>> responses = new ArrayList<>();
+    for (Request<?, ? extends Response<?>> request : batchRequest.getRequests()) {
+      responses.add(respond(request));
+    }
+    return new BatchResponse(batchRequest.getRequests(), responses);
+  }
+
+  private synchronized Response<?> respond(Request<?, ?> request) {
+    this.requestCounts.merge(request.getMethod(), 1, Integer::sum);
+    List<?> params = request.getParams();
+    switch (request.getMethod()) {
+      case "eth_blockNumber":
+        if (this.mineOnBlockNumber) {
+          mine();
+        }
+        EthBlockNumber blockNumber = new EthBlockNumber();
+        blockNumber.setResult("0x" + Integer.toHexString(this.blocks.size() - 1));
+        return blockNumber;
+      case "eth_getBlockByNumber":
+        BigInteger number = Numeric.decodeQuantity((String) params.get(0));
+        EthBlock block = new EthBlock();
+        if (number.intValueExact() < this.blocks.size()) {
+          this.blocksFetched.add(number);
+          EthBlock.Block result = new EthBlock.Block();
+          result.setNumber("0x" + number.toString(16));
+          List<EthBlock.TransactionResult> transactions = new ArrayList<>();
+          for (String hash : this.blocks.get(number.intValueExact())) {
+            transactions.add(new EthBlock.TransactionHash(hash));
+          }
+          result.setTransactions(transactions);
+          block.setResult(result);
+        }
+        return block;
+      case "eth_getTransactionReceipt":
+        EthGetTransactionReceipt receipt = new EthGetTransactionReceipt();
+        receipt.setResult(this.receipts.get((String) params.get(0)));
+        return receipt;
+      case "eth_getTransactionCount":
+        EthGetTransactionCount count = new EthGetTransactionCount();
+        count.setResult("0x" + Long.toHexString(this.pendingNonce));
+        return count;
+      case "eth_sendRawTransaction":
+        String signed = (String) params.get(0);
+        RawTransaction tx = TransactionDecoder.decode(signed);
+        this.submittedNonces.add(tx.getNonce().longValueExact());
+        try {
+          this.submittedFrom.add(((SignedRawTransaction) tx).getFrom());
+        } catch (SignatureException ex) {
+          throw new IllegalArgumentException(ex);
+        }
+        EthSendTransaction send = new EthSendTransaction();
+        Response.Error error = this.rejecter.apply(tx);
+        String hash = Hash.sha3(signed);
+        if (error != null) {
+          if (FastTxManager.isAlreadyKnown(error)) {
+            // The transaction was submitted earlier, and is in the transaction pool.
+            this.pending.add(hash);
+          }
+          send.setError(error);
+          return send;
+        }
+        this.pending.add(hash);
+        this.pendingNonce = Math.max(this.pendingNonce, tx.getNonce().longValueExact() + 1);
+        send.setResult(hash);
+        return send;
+      default:
+        throw new UnsupportedOperationException(request.getMethod());
+    }
+  }
+
+  @Override
+  public <T extends Notification<?>> Flowable<T> subscribe(
+      Request request, String unsubscribeMethod, Class<T> responseType) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void close() {}
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.gpact.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.web3j.crypto.Credentials;
+import org.web3j.crypto.Keys;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.http.HttpService;
+
+public class FastTxManagerTest {
+  private static final long CHAIN_ID = 31;
+
+  private FastTxManager create() throws Exception {
+    // The nonce is set explicitly, so no requests are sent to the Ethereum Client.
+    Web3j web3j = Web3j.build(new HttpService("http://localhost:1"));
+    FastTxManager tm =
+        new FastTxManager(web3j, Credentials.create(Keys.createEcKeyPair()), CHAIN_ID, null);
+    tm.setNonce(BigInteger.valueOf(9));
+    return tm;
+  }
+
+  @Test
+  public void sequentialNonces() throws Exception {
+    FastTxManager tm = create();
+    assertEquals(10, tm.allocateNonce());
+    assertEquals(11, tm.allocateNonce());
+    assertEquals(BigInteger.valueOf(11), tm.getCurrentNonce());
+  }
+
+  @Test
+  public void currentNonceBeforeFirstAllocation() throws Exception {
+    Web3j web3j = Web3j.build(new HttpService("http://localhost:1"));
+    FastTxManager tm =
+        new FastTxManager(web3j, Credentials.create(Keys.createEcKeyPair()), CHAIN_ID, null);
+    assertEquals(BigInteger.valueOf(-1), tm.getCurrentNonce());
+  }
+
+  @Test
+  public void releasedNonceReused() throws Exception {
+    FastTxManager tm = create();
+    tm.allocateNonce();
+    long gap = tm.allocateNonce();
+    tm.allocateNonce();
+    tm.transactionRejected(gap, new Response.Error(-32000, "transaction underpriced"));
+    assertEquals(1, tm.getNumReleasedNonces());
+    assertEquals(gap, tm.allocateNonce());
+    assertEquals(13, tm.allocateNonce());
+  }
+
+  @Test
+  public void alreadyKnownNonceNotReused() throws Exception {
+    FastTxManager tm = create();
+    long nonce = tm.allocateNonce();
+    tm.allocateNonce();
+    // The transaction is pending, so its nonce is neither released nor resynchronised.
+    tm.transactionRejected(nonce, new Response.Error(-32000, "already known"));
+    assertEquals(0, tm.getNumReleasedNonces());
+    assertEquals(12, tm.allocateNonce());
+  }
+
+  @Test
+  public void releasedNoncesTakenOnceTimedOut() throws Exception {
+    FastTxManager tm = create();
+    tm.allocateNonce();
+    long gap = tm.allocateNonce();
+    tm.allocateNonce();
+    tm.releaseNonce(gap);
+    assertEquals(Collections.emptyList(), tm.takeReleasedNonces(60_000));
+    assertEquals(Collections.singletonList(gap), tm.takeReleasedNonces(0));
+    assertEquals(0, tm.getNumReleasedNonces());
+  }
+
+  @Test
+  public void mostRecentNonceRewound() throws Exception {
+    FastTxManager tm = create();
+    long nonce = tm.allocateNonce();
+    tm.releaseNonce(nonce);
+    assertEquals(0, tm.getNumReleasedNonces());
+    assertEquals(nonce, tm.allocateNonce());
+  }
+
+  @Test
+  public void concurrentAllocationsUnique() throws Exception {
+    FastTxManager tm = create();
+    int numThreads = 8;
+    int perThread = 1000;
+    Set<Long> nonces = ConcurrentHashMap.newKeySet();
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    for (int i = 0; i < numThreads; i++) {
+      executor.execute(
+          () -> {
+            for (int j = 0; j < perThread; j++) {
+              try {
+                nonces.add(tm.allocateNonce());
+              } catch (Exception ex) {
+                throw new RuntimeException(ex);
+              }
+            }
+          });
+    }
+    executor.shutdown();
+    executor.awaitTermination(30, TimeUnit.SECONDS);
+    assertEquals(numThreads * perThread, nonces.size());
+    assertEquals(BigInteger.valueOf(9 + numThreads * perThread), tm.getCurrentNonce());
+  }
+}
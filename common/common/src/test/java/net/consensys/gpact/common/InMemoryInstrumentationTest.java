@@ -0,0 +1,87 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.gpact.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigInteger;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class InMemoryInstrumentationTest {
+  private static final BlockchainId BC_ID = new BlockchainId(BigInteger.valueOf(31));
+  private static final BlockchainId OTHER_BC_ID = new BlockchainId(BigInteger.valueOf(32));
+
+  @AfterEach
+  public void restoreDefault() {
+    Instrumentations.set(null);
+  }
+
+  @Test
+  public void defaultIsNoOp() {
+    assertSame(NoOpInstrumentation.INSTANCE, Instrumentations.get());
+  }
+
+  @Test
+  public void recordsPerStageAndBlockchain() throws Exception {
+    InMemoryInstrumentation instrumentation = new InMemoryInstrumentation();
+    Instrumentations.set(instrumentation);
+
+    Instrumentations.time(Instrumentation.Stage.SIGNING, BC_ID, () -> null);
+    Instrumentations.time(
+        Instrumentation.Stage.PROOF_BUILD,
+        BC_ID,
+        () -> {
+          Thread.sleep(20);
+          return null;
+        });
+    Instrumentations.time(Instrumentation.Stage.SIGNING, OTHER_BC_ID, () -> null);
+    assertThrows(
+        Exception.class,
+        () ->
+            Instrumentations.time(
+                Instrumentation.Stage.SIGNING,
+                BC_ID,
+                () -> {
+                  throw new Exception("Failed");
+                }));
+
+    assertEquals(2, instrumentation.getDurations(Instrumentation.Stage.SIGNING, BC_ID).getCount());
+    assertEquals(1, instrumentation.getFailures(Instrumentation.Stage.SIGNING, BC_ID));
+    assertEquals(
+        1, instrumentation.getDurations(Instrumentation.Stage.SIGNING, OTHER_BC_ID).getCount());
+    assertNull(instrumentation.getDurations(Instrumentation.Stage.ROOT_PUBLISH, BC_ID));
+    assertEquals(Instrumentation.Stage.PROOF_BUILD, instrumentation.getSlowestStage(BC_ID));
+  }
+
+  @Test
+  public void endWhenComplete() {
+    InMemoryInstrumentation instrumentation = new InMemoryInstrumentation();
+    Instrumentations.set(instrumentation);
+
+    CompletableFuture<Void> publication = new CompletableFuture<>();
+    Instrumentations.start(Instrumentation.Stage.ROOT_PUBLISH, BC_ID).endWhenComplete(publication);
+    assertEquals(
+        0, instrumentation.getDurations(Instrumentation.Stage.ROOT_PUBLISH, BC_ID).getCount());
+    publication.completeExceptionally(new Exception("Reverted"));
+    assertEquals(
+        1, instrumentation.getDurations(Instrumentation.Stage.ROOT_PUBLISH, BC_ID).getCount());
+    assertEquals(1, instrumentation.getFailures(Instrumentation.Stage.ROOT_PUBLISH, BC_ID));
+  }
+}
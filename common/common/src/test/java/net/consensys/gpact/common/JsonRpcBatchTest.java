@@ -0,0 +1,118 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.gpact.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.reactivex.Flowable;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.BatchRequest;
+import org.web3j.protocol.core.BatchResponse;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.response.EthBlockNumber;
+import org.web3j.protocol.websocket.events.Notification;
+
+public class JsonRpcBatchTest {
+
+  @Test
+  public void splitsIntoBatches() throws Exception {
+    FakeService service = new FakeService(false);
+    Web3j web3j = Web3j.build(service);
+    JsonRpcBatch batch = new JsonRpcBatch(web3j, 100);
+    List<CompletableFuture<EthBlockNumber>> responses = new ArrayList<>();
+    for (int i = 0; i < 250; i++) {
+      responses.add(batch.add(web3j.ethBlockNumber()));
+    }
+    assertEquals(250, batch.size());
+    batch.send();
+
+    assertEquals(0, batch.size());
+    assertEquals(3, service.batches.get());
+    for (int i = 0; i < 250; i++) {
+      assertEquals(BigInteger.valueOf(i % 100), responses.get(i).join().getBlockNumber());
+    }
+  }
+
+  @Test
+  public void failedBatch() {
+    Web3j web3j = Web3j.build(new FakeService(true));
+    JsonRpcBatch batch = new JsonRpcBatch(web3j);
+    CompletableFuture<EthBlockNumber> response = batch.add(web3j.ethBlockNumber());
+    assertThrows(IOException.class, batch::send);
+    assertTrue(response.isCompletedExceptionally());
+  }
+
+  // Responds to each request in a batch with the request's index in the batch.
+  private static class FakeService implements Web3jService {
+    final AtomicInteger batches = new AtomicInteger();
+    final boolean fail;
+
+    FakeService(boolean fail) {
+      this.fail = fail;
+    }
+
+    @Override
+    public CompletableFuture<BatchResponse> sendBatchAsync(BatchRequest batchRequest) {
+      if (this.fail) {
+        return CompletableFuture.failedFuture(new IOException("Connection refused"));
+      }
+      this.batches.incrementAndGet();
+      List<Response<?>> responses = new ArrayList<>();
+      for (Request<?, ? extends Response<?>> request : batchRequest.getRequests()) {
+        EthBlockNumber response = new EthBlockNumber();
+        response.setResult("0x" + Integer.toHexString(responses.size()));
+        responses.add(response);
+      }
+      return CompletableFuture.completedFuture(
+          new BatchResponse(batchRequest.getRequests(), responses));
+    }
+
+    @Override
+    public BatchResponse sendBatch(BatchRequest batchRequest) {
+      return sendBatchAsync(batchRequest).join();
+    }
+
+    @Override
+    public <T extends Response> T send(Request request, Class<T> responseType) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T extends Response> CompletableFuture<T> sendAsync(
+        Request request, Class<T> responseType) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T extends Notification<?>> Flowable<T> subscribe(
+        Request request, String unsubscribeMethod, Class<T> responseType) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {}
+  }
+}
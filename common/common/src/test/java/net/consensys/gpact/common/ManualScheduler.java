@@ -0,0 +1,140 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.gpact.common;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scheduler for tests that only runs tasks when {@link #runUntilIdle()} is called, on the calling
+ * thread, in the order they were scheduled. Delays are ignored, so tests do not depend on how long
+ * anything takes. Periodic tasks are not supported.
+ */
+class ManualScheduler extends AbstractExecutorService implements ScheduledExecutorService {
+  // Stops tasks that keep rescheduling themselves from running forever.
+  private static final int MAX_TASKS = 10000;
+
+  private final ArrayDeque<Task<?>> queue = new ArrayDeque<>();
+  private boolean shutdown = false;
+
+  /**
+   * Run scheduled tasks, including tasks scheduled by the tasks that are run, until there are none
+   * left.
+   *
+   * @return The number of tasks run.
+   */
+  int runUntilIdle() {
+    int count = 0;
+    Task<?> task;
+    while ((task = poll()) != null) {
+      if (++count > MAX_TASKS) {
+        throw new IllegalStateException("Tasks are still being scheduled after " + MAX_TASKS);
+      }
+      task.run();
+    }
+    return count;
+  }
+
+  private synchronized Task<?> poll() {
+    return this.queue.poll();
+  }
+
+  private synchronized <V> Task<V> add(Task<V> task) {
+    if (this.shutdown) {
+      throw new IllegalStateException("Scheduler is shut down");
+    }
+    this.queue.add(task);
+    return task;
+  }
+
+  @Override
+  public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+    return add(new Task<>(Executors.callable(command)));
+  }
+
+  @Override
+  public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+    return add(new Task<>(callable));
+  }
+
+  @Override
+  public ScheduledFuture<?> scheduleAtFixedRate(
+      Runnable command, long initialDelay, long period, TimeUnit unit) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public ScheduledFuture<?> scheduleWithFixedDelay(
+      Runnable command, long initialDelay, long delay, TimeUnit unit) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void execute(Runnable command) {
+    add(new Task<>(Executors.callable(command)));
+  }
+
+  @Override
+  public synchronized void shutdown() {
+    this.shutdown = true;
+  }
+
+  @Override
+  public synchronized List<Runnable> shutdownNow() {
+    this.shutdown = true;
+    this.queue.clear();
+    return Collections.emptyList();
+  }
+
+  @Override
+  public synchronized boolean isShutdown() {
+    return this.shutdown;
+  }
+
+  @Override
+  public synchronized boolean isTerminated() {
+    return this.shutdown && this.queue.isEmpty();
+  }
+
+  @Override
+  public boolean awaitTermination(long timeout, TimeUnit unit) {
+    return isTerminated();
+  }
+
+  private static class Task<V> extends FutureTask<V> implements ScheduledFuture<V> {
+    Task(Callable<V> callable) {
+      super(callable);
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+      return 0;
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+      return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+    }
+  }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.gpact.common;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.web3j.crypto.Credentials;
+import org.web3j.crypto.Keys;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+
+public class PooledTxManagerTest {
+  private static final long CHAIN_ID = 31;
+  private static final String TO = "0x" + "12".repeat(20);
+  private static final BigInteger GAS_LIMIT = BigInteger.valueOf(100000);
+
+  private final FakeEthereumClient client = new FakeEthereumClient();
+  private final Web3j web3j = Web3j.build(this.client);
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+  private final List<String> addresses = new ArrayList<>();
+
+  @AfterEach
+  public void shutdown() {
+    this.scheduler.shutdownNow();
+  }
+
+  private PooledTxManager create(int size, PooledTxManager.Strategy strategy) throws Exception {
+    BlockTransactionReceiptProcessor receiptProcessor =
+        new BlockTransactionReceiptProcessor(this.web3j, this.scheduler, 10, 1000);
+    List<FastTxManager> accounts = new ArrayList<>();
+    List<TransactionBatcher> batchers = new ArrayList<>();
+    for (int i = 0; i < size; i++) {
+      FastTxManager tm =
+          new FastTxManager(this.web3j, Credentials.create(Keys.createEcKeyPair()), CHAIN_ID, null);
+      tm.setNonce(BigInteger.ZERO);
+      accounts.add(tm);
+      batchers.add(
+          new TransactionBatcher(tm, this.web3j, receiptProcessor, this.scheduler, 20, 100, 200));
+      this.addresses.add(tm.getFromAddress());
+    }
+    return new PooledTxManager(accounts, batchers, receiptProcessor, strategy);
+  }
+
+  private CompletableFuture<TransactionReceipt> submit(PooledTxManager pool, BigInteger id) {
+    return pool.submit(id, BigInteger.ONE, GAS_LIMIT, TO, "0x");
+  }
+
+  private int countFrom(int account) {
+    return Collections.frequency(this.client.getSubmittedFrom(), this.addresses.get(account));
+  }
+
+  @Test
+  public void roundRobin() throws Exception {
+    PooledTxManager pool = create(3, PooledTxManager.Strategy.ROUND_ROBIN);
+    this.client.setMineOnBlockNumber(true);
+    List<CompletableFuture<TransactionReceipt>> receipts = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      receipts.add(submit(pool, null));
+    }
+    for (CompletableFuture<TransactionReceipt> receipt : receipts) {
+      receipt.get(5, TimeUnit.SECONDS);
+    }
+    for (int i = 0; i < 3; i++) {
+      assertEquals(2, countFrom(i));
+    }
+    assertArrayEquals(new int[] {0, 0, 0}, pool.getInFlight());
+  }
+
+  @Test
+  public void leastLoaded() throws Exception {
+    PooledTxManager pool = create(3, PooledTxManager.Strategy.LEAST_LOADED);
+    // Nothing is mined, so all of the transactions stay in flight.
+    BigInteger id = BigInteger.TEN;
+    pool.pin(id, this.addresses.get(0));
+    for (int i = 0; i < 3; i++) {
+      submit(pool, id);
+    }
+    submit(pool, null);
+    submit(pool, null);
+    assertArrayEquals(new int[] {3, 1, 1}, pool.getInFlight());
+  }
+
+  @Test
+  public void crosschainTransactionPinnedToOneAccount() throws Exception {
+    PooledTxManager pool = create(3, PooledTxManager.Strategy.ROUND_ROBIN);
+    this.client.setMineOnBlockNumber(true);
+    BigInteger first = BigInteger.ONE;
+    BigInteger second = BigInteger.TWO;
+    List<CompletableFuture<TransactionReceipt>> receipts = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      receipts.add(submit(pool, first));
+      receipts.add(submit(pool, second));
+      // Transactions that are not part of a crosschain transaction still rotate.
+      receipts.add(submit(pool, null));
+    }
+    for (CompletableFuture<TransactionReceipt> receipt : receipts) {
+      receipt.get(5, TimeUnit.SECONDS);
+    }
+    assertEquals(this.addresses.get(0), pool.pin(first).getFromAddress());
+    assertEquals(this.addresses.get(1), pool.pin(second).getFromAddress());
+    // The other transactions were spread across all three accounts.
+    assertEquals(4, countFrom(0));
+    assertEquals(4, countFrom(1));
+    assertEquals(1, countFrom(2));
+
+    pool.unpin(first);
+    pool.unpin(second);
+    assertEquals(0, pool.getNumPinned());
+  }
+
+  @Test
+  public void pinToStartAccount() throws Exception {
+    PooledTxManager pool = create(3, PooledTxManager.Strategy.ROUND_ROBIN);
+    this.client.setMineOnBlockNumber(true);
+    BigInteger id = BigInteger.ONE;
+    pool.pin(id, this.addresses.get(2));
+    submit(pool, id).get(5, TimeUnit.SECONDS);
+    submit(pool, id).get(5, TimeUnit.SECONDS);
+    assertEquals(2, countFrom(2));
+
+    String unknown = Credentials.create(Keys.createEcKeyPair()).getAddress();
+    assertThrows(IllegalArgumentException.class, () -> pool.pin(BigInteger.TWO, unknown));
+  }
+
+  @Test
+  public void inFlightUntilReceiptArrives() throws Exception {
+    PooledTxManager pool = create(2, PooledTxManager.Strategy.LEAST_LOADED);
+    // Nobody waits for the receipt of a transaction sent using the TransactionManager interface.
+    pool.sendTransaction(BigInteger.ONE, GAS_LIMIT, TO, "0x", BigInteger.ZERO, false);
+    assertEquals(1, pool.getInFlight()[0] + pool.getInFlight()[1]);
+
+    this.client.mine();
+    long giveUp = System.currentTimeMillis() + 5000;
+    while (pool.getInFlight()[0] + pool.getInFlight()[1] != 0
+        && System.currentTimeMillis() < giveUp) {
+      Thread.sleep(10);
+    }
+    assertArrayEquals(new int[] {0, 0}, pool.getInFlight());
+  }
+}
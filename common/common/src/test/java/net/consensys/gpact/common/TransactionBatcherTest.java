@@ -0,0 +1,124 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.gpact.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.web3j.crypto.Credentials;
+import org.web3j.crypto.Keys;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+
+// The batcher and receipt processor run on a ManualScheduler and the Ethereum Client responds on
+// the calling thread, so each test runs on one thread and does not depend on timing.
+public class TransactionBatcherTest {
+  private static final long CHAIN_ID = 31;
+  private static final String TO = "0x" + "12".repeat(20);
+
+  private final FakeEthereumClient client = new FakeEthereumClient();
+  private final Web3j web3j = Web3j.build(this.client);
+  private final ManualScheduler scheduler = new ManualScheduler();
+  private FastTxManager tm;
+
+  @AfterEach
+  public void shutdown() {
+    this.scheduler.shutdownNow();
+  }
+
+  private TransactionBatcher create() throws Exception {
+    this.tm =
+        new FastTxManager(this.web3j, Credentials.create(Keys.createEcKeyPair()), CHAIN_ID, null);
+    this.tm.setNonce(BigInteger.valueOf(4));
+    BlockTransactionReceiptProcessor receiptProcessor =
+        new BlockTransactionReceiptProcessor(this.web3j, this.scheduler, 10, 1000);
+    this.client.setMineOnBlockNumber(true);
+    this.client.setSynchronous(true);
+    // Released nonces can be filled as soon as the gap filling task runs.
+    return new TransactionBatcher(
+        this.tm, this.web3j, receiptProcessor, this.scheduler, 50, 100, 0);
+  }
+
+  private static List<CompletableFuture<TransactionReceipt>> submit(
+      TransactionBatcher batcher, int n) {
+    List<CompletableFuture<TransactionReceipt>> receipts = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      receipts.add(batcher.submit(BigInteger.ONE, BigInteger.valueOf(100000), TO, "0x"));
+    }
+    return receipts;
+  }
+
+  @Test
+  public void submittedInOneBatch() throws Exception {
+    TransactionBatcher batcher = create();
+    List<CompletableFuture<TransactionReceipt>> receipts = submit(batcher, 5);
+    assertTrue(this.client.getBatchSizes().isEmpty());
+
+    this.scheduler.runUntilIdle();
+    for (CompletableFuture<TransactionReceipt> receipt : receipts) {
+      assertTrue(receipt.isDone());
+      assertEquals("0x1", receipt.join().getStatus());
+    }
+    assertEquals(Arrays.asList(5L, 6L, 7L, 8L, 9L), this.client.getSubmittedNonces());
+    assertEquals(5, (int) this.client.getBatchSizes().get(0));
+    assertEquals(0, this.client.getRequestCount("eth_getTransactionCount"));
+  }
+
+  @Test
+  public void unusedReleasedNonceFilled() throws Exception {
+    TransactionBatcher batcher = create();
+    // Reject the middle transaction of the burst, leaving a gap that no later transaction fills.
+    this.client.setRejecter(
+        tx ->
+            tx.getNonce().longValueExact() == 6 && tx.getTo().equalsIgnoreCase(TO)
+                ? new Response.Error(-32000, "transaction underpriced")
+                : null);
+    List<CompletableFuture<TransactionReceipt>> receipts = submit(batcher, 3);
+
+    this.scheduler.runUntilIdle();
+    assertThrows(CompletionException.class, () -> receipts.get(1).join());
+    assertEquals("0x1", receipts.get(0).join().getStatus());
+    assertEquals("0x1", receipts.get(2).join().getStatus());
+    // The gap was filled with a transfer to the account itself.
+    assertEquals(Arrays.asList(5L, 6L, 7L, 6L), this.client.getSubmittedNonces());
+    assertEquals(0, this.tm.getNumReleasedNonces());
+  }
+
+  @Test
+  public void alreadyKnownWaitsForReceipt() throws Exception {
+    TransactionBatcher batcher = create();
+    this.client.setRejecter(tx -> new Response.Error(-32000, "already known"));
+    List<CompletableFuture<TransactionReceipt>> receipts = submit(batcher, 2);
+
+    this.scheduler.runUntilIdle();
+    for (CompletableFuture<TransactionReceipt> receipt : receipts) {
+      assertTrue(receipt.isDone());
+      assertEquals("0x1", receipt.join().getStatus());
+    }
+    assertEquals(0, this.tm.getNumReleasedNonces());
+    assertEquals(BigInteger.valueOf(6), this.tm.getCurrentNonce());
+    assertEquals(0, this.client.getRequestCount("eth_getTransactionCount"));
+  }
+}
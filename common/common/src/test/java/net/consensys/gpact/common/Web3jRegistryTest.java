@@ -0,0 +1,99 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.gpact.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.web3j.crypto.Credentials;
+import org.web3j.crypto.Keys;
+
+public class Web3jRegistryTest {
+  // No requests are sent, so nothing needs to be listening.
+  private static final String URI = "http://localhost:1";
+
+  @Test
+  public void sharedUntilLastRelease() {
+    Web3jRegistry.Client client1 = Web3jRegistry.acquire(URI, 1000);
+    Web3jRegistry.Client client2 = Web3jRegistry.acquire(URI, 1000);
+    assertSame(client1, client2);
+    assertSame(client1.getWeb3j(), client2.getWeb3j());
+
+    Web3jRegistry.release(client1);
+    assertFalse(client2.getScheduler().isShutdown());
+    Web3jRegistry.release(client2);
+    assertTrue(client2.getScheduler().isShutdown());
+    assertThrows(IllegalStateException.class, () -> Web3jRegistry.release(client2));
+
+    Web3jRegistry.Client client3 = Web3jRegistry.acquire(URI, 1000);
+    assertNotSame(client1, client3);
+    Web3jRegistry.release(client3);
+  }
+
+  @Test
+  public void differentUris() {
+    int before = Web3jRegistry.getNumClients();
+    Web3jRegistry.Client client1 = Web3jRegistry.acquire(URI + "/a", 1000);
+    Web3jRegistry.Client client2 = Web3jRegistry.acquire(URI + "/b", 1000);
+    assertNotSame(client1, client2);
+    assertEquals(before + 2, Web3jRegistry.getNumClients());
+    Web3jRegistry.release(client1);
+    Web3jRegistry.release(client2);
+    assertEquals(before, Web3jRegistry.getNumClients());
+  }
+
+  @Test
+  public void sameUriDifferentPollingIntervals() {
+    Web3jRegistry.Client client1 = Web3jRegistry.acquire(URI, 1000);
+    Web3jRegistry.Client client2 = Web3jRegistry.acquire(URI, 2000);
+    assertSame(client1, client2);
+    assertEquals(1000, client2.getPollingInterval());
+    Web3jRegistry.release(client1);
+    Web3jRegistry.release(client2);
+  }
+
+  @Test
+  public void sharedObjectsDiscardedWithClient() throws Exception {
+    Credentials credentials = Credentials.create(Keys.createEcKeyPair());
+    BlockchainId bcId = BlockchainId.of(31);
+    Web3jRegistry.Client client1 = Web3jRegistry.acquire(URI, 1000);
+    BlockTransactionReceiptProcessor processor1 =
+        BlockTransactionReceiptProcessor.getOrCreate(client1, bcId, 1000, 10);
+    FastTxManager tm1 = TxManagerCache.getOrCreate(client1, credentials, 31, processor1);
+    TransactionBatcher batcher1 = TransactionBatcher.getOrCreate(client1, tm1, processor1, 1000);
+    assertSame(processor1, BlockTransactionReceiptProcessor.getOrCreate(client1, bcId, 1000, 10));
+    assertSame(tm1, TxManagerCache.getOrCreate(client1, credentials, 31, processor1));
+    assertSame(batcher1, TransactionBatcher.getOrCreate(client1, tm1, processor1, 1000));
+    Web3jRegistry.release(client1);
+    assertThrows(
+        IllegalStateException.class,
+        () -> BlockTransactionReceiptProcessor.getOrCreate(client1, bcId, 1000, 10));
+
+    // Nothing created with the old client is used with the new one.
+    Web3jRegistry.Client client2 = Web3jRegistry.acquire(URI, 1000);
+    BlockTransactionReceiptProcessor processor2 =
+        BlockTransactionReceiptProcessor.getOrCreate(client2, bcId, 1000, 10);
+    FastTxManager tm2 = TxManagerCache.getOrCreate(client2, credentials, 31, processor2);
+    assertNotSame(processor1, processor2);
+    assertNotSame(tm1, tm2);
+    assertNotSame(batcher1, TransactionBatcher.getOrCreate(client2, tm2, processor2, 1000));
+    Web3jRegistry.release(client2);
+  }
+}
@@ -3,8 +3,8 @@ package net.consensys.gpact.crypto;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 
 import java.math.BigInteger;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
 import net.consensys.gpact.common.TxManagerCache;
+import net.consensys.gpact.common.Web3jRegistry;
 import net.consensys.gpact.test.soliditywrappers.EcdsaSignatureTest;
 import net.consensys.gpact.utils.crypto.EcdsaSignatureConversion;
 import net.consensys.gpact.utils.crypto.KeyPairGen;
@@ -14,7 +14,6 @@ import org.web3j.crypto.ECKeyPair;
 import org.web3j.crypto.Keys;
 import org.web3j.crypto.Sign;
 import org.web3j.protocol.Web3j;
-import org.web3j.protocol.http.HttpService;
 import org.web3j.tx.TransactionManager;
 import org.web3j.tx.gas.ContractGasProvider;
 import org.web3j.tx.gas.DefaultGasProvider;
@@ -36,6 +35,7 @@ public class EcdsaSignatureContractTest {
   // parallel testing.
   protected static final int RETRY = 100;
 
+  Web3jRegistry.Client web3jClient;
   Web3j web3j;
   TransactionManager tm;
   Credentials credentials;
@@ -48,13 +48,13 @@ public class EcdsaSignatureContractTest {
     //    System.out.println("Priv2: " + privateKey);
     this.credentials = Credentials.create(privateKey);
 
-    this.web3j =
-        Web3j.build(new HttpService(URI), POLLING_INTERVAL, new ScheduledThreadPoolExecutor(5));
+    this.web3jClient = Web3jRegistry.acquire(URI, POLLING_INTERVAL);
+    this.web3j = this.web3jClient.getWeb3j();
     TransactionReceiptProcessor txrProcessor =
         new PollingTransactionReceiptProcessor(this.web3j, POLLING_INTERVAL, RETRY);
     this.tm =
         TxManagerCache.getOrCreate(
-            this.web3j, this.credentials, BLOCKCHAIN_ID.longValue(), txrProcessor);
+            this.web3jClient, this.credentials, BLOCKCHAIN_ID.longValue(), txrProcessor);
   }
 
   @Test
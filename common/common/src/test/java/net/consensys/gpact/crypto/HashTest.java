@@ -0,0 +1,55 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.gpact.crypto;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.hyperledger.besu.crypto.Hash;
+import org.junit.jupiter.api.Test;
+
+public class HashTest {
+  private static final Bytes32 EMPTY_KECCAK =
+      Bytes32.fromHexString("0xc5d2460186f7233c927e7db2dcc703c0e500b653ca82273b7bfad8045d85a470");
+
+  @Test
+  public void emptyInput() {
+    assertEquals(EMPTY_KECCAK, Hash.keccak256(Bytes.EMPTY));
+    byte[] output = new byte[32];
+    Hash.keccak256(new byte[0], 0, 0, output, 0);
+    assertEquals(EMPTY_KECCAK, Bytes32.wrap(output));
+  }
+
+  @Test
+  public void digestWrittenIntoArray() {
+    // Published Keccak-256 test vectors.
+    Bytes32 foxKeccak =
+        Bytes32.fromHexString("0x4d741b6f1eb29cb2a9b9911c82f56fa8d73b04959d3d9d222895df6c0b28aa15");
+    Bytes32 foxWithPeriodKeccak =
+        Bytes32.fromHexString("0x578951e24efd62a3d63a86f7cd19aaa53c898fe287d2552133220370240b572d");
+    byte[] input = "The quick brown fox jumps over the lazy dog.".getBytes();
+
+    byte[] output = new byte[40];
+    Hash.keccak256(input, 0, input.length, output, 8);
+    assertEquals(foxWithPeriodKeccak, Bytes32.wrap(output, 8));
+    Hash.keccak256(input, 0, input.length - 1, output, 0);
+    assertEquals(foxKeccak, Bytes32.wrap(output, 0));
+
+    // The reused digest must not carry state from one hash to the next.
+    assertEquals(foxKeccak, Hash.keccak256(Bytes.wrap(input, 0, input.length - 1)));
+    assertEquals(foxWithPeriodKeccak, Hash.keccak256(Bytes.wrap(input)));
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.gpact.crypto;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import net.consensys.gpact.utils.crypto.KeyPairGen;
+import net.consensys.gpact.utils.crypto.RandomSource;
+import org.junit.jupiter.api.Test;
+
+public class RandomSourceTest {
+
+  @Test
+  public void oneGeneratorPerThread() throws Exception {
+    SecureRandom mine = RandomSource.get();
+    assertSame(mine, RandomSource.get());
+
+    AtomicReference<SecureRandom> other = new AtomicReference<>();
+    Thread thread = new Thread(() -> other.set(RandomSource.get()));
+    thread.start();
+    thread.join();
+    assertNotSame(mine, other.get());
+  }
+
+  @Test
+  public void batchesAreDistinct() {
+    List<BigInteger> ids = RandomSource.nextBigIntegers(1000, 255);
+    assertEquals(1000, ids.size());
+    assertEquals(1000, new HashSet<>(ids).size());
+    for (BigInteger id : ids) {
+      assertTrue(id.bitLength() <= 255);
+    }
+
+    List<String> privateKeys = new KeyPairGen().generateKeyPairsGetPrivateKeys(20);
+    assertEquals(20, new HashSet<>(privateKeys).size());
+  }
+}
@@ -16,9 +16,9 @@ package net.consensys.gpact.common.test;
 
 import java.math.BigInteger;
 import java.util.Optional;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
 import net.consensys.gpact.common.RevertReason;
 import net.consensys.gpact.common.TxManagerCache;
+import net.consensys.gpact.common.Web3jRegistry;
 import net.consensys.gpact.utils.crypto.KeyPairGen;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -26,7 +26,6 @@ import org.web3j.crypto.Credentials;
 import org.web3j.protocol.Web3j;
 import org.web3j.protocol.core.methods.response.TransactionReceipt;
 import org.web3j.protocol.exceptions.TransactionException;
-import org.web3j.protocol.http.HttpService;
 import org.web3j.tx.TransactionManager;
 import org.web3j.tx.gas.ContractGasProvider;
 import org.web3j.tx.gas.DefaultGasProvider;
@@ -47,6 +46,7 @@ public abstract class AbstractWeb3Test {
   // parallel testing.
   protected static final int RETRY = 100;
 
+  protected Web3jRegistry.Client web3jClient;
   protected Web3j web3j;
   protected TransactionManager tm;
   protected Credentials credentials;
@@ -59,13 +59,13 @@ public abstract class AbstractWeb3Test {
     //    System.out.println("Priv2: " + privateKey);
     this.credentials = Credentials.create(privateKey);
 
-    this.web3j =
-        Web3j.build(new HttpService(URI), POLLING_INTERVAL, new ScheduledThreadPoolExecutor(5));
+    this.web3jClient = Web3jRegistry.acquire(URI, POLLING_INTERVAL);
+    this.web3j = this.web3jClient.getWeb3j();
     TransactionReceiptProcessor txrProcessor =
         new PollingTransactionReceiptProcessor(this.web3j, POLLING_INTERVAL, RETRY);
     this.tm =
         TxManagerCache.getOrCreate(
-            this.web3j, this.credentials, BLOCKCHAIN_ID.longValue(), txrProcessor);
+            this.web3jClient, this.credentials, BLOCKCHAIN_ID.longValue(), txrProcessor);
   }
 
   public Credentials createNewIdentity() {
@@ -76,7 +76,8 @@ public abstract class AbstractWeb3Test {
   public TransactionManager createTransactionManager(Credentials creds) {
     TransactionReceiptProcessor txrProcessor =
         new PollingTransactionReceiptProcessor(this.web3j, POLLING_INTERVAL, RETRY);
-    return TxManagerCache.getOrCreate(this.web3j, creds, BLOCKCHAIN_ID.longValue(), txrProcessor);
+    return TxManagerCache.getOrCreate(
+        this.web3jClient, creds, BLOCKCHAIN_ID.longValue(), txrProcessor);
   }
 
   public void processTransactionException(TransactionException ex) {
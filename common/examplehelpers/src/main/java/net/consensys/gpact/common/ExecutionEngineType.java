@@ -16,5 +16,6 @@ package net.consensys.gpact.common;
 
 public enum ExecutionEngineType {
   SERIAL,
-  PARALLEL
+  PARALLEL,
+  PIPELINED
 }
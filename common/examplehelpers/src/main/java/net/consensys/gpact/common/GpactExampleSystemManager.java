@@ -8,6 +8,7 @@ import net.consensys.gpact.cbc.CrossControlManagerGroup;
 import net.consensys.gpact.cbc.CrosschainExecutor;
 import net.consensys.gpact.cbc.engine.ExecutionEngine;
 import net.consensys.gpact.cbc.engine.ParallelExecutionEngine;
+import net.consensys.gpact.cbc.engine.PipelinedExecutionEngine;
 import net.consensys.gpact.cbc.engine.SerialExecutionEngine;
 import net.consensys.gpact.messaging.MessagingManagerGroupInterface;
 import net.consensys.gpact.txroot.TxRootRelayerGroup;
@@ -134,6 +135,8 @@ public class GpactExampleSystemManager {
         return new SerialExecutionEngine(executor);
       case PARALLEL:
         return new ParallelExecutionEngine(executor);
+      case PIPELINED:
+        return new PipelinedExecutionEngine(executor);
       default:
         throw new RuntimeException("Not implemented yet");
     }
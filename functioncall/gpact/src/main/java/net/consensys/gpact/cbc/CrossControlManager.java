@@ -14,18 +14,20 @@
  */
 package net.consensys.gpact.cbc;
 
-import static java.security.DrbgParameters.Capability.RESEED_ONLY;
-
 import java.io.IOException;
 import java.math.BigInteger;
-import java.security.DrbgParameters;
-import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
 import net.consensys.gpact.common.*;
 import net.consensys.gpact.messaging.SignedEvent;
+import net.consensys.gpact.utils.crypto.RandomSource;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.tuweni.bytes.Bytes;
@@ -33,10 +35,10 @@ import org.hyperledger.besu.crypto.Hash;
 import org.web3j.abi.datatypes.Address;
 import org.web3j.abi.datatypes.generated.Uint256;
 import org.web3j.crypto.Credentials;
+import org.web3j.protocol.core.RemoteFunctionCall;
 import org.web3j.protocol.core.methods.response.BaseEventResponse;
 import org.web3j.protocol.core.methods.response.Log;
 import org.web3j.protocol.core.methods.response.TransactionReceipt;
-import org.web3j.protocol.exceptions.TransactionException;
 
 public class CrossControlManager extends AbstractBlockchain {
   private static final Logger LOG = LogManager.getLogger(CrossControlManager.class);
@@ -53,14 +55,19 @@ public class CrossControlManager extends AbstractBlockchain {
       Hash.keccak256(Bytes.wrap("Root(uint256,bool)".getBytes())).toArray();
   public static Bytes ROOT_EVENT_SIGNAUTRE_BYTES = Bytes.wrap(ROOT_EVENT_SIGNATURE);
 
+  private static final int CROSSCHAIN_TRANSACTION_ID_BITS = 255;
+
   protected net.consensys.gpact.cbc.soliditywrappers.CrosschainControl
       crossBlockchainControlContract;
 
-  // TODO put this into a map for the current transaction id, so many transactions can be handled in
-  // parallel
-  // The time-out for the current transaction.
-  private long crossBlockchainTransactionTimeout;
-  private boolean rootEventSuccess;
+  // Crosschain transactions that have been started on this blockchain, but have not yet had
+  // their root transaction submitted. Keyed by crosschain transaction id, so that many
+  // transactions can be handled in parallel by the one manager.
+  private final Map<BigInteger, TransactionState> transactions = new ConcurrentHashMap<>();
+  // Crosschain transactions that have had segments submitted on this blockchain, but have not yet
+  // had their signalling transaction submitted. The account that submitted the start transaction
+  // is pinned to these transactions.
+  private final Map<BigInteger, TransactionState> segmentTransactions = new ConcurrentHashMap<>();
 
   protected CrossControlManager(
       Credentials credentials,
@@ -110,36 +117,122 @@ public class CrossControlManager extends AbstractBlockchain {
     assert (txr.isStatusOK());
   }
 
-  public static BigInteger generateRandomCrossBlockchainTransactionId()
-      throws NoSuchAlgorithmException {
-    // TODO put this into the crypto module and do a better job or this + reseeding.
-    final SecureRandom rand =
-        SecureRandom.getInstance(
-            "DRBG", DrbgParameters.instantiation(256, RESEED_ONLY, new byte[] {0x01}));
-    return new BigInteger(255, rand);
+  public static BigInteger generateRandomCrossBlockchainTransactionId() {
+    return RandomSource.nextBigInteger(CROSSCHAIN_TRANSACTION_ID_BITS);
+  }
+
+  /**
+   * Generate a batch of crosschain transaction ids.
+   *
+   * @param count Number of ids to generate.
+   * @return Random transaction ids.
+   */
+  public static List<BigInteger> generateRandomCrossBlockchainTransactionIds(int count) {
+    return RandomSource.nextBigIntegers(count, CROSSCHAIN_TRANSACTION_ID_BITS);
   }
 
   public Tuple<TransactionReceipt, byte[], Boolean> start(
       BigInteger transactionId, BigInteger timeout, byte[] callGraph) throws Exception {
-    LOG.debug("Start Transaction on blockchain {}", this.blockchainId);
+    // Use the same account selection and pinning as the asynchronous path.
+    return waitFor(startAsync(transactionId, timeout, callGraph));
+  }
+
+  /**
+   * Submit a start transaction without blocking the calling thread while waiting for the
+   * transaction receipt.
+   *
+   * @param transactionId Crosschain transaction id.
+   * @param timeout Time-out for the crosschain transaction.
+   * @param callGraph Encoded call execution tree.
+   * @return Future that completes with the transaction receipt and start event data.
+   */
+  public CompletableFuture<Tuple<TransactionReceipt, byte[], Boolean>> startAsync(
+      BigInteger transactionId, BigInteger timeout, byte[] callGraph) {
+    LOG.debug("Start Transaction (async) on blockchain {}", this.blockchainId);
     StatsHolder.log("Start call now");
-    TransactionReceipt txR =
-        this.crossBlockchainControlContract.start(transactionId, timeout, callGraph).send();
+    long submitted = System.nanoTime();
+    return sendAsync(
+            transactionId,
+            getCbcContractAddress(),
+            this.crossBlockchainControlContract.start(transactionId, timeout, callGraph))
+        .whenComplete(
+            (txR, ex) -> {
+              if (ex != null || !txR.isStatusOK()) {
+                unpinAccount(transactionId);
+              }
+            })
+        .thenApply(unchecked(txR -> processStartReceipt(transactionId, txR, submitted)));
+  }
+
+  private Tuple<TransactionReceipt, byte[], Boolean> processStartReceipt(
+      BigInteger transactionId, TransactionReceipt txR, long submitted) throws Exception {
+    StatsHolder.logLatency("Start Transaction", submitted);
+    if (!txR.isStatusOK()) {
+      LOG.error(" Revert Reason: {}", RevertReason.decodeRevertReason(txR.getRevertReason()));
+      throw new Exception("Start transaction failed");
+    }
     StatsHolder.logGas("Start Transaction", txR.getGasUsed());
+    Instrumentation.Span span =
+        Instrumentations.start(Instrumentation.Stage.EVENT_EXTRACTION, this.blockchainId);
     List<net.consensys.gpact.cbc.soliditywrappers.CrosschainControl.StartEventResponse>
         startEvents = this.crossBlockchainControlContract.getStartEvents(txR);
     net.consensys.gpact.cbc.soliditywrappers.CrosschainControl.StartEventResponse startEvent =
         startEvents.get(0);
-    this.crossBlockchainTransactionTimeout = startEvent._timeout.longValue();
+    removeTimedOutTransactions();
+    this.transactions.put(transactionId, new TransactionState(startEvent._timeout.longValue()));
     // LOG.debug("Start Event: {}", new BigInteger(getEventData(txR,
     // AbstractCbc.START_EVENT_SIGNATURE_BYTES)).toString(16));
-    return new Tuple<TransactionReceipt, byte[], Boolean>(
-        txR, getEventData(txR, CrossControlManager.START_EVENT_SIGNATURE_BYTES), false);
+    Tuple<TransactionReceipt, byte[], Boolean> result =
+        new Tuple<TransactionReceipt, byte[], Boolean>(
+            txR, getEventData(txR, CrossControlManager.START_EVENT_SIGNATURE_BYTES), false);
+    span.end();
+    return result;
   }
 
   public Tuple<TransactionReceipt, byte[], Boolean> segment(
       SignedEvent startEvent, List<SignedEvent> segEvents, List<BigInteger> callPath)
       throws Exception {
+    return waitFor(segmentAsync(startEvent, segEvents, callPath));
+  }
+
+  /**
+   * Submit a segment transaction without blocking the calling thread while waiting for the
+   * transaction receipt.
+   *
+   * @param startEvent Signed start event.
+   * @param segEvents Signed segment events for the segments called by this segment.
+   * @param callPath Call path of this segment.
+   * @return Future that completes with the transaction receipt, segment event data, and whether no
+   *     contracts were locked by the segment.
+   */
+  public CompletableFuture<Tuple<TransactionReceipt, byte[], Boolean>> segmentAsync(
+      SignedEvent startEvent, List<SignedEvent> segEvents, List<BigInteger> callPath) {
+    RemoteFunctionCall<TransactionReceipt> segmentCall =
+        segmentFunctionCall(startEvent, segEvents, callPath);
+    LOG.debug("Segment Transaction (async) on blockchain {}", this.blockchainId);
+    // Start(uint256 _crossBlockchainTransactionId, address _caller, uint256 _timeout, bytes)
+    byte[] startEventData = startEvent.getEventData();
+    BigInteger transactionId = eventWord(startEventData, 0);
+    String caller = new Address(eventWord(startEventData, 1)).toString();
+    // The segment must be submitted by the account that submitted the start transaction.
+    try {
+      pinAccount(transactionId, caller);
+    } catch (IllegalArgumentException ex) {
+      CompletableFuture<Tuple<TransactionReceipt, byte[], Boolean>> failed =
+          new CompletableFuture<>();
+      failed.completeExceptionally(ex);
+      return failed;
+    }
+    removeTimedOutTransactions();
+    this.segmentTransactions.put(
+        transactionId, new TransactionState(eventWord(startEventData, 2).longValue()));
+    long submitted = System.nanoTime();
+    return sendAsync(transactionId, getCbcContractAddress(), segmentCall)
+        .thenApply(unchecked(txR -> processSegmentReceipt(txR, submitted)));
+  }
+
+  private RemoteFunctionCall<TransactionReceipt> segmentFunctionCall(
+      SignedEvent startEvent, List<SignedEvent> segEvents, List<BigInteger> callPath) {
     List<BigInteger> bcIds = new ArrayList<>();
     List<String> cbcAddresses = new ArrayList<>();
     List<byte[]> eventFunctionSignatures = new ArrayList<>();
@@ -164,31 +257,21 @@ public class CrossControlManager extends AbstractBlockchain {
       LOG.debug("Call Path[{}]: {}", i, callPath.get(i));
     }
 
-    // RlpDumper.dump(RLP.input(Bytes.wrap(encodedSignatures.get(0))));
-    TransactionReceipt txR;
-    try {
-      LOG.debug("Segment Transaction on blockchain {}", this.blockchainId);
-      txR =
-          this.crossBlockchainControlContract
-              .segment(
-                  bcIds,
-                  cbcAddresses,
-                  eventFunctionSignatures,
-                  eventData,
-                  encodedSignatures,
-                  callPath)
-              .send();
-      StatsHolder.logGas("Segment Transaction", txR.getGasUsed());
-    } catch (TransactionException ex) {
-      LOG.error(
-          " Revert Reason: {}",
-          RevertReason.decodeRevertReason(ex.getTransactionReceipt().get().getRevertReason()));
-      throw ex;
-    }
+    return this.crossBlockchainControlContract.segment(
+        bcIds, cbcAddresses, eventFunctionSignatures, eventData, encodedSignatures, callPath);
+  }
+
+  private Tuple<TransactionReceipt, byte[], Boolean> processSegmentReceipt(
+      TransactionReceipt txR, long submitted) throws Exception {
+    StatsHolder.logLatency("Segment Transaction", submitted);
+    StatsHolder.logGas("Segment Transaction", txR.getGasUsed());
     if (!txR.isStatusOK()) {
+      LOG.error(" Revert Reason: {}", RevertReason.decodeRevertReason(txR.getRevertReason()));
       throw new Exception("Segment transaction failed");
     }
 
+    Instrumentation.Span span =
+        Instrumentations.start(Instrumentation.Stage.EVENT_EXTRACTION, this.blockchainId);
     showSegmentEvents(convertSegment(this.crossBlockchainControlContract.getSegmentEvents(txR)));
     showBadCallEvents(convertBadCall(this.crossBlockchainControlContract.getBadCallEvents(txR)));
     showNotEnoughCallsEvents(
@@ -204,14 +287,59 @@ public class CrossControlManager extends AbstractBlockchain {
     net.consensys.gpact.cbc.soliditywrappers.CrosschainControl.SegmentEventResponse
         segmentEventResponse = segmentEventResponses.get(0);
 
-    return new Tuple<TransactionReceipt, byte[], Boolean>(
-        txR,
-        getEventData(txR, CrossControlManager.SEGMENT_EVENT_SIGNATURE_BYTES),
-        segmentEventResponse._lockedContracts.isEmpty());
+    Tuple<TransactionReceipt, byte[], Boolean> result =
+        new Tuple<TransactionReceipt, byte[], Boolean>(
+            txR,
+            getEventData(txR, CrossControlManager.SEGMENT_EVENT_SIGNATURE_BYTES),
+            segmentEventResponse._lockedContracts.isEmpty());
+    span.end();
+    return result;
   }
 
+  /**
+   * Submit the root transaction for a crosschain transaction that was started on this blockchain.
+   *
+   * @param transactionId Crosschain transaction id that was passed to start.
+   * @param startEvent Signed start event.
+   * @param segEvents Signed segment events for the segments called from the root.
+   * @return Transaction receipt, root event data, and whether the root event indicated success.
+   * @throws Exception If the root transaction fails.
+   */
   public Tuple<TransactionReceipt, byte[], Boolean> root(
-      SignedEvent startEvent, List<SignedEvent> segEvents) throws Exception {
+      BigInteger transactionId, SignedEvent startEvent, List<SignedEvent> segEvents)
+      throws Exception {
+    return waitFor(rootAsync(transactionId, startEvent, segEvents));
+  }
+
+  /**
+   * Submit the root transaction without blocking the calling thread while waiting for the
+   * transaction receipt.
+   *
+   * @param transactionId Crosschain transaction id that was passed to start.
+   * @param startEvent Signed start event.
+   * @param segEvents Signed segment events for the segments called from the root.
+   * @return Future that completes with the transaction receipt, root event data, and whether the
+   *     root event indicated success.
+   */
+  public CompletableFuture<Tuple<TransactionReceipt, byte[], Boolean>> rootAsync(
+      BigInteger transactionId, SignedEvent startEvent, List<SignedEvent> segEvents) {
+    RemoteFunctionCall<TransactionReceipt> rootCall =
+        rootFunctionCall(transactionId, startEvent, segEvents);
+    LOG.debug("Root Transaction (async) on blockchain {}", this.blockchainId);
+    long submitted = System.nanoTime();
+    return sendAsync(transactionId, getCbcContractAddress(), rootCall)
+        .whenComplete(
+            (txR, ex) -> {
+              // Keep the account for the signalling transaction if there were segments here.
+              if (!this.segmentTransactions.containsKey(transactionId)) {
+                unpinAccount(transactionId);
+              }
+            })
+        .thenApply(unchecked(txR -> processRootReceipt(txR, submitted)));
+  }
+
+  private RemoteFunctionCall<TransactionReceipt> rootFunctionCall(
+      BigInteger transactionId, SignedEvent startEvent, List<SignedEvent> segEvents) {
     List<BigInteger> bcIds = new ArrayList<>();
     List<String> cbcAddresses = new ArrayList<>();
     List<byte[]> eventFunctionSignatures = new ArrayList<>();
@@ -231,35 +359,36 @@ public class CrossControlManager extends AbstractBlockchain {
       encodedSignatures.add(segEvent.getEncodedSignatures());
     }
 
-    long now = System.currentTimeMillis() / 1000;
-    LOG.debug(
-        " Current time on this computer: {}; Transaction time-out: {}",
-        now,
-        this.crossBlockchainTransactionTimeout);
-    if (this.crossBlockchainTransactionTimeout < now) {
-      LOG.warn(" Cross-Blockchain transaction will fail as transaction has timed-out");
-    } else if (this.crossBlockchainTransactionTimeout < (now - 10)) {
-      LOG.warn(" Cross-Blockchain transaction might fail as transaction time-out is soon");
+    TransactionState state = this.transactions.remove(transactionId);
+    if (state == null) {
+      LOG.warn(
+          " Cross-Blockchain transaction 0x{} was not started using this manager",
+          transactionId.toString(16));
+    } else {
+      long now = System.currentTimeMillis() / 1000;
+      LOG.debug(" Current time on this computer: {}; Transaction time-out: {}", now, state.timeout);
+      if (state.timeout < now) {
+        LOG.warn(" Cross-Blockchain transaction will fail as transaction has timed-out");
+      } else if (state.timeout < (now - 10)) {
+        LOG.warn(" Cross-Blockchain transaction might fail as transaction time-out is soon");
+      }
     }
 
-    TransactionReceipt txR;
-    try {
-      LOG.debug("Root Transaction on blockchain {}", this.blockchainId);
-      txR =
-          this.crossBlockchainControlContract
-              .root(bcIds, cbcAddresses, eventFunctionSignatures, eventData, encodedSignatures)
-              .send();
-      StatsHolder.logGas("Root Transaction", txR.getGasUsed());
-      if (!txR.isStatusOK()) {
-        throw new Exception("Root transaction failed");
-      }
-    } catch (TransactionException ex) {
-      LOG.error(
-          " Revert Reason: {}",
-          RevertReason.decodeRevertReason(ex.getTransactionReceipt().get().getRevertReason()));
-      throw ex;
+    return this.crossBlockchainControlContract.root(
+        bcIds, cbcAddresses, eventFunctionSignatures, eventData, encodedSignatures);
+  }
+
+  private Tuple<TransactionReceipt, byte[], Boolean> processRootReceipt(
+      TransactionReceipt txR, long submitted) throws Exception {
+    StatsHolder.logLatency("Root Transaction", submitted);
+    StatsHolder.logGas("Root Transaction", txR.getGasUsed());
+    if (!txR.isStatusOK()) {
+      LOG.error(" Revert Reason: {}", RevertReason.decodeRevertReason(txR.getRevertReason()));
+      throw new Exception("Root transaction failed");
     }
 
+    Instrumentation.Span span =
+        Instrumentations.start(Instrumentation.Stage.EVENT_EXTRACTION, this.blockchainId);
     showRootEvents(convertRoot(this.crossBlockchainControlContract.getRootEvents(txR)));
     showBadCallEvents(convertBadCall(this.crossBlockchainControlContract.getBadCallEvents(txR)));
     showNotEnoughCallsEvents(
@@ -274,10 +403,12 @@ public class CrossControlManager extends AbstractBlockchain {
         rootEventResponses = this.crossBlockchainControlContract.getRootEvents(txR);
     net.consensys.gpact.cbc.soliditywrappers.CrosschainControl.RootEventResponse rootEventResponse =
         rootEventResponses.get(0);
-    this.rootEventSuccess = rootEventResponse._success;
 
-    return new Tuple<TransactionReceipt, byte[], Boolean>(
-        txR, getEventData(txR, ROOT_EVENT_SIGNAUTRE_BYTES), false);
+    Tuple<TransactionReceipt, byte[], Boolean> result =
+        new Tuple<TransactionReceipt, byte[], Boolean>(
+            txR, getEventData(txR, ROOT_EVENT_SIGNAUTRE_BYTES), rootEventResponse._success);
+    span.end();
+    return result;
   }
 
   public CompletableFuture<TransactionReceipt> signallingAsyncPart1(
@@ -302,9 +433,28 @@ public class CrossControlManager extends AbstractBlockchain {
     }
 
     LOG.debug("Signalling Transaction on blockchain {}", this.blockchainId);
-    return this.crossBlockchainControlContract
-        .signalling(bcIds, cbcAddresses, eventFunctionSignatures, eventData, encodedSignatures)
-        .sendAsync();
+    // Signalling transactions for concurrent crosschain transactions are batched together. Reverts
+    // are reported by signallingAsyncPart2.
+    // Root(uint256 _crossBlockchainTransactionId, bool _success)
+    BigInteger transactionId = eventWord(rootEvent.getEventData(), 0);
+    long submitted = System.nanoTime();
+    return sendAsync(
+            transactionId,
+            getCbcContractAddress(),
+            this.crossBlockchainControlContract.signalling(
+                bcIds, cbcAddresses, eventFunctionSignatures, eventData, encodedSignatures))
+        .whenComplete(
+            (txR, ex) -> {
+              this.segmentTransactions.remove(transactionId);
+              if (!this.transactions.containsKey(transactionId)) {
+                unpinAccount(transactionId);
+              }
+            })
+        .thenApply(
+            txR -> {
+              StatsHolder.logLatency("Signalling Transaction", submitted);
+              return txR;
+            });
   }
 
   public void signallingAsyncPart2(TransactionReceipt txR) throws Exception {
@@ -314,6 +464,8 @@ public class CrossControlManager extends AbstractBlockchain {
       throw new Exception("Signalling transaction failed");
     }
 
+    Instrumentation.Span span =
+        Instrumentations.start(Instrumentation.Stage.EVENT_EXTRACTION, this.blockchainId);
     List<net.consensys.gpact.cbc.soliditywrappers.CrosschainControl.SignallingEventResponse>
         sigEventResponses = this.crossBlockchainControlContract.getSignallingEvents(txR);
     net.consensys.gpact.cbc.soliditywrappers.CrosschainControl.SignallingEventResponse
@@ -324,6 +476,8 @@ public class CrossControlManager extends AbstractBlockchain {
         " _crossBlockchainTransactionId: {}",
         sigEventResponse._crossBlockchainTransactionId.toString(16));
 
+    span.end();
+
     // showDumpEvents(this.convertDump(this.crossBlockchainControlContract.getDumpEvents(txR)));
   }
 
@@ -331,8 +485,90 @@ public class CrossControlManager extends AbstractBlockchain {
     return this.crossBlockchainControlContract.getContractAddress();
   }
 
-  public boolean getRootEventSuccess() {
-    return this.rootEventSuccess;
+  /**
+   * Number of crosschain transactions that have been started using this manager, and that have not
+   * yet had their root transaction submitted.
+   *
+   * @return number of crosschain transactions in progress.
+   */
+  public int getNumTransactionsInProgress() {
+    return this.transactions.size();
+  }
+
+  /**
+   * Remove the state for transactions that can no longer have a root transaction submitted. This
+   * stops the state table growing when crosschain transactions are abandoned part way through.
+   */
+  private void removeTimedOutTransactions() {
+    long now = System.currentTimeMillis() / 1000;
+    removeTimedOut(this.transactions, this.segmentTransactions, now);
+    removeTimedOut(this.segmentTransactions, this.transactions, now);
+  }
+
+  private void removeTimedOut(
+      Map<BigInteger, TransactionState> states,
+      Map<BigInteger, TransactionState> others,
+      long now) {
+    states
+        .entrySet()
+        .removeIf(
+            entry -> {
+              if (entry.getValue().timeout >= now) {
+                return false;
+              }
+              if (!others.containsKey(entry.getKey())) {
+                unpinAccount(entry.getKey());
+              }
+              return true;
+            });
+  }
+
+  // Get a 32 byte word from ABI encoded event data.
+  private static BigInteger eventWord(byte[] eventData, int index) {
+    return new BigInteger(1, Arrays.copyOfRange(eventData, index * 32, (index + 1) * 32));
+  }
+
+  // Wait for a transaction submitted using one of the asynchronous methods, throwing the
+  // exception that caused it to fail.
+  private static <T> T waitFor(CompletableFuture<T> future) throws Exception {
+    try {
+      return future.get();
+    } catch (ExecutionException ex) {
+      Throwable th = ex.getCause();
+      if (th instanceof CompletionException && th.getCause() != null) {
+        th = th.getCause();
+      }
+      if (th instanceof Exception) {
+        throw (Exception) th;
+      }
+      throw ex;
+    }
+  }
+
+  private interface ReceiptProcessor<T> {
+    T process(TransactionReceipt txR) throws Exception;
+  }
+
+  // Allow methods that throw checked exceptions to be used to process receipts of futures.
+  private static <T> Function<TransactionReceipt, T> unchecked(ReceiptProcessor<T> processor) {
+    return txR -> {
+      try {
+        return processor.process(txR);
+      } catch (RuntimeException ex) {
+        throw ex;
+      } catch (Exception ex) {
+        throw new CompletionException(ex);
+      }
+    };
+  }
+
+  private static class TransactionState {
+    // The time-out for the transaction, in seconds since the epoch.
+    final long timeout;
+
+    TransactionState(long timeout) {
+      this.timeout = timeout;
+    }
   }
 
   public static class BadCallEventResponse extends BaseEventResponse {
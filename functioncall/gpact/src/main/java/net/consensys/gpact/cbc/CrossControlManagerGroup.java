@@ -1,9 +1,10 @@
 package net.consensys.gpact.cbc;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import net.consensys.gpact.common.BlockchainId;
 import net.consensys.gpact.common.BlockchainInfo;
 import net.consensys.gpact.messaging.MessagingVerificationInterface;
@@ -14,7 +15,21 @@ import org.web3j.crypto.Credentials;
 public class CrossControlManagerGroup {
   static final Logger LOG = LogManager.getLogger(CrossControlManagerGroup.class);
 
-  Map<BlockchainId, BcHolder> blockchains = new HashMap<>();
+  private static final long SHUTDOWN_TIMEOUT_SECONDS = 60;
+
+  Map<BlockchainId, BcHolder> blockchains = new ConcurrentHashMap<>();
+
+  // Threads used by execution engines to submit segments, shared by all crosschain calls
+  // executed using this group.
+  private final CrosschainWorkerPool workerPool;
+
+  public CrossControlManagerGroup() {
+    this(new CrosschainWorkerPool());
+  }
+
+  public CrossControlManagerGroup(CrosschainWorkerPool workerPool) {
+    this.workerPool = workerPool;
+  }
 
   public void addBlockchainAndDeployContracts(
       Credentials creds, BlockchainInfo bcInfo, MessagingVerificationInterface messageVerification)
@@ -93,6 +108,23 @@ public class CrossControlManagerGroup {
     return bcIds;
   }
 
+  public CrosschainWorkerPool getWorkerPool() {
+    return this.workerPool;
+  }
+
+  /**
+   * Stop the worker pool, waiting for crosschain calls in progress to complete, and then shutdown
+   * the connections to each blockchain.
+   *
+   * @throws InterruptedException If interrupted while waiting for calls to complete.
+   */
+  public void shutdown() throws InterruptedException {
+    this.workerPool.shutdown(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    for (BcHolder holder : this.blockchains.values()) {
+      holder.cbc.shutdown();
+    }
+  }
+
   private static class BcHolder {
     CrossControlManager cbc;
     String cbcContractAddress;
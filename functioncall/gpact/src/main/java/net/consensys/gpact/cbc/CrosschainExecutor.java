@@ -16,16 +16,24 @@ package net.consensys.gpact.cbc;
 
 import java.math.BigInteger;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 import net.consensys.gpact.common.BlockchainId;
+import net.consensys.gpact.common.Instrumentation;
+import net.consensys.gpact.common.Instrumentations;
 import net.consensys.gpact.common.RevertReason;
 import net.consensys.gpact.common.Tuple;
 import net.consensys.gpact.messaging.MessagingVerificationInterface;
+import net.consensys.gpact.messaging.MultiSignedEvent;
 import net.consensys.gpact.messaging.SignedEvent;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -34,7 +42,8 @@ import org.web3j.protocol.exceptions.TransactionException;
 
 /**
  * Holds the state for a crosschain call. A separate instance of this class is needed for each
- * crosschain call.
+ * crosschain call. Many instances can share the one CrossControlManagerGroup, allowing many
+ * crosschain calls to execute concurrently.
  */
 public class CrosschainExecutor {
   static final Logger LOG = LogManager.getLogger(CrosschainExecutor.class);
@@ -59,12 +68,16 @@ public class CrosschainExecutor {
   private final Map<BigInteger, List<SignedEvent>> signedSegmentEvents = new ConcurrentHashMap<>();
 
   // Key for this map is the call path of the caller.
-  private final Map<BigInteger, TransactionReceipt> transactionReceipts = new HashMap<>();
+  private final Map<BigInteger, TransactionReceipt> transactionReceipts = new ConcurrentHashMap<>();
 
   // Key for this map is the blockchain id that the segment occurred on.
   private final Map<BlockchainId, List<SignedEvent>> signedSegmentEventsWithLockedContracts =
       new ConcurrentHashMap<>();
 
+  // Key for this map is the blockchain id that the segment occurred on.
+  private final Map<BlockchainId, List<Tuple<TransactionReceipt, byte[], Boolean>>> segmentResults =
+      new ConcurrentHashMap<>();
+
   CrossControlManagerGroup crossControlManagerGroup;
 
   protected byte[] callGraph;
@@ -90,11 +103,41 @@ public class CrosschainExecutor {
   public void startCall() throws Exception {
     CrossControlManager rootCbcContract =
         this.crossControlManagerGroup.getCbcContract(this.rootBcId);
+    Instrumentations.time(
+        Instrumentation.Stage.CROSSCHAIN_STEP,
+        this.rootBcId,
+        () -> {
+          Tuple<TransactionReceipt, byte[], Boolean> result =
+              rootCbcContract.start(
+                  this.crossBlockchainTransactionId, this.timeout, this.callGraph);
+          processStartResult(rootCbcContract, result);
+          return null;
+        });
+  }
+
+  /**
+   * Submit the start transaction without blocking the calling thread. The start event is signed on
+   * the group's worker pool once the transaction receipt is available.
+   *
+   * @return Future that completes once the start event has been signed.
+   */
+  public CompletableFuture<Void> startCallAsync() {
+    CrossControlManager rootCbcContract =
+        this.crossControlManagerGroup.getCbcContract(this.rootBcId);
+    return Instrumentations.start(Instrumentation.Stage.CROSSCHAIN_STEP, this.rootBcId)
+        .endWhenComplete(
+            rootCbcContract
+                .startAsync(this.crossBlockchainTransactionId, this.timeout, this.callGraph)
+                .thenAcceptAsync(
+                    unchecked(result -> processStartResult(rootCbcContract, result)),
+                    getWorkers()));
+  }
+
+  private void processStartResult(
+      CrossControlManager rootCbcContract, Tuple<TransactionReceipt, byte[], Boolean> result)
+      throws Exception {
     MessagingVerificationInterface messaging =
         this.crossControlManagerGroup.getMessageVerification(this.rootBcId);
-
-    Tuple<TransactionReceipt, byte[], Boolean> result =
-        rootCbcContract.start(this.crossBlockchainTransactionId, this.timeout, this.callGraph);
     TransactionReceipt txr = result.getFirst();
     byte[] startEventData = result.getSecond();
 
@@ -113,18 +156,66 @@ public class CrosschainExecutor {
     if (callPath.size() == 0) {
       throw new Exception("Invalid call path length for segment: " + 0);
     }
-
     BigInteger mapKey = callPathToMapKey(callPath);
+    CrossControlManager segmentCbcContract =
+        this.crossControlManagerGroup.getCbcContract(blockchainId);
+    Instrumentations.time(
+        Instrumentation.Stage.CROSSCHAIN_STEP,
+        blockchainId,
+        () -> {
+          Tuple<TransactionReceipt, byte[], Boolean> result =
+              segmentCbcContract.segment(
+                  this.signedStartEvent, getSignedSegmentEvents(mapKey), callPath);
+          processSegmentResult(blockchainId, segmentCbcContract, callPath, mapKey, result);
+          return null;
+        });
+  }
 
+  /**
+   * Submit a segment transaction without blocking the calling thread. The segment event is signed
+   * on the group's worker pool once the transaction receipt is available. The segments called by
+   * this segment must have completed before this method is called.
+   *
+   * @param blockchainId Blockchain the segment executes on.
+   * @param callerBlockchainId Blockchain of the caller of the segment.
+   * @param callPath Call path of the segment.
+   * @return Future that completes once the segment event has been signed.
+   */
+  public CompletableFuture<Void> segmentAsync(
+      BlockchainId blockchainId, BlockchainId callerBlockchainId, List<BigInteger> callPath) {
+    if (callPath.size() == 0) {
+      return CompletableFuture.failedFuture(
+          new Exception("Invalid call path length for segment: " + 0));
+    }
+    BigInteger mapKey = callPathToMapKey(callPath);
     CrossControlManager segmentCbcContract =
         this.crossControlManagerGroup.getCbcContract(blockchainId);
+    return Instrumentations.start(Instrumentation.Stage.CROSSCHAIN_STEP, blockchainId)
+        .endWhenComplete(
+            segmentCbcContract
+                .segmentAsync(this.signedStartEvent, getSignedSegmentEvents(mapKey), callPath)
+                .thenAcceptAsync(
+                    unchecked(
+                        result ->
+                            processSegmentResult(
+                                blockchainId, segmentCbcContract, callPath, mapKey, result)),
+                    getWorkers()));
+  }
+
+  private List<SignedEvent> getSignedSegmentEvents(BigInteger mapKey) {
+    return this.signedSegmentEvents.computeIfAbsent(
+        mapKey, k -> Collections.synchronizedList(new ArrayList<>()));
+  }
+
+  private void processSegmentResult(
+      BlockchainId blockchainId,
+      CrossControlManager segmentCbcContract,
+      List<BigInteger> callPath,
+      BigInteger mapKey,
+      Tuple<TransactionReceipt, byte[], Boolean> result)
+      throws Exception {
     MessagingVerificationInterface messaging =
         this.crossControlManagerGroup.getMessageVerification(blockchainId);
-
-    List<SignedEvent> signedEvents =
-        this.signedSegmentEvents.computeIfAbsent(mapKey, k -> new ArrayList<>());
-    Tuple<TransactionReceipt, byte[], Boolean> result =
-        segmentCbcContract.segment(this.signedStartEvent, signedEvents, callPath);
     TransactionReceipt txr = result.getFirst();
     byte[] segEventData = result.getSecond();
     boolean noLockedContracts = result.getThird();
@@ -137,18 +228,20 @@ public class CrosschainExecutor {
             segmentCbcContract.getCbcContractAddress(),
             CrossControlManager.SEGMENT_EVENT_SIGNATURE);
     this.transactionReceipts.put(mapKey, txr);
+    this.segmentResults
+        .computeIfAbsent(blockchainId, k -> Collections.synchronizedList(new ArrayList<>()))
+        .add(result);
 
     // Add the proof for the call that has just occurred to the map so it can be accessed when the
-    // next
+    // next. Sibling segments may complete concurrently, so the list needs to be synchronized.
     BigInteger parentMapKey = determineMapKeyOfCaller(callPath);
-    signedEvents = this.signedSegmentEvents.computeIfAbsent(parentMapKey, k -> new ArrayList<>());
-    signedEvents.add(signedSegEvent);
+    getSignedSegmentEvents(parentMapKey).add(signedSegEvent);
 
     // Add the proof to the list of segments that have contracts that need to be unlocked.
     if (!noLockedContracts) {
-      signedEvents =
+      List<SignedEvent> signedEvents =
           this.signedSegmentEventsWithLockedContracts.computeIfAbsent(
-              blockchainId, k -> new ArrayList<>());
+              blockchainId, k -> Collections.synchronizedList(new ArrayList<>()));
       signedEvents.add(signedSegEvent);
     }
   }
@@ -156,11 +249,44 @@ public class CrosschainExecutor {
   public void root() throws Exception {
     CrossControlManager rootCbcContract =
         this.crossControlManagerGroup.getCbcContract(this.rootBcId);
+    List<SignedEvent> signedSegEvents = this.signedSegmentEvents.get(ROOT_CALL_MAP_KEY);
+    Instrumentations.time(
+        Instrumentation.Stage.CROSSCHAIN_STEP,
+        this.rootBcId,
+        () -> {
+          Tuple<TransactionReceipt, byte[], Boolean> result =
+              rootCbcContract.root(
+                  this.crossBlockchainTransactionId, this.signedStartEvent, signedSegEvents);
+          processRootResult(rootCbcContract, result);
+          return null;
+        });
+  }
+
+  /**
+   * Submit the root transaction without blocking the calling thread. The root event is signed on
+   * the group's worker pool once the transaction receipt is available. The segments called by the
+   * root must have completed before this method is called.
+   *
+   * @return Future that completes once the root event has been signed.
+   */
+  public CompletableFuture<Void> rootAsync() {
+    CrossControlManager rootCbcContract =
+        this.crossControlManagerGroup.getCbcContract(this.rootBcId);
+    List<SignedEvent> signedSegEvents = this.signedSegmentEvents.get(ROOT_CALL_MAP_KEY);
+    return Instrumentations.start(Instrumentation.Stage.CROSSCHAIN_STEP, this.rootBcId)
+        .endWhenComplete(
+            rootCbcContract
+                .rootAsync(
+                    this.crossBlockchainTransactionId, this.signedStartEvent, signedSegEvents)
+                .thenAcceptAsync(
+                    unchecked(result -> processRootResult(rootCbcContract, result)), getWorkers()));
+  }
+
+  private void processRootResult(
+      CrossControlManager rootCbcContract, Tuple<TransactionReceipt, byte[], Boolean> result)
+      throws Exception {
     MessagingVerificationInterface messaging =
         this.crossControlManagerGroup.getMessageVerification(this.rootBcId);
-    List<SignedEvent> signedSegEvents = this.signedSegmentEvents.get(ROOT_CALL_MAP_KEY);
-    Tuple<TransactionReceipt, byte[], Boolean> result =
-        rootCbcContract.root(this.signedStartEvent, signedSegEvents);
     TransactionReceipt txr = result.getFirst();
     byte[] rootEventData = result.getSecond();
     this.signedRootEvent =
@@ -171,7 +297,7 @@ public class CrosschainExecutor {
             rootCbcContract.getCbcContractAddress(),
             CrossControlManager.ROOT_EVENT_SIGNATURE);
     this.transactionReceipts.put(ROOT_CALL_MAP_KEY, txr);
-    this.success = rootCbcContract.getRootEventSuccess();
+    this.success = result.getThird();
   }
 
   /**
@@ -194,8 +320,10 @@ public class CrosschainExecutor {
           this.signedSegmentEventsWithLockedContracts.get(blockchainId);
       CrossControlManager cbcContract = this.crossControlManagerGroup.getCbcContract(blockchainId);
       transactionReceiptCompletableFutures[i++] =
-          cbcContract.signallingAsyncPart1(
-              this.signedRootEvent, signedSegEventsLockedContractsCurrentBlockchain);
+          Instrumentations.start(Instrumentation.Stage.CROSSCHAIN_STEP, blockchainId)
+              .endWhenComplete(
+                  cbcContract.signallingAsyncPart1(
+                      this.signedRootEvent, signedSegEventsLockedContractsCurrentBlockchain));
     }
     CompletableFuture<Void> combinedFuture =
         CompletableFuture.allOf(transactionReceiptCompletableFutures);
@@ -222,6 +350,10 @@ public class CrosschainExecutor {
     }
   }
 
+  public CrossControlManagerGroup getCrossControlManagerGroup() {
+    return this.crossControlManagerGroup;
+  }
+
   public boolean getRootEventSuccess() {
     return this.success;
   }
@@ -238,6 +370,87 @@ public class CrosschainExecutor {
     return this.transactionReceipts.get(callPathToMapKey(callPath));
   }
 
+  /**
+   * Create proofs for the segment events that this crosschain transaction emitted on a blockchain,
+   * with one proof for all of the events emitted in each block. This allows the events to be
+   * checked off-chain, for instance by an auditor, using less data than one proof per event.
+   *
+   * @param blockchainId Blockchain the segments executed on.
+   * @return One proof per block, or an empty list if the blockchain's messaging layer can not share
+   *     a proof between events.
+   * @throws Exception If the events can not be proven.
+   */
+  public List<MultiSignedEvent> getSegmentEventProofs(BlockchainId blockchainId) throws Exception {
+    List<Tuple<TransactionReceipt, byte[], Boolean>> results =
+        this.segmentResults.get(blockchainId);
+    if (results == null) {
+      return Collections.emptyList();
+    }
+    // Key is the lower case block hash.
+    Map<String, List<Tuple<TransactionReceipt, byte[], Boolean>>> resultsByBlock =
+        new LinkedHashMap<>();
+    synchronized (results) {
+      for (Tuple<TransactionReceipt, byte[], Boolean> result : results) {
+        resultsByBlock
+            .computeIfAbsent(result.getFirst().getBlockHash().toLowerCase(), k -> new ArrayList<>())
+            .add(result);
+      }
+    }
+
+    MessagingVerificationInterface messaging =
+        this.crossControlManagerGroup.getMessageVerification(blockchainId);
+    String cbcContractAddress =
+        this.crossControlManagerGroup.getCbcContract(blockchainId).getCbcContractAddress();
+    List<MultiSignedEvent> proofs = new ArrayList<>();
+    for (List<Tuple<TransactionReceipt, byte[], Boolean>> blockResults : resultsByBlock.values()) {
+      List<TransactionReceipt> receipts = new ArrayList<>();
+      List<byte[]> eventData = new ArrayList<>();
+      for (Tuple<TransactionReceipt, byte[], Boolean> result : blockResults) {
+        receipts.add(result.getFirst());
+        eventData.add(result.getSecond());
+      }
+      Optional<MultiSignedEvent> proof =
+          messaging.getMultiSignedEvent(
+              this.crossControlManagerGroup.getAllBlockchainIds(),
+              receipts,
+              eventData,
+              cbcContractAddress,
+              CrossControlManager.SEGMENT_EVENT_SIGNATURE);
+      if (proof.isEmpty()) {
+        return Collections.emptyList();
+      }
+      LOG.debug(
+          "Segment events proof for {} events on blockchain {} saved {} bytes",
+          eventData.size(),
+          blockchainId,
+          proof.get().getBytesSaved());
+      proofs.add(proof.get());
+    }
+    return proofs;
+  }
+
+  private Executor getWorkers() {
+    return this.crossControlManagerGroup.getWorkerPool().getPool();
+  }
+
+  private interface ResultProcessor {
+    void process(Tuple<TransactionReceipt, byte[], Boolean> result) throws Exception;
+  }
+
+  // Allow methods that throw checked exceptions to be used to process the results of futures.
+  private static Consumer<Tuple<TransactionReceipt, byte[], Boolean>> unchecked(
+      ResultProcessor processor) {
+    return result -> {
+      try {
+        processor.process(result);
+      } catch (RuntimeException ex) {
+        throw ex;
+      } catch (Exception ex) {
+        throw new CompletionException(ex);
+      }
+    };
+  }
+
   /**
    * Determine a key that can be used for a map that uniquely identifies the call path's caller.
    *
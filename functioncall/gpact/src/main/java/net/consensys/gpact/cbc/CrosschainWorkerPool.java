@@ -0,0 +1,196 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.gpact.cbc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Bounded, work-stealing pool of threads used by execution engines to submit segment and root
+ * transactions. One pool is shared by all crosschain transactions that use the same
+ * CrossControlManagerGroup, rather than creating threads for each crosschain transaction.
+ */
+public class CrosschainWorkerPool {
+  static final Logger LOG = LogManager.getLogger(CrosschainWorkerPool.class);
+
+  // Segment and root calls spend most of their time waiting for transaction receipts, so
+  // the default parallelism is higher than the number of processors.
+  public static final int DEFAULT_PARALLELISM =
+      Math.max(16, Runtime.getRuntime().availableProcessors() * 4);
+
+  // Maximum number of extra threads that can be created to compensate for threads that are
+  // blocked waiting for segments they have called to complete.
+  private static final int MAX_SPARE_THREADS = 256;
+  private static final long KEEP_ALIVE_SECONDS = 60;
+
+  private final ForkJoinPool pool;
+
+  public CrosschainWorkerPool() {
+    this(DEFAULT_PARALLELISM);
+  }
+
+  /**
+   * Create a pool.
+   *
+   * @param parallelism The number of crosschain calls that can be actively executing at once.
+   */
+  public CrosschainWorkerPool(int parallelism) {
+    if (parallelism <= 0) {
+      throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+    }
+    this.pool =
+        new ForkJoinPool(
+            parallelism,
+            CrosschainWorkerPool::newThread,
+            null,
+            false,
+            0,
+            parallelism + MAX_SPARE_THREADS,
+            1,
+            // If no more compensating threads can be created, block rather than
+            // rejecting the call.
+            p -> true,
+            KEEP_ALIVE_SECONDS,
+            TimeUnit.SECONDS);
+  }
+
+  /**
+   * Execute calls in parallel and wait for all of them to complete. If this is called from a thread
+   * in this pool, the calling thread helps execute the calls, so nested use does not exhaust the
+   * pool.
+   *
+   * @param calls Calls to execute.
+   * @throws Exception The first exception thrown by any of the calls.
+   */
+  public void invokeAll(List<Callable<Void>> calls) throws Exception {
+    List<CallTask> tasks = new ArrayList<>(calls.size());
+    for (Callable<Void> call : calls) {
+      tasks.add(new CallTask(call));
+    }
+    if (ForkJoinTask.getPool() == this.pool) {
+      for (CallTask task : tasks) {
+        task.fork();
+      }
+    } else {
+      for (CallTask task : tasks) {
+        this.pool.execute(task);
+      }
+    }
+
+    Exception firstError = null;
+    for (CallTask task : tasks) {
+      task.join();
+      if (firstError == null && task.error != null) {
+        firstError = task.error;
+      }
+    }
+    if (firstError != null) {
+      throw firstError;
+    }
+  }
+
+  public void execute(Runnable task) {
+    this.pool.execute(task);
+  }
+
+  public ForkJoinPool getPool() {
+    return this.pool;
+  }
+
+  public int getParallelism() {
+    return this.pool.getParallelism();
+  }
+
+  /** @return The number of calls that have been submitted but have not started executing. */
+  public long getQueueDepth() {
+    return this.pool.getQueuedTaskCount() + this.pool.getQueuedSubmissionCount();
+  }
+
+  /** @return The number of threads currently executing calls. */
+  public int getActiveTaskCount() {
+    return this.pool.getActiveThreadCount();
+  }
+
+  /** @return The number of threads in the pool, including idle and compensating threads. */
+  public int getPoolSize() {
+    return this.pool.getPoolSize();
+  }
+
+  /**
+   * Stop accepting new calls, and wait for calls in progress to complete.
+   *
+   * @param timeout Maximum time to wait.
+   * @param unit Units of timeout.
+   * @return true if all calls completed.
+   * @throws InterruptedException If interrupted while waiting.
+   */
+  public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+    this.pool.shutdown();
+    boolean terminated = this.pool.awaitTermination(timeout, unit);
+    if (!terminated) {
+      LOG.warn("Crosschain worker pool did not terminate: {}", this);
+      this.pool.shutdownNow();
+    }
+    return terminated;
+  }
+
+  @Override
+  public String toString() {
+    return "Parallelism: "
+        + getParallelism()
+        + ", Pool size: "
+        + getPoolSize()
+        + ", Active: "
+        + getActiveTaskCount()
+        + ", Queued: "
+        + getQueueDepth();
+  }
+
+  // Holds the exception thrown by a call, so that checked exceptions are passed to the caller
+  // without being wrapped. Tasks are never serialized.
+  @SuppressWarnings("serial")
+  private static class CallTask extends RecursiveAction {
+    private final Callable<Void> call;
+    private Exception error;
+
+    CallTask(Callable<Void> call) {
+      this.call = call;
+    }
+
+    @Override
+    protected void compute() {
+      try {
+        this.call.call();
+      } catch (Exception ex) {
+        this.error = ex;
+      }
+    }
+  }
+
+  private static ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+    ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+    thread.setName("gpact-worker-" + thread.getPoolIndex());
+    thread.setDaemon(true);
+    return thread;
+  }
+}
@@ -125,9 +125,8 @@ public class CallExecutionTree {
 
   private byte[] encodeFunctionCall() {
     ByteBuffer buf = ByteBuffer.allocate(MAX_CALL_EX_TREE_SIZE);
-    byte[] blockchainIdBytes = this.blockchainId.asBytes();
     byte[] address = addressStringToBytes(this.contractAddress);
-    buf.put(blockchainIdBytes);
+    this.blockchainId.writeTo(buf);
     buf.put(address);
     byte[] data = FormatConversion.hexStringToByteArray(this.functionCallData);
     buf.putShort((short) data.length);
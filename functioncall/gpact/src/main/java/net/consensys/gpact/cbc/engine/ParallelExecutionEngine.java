@@ -18,12 +18,8 @@ import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
-import java.util.concurrent.CompletionService;
-import java.util.concurrent.Executor;
-import java.util.concurrent.ExecutorCompletionService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import net.consensys.gpact.cbc.CrosschainExecutor;
+import net.consensys.gpact.cbc.CrosschainWorkerPool;
 import net.consensys.gpact.cbc.calltree.CallExecutionTree;
 import net.consensys.gpact.common.BlockchainId;
 import org.apache.logging.log4j.LogManager;
@@ -32,41 +28,45 @@ import org.apache.logging.log4j.Logger;
 public class ParallelExecutionEngine extends AbstractExecutionEngine {
   static final Logger LOG = LogManager.getLogger(ParallelExecutionEngine.class);
 
+  private final CrosschainWorkerPool workerPool;
+
   public ParallelExecutionEngine(CrosschainExecutor executor) {
+    this(executor, executor.getCrossControlManagerGroup().getWorkerPool());
+  }
+
+  /**
+   * Create an engine that executes calls using the supplied pool.
+   *
+   * @param executor Holds the state for the crosschain call.
+   * @param workerPool Pool used to execute the calls at each level of the call execution tree.
+   */
+  public ParallelExecutionEngine(CrosschainExecutor executor, CrosschainWorkerPool workerPool) {
     super(executor);
+    this.workerPool = workerPool;
   }
 
   protected void executeCalls(
       List<CallExecutionTree> calls, List<BigInteger> callPath, BlockchainId theCallerBlockchainId)
       throws Exception {
     int numCalls = calls.size();
-    Executor executor = Executors.newFixedThreadPool(numCalls);
-    CompletionService<String> completionService = new ExecutorCompletionService<String>(executor);
+    List<Callable<Void>> segCalls = new ArrayList<>(numCalls);
     BigInteger callOffset = BigInteger.ONE;
     for (CallExecutionTree segCall : calls) {
       List<BigInteger> nextCallPath = new ArrayList<>(callPath);
       nextCallPath.add(callOffset);
-      completionService.submit(
-          new Callable<String>() {
-            public String call() throws Exception {
-              callSegmentsAndRoot(segCall, nextCallPath, theCallerBlockchainId);
-              return "Not used";
-            }
+      segCalls.add(
+          () -> {
+            callSegmentsAndRoot(segCall, nextCallPath, theCallerBlockchainId);
+            return null;
           });
       callOffset = callOffset.add(BigInteger.ONE);
     }
-    int received = 0;
-    while (received < numCalls) {
-      Future<String> resultFuture = completionService.take(); // blocks if none available
-      try {
-        String result = resultFuture.get();
-        LOG.info("Finished {} of {} parallel calls", received + 1, numCalls - 1);
-        received++;
-      } catch (Exception e) {
-        LOG.error("Error for call: {}: {}", received, e.getMessage());
-        throw e;
-      }
+    try {
+      this.workerPool.invokeAll(segCalls);
+    } catch (Exception e) {
+      LOG.error("Error for parallel calls: {}", e.getMessage());
+      throw e;
     }
-    LOG.info("Done");
+    LOG.info("Done {} parallel calls: {}", numCalls, this.workerPool);
   }
 }
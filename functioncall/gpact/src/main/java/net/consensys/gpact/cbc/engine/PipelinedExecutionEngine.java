@@ -0,0 +1,110 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.gpact.cbc.engine;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import net.consensys.gpact.cbc.CrosschainExecutor;
+import net.consensys.gpact.cbc.calltree.CallExecutionTree;
+import net.consensys.gpact.common.BlockchainId;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Execution engine that treats the call execution tree as a dependency graph. Each segment is
+ * submitted as soon as the signed events for all of the segments it calls exist, rather than when
+ * all of the calls at a level of the tree have completed. This allows the submission of segments on
+ * one branch of the tree to overlap with the signing or proof generation for sibling branches. No
+ * thread is blocked waiting for a transaction receipt or for a level of the tree to complete.
+ */
+public class PipelinedExecutionEngine extends AbstractExecutionEngine {
+  static final Logger LOG = LogManager.getLogger(PipelinedExecutionEngine.class);
+
+  public PipelinedExecutionEngine(CrosschainExecutor executor) {
+    super(executor);
+  }
+
+  @Override
+  protected void callSegmentsAndRoot(
+      CallExecutionTree callGraph, List<BigInteger> callPath, BlockchainId callerBlockchainId)
+      throws Exception {
+    waitFor(scheduleSegmentsAndRoot(callGraph, callPath, callerBlockchainId));
+    LOG.info("Done");
+  }
+
+  @Override
+  protected void executeCalls(
+      List<CallExecutionTree> calls, List<BigInteger> callPath, BlockchainId theCallerBlockchainId)
+      throws Exception {
+    waitFor(scheduleCalls(calls, callPath, theCallerBlockchainId));
+  }
+
+  /**
+   * Schedule the segment or root transaction for a node of the call execution tree, such that it is
+   * submitted once all of the segments it calls have completed.
+   *
+   * @return Future that completes when the node's transaction has completed and its event has been
+   *     signed.
+   */
+  private CompletableFuture<Void> scheduleSegmentsAndRoot(
+      CallExecutionTree callGraph, List<BigInteger> callPath, BlockchainId callerBlockchainId) {
+    BlockchainId thisCallsBcId = callGraph.getBlockchainId();
+    if (callGraph.isLeaf()) {
+      return this.executor.segmentAsync(thisCallsBcId, callerBlockchainId, callPath);
+    }
+
+    CompletableFuture<Void> calledSegments =
+        scheduleCalls(callGraph.getCalledFunctions(), callPath, thisCallsBcId);
+    if (callPath.size() == 0) {
+      return calledSegments.thenCompose(v -> this.executor.rootAsync());
+    }
+    List<BigInteger> nextCallPath = new ArrayList<>(callPath);
+    nextCallPath.add(BigInteger.ZERO);
+    return calledSegments.thenCompose(
+        v -> this.executor.segmentAsync(thisCallsBcId, callerBlockchainId, nextCallPath));
+  }
+
+  private CompletableFuture<Void> scheduleCalls(
+      List<CallExecutionTree> calls,
+      List<BigInteger> callPath,
+      BlockchainId theCallerBlockchainId) {
+    CompletableFuture<?>[] futures = new CompletableFuture<?>[calls.size()];
+    BigInteger callOffset = BigInteger.ONE;
+    int i = 0;
+    for (CallExecutionTree segCall : calls) {
+      List<BigInteger> nextCallPath = new ArrayList<>(callPath);
+      nextCallPath.add(callOffset);
+      futures[i++] = scheduleSegmentsAndRoot(segCall, nextCallPath, theCallerBlockchainId);
+      callOffset = callOffset.add(BigInteger.ONE);
+    }
+    return CompletableFuture.allOf(futures);
+  }
+
+  private static void waitFor(CompletableFuture<Void> future) throws Exception {
+    try {
+      future.get();
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      LOG.error("Error executing call execution tree: {}", cause.getMessage());
+      if (cause instanceof Exception) {
+        throw (Exception) cause;
+      }
+      throw ex;
+    }
+  }
+}
@@ -15,6 +15,8 @@
 package net.consensys.gpact.sfccbc;
 
 import net.consensys.gpact.common.BlockchainId;
+import net.consensys.gpact.common.Instrumentation;
+import net.consensys.gpact.common.Instrumentations;
 import net.consensys.gpact.common.Tuple;
 import net.consensys.gpact.messaging.MessagingVerificationInterface;
 import net.consensys.gpact.messaging.SignedEvent;
@@ -44,30 +46,58 @@ public class SimpleCrosschainExecutor {
     MessagingVerificationInterface messaging =
         this.crossControlManagerGroup.getMessageVerification(sourceBcId);
 
-    Tuple<TransactionReceipt, byte[], SimpleCrosschainControl.CrossCallEventResponse> result =
-        cbcContract.sourceBcCall(functionCall);
-    TransactionReceipt txr1 = result.getFirst();
-    byte[] crossCallEventData = result.getSecond();
-    SimpleCrosschainControl.CrossCallEventResponse crossCallEvent = result.getThird();
+    // Each stage's span is ended exactly once: failed if the stage throws or reports a failure.
+    Instrumentation.Span sourceSpan =
+        Instrumentations.start(Instrumentation.Stage.CROSSCHAIN_STEP, sourceBcId);
+    TransactionReceipt txr1;
+    SignedEvent signedCrossCallEvent;
+    SimpleCrosschainControl.CrossCallEventResponse crossCallEvent;
+    try {
+      Tuple<TransactionReceipt, byte[], SimpleCrosschainControl.CrossCallEventResponse> result =
+          cbcContract.sourceBcCall(functionCall);
+      txr1 = result.getFirst();
+      byte[] crossCallEventData = result.getSecond();
+      crossCallEvent = result.getThird();
 
-    if (!txr1.isStatusOK()) {
-      return new Tuple<TransactionReceipt[], String, Boolean>(
-          new TransactionReceipt[] {txr1}, "Source blockchain transaction failed", false);
-    }
+      if (!txr1.isStatusOK()) {
+        sourceSpan.fail(new Exception("Source blockchain transaction failed"));
+        return new Tuple<TransactionReceipt[], String, Boolean>(
+            new TransactionReceipt[] {txr1}, "Source blockchain transaction failed", false);
+      }
 
-    SignedEvent signedCrossCallEvent =
-        messaging.getSignedEvent(
-            this.crossControlManagerGroup.getAllBlockchainIds(),
-            txr1,
-            crossCallEventData,
-            cbcContract.getCbcContractAddress(),
-            SimpleCrossControlManager.CROSSCALL_EVENT_SIGNATURE);
+      signedCrossCallEvent =
+          messaging.getSignedEvent(
+              this.crossControlManagerGroup.getAllBlockchainIds(),
+              txr1,
+              crossCallEventData,
+              cbcContract.getCbcContractAddress(),
+              SimpleCrossControlManager.CROSSCALL_EVENT_SIGNATURE);
+    } catch (Exception ex) {
+      sourceSpan.fail(ex);
+      throw ex;
+    }
+    sourceSpan.end();
 
-    BlockchainId destBcId = new BlockchainId(crossCallEvent._destBcId);
+    BlockchainId destBcId = BlockchainId.of(crossCallEvent._destBcId);
 
     cbcContract = this.crossControlManagerGroup.getCbcContract(destBcId);
-    Tuple<TransactionReceipt, String, Boolean> result2 =
-        cbcContract.destinationBcCall(signedCrossCallEvent);
+    Instrumentation.Span destinationSpan =
+        Instrumentations.start(Instrumentation.Stage.CROSSCHAIN_STEP, destBcId);
+    Tuple<TransactionReceipt, String, Boolean> result2;
+    try {
+      result2 = cbcContract.destinationBcCall(signedCrossCallEvent);
+    } catch (Exception ex) {
+      destinationSpan.fail(ex);
+      throw ex;
+    }
+    if (result2.getThird()) {
+      destinationSpan.end();
+    } else {
+      String reason = result2.getSecond();
+      destinationSpan.fail(
+          new Exception(
+              "Destination blockchain transaction failed" + (reason == null ? "" : ": " + reason)));
+    }
     return new Tuple<TransactionReceipt[], String, Boolean>(
         new TransactionReceipt[] {txr1, result2.getFirst()},
         result2.getSecond(),
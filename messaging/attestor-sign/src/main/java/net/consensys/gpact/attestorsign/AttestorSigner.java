@@ -20,6 +20,8 @@ import java.nio.ByteBuffer;
 import java.util.*;
 import net.consensys.gpact.common.AnIdentity;
 import net.consensys.gpact.common.BlockchainId;
+import net.consensys.gpact.common.Instrumentation;
+import net.consensys.gpact.common.Instrumentations;
 import net.consensys.gpact.messaging.MessagingVerificationInterface;
 import net.consensys.gpact.messaging.SignedEvent;
 import org.apache.logging.log4j.LogManager;
@@ -73,6 +75,7 @@ public class AttestorSigner implements MessagingVerificationInterface {
     List<byte[]> sigS = new ArrayList<>();
     List<Byte> sigV = new ArrayList<>();
     //    List<BigInteger> sigV = new ArrayList<>();
+    Instrumentation.Span span = Instrumentations.start(Instrumentation.Stage.SIGNING, this.bcId);
     for (AnIdentity signer : this.signers) {
       Sign.SignatureData signatureData = signer.sign(encodedEventInformation);
       theSigners.add(signer.getAddress());
@@ -80,6 +83,7 @@ public class AttestorSigner implements MessagingVerificationInterface {
       sigS.add(signatureData.getS());
       sigV.add(signatureData.getV()[0]);
     }
+    span.end();
 
     byte[] encodedSignatures = abiEncodePackedSignatures(theSigners, sigR, sigS, sigV);
     return new SignedEvent(
@@ -88,26 +92,24 @@ public class AttestorSigner implements MessagingVerificationInterface {
 
   private static byte[] abiEncodePackedEvent(
       BlockchainId blockchainId, String contractAddress, byte[] eventSignature, byte[] eventData) {
-    byte[] blockchainIdBytes = blockchainId.asBytes();
-
     byte[] address = addressStringToBytes(contractAddress);
 
     byte[] abiEncodePacked =
         new byte
-            [blockchainIdBytes.length + address.length + eventSignature.length + eventData.length];
-    System.arraycopy(blockchainIdBytes, 0, abiEncodePacked, 0, blockchainIdBytes.length);
-    System.arraycopy(address, 0, abiEncodePacked, blockchainIdBytes.length, address.length);
+            [BlockchainId.ENCODED_SIZE + address.length + eventSignature.length + eventData.length];
+    blockchainId.writeTo(abiEncodePacked, 0);
+    System.arraycopy(address, 0, abiEncodePacked, BlockchainId.ENCODED_SIZE, address.length);
     System.arraycopy(
         eventSignature,
         0,
         abiEncodePacked,
-        blockchainIdBytes.length + address.length,
+        BlockchainId.ENCODED_SIZE + address.length,
         eventSignature.length);
     System.arraycopy(
         eventData,
         0,
         abiEncodePacked,
-        blockchainIdBytes.length + address.length + eventSignature.length,
+        BlockchainId.ENCODED_SIZE + address.length + eventSignature.length,
         eventData.length);
 
     return abiEncodePacked;
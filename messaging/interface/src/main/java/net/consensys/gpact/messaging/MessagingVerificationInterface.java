@@ -14,7 +14,9 @@
  */
 package net.consensys.gpact.messaging;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 import net.consensys.gpact.common.BlockchainId;
 import org.web3j.protocol.core.methods.response.TransactionReceipt;
 
@@ -41,4 +43,62 @@ public interface MessagingVerificationInterface {
       String contractAddress,
       byte[] eventFunctionSignature)
       throws Exception;
+
+  /**
+   * Create SignedEvent objects for several events emitted by the one contract. Implementations can
+   * share work between events that were emitted in the same block. This is a blocking call that
+   * will wait until any required relay operations have occurred.
+   *
+   * @param targetBlockchainIds Blockchain ids that need to consume the event data.
+   * @param txReceipts Transaction receipt for the transaction that emitted each event.
+   * @param eventData Event data for each event.
+   * @param contractAddress The address of the contract that emitted the events.
+   * @param eventFunctionSignature Function selector for event that emitted the event data.
+   * @return Event information along with signature or proof, in the same order as txReceipts.
+   * @throws Exception If any of the events can not be signed or proven.
+   */
+  default List<SignedEvent> getSignedEvents(
+      List<BlockchainId> targetBlockchainIds,
+      List<TransactionReceipt> txReceipts,
+      List<byte[]> eventData,
+      String contractAddress,
+      byte[] eventFunctionSignature)
+      throws Exception {
+    List<SignedEvent> signedEvents = new ArrayList<>();
+    for (int i = 0; i < txReceipts.size(); i++) {
+      signedEvents.add(
+          getSignedEvent(
+              targetBlockchainIds,
+              txReceipts.get(i),
+              eventData.get(i),
+              contractAddress,
+              eventFunctionSignature));
+    }
+    return signedEvents;
+  }
+
+  /**
+   * Create one proof or set of signatures that covers several events emitted by the one contract in
+   * the one block. This is a blocking call that will wait until any required relay operations have
+   * occurred.
+   *
+   * @param targetBlockchainIds Blockchain ids that need to consume the event data.
+   * @param txReceipts Transaction receipt for the transaction that emitted each event. All of the
+   *     transactions must be in the one block.
+   * @param eventData Event data for each event.
+   * @param contractAddress The address of the contract that emitted the events.
+   * @param eventFunctionSignature Function selector for event that emitted the event data.
+   * @return Event information along with one proof for all of the events, or empty if this
+   *     messaging layer can not share a proof between events. Use getSignedEvents in that case.
+   * @throws Exception If any of the events can not be proven.
+   */
+  default Optional<MultiSignedEvent> getMultiSignedEvent(
+      List<BlockchainId> targetBlockchainIds,
+      List<TransactionReceipt> txReceipts,
+      List<byte[]> eventData,
+      String contractAddress,
+      byte[] eventFunctionSignature)
+      throws Exception {
+    return Optional.empty();
+  }
 }
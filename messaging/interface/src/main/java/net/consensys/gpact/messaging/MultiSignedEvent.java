@@ -0,0 +1,80 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.gpact.messaging;
+
+import java.util.List;
+import net.consensys.gpact.common.BlockchainId;
+
+/**
+ * Information for several events emitted by the one contract, together with one set of signatures
+ * or one proof that covers all of the events.
+ */
+public class MultiSignedEvent {
+  private final BlockchainId bcId;
+  private final String cbcContract;
+  private final byte[] eventFunctionSignature;
+  private final List<byte[]> eventData;
+  private final byte[] encodedSignatures;
+  private final int individualSignaturesSize;
+
+  /**
+   * @param blockchainId Blockchain that emitted the events.
+   * @param cbcContract Address of the contract that emitted the events.
+   * @param eventFunctionSignature Function selector of the events.
+   * @param eventData Data for each event.
+   * @param encodedSignatures Signatures or proof covering all of the events.
+   * @param individualSignaturesSize Total size of the signatures or proofs if each event were
+   *     signed or proven separately.
+   */
+  public MultiSignedEvent(
+      BlockchainId blockchainId,
+      String cbcContract,
+      byte[] eventFunctionSignature,
+      List<byte[]> eventData,
+      byte[] encodedSignatures,
+      int individualSignaturesSize) {
+    this.bcId = blockchainId;
+    this.cbcContract = cbcContract;
+    this.eventFunctionSignature = eventFunctionSignature;
+    this.eventData = eventData;
+    this.encodedSignatures = encodedSignatures;
+    this.individualSignaturesSize = individualSignaturesSize;
+  }
+
+  public BlockchainId getBcId() {
+    return this.bcId;
+  }
+
+  public String getCbcContract() {
+    return this.cbcContract;
+  }
+
+  public byte[] getEventFunctionSignature() {
+    return this.eventFunctionSignature;
+  }
+
+  public List<byte[]> getEventData() {
+    return this.eventData;
+  }
+
+  public byte[] getEncodedSignatures() {
+    return this.encodedSignatures;
+  }
+
+  /** @return The number of bytes saved by using one proof rather than one per event. */
+  public int getBytesSaved() {
+    return this.individualSignaturesSize - this.encodedSignatures.length;
+  }
+}
@@ -101,26 +101,24 @@ public class SignedEvent {
       String cbcContractAddress,
       byte[] eventSignature,
       byte[] eventData) {
-    byte[] blockchainIdBytes = blockchainId.asBytes();
-
     byte[] address = addressStringToBytes(cbcContractAddress);
 
     byte[] abiEncodePacked =
         new byte
-            [blockchainIdBytes.length + address.length + eventSignature.length + eventData.length];
-    System.arraycopy(blockchainIdBytes, 0, abiEncodePacked, 0, blockchainIdBytes.length);
-    System.arraycopy(address, 0, abiEncodePacked, blockchainIdBytes.length, address.length);
+            [BlockchainId.ENCODED_SIZE + address.length + eventSignature.length + eventData.length];
+    blockchainId.writeTo(abiEncodePacked, 0);
+    System.arraycopy(address, 0, abiEncodePacked, BlockchainId.ENCODED_SIZE, address.length);
     System.arraycopy(
         eventSignature,
         0,
         abiEncodePacked,
-        blockchainIdBytes.length + address.length,
+        BlockchainId.ENCODED_SIZE + address.length,
         eventSignature.length);
     System.arraycopy(
         eventData,
         0,
         abiEncodePacked,
-        blockchainIdBytes.length + address.length + eventSignature.length,
+        BlockchainId.ENCODED_SIZE + address.length + eventSignature.length,
         eventData.length);
 
     return abiEncodePacked;
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.gpact.trie;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to compute the root hash of a newly built trie, hashing serially and in parallel. Run using:
+ * ./gradlew :mes-txroot-transfer:jmh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TrieRootBenchmark {
+  @Param({"10000", "100000"})
+  public int numEntries;
+
+  @Param({"false", "true"})
+  public boolean parallel;
+
+  private ForkJoinPool pool;
+  private Bytes32[] keys;
+  private Bytes[] values;
+  private SimpleMerklePatriciaTrie<Bytes, Bytes> trie;
+
+  @Setup
+  public void setup() {
+    this.pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    Random rand = new Random(1);
+    this.keys = new Bytes32[this.numEntries];
+    this.values = new Bytes[this.numEntries];
+    for (int i = 0; i < this.numEntries; i++) {
+      this.keys[i] = Bytes32.random(rand);
+      this.values[i] = Bytes.random(32 + rand.nextInt(64), rand);
+    }
+  }
+
+  // Node hashes are cached, so each invocation needs a trie that has not been hashed.
+  @Setup(Level.Invocation)
+  public void buildTrie() {
+    this.trie = new SimpleMerklePatriciaTrie<>(b -> b);
+    if (this.parallel) {
+      this.trie.setParallelHashing(this.pool);
+    }
+    for (int i = 0; i < this.numEntries; i++) {
+      this.trie.put(this.keys[i], this.values[i]);
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    this.pool.shutdown();
+  }
+
+  @Benchmark
+  public Bytes32 rootHash() {
+    return this.trie.getRootHash();
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.gpact.txroot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import net.consensys.gpact.trie.MerklePatriciaTrie;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.hyperledger.besu.ethereum.core.Address;
+import org.hyperledger.besu.ethereum.core.Log;
+import org.hyperledger.besu.ethereum.core.LogTopic;
+import org.hyperledger.besu.ethereum.core.TransactionReceipt;
+import org.hyperledger.besu.ethereum.rlp.RLP;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to compute the transaction receipts root of a block. Run using: ./gradlew
+ * :mes-txroot-transfer:jmh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReceiptsRootBenchmark {
+  @Param({"1000"})
+  public int numReceipts;
+
+  private List<Bytes> keys;
+  private List<Bytes> encodedReceipts;
+
+  @Setup
+  public void setup() {
+    Random rand = new Random(1);
+    this.keys = new ArrayList<>(this.numReceipts);
+    this.encodedReceipts = new ArrayList<>(this.numReceipts);
+    for (int i = 0; i < this.numReceipts; i++) {
+      this.keys.add(TxRootTransfer.indexKey(i));
+      this.encodedReceipts.add(RLP.encode(receipt(rand, i)::writeTo));
+    }
+  }
+
+  /** Build the receipts trie and compute its root, as is done for each block. */
+  @Benchmark
+  public Bytes32 receiptsRoot() {
+    MerklePatriciaTrie<Bytes, Bytes> trie = TxRootTransfer.trie();
+    for (int i = 0; i < this.numReceipts; i++) {
+      trie.put(this.keys.get(i), this.encodedReceipts.get(i));
+    }
+    return trie.getRootHash();
+  }
+
+  // Receipts with a similar shape to those of token transfers: a few logs, each with topics.
+  private static TransactionReceipt receipt(Random rand, int index) {
+    List<Log> logs = new ArrayList<>();
+    int numLogs = 1 + rand.nextInt(3);
+    for (int i = 0; i < numLogs; i++) {
+      List<LogTopic> topics = new ArrayList<>();
+      for (int j = 0; j < 3; j++) {
+        topics.add(LogTopic.create(Bytes32.random(rand)));
+      }
+      logs.add(
+          new Log(Address.wrap(Bytes.random(Address.SIZE, rand)), Bytes.random(64, rand), topics));
+    }
+    return new TransactionReceipt(1, 21000L * (index + 1), logs, Optional.empty());
+  }
+}
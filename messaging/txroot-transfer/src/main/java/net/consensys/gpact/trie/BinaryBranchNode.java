@@ -28,7 +28,6 @@ import java.util.function.Function;
 import org.apache.logging.log4j.Logger;
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.Bytes32;
-import org.apache.tuweni.bytes.MutableBytes;
 import org.hyperledger.besu.ethereum.rlp.BytesValueRLPOutput;
 import org.hyperledger.besu.ethereum.rlp.RLP;
 
@@ -216,9 +215,8 @@ class BinaryBranchNode<V> implements Node<V> {
       // replace the path of the only child and return it
       final Node<V> onlyChild = children.get(onlyChildIndex);
       final Bytes onlyChildPath = onlyChild.getPath();
-      final MutableBytes completePath = MutableBytes.create(1 + onlyChildPath.size());
-      completePath.set(0, (byte) onlyChildIndex);
-      onlyChildPath.copyTo(completePath, 1);
+      final Bytes completePath =
+          PackedPath.concatenate(Bytes.of((byte) onlyChildIndex), onlyChildPath);
       return Optional.of(onlyChild.replacePath(completePath));
     }
     return Optional.empty();
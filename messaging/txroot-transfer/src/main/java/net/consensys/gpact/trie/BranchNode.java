@@ -17,7 +17,6 @@ package net.consensys.gpact.trie;
 import static org.apache.logging.log4j.LogManager.getLogger;
 import static org.hyperledger.besu.crypto.Hash.keccak256;
 
-import java.lang.ref.SoftReference;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -28,7 +27,6 @@ import java.util.function.Function;
 import org.apache.logging.log4j.Logger;
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.Bytes32;
-import org.apache.tuweni.bytes.MutableBytes;
 import org.hyperledger.besu.ethereum.rlp.BytesValueRLPOutput;
 import org.hyperledger.besu.ethereum.rlp.RLP;
 
@@ -44,7 +42,7 @@ class BranchNode<V> implements Node<V> {
   private final NodeFactory<V> nodeFactory;
   private final Function<V, Bytes> valueSerializer;
   private WeakReference<Bytes> rlp;
-  private SoftReference<Bytes32> hash;
+  private volatile Bytes32 hash;
   private boolean dirty = false;
 
   BranchNode(
@@ -158,17 +156,19 @@ class BranchNode<V> implements Node<V> {
 
   @Override
   public Bytes32 getHash() {
-    if (hash != null) {
-      final Bytes32 hashed = hash.get();
-      if (hashed != null) {
-        return hashed;
-      }
+    Bytes32 hashed = hash;
+    if (hashed == null) {
+      hashed = keccak256(getRlp());
+      hash = hashed;
     }
-    final Bytes32 hashed = keccak256(getRlp());
-    hash = new SoftReference<>(hashed);
     return hashed;
   }
 
+  @Override
+  public boolean hasCachedHash() {
+    return hash != null;
+  }
+
   @Override
   public Node<V> replacePath(final Bytes newPath) {
     return nodeFactory.createExtension(newPath, this);
@@ -215,9 +215,8 @@ class BranchNode<V> implements Node<V> {
       // replace the path of the only child and return it
       final Node<V> onlyChild = children.get(onlyChildIndex);
       final Bytes onlyChildPath = onlyChild.getPath();
-      final MutableBytes completePath = MutableBytes.create(1 + onlyChildPath.size());
-      completePath.set(0, (byte) onlyChildIndex);
-      onlyChildPath.copyTo(completePath, 1);
+      final Bytes completePath =
+          PackedPath.concatenate(Bytes.of((byte) onlyChildIndex), onlyChildPath);
       return Optional.of(onlyChild.replacePath(completePath));
     }
     return Optional.empty();
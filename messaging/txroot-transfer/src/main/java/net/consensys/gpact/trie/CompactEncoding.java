@@ -25,15 +25,7 @@ abstract class CompactEncoding {
   static final byte LEAF_TERMINATOR = 0x10;
 
   public static Bytes bytesToPath(final Bytes bytes) {
-    final MutableBytes path = MutableBytes.create(bytes.size() * 2 + 1);
-    int j = 0;
-    for (int i = 0; i < bytes.size(); i += 1, j += 2) {
-      final byte b = bytes.get(i);
-      path.set(j, (byte) ((b >>> 4) & 0x0f));
-      path.set(j + 1, (byte) (b & 0x0f));
-    }
-    path.set(j, LEAF_TERMINATOR);
-    return path;
+    return PackedPath.nibbles(bytes);
   }
 
   public static Bytes pathToBytes(final Bytes path) {
@@ -53,21 +45,7 @@ abstract class CompactEncoding {
   }
 
   public static Bytes bytesToPathBinary(final Bytes bytes) {
-    final MutableBytes path = MutableBytes.create(bytes.size() * 8 + 1);
-    int j = 0;
-    for (int i = 0; i < bytes.size(); i += 1, j += 8) {
-      final byte b = bytes.get(i);
-      path.set(j, (byte) ((b >>> 7) & 0x01));
-      path.set(j + 1, (byte) ((b >>> 6) & 0x01));
-      path.set(j + 2, (byte) ((b >>> 5) & 0x01));
-      path.set(j + 3, (byte) ((b >>> 4) & 0x01));
-      path.set(j + 4, (byte) ((b >>> 3) & 0x01));
-      path.set(j + 5, (byte) ((b >>> 2) & 0x01));
-      path.set(j + 6, (byte) ((b >>> 1) & 0x01));
-      path.set(j + 7, (byte) (b & 0x01));
-    }
-    path.set(j, LEAF_TERMINATOR);
-    return path;
+    return PackedPath.bits(bytes);
   }
 
   public static Bytes pathToBytesBinary(final Bytes path) {
@@ -134,28 +112,8 @@ abstract class CompactEncoding {
 
     final boolean isLeaf = (metadata & 0x20) != 0;
 
-    final int pathLength = ((size - 1) * 2) + (isLeaf ? 1 : 0);
-    final MutableBytes path;
-    int i = 0;
-
-    if ((metadata & 0x10) != 0) {
-      // need to use lower nibble of metadata
-      path = MutableBytes.create(pathLength + 1);
-      path.set(i++, (byte) (metadata & 0x0f));
-    } else {
-      path = MutableBytes.create(pathLength);
-    }
-
-    for (int j = 1; j < size; j++) {
-      final byte b = encoded.get(j);
-      path.set(i++, (byte) ((b >>> 4) & 0x0f));
-      path.set(i++, (byte) (b & 0x0f));
-    }
-
-    if (isLeaf) {
-      path.set(i, LEAF_TERMINATOR);
-    }
-
-    return path;
+    // pack the nibbles that follow the metadata, including the lower nibble of an odd length path
+    final int firstNibble = (metadata & 0x10) != 0 ? 1 : 2;
+    return PackedPath.fromCompact(encoded, firstNibble, isLeaf);
   }
 }
@@ -17,7 +17,6 @@ package net.consensys.gpact.trie;
 import static org.apache.logging.log4j.LogManager.getLogger;
 import static org.hyperledger.besu.crypto.Hash.keccak256;
 
-import java.lang.ref.SoftReference;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -35,7 +34,7 @@ class ExtensionNode<V> implements Node<V> {
   private final Node<V> child;
   private final NodeFactory<V> nodeFactory;
   private WeakReference<Bytes> rlp;
-  private SoftReference<Bytes32> hash;
+  private volatile Bytes32 hash;
   private boolean dirty = false;
 
   ExtensionNode(final Bytes path, final Node<V> child, final NodeFactory<V> nodeFactory) {
@@ -131,21 +130,22 @@ class ExtensionNode<V> implements Node<V> {
 
   @Override
   public Bytes32 getHash() {
-    if (hash != null) {
-      final Bytes32 hashed = hash.get();
-      if (hashed != null) {
-        return hashed;
-      }
+    Bytes32 hashed = hash;
+    if (hashed == null) {
+      hashed = keccak256(getRlp());
+      hash = hashed;
     }
-    final Bytes rlp = getRlp();
-    final Bytes32 hashed = keccak256(rlp);
-    hash = new SoftReference<>(hashed);
     return hashed;
   }
 
+  @Override
+  public boolean hasCachedHash() {
+    return hash != null;
+  }
+
   public Node<V> replaceChild(final Node<V> updatedChild) {
     // collapse this extension - if the child is a branch, it will create a new extension
-    return updatedChild.replacePath(Bytes.concatenate(path, updatedChild.getPath()));
+    return updatedChild.replacePath(PackedPath.concatenate(path, updatedChild.getPath()));
   }
 
   @Override
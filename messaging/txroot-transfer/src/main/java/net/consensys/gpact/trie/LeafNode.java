@@ -17,7 +17,6 @@ package net.consensys.gpact.trie;
 import static org.apache.logging.log4j.LogManager.getLogger;
 import static org.hyperledger.besu.crypto.Hash.keccak256;
 
-import java.lang.ref.SoftReference;
 import java.lang.ref.WeakReference;
 import java.util.Collections;
 import java.util.List;
@@ -36,7 +35,7 @@ class LeafNode<V> implements Node<V> {
   private final NodeFactory<V> nodeFactory;
   private final Function<V, Bytes> valueSerializer;
   private WeakReference<Bytes> rlp;
-  private SoftReference<Bytes32> hash;
+  private volatile Bytes32 hash;
   private boolean dirty = false;
 
   LeafNode(
@@ -133,17 +132,19 @@ class LeafNode<V> implements Node<V> {
 
   @Override
   public Bytes32 getHash() {
-    if (hash != null) {
-      final Bytes32 hashed = hash.get();
-      if (hashed != null) {
-        return hashed;
-      }
+    Bytes32 hashed = hash;
+    if (hashed == null) {
+      hashed = keccak256(getRlp());
+      hash = hashed;
     }
-    final Bytes32 hashed = keccak256(getRlp());
-    hash = new SoftReference<>(hashed);
     return hashed;
   }
 
+  @Override
+  public boolean hasCachedHash() {
+    return hash != null;
+  }
+
   @Override
   public Node<V> replacePath(final Bytes path) {
     return nodeFactory.createLeaf(path, value);
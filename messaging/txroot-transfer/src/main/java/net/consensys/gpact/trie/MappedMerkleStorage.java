@@ -0,0 +1,346 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.gpact.trie;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+
+/**
+ * {@link MerkleStorage} that keeps trie nodes in an append-only log in a memory-mapped file. Nodes
+ * are found using a hash index held off the Java heap, which is rebuilt from the log when the file
+ * is reopened. Puts are held in memory until {@link #commit()}, which appends them to the log as
+ * one batch, and are discarded by {@link #rollback()}.
+ *
+ * <p>The file starts with a header holding the length of the log as of the last commit. A commit
+ * first flushes the new records and then updates the header, so records of a commit that did not
+ * complete are ignored when the file is reopened.
+ *
+ * <p>This class also implements {@link NodeLoader} and {@link NodeUpdater}, so that it can be
+ * passed directly to {@link StoredMerklePatriciaTrie}.
+ */
+public class MappedMerkleStorage implements MerkleStorage, NodeLoader, NodeUpdater, Closeable {
+  public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+  private static final long MAGIC = 0x67706163744d4b4cL; // "gpactMKL"
+  private static final int HEADER_SIZE = 16;
+  private static final int COMMITTED_END_OFFSET = 8;
+
+  // Each record is the hash, the length of the content, and the content.
+  private static final int RECORD_HEADER_SIZE = Bytes32.SIZE + Integer.BYTES;
+  // Marks the unused end of a segment, when the next record did not fit.
+  private static final int PADDING = -1;
+
+  // Each index slot holds the first eight bytes of the hash and the offset of the record.
+  private static final int SLOT_SIZE = 2 * Long.BYTES;
+  private static final int INITIAL_SLOTS = 1024;
+
+  private final FileChannel channel;
+  private final int segmentSize;
+  private final MappedByteBuffer header;
+  // The log is mapped in fixed size segments, so it can grow without remapping.
+  private final List<MappedByteBuffer> segments = new ArrayList<>();
+  private final Map<Bytes32, Bytes> pending = new LinkedHashMap<>();
+
+  private ByteBuffer index;
+  private int indexMask;
+  private int indexSize;
+  private long end;
+
+  public MappedMerkleStorage(final Path file) throws IOException {
+    this(file, DEFAULT_SEGMENT_SIZE);
+  }
+
+  /**
+   * Open or create a storage file.
+   *
+   * @param file File to hold the trie nodes.
+   * @param segmentSize Size of each region of the file that is mapped. This limits the size of the
+   *     largest node that can be stored.
+   * @throws IOException If the file can not be opened, or is not a storage file.
+   */
+  public MappedMerkleStorage(final Path file, final int segmentSize) throws IOException {
+    this.segmentSize = segmentSize;
+    this.channel =
+        FileChannel.open(
+            file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    boolean created = this.channel.size() == 0;
+    this.header = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+    if (created) {
+      this.header.putLong(0, MAGIC);
+      this.header.putLong(COMMITTED_END_OFFSET, HEADER_SIZE);
+      this.header.force();
+    } else if (this.header.getLong(0) != MAGIC) {
+      this.channel.close();
+      throw new IOException("Not a Merkle storage file: " + file);
+    }
+    this.end = this.header.getLong(COMMITTED_END_OFFSET);
+    newIndex(INITIAL_SLOTS);
+    rebuildIndex();
+  }
+
+  @Override
+  public synchronized Optional<Bytes> get(final Bytes32 hash) {
+    Bytes content = this.pending.get(hash);
+    if (content != null) {
+      return Optional.of(content);
+    }
+    int slot = findSlot(hash);
+    long offset = this.index.getLong(slot + Long.BYTES);
+    if (offset == 0) {
+      return Optional.empty();
+    }
+    return Optional.of(readContent(offset));
+  }
+
+  @Override
+  public synchronized void put(final Bytes32 hash, final Bytes content) {
+    if (RECORD_HEADER_SIZE + content.size() > this.segmentSize) {
+      throw new MerkleTrieException(
+          "Node of " + content.size() + " bytes is larger than the segment size");
+    }
+    this.pending.put(hash, content);
+  }
+
+  @Override
+  public Optional<Bytes> getNode(final Bytes32 hash) {
+    return get(hash);
+  }
+
+  @Override
+  public void store(final Bytes32 hash, final Bytes value) {
+    put(hash, value);
+  }
+
+  /**
+   * Append the pending puts to the log, and flush them to the file. Nodes are content addressed, so
+   * puts of nodes that are already in the log are not appended again.
+   */
+  @Override
+  public synchronized void commit() {
+    if (this.pending.isEmpty()) {
+      return;
+    }
+    long committedEnd = this.end;
+    int firstDirtySegment = segmentOf(this.end);
+    for (Map.Entry<Bytes32, Bytes> entry : this.pending.entrySet()) {
+      int slotOffset = findSlot(entry.getKey());
+      if (this.index.getLong(slotOffset + Long.BYTES) != 0) {
+        continue;
+      }
+      long offset = append(entry.getKey(), entry.getValue());
+      indexInsert(slotOffset, entry.getKey(), offset);
+    }
+    this.pending.clear();
+    if (this.end == committedEnd) {
+      return;
+    }
+    for (int i = firstDirtySegment; i < this.segments.size(); i++) {
+      this.segments.get(i).force();
+    }
+    this.header.putLong(COMMITTED_END_OFFSET, this.end);
+    this.header.force();
+  }
+
+  @Override
+  public synchronized void rollback() {
+    this.pending.clear();
+  }
+
+  /** @return Number of nodes that have been committed. */
+  public synchronized int size() {
+    return this.indexSize;
+  }
+
+  /** @return Length of the log, in bytes. */
+  public synchronized long getLogLength() {
+    return this.end - HEADER_SIZE;
+  }
+
+  /** Close the file. Puts that have not been committed are discarded. */
+  @Override
+  public synchronized void close() throws IOException {
+    this.pending.clear();
+    this.segments.clear();
+    this.channel.close();
+  }
+
+  private long append(final Bytes32 hash, final Bytes content) {
+    int recordSize = RECORD_HEADER_SIZE + content.size();
+    int segment = segmentOf(this.end);
+    int position = positionOf(this.end);
+    if (position + recordSize > this.segmentSize) {
+      // Records do not span segments. Mark the rest of this segment as unused.
+      if (position + RECORD_HEADER_SIZE <= this.segmentSize) {
+        segment(segment).putInt(position + Bytes32.SIZE, PADDING);
+      }
+      segment++;
+      position = 0;
+      this.end = offsetOf(segment, 0);
+    }
+    ByteBuffer buf = segment(segment).duplicate();
+    buf.position(position);
+    buf.put(hash.toArrayUnsafe());
+    buf.putInt(content.size());
+    buf.put(content.toArrayUnsafe());
+    long offset = this.end;
+    this.end += recordSize;
+    return offset;
+  }
+
+  private Bytes readContent(final long offset) {
+    ByteBuffer buf = segment(segmentOf(offset));
+    int position = positionOf(offset);
+    int length = buf.getInt(position + Bytes32.SIZE);
+    byte[] content = new byte[length];
+    ByteBuffer view = buf.duplicate();
+    view.position(position + RECORD_HEADER_SIZE);
+    view.get(content);
+    return Bytes.wrap(content);
+  }
+
+  private boolean hashMatches(final long offset, final Bytes32 hash) {
+    ByteBuffer buf = segment(segmentOf(offset));
+    int position = positionOf(offset);
+    for (int i = 0; i < Bytes32.SIZE; i++) {
+      if (buf.get(position + i) != hash.get(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Read the log from the start up to the end recorded at the last commit.
+  private void rebuildIndex() {
+    long offset = HEADER_SIZE;
+    byte[] hash = new byte[Bytes32.SIZE];
+    while (offset < this.end) {
+      int segment = segmentOf(offset);
+      int position = positionOf(offset);
+      ByteBuffer buf = segment(segment);
+      int length =
+          position + RECORD_HEADER_SIZE <= this.segmentSize
+              ? buf.getInt(position + Bytes32.SIZE)
+              : PADDING;
+      if (length == PADDING) {
+        offset = offsetOf(segment + 1, 0);
+        continue;
+      }
+      ByteBuffer view = buf.duplicate();
+      view.position(position);
+      view.get(hash);
+      indexPut(Bytes32.wrap(hash), offset);
+      offset += RECORD_HEADER_SIZE + length;
+    }
+  }
+
+  private MappedByteBuffer segment(final int segment) {
+    while (this.segments.size() <= segment) {
+      try {
+        this.segments.add(
+            this.channel.map(
+                FileChannel.MapMode.READ_WRITE,
+                offsetOf(this.segments.size(), 0),
+                this.segmentSize));
+      } catch (IOException ex) {
+        throw new MerkleTrieException("Unable to map Merkle storage file", ex);
+      }
+    }
+    return this.segments.get(segment);
+  }
+
+  private int segmentOf(final long offset) {
+    return (int) ((offset - HEADER_SIZE) / this.segmentSize);
+  }
+
+  private int positionOf(final long offset) {
+    return (int) ((offset - HEADER_SIZE) % this.segmentSize);
+  }
+
+  private long offsetOf(final int segment, final int position) {
+    return HEADER_SIZE + (long) segment * this.segmentSize + position;
+  }
+
+  private void newIndex(final int slots) {
+    this.index = ByteBuffer.allocateDirect(slots * SLOT_SIZE);
+    this.indexMask = slots - 1;
+    this.indexSize = 0;
+  }
+
+  // Get the index slot holding the hash, or the empty slot where it would be inserted. Offsets
+  // are never zero, as the header is at the start of the file, so zero marks an empty slot.
+  private int findSlot(final Bytes32 hash) {
+    long fingerprint = hash.getLong(0);
+    int slot = (int) (fingerprint ^ (fingerprint >>> 32)) & this.indexMask;
+    while (true) {
+      int slotOffset = slot * SLOT_SIZE;
+      long offset = this.index.getLong(slotOffset + Long.BYTES);
+      if (offset == 0
+          || (this.index.getLong(slotOffset) == fingerprint && hashMatches(offset, hash))) {
+        return slotOffset;
+      }
+      slot = (slot + 1) & this.indexMask;
+    }
+  }
+
+  private void indexPut(final Bytes32 hash, final long offset) {
+    indexInsert(findSlot(hash), hash, offset);
+  }
+
+  // Put a hash in the index, at the slot returned by findSlot.
+  private void indexInsert(final int slotOffset, final Bytes32 hash, final long offset) {
+    if (this.index.getLong(slotOffset + Long.BYTES) == 0) {
+      this.indexSize++;
+    }
+    this.index.putLong(slotOffset, hash.getLong(0));
+    this.index.putLong(slotOffset + Long.BYTES, offset);
+    // Keep the index at most half full, so that probe sequences are short.
+    if (this.indexSize * 2 > this.indexMask + 1) {
+      resizeIndex();
+    }
+  }
+
+  private void resizeIndex() {
+    ByteBuffer old = this.index;
+    int oldSlots = this.indexMask + 1;
+    int size = this.indexSize;
+    newIndex(oldSlots * 2);
+    for (int slot = 0; slot < oldSlots; slot++) {
+      long offset = old.getLong(slot * SLOT_SIZE + Long.BYTES);
+      if (offset == 0) {
+        continue;
+      }
+      long fingerprint = old.getLong(slot * SLOT_SIZE);
+      int newSlot = (int) (fingerprint ^ (fingerprint >>> 32)) & this.indexMask;
+      while (this.index.getLong(newSlot * SLOT_SIZE + Long.BYTES) != 0) {
+        newSlot = (newSlot + 1) & this.indexMask;
+      }
+      this.index.putLong(newSlot * SLOT_SIZE, fingerprint);
+      this.index.putLong(newSlot * SLOT_SIZE + Long.BYTES, offset);
+    }
+    this.indexSize = size;
+  }
+}
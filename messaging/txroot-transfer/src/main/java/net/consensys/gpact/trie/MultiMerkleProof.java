@@ -17,6 +17,8 @@ package net.consensys.gpact.trie;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static org.apache.logging.log4j.LogManager.getLogger;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import org.apache.logging.log4j.Logger;
 import org.apache.tuweni.bytes.Bytes;
@@ -65,6 +67,19 @@ public class MultiMerkleProof<V> {
     return root.getRlp();
   }
 
+  /**
+   * Return the RLP of each node in the proof, from the root downwards. Each node is included once,
+   * no matter how many of the proven keys share it. Nodes that are represented only by their hash
+   * are included in the RLP of their parent.
+   *
+   * @return RLP encoded nodes.
+   */
+  public List<Bytes> getProofNodes() {
+    List<Bytes> nodes = new ArrayList<>();
+    root.accept(new AllNodesVisitor<>(node -> nodes.add(node.getRlp())));
+    return nodes;
+  }
+
   @Override
   public String toString() {
     return root.print();
@@ -54,6 +54,15 @@ public interface Node<V> {
 
   Bytes32 getHash();
 
+  /**
+   * Whether the hash of this node is known without hashing the node or any of its children.
+   *
+   * @return true if getHash does not need to do any hashing.
+   */
+  default boolean hasCachedHash() {
+    return true;
+  }
+
   Node<V> replacePath(Bytes path);
 
   /** Marks the node as needing to be persisted */
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.gpact.trie;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.tuweni.bytes.Bytes32;
+
+/**
+ * Bounded cache of decoded trie nodes, keyed by node hash, that can be shared between {@link
+ * StoredMerklePatriciaTrie} instances. Successive roots of a trie share most of their nodes, so
+ * proofs against recent roots can be generated without reading and decoding the same nodes from
+ * storage again.
+ *
+ * <p>The cache is limited by the approximate memory used by the nodes, based on the size of their
+ * RLP encoding. The cache is split into stripes by hash, each with its own lock and its own share
+ * of the limit, and the least recently used nodes of a stripe are evicted first.
+ *
+ * <p>Decoded nodes refer to the storage they were loaded from, so a cache should only be shared
+ * between tries that use the same storage and the same value serializers.
+ *
+ * @param <V> The type of values stored by the tries.
+ */
+public class NodeCache<V> {
+  public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+  // Decoded nodes take more memory than their RLP: node objects, child lists, and references to
+  // stored children.
+  private static final int NODE_OVERHEAD_BYTES = 256;
+  private static final int STRIPES = 16;
+
+  private final Stripe<V>[] stripes;
+  private final long maxBytes;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  public NodeCache() {
+    this(DEFAULT_MAX_BYTES);
+  }
+
+  /**
+   * Create a cache.
+   *
+   * @param maxBytes Approximate maximum memory to use for cached nodes.
+   */
+  @SuppressWarnings("unchecked")
+  public NodeCache(final long maxBytes) {
+    if (maxBytes <= 0) {
+      throw new IllegalArgumentException("Maximum size must be positive: " + maxBytes);
+    }
+    this.maxBytes = maxBytes;
+    this.stripes = (Stripe<V>[]) new Stripe<?>[STRIPES];
+    for (int i = 0; i < STRIPES; i++) {
+      this.stripes[i] = new Stripe<>(Math.max(1, maxBytes / STRIPES));
+    }
+  }
+
+  Node<V> get(final Bytes32 hash) {
+    Node<V> node = stripe(hash).get(hash);
+    if (node == null) {
+      this.misses.incrementAndGet();
+    } else {
+      this.hits.incrementAndGet();
+    }
+    return node;
+  }
+
+  void put(final Bytes32 hash, final Node<V> node, final int rlpSize) {
+    int evicted = stripe(hash).put(hash, node, rlpSize + NODE_OVERHEAD_BYTES);
+    if (evicted > 0) {
+      this.evictions.addAndGet(evicted);
+    }
+  }
+
+  private Stripe<V> stripe(final Bytes32 hash) {
+    // Hashes are uniformly distributed, so any byte will do.
+    return this.stripes[hash.get(0) & (STRIPES - 1)];
+  }
+
+  public void clear() {
+    for (Stripe<V> stripe : this.stripes) {
+      stripe.clear();
+    }
+  }
+
+  /** @return Number of nodes in the cache. */
+  public int size() {
+    int size = 0;
+    for (Stripe<V> stripe : this.stripes) {
+      size += stripe.size();
+    }
+    return size;
+  }
+
+  /** @return Approximate memory used by the cached nodes. */
+  public long getSizeBytes() {
+    long bytes = 0;
+    for (Stripe<V> stripe : this.stripes) {
+      bytes += stripe.getSizeBytes();
+    }
+    return bytes;
+  }
+
+  public long getMaxBytes() {
+    return this.maxBytes;
+  }
+
+  public long getHits() {
+    return this.hits.get();
+  }
+
+  public long getMisses() {
+    return this.misses.get();
+  }
+
+  public long getEvictions() {
+    return this.evictions.get();
+  }
+
+  /** @return Fraction of lookups that found the node in the cache, or 0 if there were none. */
+  public double getHitRate() {
+    long hits = this.hits.get();
+    long total = hits + this.misses.get();
+    return total == 0 ? 0 : (double) hits / total;
+  }
+
+  @Override
+  public String toString() {
+    return "Nodes: "
+        + size()
+        + ", Bytes: "
+        + getSizeBytes()
+        + "/"
+        + this.maxBytes
+        + ", Hits: "
+        + getHits()
+        + ", Misses: "
+        + getMisses()
+        + ", Evictions: "
+        + getEvictions();
+  }
+
+  private static class Entry<V> {
+    private final Node<V> node;
+    private final int weight;
+
+    Entry(final Node<V> node, final int weight) {
+      this.node = node;
+      this.weight = weight;
+    }
+  }
+
+  private static class Stripe<V> {
+    private final long maxBytes;
+    // Guarded by this.
+    private final LinkedHashMap<Bytes32, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long sizeBytes;
+
+    Stripe(final long maxBytes) {
+      this.maxBytes = maxBytes;
+    }
+
+    synchronized Node<V> get(final Bytes32 hash) {
+      Entry<V> entry = this.entries.get(hash);
+      return entry == null ? null : entry.node;
+    }
+
+    // Returns the number of nodes evicted.
+    synchronized int put(final Bytes32 hash, final Node<V> node, final int weight) {
+      Entry<V> previous = this.entries.put(hash, new Entry<>(node, weight));
+      if (previous != null) {
+        this.sizeBytes -= previous.weight;
+      }
+      this.sizeBytes += weight;
+
+      int evicted = 0;
+      Iterator<Map.Entry<Bytes32, Entry<V>>> eldest = this.entries.entrySet().iterator();
+      // Always keep the node just added, even if it is larger than the limit.
+      while (this.sizeBytes > this.maxBytes && this.entries.size() > 1) {
+        Entry<V> entry = eldest.next().getValue();
+        eldest.remove();
+        this.sizeBytes -= entry.weight;
+        evicted++;
+      }
+      return evicted;
+    }
+
+    synchronized void clear() {
+      this.entries.clear();
+      this.sizeBytes = 0;
+    }
+
+    synchronized int size() {
+      return this.entries.size();
+    }
+
+    synchronized long getSizeBytes() {
+      return this.sizeBytes;
+    }
+  }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.gpact.trie;
+
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+
+import org.apache.tuweni.bytes.AbstractBytes;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.MutableBytes;
+
+/**
+ * A trie path with its elements (nibbles for a hexary trie, bits for a binary trie) packed into
+ * longs, rather than stored one element per byte. A leaf path ends with {@link
+ * CompactEncoding#LEAF_TERMINATOR}, which is held as a flag rather than as a packed element.
+ *
+ * <p>The path is immutable, so slicing shares the packed words with the original path and does not
+ * copy any elements. Common prefixes and equality of two packed paths with the same element width
+ * are computed 64 bits at a time.
+ */
+final class PackedPath extends AbstractBytes {
+  static final int NIBBLE_BITS = 4;
+  static final int BIT_BITS = 1;
+
+  private final long[] words;
+  private final int bitsPerElement;
+  // Offset and length in elements. The length does not include the leaf terminator.
+  private final int offset;
+  private final int length;
+  private final boolean leaf;
+
+  private PackedPath(
+      final long[] words,
+      final int bitsPerElement,
+      final int offset,
+      final int length,
+      final boolean leaf) {
+    this.words = words;
+    this.bitsPerElement = bitsPerElement;
+    this.offset = offset;
+    this.length = length;
+    this.leaf = leaf;
+  }
+
+  /**
+   * Create a leaf path from a key, with one element for each nibble of the key.
+   *
+   * @param bytes The key.
+   * @return The path, including the leaf terminator.
+   */
+  static PackedPath nibbles(final Bytes bytes) {
+    return new PackedPath(pack(bytes), NIBBLE_BITS, 0, bytes.size() * 2, true);
+  }
+
+  /**
+   * Create a leaf path from a key, with one element for each bit of the key.
+   *
+   * @param bytes The key.
+   * @return The path, including the leaf terminator.
+   */
+  static PackedPath bits(final Bytes bytes) {
+    return new PackedPath(pack(bytes), BIT_BITS, 0, bytes.size() * 8, true);
+  }
+
+  /**
+   * Create a nibble path from the body of a compact encoded path.
+   *
+   * @param encoded The compact encoded path.
+   * @param firstNibble The index of the first nibble of the path within encoded: 1 if the path has
+   *     an odd length and so starts in the lower nibble of the metadata byte, otherwise 2.
+   * @param leaf true if the path is a leaf path.
+   * @return The path.
+   */
+  static PackedPath fromCompact(final Bytes encoded, final int firstNibble, final boolean leaf) {
+    final int length = encoded.size() * 2 - firstNibble;
+    return new PackedPath(pack(encoded), NIBBLE_BITS, firstNibble, length, leaf);
+  }
+
+  /**
+   * Concatenate two paths. If either path is packed, the result is packed with the same element
+   * width, so that paths formed when nodes are collapsed stay packed.
+   *
+   * @param first The start of the path. This must not be a leaf path.
+   * @param second The end of the path.
+   * @return The concatenated path.
+   */
+  static Bytes concatenate(final Bytes first, final Bytes second) {
+    final int bits;
+    if (first instanceof PackedPath) {
+      bits = ((PackedPath) first).bitsPerElement;
+    } else if (second instanceof PackedPath) {
+      bits = ((PackedPath) second).bitsPerElement;
+    } else {
+      return Bytes.concatenate(first, second);
+    }
+
+    final int firstSize = first.size();
+    final int secondSize = second.size();
+    final boolean leaf =
+        secondSize > 0 && second.get(secondSize - 1) == CompactEncoding.LEAF_TERMINATOR;
+    final int length = firstSize + secondSize - (leaf ? 1 : 0);
+    final long[] words = new long[wordsFor((long) length * bits)];
+    final int max = (1 << bits) - 1;
+    for (int i = 0; i < length; i++) {
+      final int element = i < firstSize ? first.get(i) : second.get(i - firstSize);
+      if ((element & ~max) != 0) {
+        return Bytes.concatenate(first, second);
+      }
+      final long bitPos = (long) i * bits;
+      words[(int) (bitPos >>> 6)] |= (long) element << (64 - bits - (int) (bitPos & 63));
+    }
+    return new PackedPath(words, bits, 0, length, leaf);
+  }
+
+  @Override
+  public int size() {
+    return leaf ? length + 1 : length;
+  }
+
+  @Override
+  public byte get(final int i) {
+    if (i == length && leaf) {
+      return CompactEncoding.LEAF_TERMINATOR;
+    }
+    checkElementIndex(i, length);
+    final long bitPos = (long) (offset + i) * bitsPerElement;
+    final long word = words[(int) (bitPos >>> 6)];
+    return (byte)
+        ((word >>> (64 - bitsPerElement - (int) (bitPos & 63))) & ((1 << bitsPerElement) - 1));
+  }
+
+  @Override
+  public Bytes slice(final int i, final int len) {
+    final int size = size();
+    checkPositionIndexes(i, i + len, size);
+    if (i == 0 && len == size) {
+      return this;
+    }
+    if (len == 0) {
+      return Bytes.EMPTY;
+    }
+    if (leaf && i + len == size) {
+      return new PackedPath(words, bitsPerElement, offset + i, len - 1, true);
+    }
+    return new PackedPath(words, bitsPerElement, offset + i, len, false);
+  }
+
+  @Override
+  public int commonPrefixLength(final Bytes other) {
+    if (!(other instanceof PackedPath) || ((PackedPath) other).bitsPerElement != bitsPerElement) {
+      return super.commonPrefixLength(other);
+    }
+    final PackedPath that = (PackedPath) other;
+    final int common = Math.min(length, that.length);
+    final int elementsPerWord = 64 / bitsPerElement;
+    for (int i = 0; i < common; i += elementsPerWord) {
+      final long diff = bitsAt(i) ^ that.bitsAt(i);
+      if (diff != 0) {
+        return Math.min(common, i + Long.numberOfLeadingZeros(diff) / bitsPerElement);
+      }
+    }
+    if (leaf && that.leaf && length == that.length) {
+      return common + 1;
+    }
+    return common;
+  }
+
+  @Override
+  public boolean equals(final Object obj) {
+    if (obj instanceof PackedPath && ((PackedPath) obj).bitsPerElement == bitsPerElement) {
+      final int size = size();
+      return ((PackedPath) obj).size() == size && commonPrefixLength((PackedPath) obj) == size;
+    }
+    return super.equals(obj);
+  }
+
+  @Override
+  public int hashCode() {
+    return super.hashCode();
+  }
+
+  @Override
+  public Bytes copy() {
+    return this;
+  }
+
+  @Override
+  public MutableBytes mutableCopy() {
+    final MutableBytes copy = MutableBytes.create(size());
+    copyTo(copy);
+    return copy;
+  }
+
+  // The 64 bits of the path starting at element i, left aligned. Bits beyond the end of the packed
+  // words are zero.
+  private long bitsAt(final int i) {
+    final long bitPos = (long) (offset + i) * bitsPerElement;
+    final int wordIndex = (int) (bitPos >>> 6);
+    final int shift = (int) (bitPos & 63);
+    final long high = words[wordIndex] << shift;
+    if (shift == 0 || wordIndex + 1 >= words.length) {
+      return high;
+    }
+    return high | (words[wordIndex + 1] >>> (64 - shift));
+  }
+
+  private static long[] pack(final Bytes bytes) {
+    final int size = bytes.size();
+    final long[] words = new long[wordsFor((long) size * 8)];
+    int i = 0;
+    for (; i + 8 <= size; i += 8) {
+      words[i >>> 3] = bytes.getLong(i);
+    }
+    for (; i < size; i++) {
+      words[i >>> 3] |= (bytes.get(i) & 0xffL) << (56 - ((i & 7) << 3));
+    }
+    return words;
+  }
+
+  private static int wordsFor(final long bits) {
+    return (int) ((bits + 63) >>> 6);
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.gpact.trie;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import org.apache.tuweni.bytes.Bytes32;
+
+/**
+ * Computes the hash of a trie's root node, hashing the subtrees below the top levels of branch
+ * nodes in parallel. Only subtrees whose hashes are not already cached are hashed, so after a few
+ * updates to a large trie only the updated paths are rehashed. Tries with fewer nodes to hash than
+ * a threshold are hashed on the calling thread, as forking would cost more than it saves.
+ */
+class ParallelHasher {
+  static final int DEFAULT_THRESHOLD = 2048;
+
+  // Forking at the top two levels of branches gives up to 256 subtrees, which is enough to
+  // spread the work evenly across the threads of a pool.
+  private static final int FORK_DEPTH = 2;
+
+  private final ForkJoinPool pool;
+  private final int threshold;
+
+  /**
+   * @param pool Pool to hash subtrees in.
+   * @param threshold Minimum number of nodes to hash before hashing in parallel.
+   */
+  ParallelHasher(final ForkJoinPool pool, final int threshold) {
+    this.pool = pool;
+    this.threshold = threshold;
+  }
+
+  <V> Bytes32 hash(final Node<V> root) {
+    if (countToHash(root, this.threshold) < this.threshold) {
+      return root.getHash();
+    }
+    return this.pool.invoke(new HashTask<>(root, 0));
+  }
+
+  // Count the nodes that need to be hashed, stopping once the limit is reached. Walking the
+  // nodes is cheap compared to hashing them.
+  private static <V> int countToHash(final Node<V> node, final int limit) {
+    if (!isInMemory(node) || node.hasCachedHash()) {
+      return 0;
+    }
+    int count = 1;
+    for (final Node<V> child : node.getChildren()) {
+      if (count >= limit) {
+        break;
+      }
+      count += countToHash(child, limit - count);
+    }
+    return count;
+  }
+
+  // Stored nodes have a known hash, and would need to be loaded to walk their children.
+  private static <V> boolean isInMemory(final Node<V> node) {
+    return node instanceof BranchNode || node instanceof ExtensionNode || node instanceof LeafNode;
+  }
+
+  // Tasks are never serialized.
+  @SuppressWarnings("serial")
+  private static class HashTask<V> extends RecursiveTask<Bytes32> {
+    private final Node<V> node;
+    private final int branchDepth;
+
+    HashTask(final Node<V> node, final int branchDepth) {
+      this.node = node;
+      this.branchDepth = branchDepth;
+    }
+
+    @Override
+    protected Bytes32 compute() {
+      final boolean isBranch = this.node instanceof BranchNode;
+      if (this.branchDepth < FORK_DEPTH && (isBranch || this.node instanceof ExtensionNode)) {
+        // An extension has one child, so only branches add to the number of subtrees.
+        final int childDepth = isBranch ? this.branchDepth + 1 : this.branchDepth;
+        final List<HashTask<V>> subtrees = new ArrayList<>();
+        for (final Node<V> child : this.node.getChildren()) {
+          if (isInMemory(child) && !child.hasCachedHash()) {
+            subtrees.add(new HashTask<>(child, childDepth));
+          }
+        }
+        // Joining the subtasks ensures the children's cached hashes are visible to this thread.
+        invokeAll(subtrees);
+      }
+      return this.node.getHash();
+    }
+  }
+}
@@ -21,6 +21,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -40,6 +41,7 @@ public class SimpleMerklePatriciaTrie<K extends Bytes, V> implements MerklePatri
   private final DefaultNodeFactory<V> nodeFactory;
 
   private Node<V> root;
+  private ParallelHasher parallelHasher;
 
   /**
    * Create a trie.
@@ -51,6 +53,35 @@ public class SimpleMerklePatriciaTrie<K extends Bytes, V> implements MerklePatri
     this.root = NullNode.instance();
   }
 
+  /**
+   * Hash large tries using the threads of a pool when calculating the root hash.
+   *
+   * @param pool Pool to hash subtrees in, or null to hash on the calling thread.
+   */
+  public void setParallelHashing(final ForkJoinPool pool) {
+    setParallelHashing(pool, ParallelHasher.DEFAULT_THRESHOLD);
+  }
+
+  /**
+   * Hash large tries using the threads of a pool when calculating the root hash.
+   *
+   * @param pool Pool to hash subtrees in, or null to hash on the calling thread.
+   * @param threshold Minimum number of nodes that need hashing for the hashing to be done in
+   *     parallel.
+   */
+  public void setParallelHashing(final ForkJoinPool pool, final int threshold) {
+    this.parallelHasher = pool == null ? null : new ParallelHasher(pool, threshold);
+  }
+
+  // Visible for testing.
+  Node<V> getRootNode() {
+    return this.root;
+  }
+
+  private Bytes32 hashRoot() {
+    return this.parallelHasher == null ? root.getHash() : this.parallelHasher.hash(root);
+  }
+
   @Override
   public Optional<V> get(final K key) {
     checkNotNull(key);
@@ -99,7 +130,7 @@ public class SimpleMerklePatriciaTrie<K extends Bytes, V> implements MerklePatri
 
   @Override
   public Bytes32 getRootHash() {
-    return root.getHash();
+    return hashRoot();
   }
 
   @Override
@@ -19,6 +19,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -36,6 +37,7 @@ public class StoredMerklePatriciaTrie<K extends Bytes, V> implements MerklePatri
   private final StoredNodeFactory<V> nodeFactory;
 
   private Node<V> root;
+  private ParallelHasher parallelHasher;
 
   /**
    * Create a trie.
@@ -65,13 +67,58 @@ public class StoredMerklePatriciaTrie<K extends Bytes, V> implements MerklePatri
       final Bytes32 rootHash,
       final Function<V, Bytes> valueSerializer,
       final Function<Bytes, V> valueDeserializer) {
-    this.nodeFactory = new StoredNodeFactory<>(nodeLoader, valueSerializer, valueDeserializer);
+    this(nodeLoader, rootHash, valueSerializer, valueDeserializer, null);
+  }
+
+  /**
+   * Create a trie that shares decoded nodes with other tries through a cache.
+   *
+   * @param nodeLoader The {@link NodeLoader} to retrieve node data from.
+   * @param rootHash The initial root has for the trie, which should be already present in {@code
+   *     storage}.
+   * @param valueSerializer A function for serializing values to bytes.
+   * @param valueDeserializer A function for deserializing values from bytes.
+   * @param nodeCache Cache of decoded nodes, shared by tries that use the same storage, or null to
+   *     not cache nodes.
+   */
+  public StoredMerklePatriciaTrie(
+      final NodeLoader nodeLoader,
+      final Bytes32 rootHash,
+      final Function<V, Bytes> valueSerializer,
+      final Function<Bytes, V> valueDeserializer,
+      final NodeCache<V> nodeCache) {
+    this.nodeFactory =
+        new StoredNodeFactory<>(nodeLoader, valueSerializer, valueDeserializer, nodeCache);
     this.root =
         rootHash.equals(EMPTY_TRIE_NODE_HASH)
             ? NullNode.instance()
             : new StoredNode<>(nodeFactory, rootHash);
   }
 
+  /**
+   * Hash large tries using the threads of a pool when calculating the root hash.
+   *
+   * @param pool Pool to hash subtrees in, or null to hash on the calling thread.
+   */
+  public void setParallelHashing(final ForkJoinPool pool) {
+    setParallelHashing(pool, ParallelHasher.DEFAULT_THRESHOLD);
+  }
+
+  /**
+   * Hash large tries using the threads of a pool when calculating the root hash.
+   *
+   * @param pool Pool to hash subtrees in, or null to hash on the calling thread.
+   * @param threshold Minimum number of nodes that need hashing for the hashing to be done in
+   *     parallel.
+   */
+  public void setParallelHashing(final ForkJoinPool pool, final int threshold) {
+    this.parallelHasher = pool == null ? null : new ParallelHasher(pool, threshold);
+  }
+
+  private Bytes32 hashRoot() {
+    return this.parallelHasher == null ? root.getHash() : this.parallelHasher.hash(root);
+  }
+
   @Override
   public Optional<V> get(final K key) {
     checkNotNull(key);
@@ -104,6 +151,8 @@ public class StoredMerklePatriciaTrie<K extends Bytes, V> implements MerklePatri
 
   @Override
   public void commit(final NodeUpdater nodeUpdater) {
+    // Hash the nodes first, so that they can be hashed in parallel.
+    hashRoot();
     final CommitVisitor<V> commitVisitor = new CommitVisitor<>(nodeUpdater);
     root.accept(commitVisitor);
     // Make sure root node was stored
@@ -130,7 +179,7 @@ public class StoredMerklePatriciaTrie<K extends Bytes, V> implements MerklePatri
 
   @Override
   public Bytes32 getRootHash() {
-    return root.getHash();
+    return hashRoot();
   }
 
   @Override
@@ -103,15 +103,20 @@ class StoredNode<V> implements Node<V> {
   }
 
   private Node<V> load() {
-    if (loaded == null) {
-      loaded =
-          nodeFactory
-              .retrieve(hash)
-              .orElseThrow(
-                  () -> new MerkleTrieException("Unable to load trie node value for hash " + hash));
+    if (loaded != null) {
+      return loaded;
     }
-
-    return loaded;
+    final Node<V> node =
+        nodeFactory
+            .retrieve(hash)
+            .orElseThrow(
+                () -> new MerkleTrieException("Unable to load trie node value for hash " + hash));
+    // Nodes in a node cache are shared, so holding the loaded node here would let a cached node
+    // keep its whole subtree in memory, beyond the limit of the cache.
+    if (!nodeFactory.hasNodeCache()) {
+      loaded = node;
+    }
+    return node;
   }
 
   @Override
@@ -34,14 +34,29 @@ class StoredNodeFactory<V> implements NodeFactory<V> {
   private final NodeLoader nodeLoader;
   private final Function<V, Bytes> valueSerializer;
   private final Function<Bytes, V> valueDeserializer;
+  // Null if nodes are not cached.
+  private final NodeCache<V> nodeCache;
 
   StoredNodeFactory(
       final NodeLoader nodeLoader,
       final Function<V, Bytes> valueSerializer,
       final Function<Bytes, V> valueDeserializer) {
+    this(nodeLoader, valueSerializer, valueDeserializer, null);
+  }
+
+  StoredNodeFactory(
+      final NodeLoader nodeLoader,
+      final Function<V, Bytes> valueSerializer,
+      final Function<Bytes, V> valueDeserializer,
+      final NodeCache<V> nodeCache) {
     this.nodeLoader = nodeLoader;
     this.valueSerializer = valueSerializer;
     this.valueDeserializer = valueDeserializer;
+    this.nodeCache = nodeCache;
+  }
+
+  boolean hasNodeCache() {
+    return this.nodeCache != null;
   }
 
   @Override
@@ -89,6 +104,12 @@ class StoredNodeFactory<V> implements NodeFactory<V> {
   }
 
   public Optional<Node<V>> retrieve(final Bytes32 hash) throws MerkleTrieException {
+    if (nodeCache != null) {
+      final Node<V> cached = nodeCache.get(hash);
+      if (cached != null) {
+        return Optional.of(cached);
+      }
+    }
     return nodeLoader
         .getNode(hash)
         .map(
@@ -97,6 +118,9 @@ class StoredNodeFactory<V> implements NodeFactory<V> {
               // recalculating the node.hash() is expensive, so we only do this as an assertion
               assert (hash.equals(node.getHash()))
                   : "Node hash " + node.getHash() + " not equal to expected " + hash;
+              if (nodeCache != null) {
+                nodeCache.put(hash, node, rlp.size());
+              }
               return node;
             });
   }
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.gpact.txroot;
+
+import net.consensys.gpact.trie.MerklePatriciaTrie;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+
+/**
+ * Transaction receipt trie for a block, together with the receipts root that has been checked
+ * against the block header.
+ */
+class BlockReceiptsTrie {
+  private final String blockHash;
+  private final MerklePatriciaTrie<Bytes, Bytes> trie;
+  private final Bytes32 receiptsRoot;
+
+  BlockReceiptsTrie(String blockHash, MerklePatriciaTrie<Bytes, Bytes> trie, Bytes32 receiptsRoot) {
+    this.blockHash = blockHash;
+    this.trie = trie;
+    this.receiptsRoot = receiptsRoot;
+  }
+
+  String getBlockHash() {
+    return this.blockHash;
+  }
+
+  MerklePatriciaTrie<Bytes, Bytes> getTrie() {
+    return this.trie;
+  }
+
+  Bytes32 getReceiptsRoot() {
+    return this.receiptsRoot;
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.gpact.txroot;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Bounded, least recently used cache of transaction receipt tries, keyed by block hash. Several
+ * events for one crosschain transaction are often emitted in the same block, so caching the trie
+ * means the receipts for a block only need to be fetched and hashed once.
+ *
+ * <p>If several threads request the trie for the same block at the same time, the trie is only
+ * built once. If building the trie fails, the failure is not cached.
+ */
+public class ReceiptsTrieCache {
+  static final Logger LOG = LogManager.getLogger(ReceiptsTrieCache.class);
+
+  public static final int DEFAULT_MAX_BLOCKS = 64;
+
+  interface TrieBuilder {
+    BlockReceiptsTrie build(String blockHash) throws Exception;
+  }
+
+  private final int maxBlocks;
+  // Guarded by this.
+  private final LinkedHashMap<String, CompletableFuture<BlockReceiptsTrie>> tries;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  public ReceiptsTrieCache() {
+    this(DEFAULT_MAX_BLOCKS);
+  }
+
+  /**
+   * Create a cache.
+   *
+   * @param maxBlocks Maximum number of blocks to hold tries for.
+   */
+  public ReceiptsTrieCache(int maxBlocks) {
+    if (maxBlocks <= 0) {
+      throw new IllegalArgumentException("Maximum number of blocks must be positive: " + maxBlocks);
+    }
+    this.maxBlocks = maxBlocks;
+    this.tries =
+        new LinkedHashMap<>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(
+              Map.Entry<String, CompletableFuture<BlockReceiptsTrie>> eldest) {
+            boolean evict = size() > ReceiptsTrieCache.this.maxBlocks;
+            if (evict) {
+              ReceiptsTrieCache.this.evictions.incrementAndGet();
+            }
+            return evict;
+          }
+        };
+  }
+
+  /**
+   * Return the trie for a block, building it if it is not in the cache.
+   *
+   * @param blockHash Block to return the trie for.
+   * @param builder Builds the trie if it is not in the cache.
+   * @return Trie for the block.
+   * @throws Exception If the trie needed to be built, and building it failed.
+   */
+  BlockReceiptsTrie get(String blockHash, TrieBuilder builder) throws Exception {
+    String key = blockHash.toLowerCase();
+    CompletableFuture<BlockReceiptsTrie> future;
+    boolean build = false;
+    synchronized (this) {
+      future = this.tries.get(key);
+      if (future == null) {
+        future = new CompletableFuture<>();
+        this.tries.put(key, future);
+        build = true;
+      }
+    }
+
+    if (!build) {
+      this.hits.incrementAndGet();
+      try {
+        return future.get();
+      } catch (ExecutionException ex) {
+        Throwable cause = ex.getCause();
+        throw (cause instanceof Exception) ? (Exception) cause : ex;
+      }
+    }
+
+    this.misses.incrementAndGet();
+    try {
+      BlockReceiptsTrie trie = builder.build(blockHash);
+      future.complete(trie);
+      return trie;
+    } catch (Exception | Error ex) {
+      synchronized (this) {
+        this.tries.remove(key, future);
+      }
+      future.completeExceptionally(ex);
+      throw ex;
+    }
+  }
+
+  public synchronized int size() {
+    return this.tries.size();
+  }
+
+  public synchronized void clear() {
+    this.tries.clear();
+  }
+
+  public int getMaxBlocks() {
+    return this.maxBlocks;
+  }
+
+  public long getHits() {
+    return this.hits.get();
+  }
+
+  public long getMisses() {
+    return this.misses.get();
+  }
+
+  public long getEvictions() {
+    return this.evictions.get();
+  }
+
+  @Override
+  public String toString() {
+    return "Blocks: "
+        + size()
+        + ", Hits: "
+        + getHits()
+        + ", Misses: "
+        + getMisses()
+        + ", Evictions: "
+        + getEvictions();
+  }
+}
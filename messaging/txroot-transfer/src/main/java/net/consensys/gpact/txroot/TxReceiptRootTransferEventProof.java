@@ -127,6 +127,11 @@ public class TxReceiptRootTransferEventProof {
     return RlpEncoder.encode(overallProofRlp);
   }
 
+  /** @return The number of bytes in the encoded proof. */
+  public int getEncodedSize() {
+    return getEncodedProof().length;
+  }
+
   public SignedEvent toSignedEvent() {
     return new SignedEvent(
         this.blockchainId,
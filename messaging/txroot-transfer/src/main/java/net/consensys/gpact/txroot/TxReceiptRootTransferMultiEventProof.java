@@ -0,0 +1,192 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.gpact.txroot;
+
+import static net.consensys.gpact.common.FormatConversion.addressStringToBytes;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import net.consensys.gpact.common.BlockchainId;
+import net.consensys.gpact.messaging.MultiSignedEvent;
+import org.apache.tuweni.units.bigints.UInt256;
+import org.web3j.rlp.RlpEncoder;
+import org.web3j.rlp.RlpList;
+import org.web3j.rlp.RlpString;
+import org.web3j.rlp.RlpType;
+
+/**
+ * Information to allow several events emitted in the one block to be verified using one proof. Each
+ * transaction receipt is included once, no matter how many of the events it holds, and trie nodes
+ * that are shared by the paths to the receipts are only included once, rather than once for each
+ * receipt as they would be with a TxReceiptRootTransferEventProof per event. Each event refers to
+ * its receipt and to the index of its log within the receipt.
+ */
+public class TxReceiptRootTransferMultiEventProof {
+  BlockchainId blockchainId;
+  String crossBlockchainControlContract;
+  byte[] transactionReceiptRoot;
+  List<BigInteger> transactionIndices;
+  List<byte[]> transactionReceipts;
+  List<byte[]> proofNodes;
+  byte[] eventFunctionSignature;
+  List<Integer> eventReceipts;
+  List<Integer> eventLogIndices;
+  List<byte[]> eventData;
+  // Total size of the equivalent proofs for each event.
+  int individualProofsSize;
+
+  /**
+   * Create new proof.
+   *
+   * @param blockchainId Blockchain that emitted the events / the transaction receipts relate to.
+   * @param crossBlockchainControlContract Address of Cross-Blockchain Control Contract that emitted
+   *     the events.
+   * @param transactionReceiptRoot Transaction receipt root for the block that the events were
+   *     emitted in.
+   * @param transactionIndices Index within the block of each transaction that emitted events, in
+   *     increasing order.
+   * @param transactionReceipts Transaction receipt for each of transactionIndices.
+   * @param proofNodes RLP encoded nodes of the transaction receipt trie, shared by all receipts.
+   * @param eventSignature Function selector of the events.
+   * @param eventReceipts For each event, the offset in transactionReceipts of its receipt.
+   * @param eventLogIndices For each event, the index of its log within its receipt.
+   * @param eventData Data for each event.
+   * @param individualProofsSize Total size of the encoded proofs if each event were proven
+   *     separately.
+   */
+  public TxReceiptRootTransferMultiEventProof(
+      BlockchainId blockchainId,
+      String crossBlockchainControlContract,
+      byte[] transactionReceiptRoot,
+      List<BigInteger> transactionIndices,
+      List<byte[]> transactionReceipts,
+      List<byte[]> proofNodes,
+      byte[] eventSignature,
+      List<Integer> eventReceipts,
+      List<Integer> eventLogIndices,
+      List<byte[]> eventData,
+      int individualProofsSize) {
+    this.blockchainId = blockchainId;
+    this.crossBlockchainControlContract = crossBlockchainControlContract;
+    this.transactionReceiptRoot = transactionReceiptRoot;
+    this.transactionIndices = transactionIndices;
+    this.transactionReceipts = transactionReceipts;
+    this.proofNodes = proofNodes;
+    this.eventFunctionSignature = eventSignature;
+    this.eventReceipts = eventReceipts;
+    this.eventLogIndices = eventLogIndices;
+    this.eventData = eventData;
+    this.individualProofsSize = individualProofsSize;
+  }
+
+  public BlockchainId getBlockchainId() {
+    return blockchainId;
+  }
+
+  public String getCrossBlockchainControlContract() {
+    return crossBlockchainControlContract;
+  }
+
+  public byte[] getTransactionReceiptRoot() {
+    return transactionReceiptRoot;
+  }
+
+  public List<BigInteger> getTransactionIndices() {
+    return transactionIndices;
+  }
+
+  public List<byte[]> getTransactionReceipts() {
+    return transactionReceipts;
+  }
+
+  public List<byte[]> getProofNodes() {
+    return proofNodes;
+  }
+
+  public byte[] getEventFunctionSignature() {
+    return eventFunctionSignature;
+  }
+
+  public List<Integer> getEventReceipts() {
+    return eventReceipts;
+  }
+
+  public List<Integer> getEventLogIndices() {
+    return eventLogIndices;
+  }
+
+  public List<byte[]> getEventData() {
+    return eventData;
+  }
+
+  public byte[] getEncodedProof() {
+    List<RlpType> receiptsRlp = new ArrayList<>();
+    for (int i = 0; i < this.transactionIndices.size(); i++) {
+      receiptsRlp.add(
+          new RlpList(
+              RlpString.create(UInt256.valueOf(this.transactionIndices.get(i)).toBytes().toArray()),
+              RlpString.create(this.transactionReceipts.get(i))));
+    }
+    List<RlpType> eventsRlp = new ArrayList<>();
+    for (int i = 0; i < this.eventData.size(); i++) {
+      eventsRlp.add(
+          new RlpList(
+              RlpString.create(this.eventReceipts.get(i)),
+              RlpString.create(this.eventLogIndices.get(i)),
+              RlpString.create(this.eventData.get(i))));
+    }
+    List<RlpType> nodesRlp = new ArrayList<>();
+    for (byte[] node : this.proofNodes) {
+      nodesRlp.add(RlpString.create(node));
+    }
+
+    RlpList overallProofRlp =
+        new RlpList(
+            RlpString.create(this.blockchainId.asBytes()),
+            RlpString.create(addressStringToBytes(this.crossBlockchainControlContract)),
+            RlpString.create(this.transactionReceiptRoot),
+            RlpString.create(this.eventFunctionSignature),
+            new RlpList(receiptsRlp),
+            new RlpList(eventsRlp),
+            new RlpList(nodesRlp));
+    return RlpEncoder.encode(overallProofRlp);
+  }
+
+  /** @return The number of bytes in the encoded proof. */
+  public int getEncodedSize() {
+    return getEncodedProof().length;
+  }
+
+  /** @return The total number of bytes if each event were proven using a separate proof. */
+  public int getIndividualProofsSize() {
+    return individualProofsSize;
+  }
+
+  /** @return The number of bytes saved by using this proof rather than individual proofs. */
+  public int getBytesSaved() {
+    return individualProofsSize - getEncodedSize();
+  }
+
+  public MultiSignedEvent toMultiSignedEvent() {
+    return new MultiSignedEvent(
+        this.blockchainId,
+        this.crossBlockchainControlContract,
+        this.eventFunctionSignature,
+        this.eventData,
+        getEncodedProof(),
+        this.individualProofsSize);
+  }
+}
@@ -81,15 +81,16 @@ public class TxRootRelayer extends AbstractBlockchain {
         "txReceiptsRootStorageContract.addTxReceiptRoot: publishing to BC ID {}, from BC ID: {}",
         this.blockchainId,
         sourceBlockchainId);
-    return this.txReceiptsRootStorage
-        .addTxReceiptRoot(
+    // Reverts are reported by addTransactionReceiptRootToBlockchainAsyncPart2.
+    return sendAsync(
+        this.txReceiptsRootStorage.getContractAddress(),
+        this.txReceiptsRootStorage.addTxReceiptRoot(
             sourceBlockchainId.asBigInt(),
             signed.theSigners,
             signed.sigR,
             signed.sigS,
             signed.sigV,
-            transactionReceiptRoot)
-        .sendAsync();
+            transactionReceiptRoot));
   }
 
   public void addTransactionReceiptRootToBlockchainAsyncPart2(TransactionReceipt txR)
@@ -16,22 +16,39 @@ package net.consensys.gpact.txroot;
 
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import net.consensys.gpact.common.AnIdentity;
 import net.consensys.gpact.common.BlockchainId;
 import net.consensys.gpact.common.BlockchainInfo;
+import net.consensys.gpact.common.Instrumentation;
+import net.consensys.gpact.common.Instrumentations;
 import net.consensys.gpact.common.RevertReason;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.tuweni.bytes.Bytes;
 import org.web3j.crypto.Credentials;
-import org.web3j.protocol.core.methods.response.TransactionReceipt;
 import org.web3j.protocol.exceptions.TransactionException;
 
 /** TODO this simulates all of the relayers for all blockchains */
 public class TxRootRelayerGroup {
   static final Logger LOG = LogManager.getLogger(TxRootRelayerGroup.class);
 
-  Map<BlockchainId, TxRootRelayer> blockchains = new HashMap<>();
+  // Maximum number of transaction receipt roots to remember as published. Roots that have
+  // been forgotten will be published again if they are needed again.
+  private static final int MAX_PUBLISHED_ROOTS = 1024;
+
+  Map<BlockchainId, TxRootRelayer> blockchains = new ConcurrentHashMap<>();
+
+  // Guarded by publishedRoots.
+  private final Map<RootKey, PublishedRoot> publishedRoots =
+      new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<RootKey, PublishedRoot> eldest) {
+          return size() > MAX_PUBLISHED_ROOTS;
+        }
+      };
 
   public void loadContractForBlockchain(
       Credentials creds, BlockchainInfo bcInfo, String txRootContract) throws Exception {
@@ -54,43 +71,81 @@ public class TxRootRelayerGroup {
       byte[] transactionReceiptRoot,
       List<BlockchainId> blockchainsToPublishTo)
       throws Exception {
+    waitForPublication(
+        publishReceiptRootAsync(publishingFrom, transactionReceiptRoot, blockchainsToPublishTo));
+  }
+
+  /**
+   * Publish a transaction receipt root to a set of blockchains, without waiting for the root to be
+   * published. The root is signed once, no matter how many blockchains it is published to. If the
+   * root has already been published to, or is being published to, a blockchain, it is not published
+   * to that blockchain again.
+   *
+   * @param publishingFrom Blockchain the transaction receipt root is from.
+   * @param transactionReceiptRoot Transaction receipt root to publish.
+   * @param blockchainsToPublishTo Blockchains that need to trust the transaction receipt root.
+   * @return Future that completes when the root is available on all of the blockchains. Callers
+   *     only need to wait for the future before submitting transactions that rely on the root.
+   */
+  public CompletableFuture<Void> publishReceiptRootAsync(
+      BlockchainId publishingFrom,
+      byte[] transactionReceiptRoot,
+      List<BlockchainId> blockchainsToPublishTo) {
     int numToShareWith = blockchainsToPublishTo.size();
     if (numToShareWith == 0) {
       throw new RuntimeException("Unexpectedly, zero blockchains to publish to");
     }
 
-    CompletableFuture<?>[] transactionReceiptCompletableFutures =
-        new CompletableFuture<?>[numToShareWith];
+    PublishedRoot publishedRoot;
+    synchronized (this.publishedRoots) {
+      publishedRoot =
+          this.publishedRoots.computeIfAbsent(
+              new RootKey(publishingFrom, transactionReceiptRoot),
+              k -> new PublishedRoot(publishingFrom, transactionReceiptRoot));
+    }
+
+    CompletableFuture<?>[] publications = new CompletableFuture<?>[numToShareWith];
     int i = 0;
     for (BlockchainId bcId : blockchainsToPublishTo) {
-      // TODO handle blockchain id not registered
-      TxRootRelayer relayer = this.blockchains.get(bcId);
-      Signatures signed = this.blockchains.get(publishingFrom).sign(transactionReceiptRoot);
-      transactionReceiptCompletableFutures[i++] =
-          relayer.addTransactionReceiptRootToBlockchainAsyncPart1(
-              signed, publishingFrom, transactionReceiptRoot);
+      publications[i++] = publishedRoot.publishTo(bcId);
     }
-    CompletableFuture<Void> combinedFuture =
-        CompletableFuture.allOf(transactionReceiptCompletableFutures);
+    return CompletableFuture.allOf(publications);
+  }
+
+  /**
+   * Wait for transaction receipt roots to be published.
+   *
+   * @param publication Future returned by publishReceiptRootAsync.
+   * @throws Exception If the root could not be published to one or more of the blockchains.
+   */
+  public static void waitForPublication(CompletableFuture<Void> publication) throws Exception {
     try {
-      combinedFuture.get();
+      publication.get();
     } catch (ExecutionException ex) {
       Throwable th = ex.getCause();
+      if (th instanceof CompletionException && th.getCause() != null) {
+        th = th.getCause();
+      }
       if (th instanceof TransactionException) {
         TransactionException txEx = (TransactionException) th;
-        LOG.error(
-            " Revert Reason: {}",
-            RevertReason.decodeRevertReason(txEx.getTransactionReceipt().get().getRevertReason()));
+        if (txEx.getTransactionReceipt().isPresent()) {
+          LOG.error(
+              " Revert Reason: {}",
+              RevertReason.decodeRevertReason(
+                  txEx.getTransactionReceipt().get().getRevertReason()));
+        }
+      }
+      if (th instanceof Exception) {
+        throw (Exception) th;
       }
       throw ex;
     }
+  }
 
-    i = 0;
-    for (BlockchainId bcId : blockchainsToPublishTo) {
-      TransactionReceipt receipt =
-          (TransactionReceipt) transactionReceiptCompletableFutures[i++].get();
-      TxRootRelayer relayer = this.blockchains.get(bcId);
-      relayer.addTransactionReceiptRootToBlockchainAsyncPart2(receipt);
+  /** @return The number of transaction receipt roots that are remembered as published. */
+  public int getNumPublishedRoots() {
+    synchronized (this.publishedRoots) {
+      return this.publishedRoots.size();
     }
   }
 
@@ -109,4 +164,108 @@ public class TxRootRelayerGroup {
     TxRootRelayer holder = this.blockchains.get(bcId1);
     holder.addSigner(signer);
   }
+
+  // Sign a transaction receipt root using the signers for the blockchain it is from.
+  Signatures sign(BlockchainId source, byte[] transactionReceiptRoot) {
+    return this.blockchains.get(source).sign(transactionReceiptRoot);
+  }
+
+  // Submit a transaction to add a signed transaction receipt root to a blockchain.
+  CompletableFuture<Void> publish(
+      BlockchainId bcId, Signatures signed, BlockchainId source, byte[] transactionReceiptRoot)
+      throws Exception {
+    // TODO handle blockchain id not registered
+    TxRootRelayer relayer = this.blockchains.get(bcId);
+    return relayer
+        .addTransactionReceiptRootToBlockchainAsyncPart1(signed, source, transactionReceiptRoot)
+        .thenAccept(
+            receipt -> {
+              try {
+                relayer.addTransactionReceiptRootToBlockchainAsyncPart2(receipt);
+              } catch (Exception ex) {
+                throw new CompletionException(ex);
+              }
+            });
+  }
+
+  private static class RootKey {
+    final BlockchainId source;
+    final String transactionReceiptRoot;
+
+    RootKey(BlockchainId source, byte[] transactionReceiptRoot) {
+      this.source = source;
+      this.transactionReceiptRoot = Bytes.wrap(transactionReceiptRoot).toHexString();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof RootKey)) {
+        return false;
+      }
+      RootKey key = (RootKey) other;
+      return this.source.equals(key.source)
+          && this.transactionReceiptRoot.equals(key.transactionReceiptRoot);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(this.source, this.transactionReceiptRoot);
+    }
+  }
+
+  // A transaction receipt root, signed once, and the blockchains it has been published to.
+  private class PublishedRoot {
+    final BlockchainId source;
+    final byte[] transactionReceiptRoot;
+    final Map<BlockchainId, CompletableFuture<Void>> publications = new ConcurrentHashMap<>();
+    private Signatures signed;
+
+    PublishedRoot(BlockchainId source, byte[] transactionReceiptRoot) {
+      this.source = source;
+      this.transactionReceiptRoot = transactionReceiptRoot;
+    }
+
+    synchronized Signatures getSignatures() {
+      if (this.signed == null) {
+        Instrumentation.Span span =
+            Instrumentations.start(Instrumentation.Stage.SIGNING, this.source);
+        this.signed = sign(this.source, this.transactionReceiptRoot);
+        span.end();
+      }
+      return this.signed;
+    }
+
+    CompletableFuture<Void> publishTo(BlockchainId bcId) {
+      CompletableFuture<Void> publication = new CompletableFuture<>();
+      CompletableFuture<Void> existing = this.publications.putIfAbsent(bcId, publication);
+      if (existing != null) {
+        return existing;
+      }
+      Instrumentations.start(Instrumentation.Stage.ROOT_PUBLISH, bcId).endWhenComplete(publication);
+
+      try {
+        publish(bcId, getSignatures(), this.source, this.transactionReceiptRoot)
+            .whenComplete(
+                (v, ex) -> {
+                  if (ex != null) {
+                    failed(bcId, publication, ex);
+                  } else {
+                    publication.complete(null);
+                  }
+                });
+      } catch (Exception ex) {
+        failed(bcId, publication, ex);
+      }
+      return publication;
+    }
+
+    // Forget failed publications so they are attempted again next time they are needed.
+    private void failed(BlockchainId bcId, CompletableFuture<Void> publication, Throwable th) {
+      if (th instanceof CompletionException && th.getCause() != null) {
+        th = th.getCause();
+      }
+      this.publications.remove(bcId, publication);
+      publication.completeExceptionally(th);
+    }
+  }
 }
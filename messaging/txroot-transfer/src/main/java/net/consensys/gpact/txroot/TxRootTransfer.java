@@ -17,12 +17,18 @@ package net.consensys.gpact.txroot;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import net.consensys.gpact.common.AbstractBlockchain;
 import net.consensys.gpact.common.BlockchainId;
 import net.consensys.gpact.common.DynamicGasProvider;
+import net.consensys.gpact.common.Instrumentation;
+import net.consensys.gpact.common.Instrumentations;
+import net.consensys.gpact.common.JsonRpcBatch;
 import net.consensys.gpact.messaging.MessagingVerificationInterface;
+import net.consensys.gpact.messaging.MultiSignedEvent;
 import net.consensys.gpact.messaging.SignedEvent;
 import net.consensys.gpact.trie.MerklePatriciaTrie;
+import net.consensys.gpact.trie.MultiMerkleProof;
 import net.consensys.gpact.trie.Proof;
 import net.consensys.gpact.trie.SimpleMerklePatriciaTrie;
 import org.apache.logging.log4j.LogManager;
@@ -34,6 +40,8 @@ import org.hyperledger.besu.ethereum.core.Hash;
 import org.hyperledger.besu.ethereum.core.LogTopic;
 import org.hyperledger.besu.ethereum.rlp.RLP;
 import org.web3j.crypto.Credentials;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
 import org.web3j.protocol.core.methods.response.*;
 
 /**
@@ -48,7 +56,25 @@ import org.web3j.protocol.core.methods.response.*;
 public class TxRootTransfer extends AbstractBlockchain implements MessagingVerificationInterface {
   static final Logger LOG = LogManager.getLogger(TxRootTransfer.class);
 
+  /** How transaction receipts are fetched when building the transaction receipt trie. */
+  public enum ReceiptFetchMode {
+    // One eth_getTransactionReceipt request at a time.
+    SEQUENTIAL,
+    // eth_getTransactionReceipt requests sent in concurrent JSON RPC batch requests.
+    BATCHED,
+    // One eth_getBlockReceipts request. If the Ethereum Client does not support the request,
+    // BATCHED is used from then on. If the request fails for some other reason, or the response
+    // does not match the block's transactions, BATCHED is used for that block only.
+    BLOCK_RECEIPTS
+  }
+
+  private static final int RECEIPTS_PER_BATCH = 100;
+  // JSON RPC error code returned when the Ethereum Client does not support a method.
+  private static final int JSON_RPC_METHOD_NOT_FOUND = -32601;
+
   TxRootRelayerGroup relayerGroup;
+  private volatile ReceiptFetchMode receiptFetchMode = ReceiptFetchMode.BATCHED;
+  private final ReceiptsTrieCache receiptsTrieCache = new ReceiptsTrieCache();
 
   public TxRootTransfer(
       TxRootRelayerGroup relayerGroup,
@@ -62,6 +88,13 @@ public class TxRootTransfer extends AbstractBlockchain implements MessagingVerif
     this.relayerGroup = relayerGroup;
   }
 
+  /**
+   * Create a proof for an event, and publish the block's transaction receipt root. As required by
+   * MessagingVerificationInterface, this blocks until the root has been published to all of the
+   * target blockchains. Callers that need the root for the same block share one publication, and a
+   * root that has already been published returns without waiting. Use getSignedEvents to publish
+   * the roots for several blocks at the same time.
+   */
   @Override
   public SignedEvent getSignedEvent(
       List<BlockchainId> targetBlockchainIds,
@@ -78,6 +111,213 @@ public class TxRootTransfer extends AbstractBlockchain implements MessagingVerif
     return proof.toSignedEvent();
   }
 
+  /**
+   * Create SignedEvents for several events emitted by the one contract. The transaction receipt
+   * root for each block is only published once, no matter how many of the events are in the block.
+   *
+   * <p>The deployed verifier contract only verifies single-receipt proofs, so the SignedEvents hold
+   * individual proofs. Use getMultiSignedEvent to create one proof for several events.
+   */
+  @Override
+  public List<SignedEvent> getSignedEvents(
+      List<BlockchainId> targetBlockchainIds,
+      List<TransactionReceipt> txReceipts,
+      List<byte[]> eventData,
+      String contractAddress,
+      byte[] eventFunctionSignature)
+      throws Exception {
+    List<SignedEvent> signedEvents = new ArrayList<>(txReceipts.size());
+    // Key is the lower case block hash.
+    Map<String, byte[]> receiptRoots = new LinkedHashMap<>();
+    for (int i = 0; i < txReceipts.size(); i++) {
+      TxReceiptRootTransferEventProof proof =
+          getEventProof(
+              txReceipts.get(i), eventData.get(i), contractAddress, eventFunctionSignature);
+      signedEvents.add(proof.toSignedEvent());
+      receiptRoots.putIfAbsent(
+          txReceipts.get(i).getBlockHash().toLowerCase(), proof.getTransactionReceiptRoot());
+    }
+
+    // Publish the roots for all of the blocks before waiting for any of them.
+    List<CompletableFuture<Void>> publications = new ArrayList<>();
+    for (byte[] receiptRoot : receiptRoots.values()) {
+      publications.add(
+          relayerGroup.publishReceiptRootAsync(
+              this.blockchainId, receiptRoot, targetBlockchainIds));
+    }
+    TxRootRelayerGroup.waitForPublication(
+        CompletableFuture.allOf(publications.toArray(new CompletableFuture<?>[0])));
+    return signedEvents;
+  }
+
+  /**
+   * Create one proof for several events emitted in the one block, and publish the block's
+   * transaction receipt root.
+   */
+  @Override
+  public Optional<MultiSignedEvent> getMultiSignedEvent(
+      List<BlockchainId> targetBlockchainIds,
+      List<TransactionReceipt> txReceipts,
+      List<byte[]> eventData,
+      String contractAddress,
+      byte[] eventFunctionSignature)
+      throws Exception {
+    TxReceiptRootTransferMultiEventProof proof =
+        getMultiEventProof(
+            this.blockchainId, contractAddress, txReceipts, eventData, eventFunctionSignature);
+    relayerGroup.publishReceiptRoot(
+        this.blockchainId, proof.getTransactionReceiptRoot(), targetBlockchainIds);
+    return Optional.of(proof.toMultiSignedEvent());
+  }
+
+  /**
+   * Create one proof for several events emitted in the one block.
+   *
+   * @param blockchainId Blockchain the receipts are from.
+   * @param cbcContractAddress Address of the contract that emitted the events.
+   * @param receipts Transaction receipt for each event, all from the one block.
+   * @param eventData Event data for each event.
+   * @param eventFunctionSignature Function selector of the events.
+   * @return Proof for all of the receipts.
+   * @throws Exception If the receipts are not from the one block, or the trie can not be built.
+   */
+  public TxReceiptRootTransferMultiEventProof getMultiEventProof(
+      BlockchainId blockchainId,
+      String cbcContractAddress,
+      List<TransactionReceipt> receipts,
+      List<byte[]> eventData,
+      byte[] eventFunctionSignature)
+      throws Exception {
+    if (receipts.isEmpty()) {
+      throw new IllegalArgumentException("No transaction receipts to prove");
+    }
+    return Instrumentations.time(
+        Instrumentation.Stage.PROOF_BUILD,
+        blockchainId,
+        () -> {
+          BlockReceiptsTrie receiptsTrie =
+              this.receiptsTrieCache.get(receipts.get(0).getBlockHash(), this::buildReceiptsTrie);
+          return createMultiEventProof(
+              receiptsTrie,
+              blockchainId,
+              cbcContractAddress,
+              receipts,
+              eventData,
+              eventFunctionSignature);
+        });
+  }
+
+  static TxReceiptRootTransferMultiEventProof createMultiEventProof(
+      BlockReceiptsTrie receiptsTrie,
+      BlockchainId blockchainId,
+      String cbcContractAddress,
+      List<TransactionReceipt> receipts,
+      List<byte[]> eventData,
+      byte[] eventFunctionSignature) {
+    // Find the log that holds each event, so that each receipt is only included once no matter
+    // how many of the events it holds. Duplicate events are dropped.
+    String eventTopic = Bytes.wrap(eventFunctionSignature).toHexString();
+    SortedMap<BigInteger, SortedMap<Integer, byte[]>> eventsByTxIndex = new TreeMap<>();
+    // Size of a proof for each event, together with the event information that is sent with it.
+    int individualProofsSize = 0;
+    for (int i = 0; i < receipts.size(); i++) {
+      TransactionReceipt receipt = receipts.get(i);
+      if (!receipt.getBlockHash().equalsIgnoreCase(receiptsTrie.getBlockHash())) {
+        throw new IllegalArgumentException(
+            "Transaction receipts for a multi-event proof must be from the one block");
+      }
+      byte[] event = eventData.get(i);
+      int logIndex = findLog(receipt, cbcContractAddress, eventTopic, event);
+      byte[] previous =
+          eventsByTxIndex
+              .computeIfAbsent(receipt.getTransactionIndex(), k -> new TreeMap<>())
+              .putIfAbsent(logIndex, event);
+      if (previous == null) {
+        individualProofsSize +=
+            createProof(
+                        receiptsTrie,
+                        blockchainId,
+                        cbcContractAddress,
+                        receipt,
+                        event,
+                        eventFunctionSignature)
+                    .getEncodedSize()
+                + eventFunctionSignature.length
+                + event.length;
+      }
+    }
+    List<Bytes> keys = new ArrayList<>();
+    for (BigInteger txIndex : eventsByTxIndex.keySet()) {
+      keys.add(indexKey(txIndex.intValue()));
+    }
+
+    MultiMerkleProof<Bytes> multiProof = receiptsTrie.getTrie().getValuesWithMultiMerkleProof(keys);
+    if (!multiProof.computeRootHash().equals(receiptsTrie.getReceiptsRoot())) {
+      throw new Error(
+          "Transaction receipt root calculated using multi-proof did not match actual receipt"
+              + " root");
+    }
+    List<BigInteger> txIndices = new ArrayList<>();
+    List<byte[]> encodedReceipts = new ArrayList<>();
+    List<Integer> eventReceipts = new ArrayList<>();
+    List<Integer> eventLogIndices = new ArrayList<>();
+    List<byte[]> sortedEventData = new ArrayList<>();
+    for (Map.Entry<BigInteger, SortedMap<Integer, byte[]>> entry : eventsByTxIndex.entrySet()) {
+      int receiptOffset = txIndices.size();
+      txIndices.add(entry.getKey());
+      encodedReceipts.add(multiProof.get(keys.get(receiptOffset)).get().toArray());
+      for (Map.Entry<Integer, byte[]> event : entry.getValue().entrySet()) {
+        eventReceipts.add(receiptOffset);
+        eventLogIndices.add(event.getKey());
+        sortedEventData.add(event.getValue());
+      }
+    }
+    List<byte[]> proofNodes = new ArrayList<>();
+    for (Bytes node : multiProof.getProofNodes()) {
+      proofNodes.add(node.toArray());
+    }
+
+    TxReceiptRootTransferMultiEventProof proof =
+        new TxReceiptRootTransferMultiEventProof(
+            blockchainId,
+            cbcContractAddress,
+            receiptsTrie.getReceiptsRoot().toArray(),
+            txIndices,
+            encodedReceipts,
+            proofNodes,
+            eventFunctionSignature,
+            eventReceipts,
+            eventLogIndices,
+            sortedEventData,
+            individualProofsSize);
+    if (LOG.isDebugEnabled()) {
+      LOG.debug(
+          "Multi-event proof for {} events in {} receipts: {} bytes, individual proofs: {} bytes",
+          sortedEventData.size(),
+          keys.size(),
+          proof.getEncodedSize(),
+          individualProofsSize);
+    }
+    return proof;
+  }
+
+  // Index within the receipt of the log for the event.
+  private static int findLog(
+      TransactionReceipt receipt, String contractAddress, String eventTopic, byte[] eventData) {
+    List<Log> logs = receipt.getLogs();
+    for (int i = 0; i < logs.size(); i++) {
+      Log log = logs.get(i);
+      if (contractAddress.equalsIgnoreCase(log.getAddress())
+          && !log.getTopics().isEmpty()
+          && eventTopic.equalsIgnoreCase(log.getTopics().get(0))
+          && Bytes.fromHexString(log.getData()).equals(Bytes.wrap(eventData))) {
+        return i;
+      }
+    }
+    throw new IllegalArgumentException(
+        "Event not emitted by transaction " + receipt.getTransactionHash());
+  }
+
   public TxReceiptRootTransferEventProof getEventProof(
       TransactionReceipt startTxReceipt,
       byte[] eventData,
@@ -95,80 +335,52 @@ public class TxRootTransfer extends AbstractBlockchain implements MessagingVerif
       byte[] eventData,
       byte[] eventFunctionSignature)
       throws Exception {
-    // Calculate receipt root based on logs for all receipts of all transactions in the block.
-    String blockHash = aReceipt.getBlockHash();
-    EthGetBlockTransactionCountByHash transactionCountByHash =
-        this.web3j.ethGetBlockTransactionCountByHash(blockHash).send();
-    BigInteger txCount = transactionCountByHash.getTransactionCount();
-
-    List<org.hyperledger.besu.ethereum.core.TransactionReceipt> besuReceipts = new ArrayList<>();
-
-    BigInteger transactionIndex = BigInteger.ZERO;
-    do {
-      EthTransaction ethTransaction =
-          this.web3j.ethGetTransactionByBlockHashAndIndex(blockHash, transactionIndex).send();
-      Optional<Transaction> transaction = ethTransaction.getTransaction();
-      assert (transaction.isPresent());
-      String txHash = transaction.get().getHash();
-      EthGetTransactionReceipt ethGetTransactionReceipt =
-          this.web3j.ethGetTransactionReceipt(txHash).send();
-      Optional<TransactionReceipt> mayBeReceipt = ethGetTransactionReceipt.getTransactionReceipt();
-      assert (mayBeReceipt.isPresent());
-      TransactionReceipt receipt = mayBeReceipt.get();
-
-      // Convert to Besu objects
-      List<org.hyperledger.besu.ethereum.core.Log> besuLogs = new ArrayList<>();
-
-      String stateRootFromReceipt = receipt.getRoot();
-      Hash root = (stateRootFromReceipt == null) ? null : Hash.fromHexString(receipt.getRoot());
-      String statusFromReceipt = receipt.getStatus();
-      int status =
-          statusFromReceipt == null ? -1 : Integer.parseInt(statusFromReceipt.substring(2), 16);
-      for (Log web3jLog : receipt.getLogs()) {
-        org.hyperledger.besu.ethereum.core.Address addr =
-            org.hyperledger.besu.ethereum.core.Address.fromHexString(web3jLog.getAddress());
-        Bytes data = Bytes.fromHexString(web3jLog.getData());
-        List<String> topics = web3jLog.getTopics();
-        List<LogTopic> logTopics = new ArrayList<>();
-        for (String topic : topics) {
-          LogTopic logTopic = LogTopic.create(Bytes.fromHexString(topic));
-          logTopics.add(logTopic);
-        }
-        besuLogs.add(new org.hyperledger.besu.ethereum.core.Log(addr, data, logTopics));
-      }
-      String revertReasonFromReceipt = receipt.getRevertReason();
-      Bytes revertReason =
-          revertReasonFromReceipt == null ? null : Bytes.fromHexString(receipt.getRevertReason());
-      org.hyperledger.besu.ethereum.core.TransactionReceipt txReceipt =
-          root == null
-              ? new org.hyperledger.besu.ethereum.core.TransactionReceipt(
-                  status,
-                  receipt.getCumulativeGasUsed().longValue(),
-                  besuLogs,
-                  Optional.ofNullable(revertReason))
-              : new org.hyperledger.besu.ethereum.core.TransactionReceipt(
-                  root,
-                  receipt.getCumulativeGasUsed().longValue(),
-                  besuLogs,
-                  Optional.ofNullable(revertReason));
-      besuReceipts.add(txReceipt);
-
-      // Increment for the next time through the loop.
-      transactionIndex = transactionIndex.add(BigInteger.ONE);
-    } while (transactionIndex.compareTo(txCount) != 0);
+    return Instrumentations.time(
+        Instrumentation.Stage.PROOF_BUILD,
+        blockchainId,
+        () -> {
+          BlockReceiptsTrie receiptsTrie =
+              this.receiptsTrieCache.get(aReceipt.getBlockHash(), this::buildReceiptsTrie);
+          LOG.debug("Receipts trie cache: {}", this.receiptsTrieCache);
+          return createProof(
+              receiptsTrie,
+              blockchainId,
+              cbcContractAddress,
+              aReceipt,
+              eventData,
+              eventFunctionSignature);
+        });
+  }
+
+  /**
+   * Fetch all of the transaction receipts for a block, build the transaction receipt trie, and
+   * check that the root of the trie matches the receipts root in the block header.
+   *
+   * @param blockHash Block to build the trie for.
+   * @return The trie and the verified receipts root.
+   * @throws Exception If the receipts can not be fetched, or the roots do not match.
+   */
+  BlockReceiptsTrie buildReceiptsTrie(String blockHash) throws Exception {
+    // One request for the block gives the transaction hashes and the receipts root.
+    EthBlock.Block block = this.web3j.ethGetBlockByHash(blockHash, false).send().getBlock();
+    if (block == null) {
+      throw new Exception("Unknown block: " + blockHash);
+    }
+    List<String> txHashes = new ArrayList<>();
+    for (EthBlock.TransactionResult<?> tx : block.getTransactions()) {
+      txHashes.add((String) tx.get());
+    }
+    List<TransactionReceipt> receipts = fetchReceipts(blockHash, txHashes);
 
     final MerklePatriciaTrie<Bytes, Bytes> trie = trie();
-    for (int i = 0; i < besuReceipts.size(); ++i) {
-      Bytes rlpEncoding = RLP.encode(besuReceipts.get(i)::writeTo);
+    for (int i = 0; i < receipts.size(); ++i) {
+      Bytes rlpEncoding = RLP.encode(toBesuReceipt(receipts.get(i))::writeTo);
       trie.put(indexKey(i), rlpEncoding);
     }
     Bytes32 besuCalculatedReceiptsRoot = trie.getRootHash();
     String besuCalculatedReceiptsRootStr = besuCalculatedReceiptsRoot.toHexString();
 
-    // TODO remove this check code that isn't needed
-    EthBlock block = this.web3j.ethGetBlockByHash(aReceipt.getBlockHash(), false).send();
-    EthBlock.Block b1 = block.getBlock();
-    String receiptsRoot = b1.getReceiptsRoot();
+    String receiptsRoot = block.getReceiptsRoot();
     if (!besuCalculatedReceiptsRootStr.equalsIgnoreCase(receiptsRoot)) {
       LOG.error(
           "Calculated transaction receipt root {} does not match actual receipt root {}",
@@ -176,57 +388,180 @@ public class TxRootTransfer extends AbstractBlockchain implements MessagingVerif
           receiptsRoot);
       throw new Error("Calculated transaction receipt root does not match actual receipt root");
     }
+    return new BlockReceiptsTrie(blockHash, trie, besuCalculatedReceiptsRoot);
+  }
+
+  private List<TransactionReceipt> fetchReceipts(String blockHash, List<String> txHashes)
+      throws Exception {
+    switch (this.receiptFetchMode) {
+      case BLOCK_RECEIPTS:
+        Optional<List<TransactionReceipt>> blockReceipts = fetchBlockReceipts(blockHash, txHashes);
+        if (blockReceipts.isPresent()) {
+          return blockReceipts.get();
+        }
+        return fetchReceiptsBatched(txHashes);
+      case BATCHED:
+        return fetchReceiptsBatched(txHashes);
+      default:
+        List<TransactionReceipt> receipts = new ArrayList<>();
+        for (String txHash : txHashes) {
+          receipts.add(getReceipt(txHash, this.web3j.ethGetTransactionReceipt(txHash).send()));
+        }
+        return receipts;
+    }
+  }
 
-    //    // TODO remove
-    //    Bytes32 parentHash = Bytes32.fromHexString(b1.getParentHash());
-    //    Bytes32 ommersHash = Bytes32.fromHexString(b1.getSha3Uncles());
-    //    Bytes coinbase = Bytes.fromHexString(b1.getMiner());
-    //    Bytes32 stateRoot = Bytes32.fromHexString(b1.getStateRoot());
-    //    Bytes32 transactionsRoot = Bytes32.fromHexString(b1.getTransactionsRoot());
-    //    Bytes32 receiptsRoot1 = Bytes32.fromHexString(b1.getReceiptsRoot());
-    //    Bytes logsBloom = Bytes.fromHexString(b1.getLogsBloom());
-    //    BigInteger difficulty = b1.getDifficulty();
-    //    BigInteger number = b1.getNumber();
-    //    BigInteger gasLimit = b1.getGasLimit();
-    //    BigInteger gasUsed = b1.getGasUsed();
-    //    BigInteger timestamp = b1.getTimestamp();
-    //    Bytes extraData = Bytes.fromHexString(b1.getExtraData());
-    //    Bytes32 mixHash = Bytes32.fromHexString(b1.getMixHash());
-    //    BigInteger nonce = b1.getNonce();
-    //
-    //    Bytes blockHash1 = Hash.hash(
-    //        RLP.encode(
-    //            out -> {
-    //              out.startList();
-    //              out.writeBytes(parentHash);
-    //              out.writeBytes(ommersHash);
-    //              out.writeBytes(coinbase);
-    //              out.writeBytes(stateRoot);
-    //              out.writeBytes(transactionsRoot);
-    //              out.writeBytes(receiptsRoot1);
-    //              out.writeBytes(logsBloom);
-    //              out.writeBytes(UInt256.valueOf(difficulty).toMinimalBytes());
-    //              out.writeLongScalar(number.longValue());
-    //              out.writeLongScalar(gasLimit.longValue());
-    //              out.writeLongScalar(gasUsed.longValue());
-    //              out.writeLongScalar(timestamp.longValue());
-    //              out.writeBytes(extraData);
-    //              out.writeBytes(mixHash);
-    //              out.writeLong(nonce.longValue());
-    ////    if (ExperimentalEIPs.eip1559Enabled && baseFee != null) {
-    ////      out.writeLongScalar(baseFee);
-    ////    }
-    //              out.endList();
-    //            }));
-    //    LOG.debug("Block Hash Calculated***: {} should be: {}", blockHash1.toHexString(),
-    // blockHash);
-
-    // TODO end remove
+  // Fetch receipts using batch requests, with the batches sent concurrently. Ethereum Clients can
+  // return the responses in a batch in any order, so receipts are matched to transactions using
+  // the transaction hash rather than the position in the batch.
+  private List<TransactionReceipt> fetchReceiptsBatched(List<String> txHashes) throws Exception {
+    JsonRpcBatch batch = new JsonRpcBatch(this.web3j, RECEIPTS_PER_BATCH);
+    List<CompletableFuture<EthGetTransactionReceipt>> responses = new ArrayList<>();
+    for (String txHash : txHashes) {
+      responses.add(batch.add(this.web3j.ethGetTransactionReceipt(txHash)));
+    }
+    batch.send();
 
+    Map<String, TransactionReceipt> receiptsByTxHash = new HashMap<>();
+    for (int i = 0; i < txHashes.size(); i++) {
+      TransactionReceipt receipt = getReceipt(txHashes.get(i), responses.get(i).join());
+      receiptsByTxHash.put(receipt.getTransactionHash().toLowerCase(Locale.ROOT), receipt);
+    }
+    List<TransactionReceipt> receipts = new ArrayList<>(txHashes.size());
+    for (String txHash : txHashes) {
+      TransactionReceipt receipt = receiptsByTxHash.get(txHash.toLowerCase(Locale.ROOT));
+      if (receipt == null) {
+        throw new Exception(
+            "Batched receipt responses from "
+                + this.uri
+                + " do not include transaction "
+                + txHash
+                + ": received "
+                + receiptsByTxHash.size()
+                + " distinct receipts for "
+                + txHashes.size()
+                + " transactions");
+      }
+      receipts.add(receipt);
+    }
+    return receipts;
+  }
+
+  // Fetch all of the receipts for a block with one eth_getBlockReceipts request. Returns empty if
+  // the receipts need to be fetched another way. Only a method not found error switches this
+  // object to BATCHED: other failures only affect this call.
+  private Optional<List<TransactionReceipt>> fetchBlockReceipts(
+      String blockHash, List<String> txHashes) {
+    EthGetBlockReceipts response;
+    try {
+      response =
+          new Request<>(
+                  "eth_getBlockReceipts",
+                  Collections.singletonList(blockHash),
+                  this.web3jService,
+                  EthGetBlockReceipts.class)
+              .send();
+    } catch (IOException ex) {
+      LOG.warn("eth_getBlockReceipts failed for block {}: {}", blockHash, ex.getMessage());
+      return Optional.empty();
+    }
+    if (response.hasError()) {
+      if (response.getError().getCode() == JSON_RPC_METHOD_NOT_FOUND) {
+        LOG.info(
+            "eth_getBlockReceipts not supported by {}: using batched requests instead", this.uri);
+        this.receiptFetchMode = ReceiptFetchMode.BATCHED;
+      } else {
+        LOG.warn(
+            "eth_getBlockReceipts failed for block {}: {}",
+            blockHash,
+            response.getError().getMessage());
+      }
+      return Optional.empty();
+    }
+    List<TransactionReceipt> receipts = response.getResult();
+    if (receipts == null || receipts.size() != txHashes.size()) {
+      LOG.warn(
+          "eth_getBlockReceipts returned {} receipts for block {}, expected {}",
+          receipts == null ? 0 : receipts.size(),
+          blockHash,
+          txHashes.size());
+      return Optional.empty();
+    }
+    for (int i = 0; i < receipts.size(); i++) {
+      if (!txHashes.get(i).equalsIgnoreCase(receipts.get(i).getTransactionHash())) {
+        LOG.warn("eth_getBlockReceipts returned receipts out of order for block {}", blockHash);
+        return Optional.empty();
+      }
+    }
+    return Optional.of(receipts);
+  }
+
+  private static TransactionReceipt getReceipt(String txHash, EthGetTransactionReceipt response)
+      throws Exception {
+    if (response.hasError()) {
+      throw new Exception(
+          "Error fetching transaction receipt for "
+              + txHash
+              + ": "
+              + response.getError().getMessage());
+    }
+    Optional<TransactionReceipt> mayBeReceipt = response.getTransactionReceipt();
+    if (mayBeReceipt.isEmpty()) {
+      throw new Exception("No transaction receipt for transaction: " + txHash);
+    }
+    return mayBeReceipt.get();
+  }
+
+  // Convert to Besu objects
+  private static org.hyperledger.besu.ethereum.core.TransactionReceipt toBesuReceipt(
+      TransactionReceipt receipt) {
+    List<org.hyperledger.besu.ethereum.core.Log> besuLogs = new ArrayList<>();
+
+    String stateRootFromReceipt = receipt.getRoot();
+    Hash root = (stateRootFromReceipt == null) ? null : Hash.fromHexString(receipt.getRoot());
+    String statusFromReceipt = receipt.getStatus();
+    int status =
+        statusFromReceipt == null ? -1 : Integer.parseInt(statusFromReceipt.substring(2), 16);
+    for (Log web3jLog : receipt.getLogs()) {
+      org.hyperledger.besu.ethereum.core.Address addr =
+          org.hyperledger.besu.ethereum.core.Address.fromHexString(web3jLog.getAddress());
+      Bytes data = Bytes.fromHexString(web3jLog.getData());
+      List<String> topics = web3jLog.getTopics();
+      List<LogTopic> logTopics = new ArrayList<>();
+      for (String topic : topics) {
+        LogTopic logTopic = LogTopic.create(Bytes.fromHexString(topic));
+        logTopics.add(logTopic);
+      }
+      besuLogs.add(new org.hyperledger.besu.ethereum.core.Log(addr, data, logTopics));
+    }
+    String revertReasonFromReceipt = receipt.getRevertReason();
+    Bytes revertReason =
+        revertReasonFromReceipt == null ? null : Bytes.fromHexString(receipt.getRevertReason());
+    return root == null
+        ? new org.hyperledger.besu.ethereum.core.TransactionReceipt(
+            status,
+            receipt.getCumulativeGasUsed().longValue(),
+            besuLogs,
+            Optional.ofNullable(revertReason))
+        : new org.hyperledger.besu.ethereum.core.TransactionReceipt(
+            root,
+            receipt.getCumulativeGasUsed().longValue(),
+            besuLogs,
+            Optional.ofNullable(revertReason));
+  }
+
+  private static TxReceiptRootTransferEventProof createProof(
+      BlockReceiptsTrie receiptsTrie,
+      BlockchainId blockchainId,
+      String cbcContractAddress,
+      TransactionReceipt aReceipt,
+      byte[] eventData,
+      byte[] eventFunctionSignature) {
+    Bytes32 besuCalculatedReceiptsRoot = receiptsTrie.getReceiptsRoot();
     BigInteger txIndex = aReceipt.getTransactionIndex();
     Bytes aKey = indexKey((int) txIndex.longValue());
 
-    Proof<Bytes> simpleProof = trie.getValueWithSimpleProof(aKey);
+    Proof<Bytes> simpleProof = receiptsTrie.getTrie().getValueWithSimpleProof(aKey);
     Bytes encodedTransactionReceipt = simpleProof.getValue().get();
     Bytes rlpOfNode = encodedTransactionReceipt;
     // Node references can be hashes or the node itself, if the node is less than 32 bytes.
@@ -252,7 +587,7 @@ public class TxRootTransfer extends AbstractBlockchain implements MessagingVerif
     return new TxReceiptRootTransferEventProof(
         blockchainId,
         cbcContractAddress,
-        getTransactionReceiptRoot(aReceipt),
+        besuCalculatedReceiptsRoot.toArray(),
         encodedTransactionReceipt.toArray(),
         proofOffsets,
         proofs,
@@ -260,6 +595,18 @@ public class TxRootTransfer extends AbstractBlockchain implements MessagingVerif
         eventData);
   }
 
+  public ReceiptsTrieCache getReceiptsTrieCache() {
+    return this.receiptsTrieCache;
+  }
+
+  public ReceiptFetchMode getReceiptFetchMode() {
+    return this.receiptFetchMode;
+  }
+
+  public void setReceiptFetchMode(ReceiptFetchMode receiptFetchMode) {
+    this.receiptFetchMode = receiptFetchMode;
+  }
+
   static Bytes indexKey(final int i) {
     return RLP.encodeOne(UInt256.valueOf(i).toBytes().trimLeadingZeros());
   }
@@ -292,4 +639,7 @@ public class TxRootTransfer extends AbstractBlockchain implements MessagingVerif
     Bytes32 receiptsRootBytes32 = Bytes32.fromHexString(receiptsRoot);
     return receiptsRootBytes32.toArray();
   }
+
+  /** Response to eth_getBlockReceipts, which web3j does not support directly. */
+  public static class EthGetBlockReceipts extends Response<List<TransactionReceipt>> {}
 }
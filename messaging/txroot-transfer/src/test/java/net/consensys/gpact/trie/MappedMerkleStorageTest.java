@@ -0,0 +1,138 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.gpact.trie;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.Random;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class MappedMerkleStorageTest {
+  // Small segments, so that records are spread over several segments.
+  private static final int SEGMENT_SIZE = 4096;
+
+  @TempDir Path dir;
+
+  @Test
+  public void commitRollbackAndReopen() throws Exception {
+    Path file = this.dir.resolve("nodes");
+    Random rand = new Random(1);
+    Bytes32[] hashes = new Bytes32[2000];
+    Bytes[] contents = new Bytes[hashes.length];
+    try (MappedMerkleStorage storage = new MappedMerkleStorage(file, SEGMENT_SIZE)) {
+      for (int i = 0; i < hashes.length; i++) {
+        hashes[i] = Bytes32.random(rand);
+        contents[i] = Bytes.random(1 + rand.nextInt(500), rand);
+        storage.put(hashes[i], contents[i]);
+      }
+      // Pending puts are visible before they are committed.
+      assertEquals(Optional.of(contents[0]), storage.get(hashes[0]));
+      storage.commit();
+
+      Bytes32 discarded = Bytes32.random(rand);
+      storage.put(discarded, Bytes.of(1));
+      storage.rollback();
+      assertFalse(storage.get(discarded).isPresent());
+
+      // Nodes are content addressed, so a committed hash is not written again.
+      long logLength = storage.getLogLength();
+      storage.put(hashes[1], contents[1]);
+      storage.commit();
+      assertEquals(hashes.length, storage.size());
+      assertEquals(logLength, storage.getLogLength());
+
+      // Not committed, so lost when the file is closed.
+      storage.put(discarded, Bytes.of(1));
+    }
+
+    try (MappedMerkleStorage storage = new MappedMerkleStorage(file, SEGMENT_SIZE)) {
+      assertEquals(hashes.length, storage.size());
+      for (int i = 0; i < hashes.length; i++) {
+        assertEquals(Optional.of(contents[i]), storage.get(hashes[i]));
+      }
+      assertFalse(storage.get(Bytes32.ZERO).isPresent());
+      assertFalse(storage.get(Bytes32.random(rand)).isPresent());
+    }
+  }
+
+  @Test
+  public void storedTrie() throws Exception {
+    Path file = this.dir.resolve("trie");
+    Random rand = new Random(2);
+    Bytes32[] keys = new Bytes32[500];
+    Bytes32 rootHash;
+    try (MappedMerkleStorage storage = new MappedMerkleStorage(file, SEGMENT_SIZE)) {
+      StoredMerklePatriciaTrie<Bytes, Bytes> trie =
+          new StoredMerklePatriciaTrie<>(storage, b -> b, b -> b);
+      for (int i = 0; i < keys.length; i++) {
+        keys[i] = Bytes32.random(rand);
+        trie.put(keys[i], Bytes.ofUnsignedShort(i));
+      }
+      trie.commit(storage);
+      storage.commit();
+      rootHash = trie.getRootHash();
+    }
+
+    try (MappedMerkleStorage storage = new MappedMerkleStorage(file, SEGMENT_SIZE)) {
+      StoredMerklePatriciaTrie<Bytes, Bytes> trie =
+          new StoredMerklePatriciaTrie<>(storage, rootHash, b -> b, b -> b);
+      for (int i = 0; i < keys.length; i++) {
+        assertEquals(Optional.of(Bytes.ofUnsignedShort(i)), trie.get(keys[i]));
+      }
+    }
+  }
+
+  @Test
+  public void sameTrieCommittedTwice() throws Exception {
+    Path file = this.dir.resolve("twice");
+    Random rand = new Random(3);
+    Bytes32[] keys = new Bytes32[500];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = Bytes32.random(rand);
+    }
+    try (MappedMerkleStorage storage = new MappedMerkleStorage(file, SEGMENT_SIZE)) {
+      Bytes32 rootHash = null;
+      long logLength = 0;
+      long fileSize = 0;
+      for (int pass = 0; pass < 2; pass++) {
+        StoredMerklePatriciaTrie<Bytes, Bytes> trie =
+            new StoredMerklePatriciaTrie<>(storage, b -> b, b -> b);
+        for (int i = 0; i < keys.length; i++) {
+          trie.put(keys[i], Bytes.ofUnsignedShort(i));
+        }
+        trie.commit(storage);
+        storage.commit();
+        if (pass == 0) {
+          rootHash = trie.getRootHash();
+          logLength = storage.getLogLength();
+          fileSize = Files.size(file);
+        }
+      }
+      assertEquals(logLength, storage.getLogLength());
+      assertEquals(fileSize, Files.size(file));
+
+      StoredMerklePatriciaTrie<Bytes, Bytes> trie =
+          new StoredMerklePatriciaTrie<>(storage, rootHash, b -> b, b -> b);
+      assertEquals(Optional.of(Bytes.ofUnsignedShort(7)), trie.get(keys[7]));
+    }
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.gpact.trie;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.junit.jupiter.api.Test;
+
+public class NodeCacheTest {
+  private final Map<Bytes32, Bytes> storage = new HashMap<>();
+  private final AtomicInteger loads = new AtomicInteger();
+  private final Bytes32[] keys = new Bytes32[1000];
+  private Bytes32 rootHash;
+
+  private NodeLoader loader() {
+    return hash -> {
+      this.loads.incrementAndGet();
+      return Optional.ofNullable(this.storage.get(hash));
+    };
+  }
+
+  private void store() {
+    Random rand = new Random(1);
+    StoredMerklePatriciaTrie<Bytes, Bytes> trie =
+        new StoredMerklePatriciaTrie<>(loader(), b -> b, b -> b);
+    for (int i = 0; i < this.keys.length; i++) {
+      this.keys[i] = Bytes32.random(rand);
+      trie.put(this.keys[i], Bytes.ofUnsignedShort(i));
+    }
+    trie.commit(this.storage::put);
+    this.rootHash = trie.getRootHash();
+    this.loads.set(0);
+  }
+
+  private void readAll(NodeCache<Bytes> cache) {
+    StoredMerklePatriciaTrie<Bytes, Bytes> trie =
+        new StoredMerklePatriciaTrie<>(loader(), this.rootHash, b -> b, b -> b, cache);
+    for (int i = 0; i < this.keys.length; i++) {
+      assertEquals(Optional.of(Bytes.ofUnsignedShort(i)), trie.get(this.keys[i]));
+    }
+  }
+
+  @Test
+  public void sharedBetweenTries() {
+    store();
+    NodeCache<Bytes> cache = new NodeCache<>();
+    readAll(cache);
+    int firstLoads = this.loads.get();
+    assertTrue(firstLoads > 0);
+    assertEquals(firstLoads, cache.size());
+
+    // A second trie with the same root finds all of its nodes in the cache.
+    readAll(cache);
+    assertEquals(firstLoads, this.loads.get());
+    assertTrue(cache.getHitRate() > 0.5);
+    assertEquals(0, cache.getEvictions());
+  }
+
+  @Test
+  public void bounded() {
+    store();
+    NodeCache<Bytes> cache = new NodeCache<>(64 * 1024);
+    readAll(cache);
+    readAll(cache);
+    assertTrue(cache.getEvictions() > 0);
+    assertTrue(cache.getSizeBytes() <= cache.getMaxBytes());
+  }
+}
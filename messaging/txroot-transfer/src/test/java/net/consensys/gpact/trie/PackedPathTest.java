@@ -0,0 +1,123 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.gpact.trie;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Optional;
+import java.util.Random;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.apache.tuweni.bytes.MutableBytes;
+import org.junit.jupiter.api.Test;
+
+public class PackedPathTest {
+
+  // One element per byte, as paths were represented before they were packed.
+  private static Bytes unpacked(Bytes bytes, int bitsPerElement) {
+    int perByte = 8 / bitsPerElement;
+    MutableBytes path = MutableBytes.create(bytes.size() * perByte + 1);
+    for (int i = 0; i < bytes.size() * perByte; i++) {
+      int shift = 8 - bitsPerElement * (i % perByte + 1);
+      path.set(i, (byte) ((bytes.get(i / perByte) >>> shift) & ((1 << bitsPerElement) - 1)));
+    }
+    path.set(path.size() - 1, CompactEncoding.LEAF_TERMINATOR);
+    return path;
+  }
+
+  private static void checkSame(Bytes expected, Bytes actual) {
+    assertEquals(expected, actual);
+    assertEquals(actual, expected);
+    assertEquals(expected.hashCode(), actual.hashCode());
+  }
+
+  @Test
+  public void matchesBytePerElementPaths() {
+    Random rand = new Random(1);
+    for (int bits : new int[] {PackedPath.NIBBLE_BITS, PackedPath.BIT_BITS}) {
+      for (int n = 0; n < 200; n++) {
+        Bytes key = Bytes.random(rand.nextInt(40), rand);
+        // A second key that shares a random length prefix with the first.
+        Bytes other = Bytes.concatenate(key.slice(0, rand.nextInt(key.size() + 1)), key.not());
+        other = other.slice(0, Math.min(other.size(), key.size()));
+
+        Bytes expected = unpacked(key, bits);
+        Bytes expectedOther = unpacked(other, bits);
+        Bytes path =
+            bits == PackedPath.NIBBLE_BITS ? PackedPath.nibbles(key) : PackedPath.bits(key);
+        Bytes otherPath =
+            bits == PackedPath.NIBBLE_BITS ? PackedPath.nibbles(other) : PackedPath.bits(other);
+        checkSame(expected, path);
+
+        int start = rand.nextInt(expected.size());
+        int len = rand.nextInt(expected.size() - start + 1);
+        Bytes slice = path.slice(start, len);
+        checkSame(expected.slice(start, len), slice);
+        checkSame(expected.slice(start), path.slice(start));
+        assertEquals(
+            expected.slice(start).commonPrefixLength(expectedOther.slice(start)),
+            path.slice(start).commonPrefixLength(otherPath.slice(start)));
+        assertEquals(
+            expected.slice(start).commonPrefixLength(expectedOther),
+            path.slice(start).commonPrefixLength(otherPath));
+        assertEquals(expected.commonPrefixLength(expected), path.commonPrefixLength(path));
+
+        if (bits == PackedPath.NIBBLE_BITS) {
+          checkSame(slice, CompactEncoding.decode(CompactEncoding.encode(slice)));
+          checkSame(
+              expected.slice(start),
+              CompactEncoding.decode(CompactEncoding.encode(path.slice(start))));
+          assertEquals(key, CompactEncoding.pathToBytes(path));
+        } else {
+          assertEquals(key, CompactEncoding.pathToBytesBinary(path));
+        }
+        int split = rand.nextInt(expected.size());
+        checkSame(expected, PackedPath.concatenate(path.slice(0, split), expected.slice(split)));
+      }
+    }
+  }
+
+  @Test
+  public void removalCollapsesToSameRoot() {
+    Random rand = new Random(2);
+    SimpleMerklePatriciaTrie<Bytes, Bytes> all = new SimpleMerklePatriciaTrie<>(b -> b);
+    SimpleMerklePatriciaTrie<Bytes, Bytes> kept = new SimpleMerklePatriciaTrie<>(b -> b);
+    BinaryMerklePatriciaTrie<Bytes, Bytes> binary = new BinaryMerklePatriciaTrie<>(b -> b);
+    Bytes32[] keys = new Bytes32[500];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = Bytes32.random(rand);
+      all.put(keys[i], Bytes.ofUnsignedShort(i));
+      binary.put(keys[i], Bytes.ofUnsignedShort(i));
+      if (i % 3 == 0) {
+        kept.put(keys[i], Bytes.ofUnsignedShort(i));
+      }
+    }
+    for (int i = 0; i < keys.length; i++) {
+      if (i % 3 != 0) {
+        all.remove(keys[i]);
+        binary.remove(keys[i]);
+      }
+    }
+    assertEquals(kept.getRootHash(), all.getRootHash());
+    for (int i = 0; i < keys.length; i++) {
+      Optional<Bytes> expected =
+          i % 3 == 0 ? Optional.of(Bytes.ofUnsignedShort(i)) : Optional.empty();
+      assertEquals(expected, all.get(keys[i]));
+      assertEquals(expected, binary.get(keys[i]));
+    }
+    assertTrue(all.getValueWithProof(keys[0]).getValue().isPresent());
+  }
+}
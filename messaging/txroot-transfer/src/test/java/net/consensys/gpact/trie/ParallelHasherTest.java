@@ -0,0 +1,98 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.gpact.trie;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.junit.jupiter.api.Test;
+
+public class ParallelHasherTest {
+
+  private static SimpleMerklePatriciaTrie<Bytes, Bytes> trie(int size, ForkJoinPool pool) {
+    Random rand = new Random(1);
+    SimpleMerklePatriciaTrie<Bytes, Bytes> trie = new SimpleMerklePatriciaTrie<>(b -> b);
+    trie.setParallelHashing(pool, 16);
+    for (int i = 0; i < size; i++) {
+      trie.put(Bytes32.random(rand), Bytes.random(1 + rand.nextInt(64), rand));
+    }
+    return trie;
+  }
+
+  @Test
+  public void sameRootAsSerial() {
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      for (int size : new int[] {0, 1, 10, 5000}) {
+        assertEquals(trie(size, null).getRootHash(), trie(size, pool).getRootHash(), "" + size);
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void onlyUpdatedPathsRehashed() {
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      SimpleMerklePatriciaTrie<Bytes, Bytes> serial = trie(3000, null);
+      SimpleMerklePatriciaTrie<Bytes, Bytes> parallel = trie(3000, pool);
+      assertEquals(serial.getRootHash(), parallel.getRootHash());
+      List<Node<Bytes>> before = new ArrayList<>();
+      walk(parallel.getRootNode(), before);
+      assertTrue(before.stream().allMatch(Node::hasCachedHash));
+
+      Bytes32 key = Bytes32.fromHexString("0x01");
+      serial.put(key, Bytes.of(1, 2, 3));
+      parallel.put(key, Bytes.of(1, 2, 3));
+
+      // getHash only hashes nodes that do not have a cached hash, so the nodes without one are the
+      // nodes that will be hashed. They should be the new nodes on the path to the updated key.
+      List<Node<Bytes>> after = new ArrayList<>();
+      walk(parallel.getRootNode(), after);
+      List<Node<Bytes>> toHash = new ArrayList<>();
+      for (Node<Bytes> node : after) {
+        if (!node.hasCachedHash()) {
+          toHash.add(node);
+          assertTrue(before.stream().noneMatch(n -> n == node));
+          long uncachedChildren =
+              node.getChildren().stream().filter(c -> !c.hasCachedHash()).count();
+          assertTrue(uncachedChildren <= 1, "Uncached nodes should form a single path");
+        }
+      }
+      assertTrue(toHash.size() > 0 && toHash.size() < 10, "Nodes to hash: " + toHash.size());
+
+      assertEquals(serial.getRootHash(), parallel.getRootHash());
+      assertTrue(toHash.stream().allMatch(Node::hasCachedHash));
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  private static void walk(Node<Bytes> node, List<Node<Bytes>> nodes) {
+    if (node instanceof BranchNode || node instanceof ExtensionNode || node instanceof LeafNode) {
+      nodes.add(node);
+      for (Node<Bytes> child : node.getChildren()) {
+        walk(child, nodes);
+      }
+    }
+  }
+}
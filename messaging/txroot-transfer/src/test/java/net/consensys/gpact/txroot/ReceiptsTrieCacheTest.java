@@ -0,0 +1,76 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.gpact.txroot;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.tuweni.bytes.Bytes32;
+import org.junit.jupiter.api.Test;
+
+public class ReceiptsTrieCacheTest {
+  private final AtomicInteger builds = new AtomicInteger();
+
+  private BlockReceiptsTrie build(String blockHash) {
+    this.builds.incrementAndGet();
+    return new BlockReceiptsTrie(blockHash, TxRootTransfer.trie(), Bytes32.ZERO);
+  }
+
+  @Test
+  public void secondGetIsHit() throws Exception {
+    ReceiptsTrieCache cache = new ReceiptsTrieCache(2);
+    BlockReceiptsTrie first = cache.get("0xAB", this::build);
+    BlockReceiptsTrie second = cache.get("0xab", this::build);
+    assertSame(first, second);
+    assertEquals(1, this.builds.get());
+    assertEquals(1, cache.getHits());
+    assertEquals(1, cache.getMisses());
+  }
+
+  @Test
+  public void leastRecentlyUsedEvicted() throws Exception {
+    ReceiptsTrieCache cache = new ReceiptsTrieCache(2);
+    cache.get("0x01", this::build);
+    cache.get("0x02", this::build);
+    cache.get("0x01", this::build);
+    cache.get("0x03", this::build);
+    assertEquals(2, cache.size());
+    assertEquals(1, cache.getEvictions());
+
+    // 0x01 was used more recently than 0x02, so 0x02 was evicted.
+    cache.get("0x01", this::build);
+    assertEquals(3, this.builds.get());
+    cache.get("0x02", this::build);
+    assertEquals(4, this.builds.get());
+  }
+
+  @Test
+  public void failureNotCached() throws Exception {
+    ReceiptsTrieCache cache = new ReceiptsTrieCache(2);
+    assertThrows(
+        Exception.class,
+        () ->
+            cache.get(
+                "0x01",
+                blockHash -> {
+                  throw new Exception("Unknown block");
+                }));
+    assertEquals(0, cache.size());
+    cache.get("0x01", this::build);
+    assertEquals(1, this.builds.get());
+  }
+}
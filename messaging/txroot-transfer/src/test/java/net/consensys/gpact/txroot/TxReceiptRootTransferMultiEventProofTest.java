@@ -0,0 +1,147 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.gpact.txroot;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import net.consensys.gpact.common.BlockchainId;
+import net.consensys.gpact.messaging.MultiSignedEvent;
+import net.consensys.gpact.trie.MerklePatriciaTrie;
+import org.apache.tuweni.bytes.Bytes;
+import org.junit.jupiter.api.Test;
+import org.web3j.protocol.core.methods.response.Log;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+import org.web3j.rlp.RlpDecoder;
+import org.web3j.rlp.RlpList;
+import org.web3j.rlp.RlpString;
+
+public class TxReceiptRootTransferMultiEventProofTest {
+  private static final String BLOCK_HASH = "0x" + "ab".repeat(32);
+  private static final String CONTRACT = "0x" + "12".repeat(20);
+  private static final String OTHER_CONTRACT = "0x" + "34".repeat(20);
+  private static final byte[] EVENT_SIGNATURE = Bytes.fromHexString("5a".repeat(32)).toArray();
+
+  private static Log log(String address, byte[] data) {
+    Log log = new Log();
+    log.setAddress(address);
+    log.setTopics(Collections.singletonList(Bytes.wrap(EVENT_SIGNATURE).toHexString()));
+    log.setData(Bytes.wrap(data).toHexString());
+    return log;
+  }
+
+  private static TransactionReceipt receipt(int txIndex, Log... logs) {
+    TransactionReceipt receipt = new TransactionReceipt();
+    receipt.setBlockHash(BLOCK_HASH);
+    receipt.setTransactionIndex("0x" + Integer.toHexString(txIndex));
+    receipt.setTransactionHash("0x" + Integer.toHexString(txIndex));
+    receipt.setLogs(Arrays.asList(logs));
+    return receipt;
+  }
+
+  private static byte[] event(int txIndex) {
+    return new byte[] {(byte) txIndex, 0x55};
+  }
+
+  @Test
+  public void eachReceiptEncodedOnce() {
+    List<Bytes> encodedReceipts = new ArrayList<>();
+    MerklePatriciaTrie<Bytes, Bytes> receiptsTrie = TxRootTransfer.trie();
+    for (int i = 0; i < 20; i++) {
+      encodedReceipts.add(Bytes.concatenate(Bytes.of(i), Bytes.wrap(new byte[40])));
+      receiptsTrie.put(TxRootTransfer.indexKey(i), encodedReceipts.get(i));
+    }
+    BlockReceiptsTrie trie =
+        new BlockReceiptsTrie(BLOCK_HASH, receiptsTrie, receiptsTrie.getRootHash());
+
+    byte[] secondEvent = new byte[] {12, 0x66};
+    TransactionReceipt receipt0 = receipt(0, log(CONTRACT, event(0)));
+    TransactionReceipt receipt2 =
+        receipt(2, log(OTHER_CONTRACT, event(2)), log(CONTRACT, event(2)));
+    TransactionReceipt receipt7 = receipt(7, log(CONTRACT, event(7)));
+    TransactionReceipt receipt12 =
+        receipt(12, log(CONTRACT, event(12)), log(CONTRACT, secondEvent));
+    // Out of order, with a duplicate event and two events from transaction 12.
+    List<TransactionReceipt> receipts =
+        Arrays.asList(receipt7, receipt2, receipt12, receipt2, receipt0, receipt12);
+    List<byte[]> eventData =
+        Arrays.asList(event(7), event(2), event(12), event(2), event(0), secondEvent);
+
+    TxReceiptRootTransferMultiEventProof proof =
+        TxRootTransfer.createMultiEventProof(
+            trie, BlockchainId.of(31), CONTRACT, receipts, eventData, EVENT_SIGNATURE);
+
+    int[] txIndices = {0, 2, 7, 12};
+    assertEquals(txIndices.length, proof.getTransactionIndices().size());
+    assertEquals(txIndices.length, proof.getTransactionReceipts().size());
+    for (int i = 0; i < txIndices.length; i++) {
+      assertEquals(BigInteger.valueOf(txIndices[i]), proof.getTransactionIndices().get(i));
+      assertArrayEquals(
+          encodedReceipts.get(txIndices[i]).toArrayUnsafe(), proof.getTransactionReceipts().get(i));
+    }
+    assertEquals(Arrays.asList(0, 1, 2, 3, 3), proof.getEventReceipts());
+    assertEquals(Arrays.asList(0, 1, 0, 0, 1), proof.getEventLogIndices());
+    List<byte[]> expectedEvents =
+        Arrays.asList(event(0), event(2), event(7), event(12), secondEvent);
+    for (int i = 0; i < expectedEvents.size(); i++) {
+      assertArrayEquals(expectedEvents.get(i), proof.getEventData().get(i));
+    }
+    assertArrayEquals(trie.getReceiptsRoot().toArray(), proof.getTransactionReceiptRoot());
+
+    // The encoding holds the event signature, each receipt once, and each event's data.
+    RlpList encoded = (RlpList) RlpDecoder.decode(proof.getEncodedProof()).getValues().get(0);
+    assertArrayEquals(EVENT_SIGNATURE, ((RlpString) encoded.getValues().get(3)).getBytes());
+    assertEquals(txIndices.length, ((RlpList) encoded.getValues().get(4)).getValues().size());
+    List<?> events = ((RlpList) encoded.getValues().get(5)).getValues();
+    assertEquals(expectedEvents.size(), events.size());
+    RlpList lastEvent = (RlpList) events.get(4);
+    assertEquals(3, ((RlpString) lastEvent.getValues().get(0)).asPositiveBigInteger().intValue());
+    assertEquals(1, ((RlpString) lastEvent.getValues().get(1)).asPositiveBigInteger().intValue());
+    assertArrayEquals(secondEvent, ((RlpString) lastEvent.getValues().get(2)).getBytes());
+
+    // Transaction 12's receipt would be in two individual proofs, but is only in this one once.
+    assertTrue(proof.getBytesSaved() > encodedReceipts.get(12).size());
+    MultiSignedEvent signedEvent = proof.toMultiSignedEvent();
+    assertArrayEquals(proof.getEncodedProof(), signedEvent.getEncodedSignatures());
+    assertEquals(proof.getBytesSaved(), signedEvent.getBytesSaved());
+  }
+
+  @Test
+  public void eventMustBeInItsReceipt() {
+    MerklePatriciaTrie<Bytes, Bytes> receiptsTrie = TxRootTransfer.trie();
+    receiptsTrie.put(TxRootTransfer.indexKey(0), Bytes.wrap(new byte[40]));
+    BlockReceiptsTrie trie =
+        new BlockReceiptsTrie(BLOCK_HASH, receiptsTrie, receiptsTrie.getRootHash());
+
+    TransactionReceipt receipt = receipt(0, log(OTHER_CONTRACT, event(0)));
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            TxRootTransfer.createMultiEventProof(
+                trie,
+                BlockchainId.of(31),
+                CONTRACT,
+                Collections.singletonList(receipt),
+                Collections.singletonList(event(0)),
+                EVENT_SIGNATURE));
+  }
+}
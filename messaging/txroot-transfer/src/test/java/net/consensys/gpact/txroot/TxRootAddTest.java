@@ -226,7 +226,8 @@ public class TxRootAddTest extends AbstractWeb3Test {
       TransactionReceiptProcessor txrProcessor =
           new PollingTransactionReceiptProcessor(this.web3j, POLLING_INTERVAL, RETRY);
       tms[i] =
-          TxManagerCache.getOrCreate(this.web3j, creds[i], BLOCKCHAIN_ID.longValue(), txrProcessor);
+          TxManagerCache.getOrCreate(
+              this.web3jClient, creds[i], BLOCKCHAIN_ID.longValue(), txrProcessor);
       testContracts[i] =
           TestEvents.load(testContractAddress, this.web3j, tms[i], this.freeGasProvider);
     }
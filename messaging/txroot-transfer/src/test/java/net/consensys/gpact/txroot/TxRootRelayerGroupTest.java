@@ -0,0 +1,158 @@
+/*
+ * Copyright 2021 ConsenSys Software Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package net.consensys.gpact.txroot;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.consensys.gpact.common.BlockchainId;
+import org.junit.jupiter.api.Test;
+
+public class TxRootRelayerGroupTest {
+  private static final BlockchainId SOURCE = BlockchainId.of(1);
+  private static final BlockchainId DEST1 = BlockchainId.of(2);
+  private static final BlockchainId DEST2 = BlockchainId.of(3);
+  private static final byte[] ROOT1 = new byte[] {1, 2, 3};
+  private static final byte[] ROOT2 = new byte[] {4, 5, 6};
+
+  private final FakeRelayerGroup group = new FakeRelayerGroup();
+
+  @Test
+  public void signedAndPublishedOncePerBlockchainAndRoot() throws Exception {
+    CompletableFuture<Void> first =
+        this.group.publishReceiptRootAsync(SOURCE, ROOT1, Arrays.asList(DEST1, DEST2));
+    assertFalse(first.isDone());
+    this.group.completeAll();
+    TxRootRelayerGroup.waitForPublication(first);
+
+    // Roots are matched by value, not by array identity.
+    CompletableFuture<Void> second =
+        this.group.publishReceiptRootAsync(SOURCE, ROOT1.clone(), Arrays.asList(DEST1, DEST2));
+    assertTrue(second.isDone());
+    assertEquals(1, this.group.signatures.get());
+    assertEquals(1, this.group.getPublications(DEST1));
+    assertEquals(1, this.group.getPublications(DEST2));
+
+    this.group.publishReceiptRootAsync(SOURCE, ROOT2, Arrays.asList(DEST1));
+    assertEquals(2, this.group.signatures.get());
+    assertEquals(2, this.group.getPublications(DEST1));
+    assertEquals(2, this.group.getNumPublishedRoots());
+  }
+
+  @Test
+  public void concurrentCallersShareOnePublication() throws Exception {
+    final int numCallers = 8;
+    ExecutorService executor = Executors.newFixedThreadPool(numCallers);
+    try {
+      CountDownLatch start = new CountDownLatch(1);
+      List<Future<CompletableFuture<Void>>> calls = new ArrayList<>();
+      for (int i = 0; i < numCallers; i++) {
+        calls.add(
+            executor.submit(
+                () -> {
+                  start.await();
+                  return this.group.publishReceiptRootAsync(SOURCE, ROOT1, Arrays.asList(DEST1));
+                }));
+      }
+      start.countDown();
+      List<CompletableFuture<Void>> publications = new ArrayList<>();
+      for (Future<CompletableFuture<Void>> call : calls) {
+        publications.add(call.get());
+      }
+
+      assertEquals(1, this.group.signatures.get());
+      assertEquals(1, this.group.getPublications(DEST1));
+      for (CompletableFuture<Void> publication : publications) {
+        assertFalse(publication.isDone());
+      }
+      this.group.completeAll();
+      for (CompletableFuture<Void> publication : publications) {
+        assertTrue(publication.isDone());
+        assertFalse(publication.isCompletedExceptionally());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void failedPublicationRetried() throws Exception {
+    CompletableFuture<Void> first =
+        this.group.publishReceiptRootAsync(SOURCE, ROOT1, Arrays.asList(DEST1));
+    this.group.pending.remove().completeExceptionally(new Exception("Reverted"));
+    Exception ex =
+        assertThrows(Exception.class, () -> TxRootRelayerGroup.waitForPublication(first));
+    assertEquals("Reverted", ex.getMessage());
+
+    CompletableFuture<Void> second =
+        this.group.publishReceiptRootAsync(SOURCE, ROOT1, Arrays.asList(DEST1));
+    assertEquals(2, this.group.getPublications(DEST1));
+    // The signatures are kept, so the root is not signed again.
+    assertEquals(1, this.group.signatures.get());
+    this.group.completeAll();
+    TxRootRelayerGroup.waitForPublication(second);
+  }
+
+  // Counts signing and publication rather than submitting transactions. Publications complete
+  // when the test completes them.
+  private static class FakeRelayerGroup extends TxRootRelayerGroup {
+    final AtomicInteger signatures = new AtomicInteger();
+    final Map<BlockchainId, AtomicInteger> publications = new ConcurrentHashMap<>();
+    final BlockingQueue<CompletableFuture<Void>> pending = new LinkedBlockingQueue<>();
+
+    @Override
+    Signatures sign(BlockchainId source, byte[] transactionReceiptRoot) {
+      this.signatures.incrementAndGet();
+      return new Signatures(
+          new ArrayList<>(), new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+    }
+
+    @Override
+    CompletableFuture<Void> publish(
+        BlockchainId bcId, Signatures signed, BlockchainId source, byte[] transactionReceiptRoot) {
+      this.publications.computeIfAbsent(bcId, k -> new AtomicInteger()).incrementAndGet();
+      CompletableFuture<Void> publication = new CompletableFuture<>();
+      this.pending.add(publication);
+      return publication;
+    }
+
+    int getPublications(BlockchainId bcId) {
+      AtomicInteger count = this.publications.get(bcId);
+      return count == null ? 0 : count.get();
+    }
+
+    void completeAll() {
+      CompletableFuture<Void> publication;
+      while ((publication = this.pending.poll()) != null) {
+        publication.complete(null);
+      }
+    }
+  }
+}